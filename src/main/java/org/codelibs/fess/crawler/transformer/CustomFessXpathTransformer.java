@@ -15,15 +15,22 @@
  */
 package org.codelibs.fess.crawler.transformer;
 
+import java.util.Map;
+
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.codelibs.core.lang.StringUtil;
 import org.codelibs.fess.crawler.entity.ResponseData;
+import org.codelibs.fess.mylasta.direction.FessConfig;
+import org.codelibs.fess.thumbnail.playwright.ContentFingerprint;
+import org.codelibs.fess.util.ComponentUtil;
 import org.w3c.dom.Document;
 
 /**
  * Custom XPath transformer for Fess that filters HTML content for thumbnail generation.
  * This transformer only processes HTML content and skips other MIME types to optimize
- * thumbnail generation performance.
+ * thumbnail generation performance. When a fingerprint field is configured, it also stores
+ * a content fingerprint so that the thumbnail generator can reuse thumbnails of duplicate pages.
  */
 public class CustomFessXpathTransformer extends FessXpathTransformer {
 
@@ -48,4 +55,23 @@ public class CustomFessXpathTransformer extends FessXpathTransformer {
         }
         return url;
     }
+
+    @Override
+    protected void putAdditionalData(final Map<String, Object> dataMap, final ResponseData responseData, final Document document) {
+        super.putAdditionalData(dataMap, responseData, document);
+
+        final FessConfig fessConfig = ComponentUtil.getFessConfig();
+        final String fingerprintField = fessConfig.getSystemProperty(ContentFingerprint.FIELD_PROPERTY);
+        if (StringUtil.isBlank(fingerprintField) || document == null || dataMap.get(fessConfig.getIndexFieldThumbnail()) == null) {
+            return;
+        }
+        final String fingerprint =
+                ContentFingerprint.create(document, Boolean.parseBoolean(fessConfig.getSystemProperty(ContentFingerprint.FOLD_DIGITS_PROPERTY)));
+        if (fingerprint != null) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("fingerprint of {} is {}", responseData.getUrl(), fingerprint);
+            }
+            putResultDataBody(dataMap, fingerprintField, fingerprint);
+        }
+    }
 }
@@ -0,0 +1,331 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.thumbnail.playwright;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntSupplier;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.codelibs.fess.mylasta.direction.FessConfig;
+
+/**
+ * Adjusts the number of concurrent renders to memory pressure. The JVM heap usage and the
+ * resident memory of the browser processes (read from {@code /proc}) are sampled periodically.
+ * While either is above its high threshold, the render limit is halved relative to the renders
+ * in flight; once the limit is down to one render, intake is paused until the renders in flight
+ * and pending have drained. When both drop below their low thresholds, intake resumes and the
+ * limit grows by one render per sample until the full pool is used again.
+ */
+public class AdmissionController {
+
+    private static final Logger logger = LogManager.getLogger(AdmissionController.class);
+
+    /** The directory of process information on Linux. */
+    protected static final Path PROC_PATH = Paths.get("/proc");
+
+    /** The maximum number of concurrent renders. */
+    protected final int maxLimit;
+
+    /** The heap usage ratio at which concurrency is reduced. */
+    protected final double heapHighRatio;
+
+    /** The heap usage ratio below which concurrency is restored. */
+    protected final double heapLowRatio;
+
+    /** The browser resident memory in bytes at which concurrency is reduced, or 0 to ignore it. */
+    protected final long rssHigh;
+
+    /** The browser resident memory in bytes below which concurrency is restored. */
+    protected final long rssLow;
+
+    /** The interval in milliseconds between samples. */
+    protected final long interval;
+
+    /** The current number of concurrent renders allowed. */
+    protected volatile int limit;
+
+    /** Whether intake of new renders is paused. */
+    protected volatile boolean paused;
+
+    /** The last sampled heap usage ratio. */
+    protected volatile double heapRatio;
+
+    /** The last sampled browser resident memory in bytes, or -1 if unknown. */
+    protected volatile long rss = -1L;
+
+    /** The number of times the limit was reduced. */
+    protected long shrinkCount;
+
+    /** The number of times intake was paused. */
+    protected long pauseCount;
+
+    /** The sampling thread. */
+    protected Thread thread;
+
+    /** Whether the sampling thread is running. */
+    protected volatile boolean running;
+
+    /**
+     * Creates an admission controller.
+     *
+     * @param maxLimit the maximum number of concurrent renders
+     * @param heapHighRatio the heap usage ratio at which concurrency is reduced
+     * @param heapLowRatio the heap usage ratio below which concurrency is restored
+     * @param rssHigh the browser resident memory in bytes at which concurrency is reduced, or 0 to ignore it
+     * @param rssLow the browser resident memory in bytes below which concurrency is restored
+     * @param interval the interval in milliseconds between samples
+     */
+    public AdmissionController(final int maxLimit, final double heapHighRatio, final double heapLowRatio, final long rssHigh,
+            final long rssLow, final long interval) {
+        this.maxLimit = Math.max(maxLimit, 1);
+        this.heapHighRatio = heapHighRatio;
+        this.heapLowRatio = Math.min(heapLowRatio, heapHighRatio);
+        this.rssHigh = rssHigh;
+        this.rssLow = Math.min(rssLow, rssHigh);
+        this.interval = Math.max(interval, 1L);
+        limit = this.maxLimit;
+    }
+
+    /**
+     * Creates an admission controller from the system properties if it is enabled.
+     *
+     * @param fessConfig the Fess configuration
+     * @param maxLimit the number of render slots
+     * @return the admission controller, or null if it is disabled
+     */
+    public static AdmissionController from(final FessConfig fessConfig, final int maxLimit) {
+        final PropertyReader reader = new PropertyReader(fessConfig);
+        if (!reader.getBoolean("thumbnail.playwright.admission.enabled", false)) {
+            return null;
+        }
+        final long rssHigh = reader.getLong("thumbnail.playwright.admission.rss.high", 0L);
+        final long rssLow = reader.getLong("thumbnail.playwright.admission.rss.low", 0L);
+        return new AdmissionController(maxLimit, reader.getDouble("thumbnail.playwright.admission.heap.high", 0.85),
+                reader.getDouble("thumbnail.playwright.admission.heap.low", 0.7), rssHigh, rssLow > 0L ? rssLow : rssHigh * 4 / 5,
+                reader.getLong("thumbnail.playwright.admission.interval", 1000L));
+    }
+
+    /**
+     * Starts sampling memory usage in a background thread.
+     *
+     * @param inFlightSupplier the supplier of the number of renders in flight
+     * @param listener called after the limit or the pause state changed
+     */
+    public void start(final IntSupplier inFlightSupplier, final Runnable listener) {
+        running = true;
+        thread = new Thread(() -> {
+            while (running) {
+                try {
+                    Thread.sleep(interval);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                try {
+                    if (update(getHeapRatio(), getBrowserRss(), inFlightSupplier.getAsInt())) {
+                        listener.run();
+                    }
+                } catch (final Exception e) {
+                    logger.warn("Failed to sample memory usage.", e);
+                }
+            }
+        }, "Playwright-Admission");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops the sampling thread.
+     */
+    public void stop() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * Updates the limit from a memory sample.
+     *
+     * @param heapRatio the heap usage ratio
+     * @param rss the browser resident memory in bytes, or a negative value if unknown
+     * @param inFlight the number of renders in flight
+     * @return true if the limit or the pause state changed
+     */
+    public synchronized boolean update(final double heapRatio, final long rss, final int inFlight) {
+        this.heapRatio = heapRatio;
+        this.rss = rss;
+        final int oldLimit = limit;
+        final boolean oldPaused = paused;
+        final boolean rssKnown = rssHigh > 0 && rss >= 0;
+        if (heapRatio >= heapHighRatio || rssKnown && rss >= rssHigh) {
+            if (limit > 1) {
+                limit = Math.max(Math.min(limit, Math.max(inFlight, 1)) / 2, 1);
+                shrinkCount++;
+            } else if (!paused) {
+                paused = true;
+                pauseCount++;
+            }
+        } else if (heapRatio < heapLowRatio && (!rssKnown || rss < rssLow)) {
+            paused = false;
+            if (limit < maxLimit) {
+                limit++;
+            }
+        }
+        if (oldLimit == limit && oldPaused == paused) {
+            return false;
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("Admission limit: {} -> {}, paused: {}, heap: {}, rss: {}", oldLimit, limit, paused, heapRatio, rss);
+        }
+        return true;
+    }
+
+    /**
+     * Gets the number of concurrent renders currently allowed.
+     *
+     * @return the limit
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Checks if intake of new renders is paused.
+     *
+     * @return true if paused
+     */
+    public boolean isPaused() {
+        return paused;
+    }
+
+    /**
+     * Gets the part of the maximum JVM heap still in use after the last garbage collection,
+     * summed over the heap pools, so that garbage waiting to be collected does not count as pressure.
+     * Falls back to the current usage if the collectors do not report usage after collection.
+     *
+     * @return the heap usage ratio
+     */
+    protected double getHeapRatio() {
+        final long max = Runtime.getRuntime().maxMemory();
+        long used = 0L;
+        boolean collected = false;
+        for (final MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() != MemoryType.HEAP) {
+                continue;
+            }
+            final MemoryUsage usage = pool.getCollectionUsage();
+            if (usage != null) {
+                used += usage.getUsed();
+                collected = true;
+            }
+        }
+        if (!collected || used <= 0L) {
+            final Runtime runtime = Runtime.getRuntime();
+            used = runtime.totalMemory() - runtime.freeMemory();
+        }
+        return (double) used / max;
+    }
+
+    /**
+     * Gets the total memory of the processes started by this JVM, which are the Playwright
+     * drivers and their browsers. The proportional set size from {@code /proc/[pid]/smaps_rollup}
+     * is used where available, so that pages shared between browser processes are counted once;
+     * otherwise the resident memory from {@code /proc/[pid]/status} is summed.
+     *
+     * @return the memory in bytes, or -1 if it cannot be read
+     */
+    protected long getBrowserRss() {
+        if (!Files.isDirectory(PROC_PATH)) {
+            return -1L;
+        }
+        return ProcessHandle.current().descendants().mapToLong(p -> {
+            final Path procPath = PROC_PATH.resolve(Long.toString(p.pid()));
+            final long pss = readPss(procPath.resolve("smaps_rollup"));
+            return pss >= 0L ? pss : readRss(procPath.resolve("status"));
+        }).filter(v -> v > 0L).sum();
+    }
+
+    /**
+     * Reads the resident memory from a {@code /proc/[pid]/status} file.
+     *
+     * @param statusPath the status file
+     * @return the resident memory in bytes, or -1 if it cannot be read
+     */
+    protected static long readRss(final Path statusPath) {
+        return readKilobytes(statusPath, "VmRSS:");
+    }
+
+    /**
+     * Reads the proportional set size from a {@code /proc/[pid]/smaps_rollup} file.
+     *
+     * @param smapsRollupPath the smaps_rollup file
+     * @return the proportional set size in bytes, or -1 if it cannot be read
+     */
+    protected static long readPss(final Path smapsRollupPath) {
+        return readKilobytes(smapsRollupPath, "Pss:");
+    }
+
+    /**
+     * Reads a value in kilobytes from a {@code /proc} file of "name: value kB" lines.
+     *
+     * @param path the file
+     * @param name the name of the value with its colon
+     * @return the value in bytes, or -1 if it cannot be read
+     */
+    protected static long readKilobytes(final Path path, final String name) {
+        try {
+            final List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+            for (final String line : lines) {
+                if (line.startsWith(name)) {
+                    final String[] values = line.substring(name.length()).trim().split("\\s+");
+                    return Long.parseLong(values[0]) * 1024L;
+                }
+            }
+        } catch (final IOException | RuntimeException e) {
+            // the process has exited or the file is not readable
+        }
+        return -1L;
+    }
+
+    /**
+     * Returns the admission metrics.
+     *
+     * @return the metrics keyed by name
+     */
+    public synchronized Map<String, Object> getMetrics() {
+        final Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("admission.limit", limit);
+        metrics.put("admission.paused", paused);
+        metrics.put("admission.shrinks", shrinkCount);
+        metrics.put("admission.pauses", pauseCount);
+        metrics.put("admission.heap.ratio", heapRatio);
+        metrics.put("admission.browser.rss", rss);
+        return metrics;
+    }
+}
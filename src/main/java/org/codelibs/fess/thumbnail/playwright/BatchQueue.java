@@ -0,0 +1,119 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.thumbnail.playwright;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Bounded queue of the batch thumbnails to render in a run when on-demand rendering is enabled.
+ * Thumbnails with a higher priority come first, then the ones offered earlier. When the queue is full,
+ * a thumbnail ranked higher replaces the lowest ranked one, so the queue holds the top thumbnails
+ * by priority seen during a run rather than the first ones to arrive.
+ */
+public class BatchQueue {
+
+    /**
+     * A batch thumbnail.
+     *
+     * @param thumbnailId the thumbnail ID
+     * @param file the thumbnail file
+     * @param priority the render priority, higher values first
+     * @param sequence the order in which the thumbnail was offered
+     */
+    public record Item(String thumbnailId, File file, double priority, long sequence) {
+    }
+
+    /** The order of rendering: the highest priority first, then the earliest offered. */
+    protected static final Comparator<Item> ORDER =
+            Comparator.comparingDouble((final Item item) -> -item.priority()).thenComparingLong(Item::sequence);
+
+    /** The maximum number of thumbnails to render per run. */
+    protected final int maxSize;
+
+    /** The queued thumbnails, lowest ranked first. */
+    protected final PriorityQueue<Item> queue = new PriorityQueue<>(ORDER.reversed());
+
+    /** The IDs of the queued thumbnails. */
+    protected final Set<String> idSet = new HashSet<>();
+
+    /** The sequence number of the next offered thumbnail. */
+    protected long sequence;
+
+    /**
+     * Creates a batch queue.
+     *
+     * @param maxSize the maximum number of thumbnails to render per run
+     */
+    public BatchQueue(final int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Offers a thumbnail.
+     *
+     * @param thumbnailId the thumbnail ID
+     * @param file the thumbnail file
+     * @param priority the render priority
+     * @return the thumbnail left out of the queue, either the offered one or the one it replaced,
+     *         or null if no thumbnail was left out
+     */
+    public synchronized Item offer(final String thumbnailId, final File file, final double priority) {
+        if (idSet.contains(thumbnailId)) {
+            return null;
+        }
+        final Item item = new Item(thumbnailId, file, priority, sequence++);
+        Item lowest = null;
+        if (queue.size() >= maxSize) {
+            lowest = queue.peek();
+            if (lowest == null || ORDER.compare(lowest, item) <= 0) {
+                return item;
+            }
+            queue.poll();
+            idSet.remove(lowest.thumbnailId());
+        }
+        queue.add(item);
+        idSet.add(thumbnailId);
+        return lowest;
+    }
+
+    /**
+     * Removes all queued thumbnails.
+     *
+     * @return the queued thumbnails, highest ranked first
+     */
+    public synchronized List<Item> drain() {
+        final List<Item> items = new ArrayList<>(queue);
+        items.sort(ORDER);
+        queue.clear();
+        idSet.clear();
+        return items;
+    }
+
+    /**
+     * Returns the number of queued thumbnails.
+     *
+     * @return the number of thumbnails
+     */
+    public synchronized int size() {
+        return queue.size();
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.thumbnail.playwright;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread-safe Bloom filter of strings. A negative answer is exact; a positive answer
+ * may be wrong with the configured false positive probability once the expected number
+ * of strings has been added.
+ */
+public class BloomFilter {
+
+    /** The bits of the filter. */
+    protected final AtomicLongArray bits;
+
+    /** The number of bits. */
+    protected final long bitSize;
+
+    /** The number of hash functions. */
+    protected final int hashCount;
+
+    /**
+     * Creates a Bloom filter sized for the expected number of strings.
+     *
+     * @param expectedSize the expected number of strings
+     * @param falsePositiveRate the false positive probability at the expected size
+     */
+    public BloomFilter(final long expectedSize, final double falsePositiveRate) {
+        final long n = Math.max(expectedSize, 1L);
+        final double p = Math.min(Math.max(falsePositiveRate, 1e-9), 0.5);
+        final long size = (long) Math.ceil(-n * Math.log(p) / (Math.log(2) * Math.log(2)));
+        final int words = (int) Math.min((size + 63) / 64, Integer.MAX_VALUE - 8);
+        bits = new AtomicLongArray(words);
+        bitSize = words * 64L;
+        hashCount = Math.max(1, (int) Math.round((double) bitSize / n * Math.log(2)));
+    }
+
+    /**
+     * Adds a string.
+     *
+     * @param value the string
+     */
+    public void add(final String value) {
+        final long hash1 = hash(value, 0x9e3779b97f4a7c15L);
+        final long hash2 = hash(value, 0xc2b2ae3d27d4eb4fL) | 1L;
+        for (int i = 0; i < hashCount; i++) {
+            final long index = Math.floorMod(hash1 + i * hash2, bitSize);
+            final int word = (int) (index >>> 6);
+            final long mask = 1L << index;
+            long current;
+            while (((current = bits.get(word)) & mask) == 0L && !bits.compareAndSet(word, current, current | mask)) {
+                // retry
+            }
+        }
+    }
+
+    /**
+     * Checks if a string may have been added.
+     *
+     * @param value the string
+     * @return false if the string was never added, true if it may have been added
+     */
+    public boolean mightContain(final String value) {
+        final long hash1 = hash(value, 0x9e3779b97f4a7c15L);
+        final long hash2 = hash(value, 0xc2b2ae3d27d4eb4fL) | 1L;
+        for (int i = 0; i < hashCount; i++) {
+            final long index = Math.floorMod(hash1 + i * hash2, bitSize);
+            if ((bits.get((int) (index >>> 6)) & 1L << index) == 0L) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Computes a 64-bit FNV-1a hash of the string, finalized with the given seed.
+     *
+     * @param value the string
+     * @param seed the seed
+     * @return the hash value
+     */
+    protected static long hash(final String value, final long seed) {
+        long h = 0xcbf29ce484222325L ^ seed;
+        for (final byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,367 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.thumbnail.playwright;
+
+import java.io.Closeable;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.codelibs.core.lang.StringUtil;
+import org.codelibs.fess.crawler.exception.CrawlerSystemException;
+import org.codelibs.fess.mylasta.direction.FessConfig;
+
+/**
+ * Remote browser endpoints that render workers connect to instead of launching a local
+ * browser. A worker is routed to the healthy endpoint with the fewest workers, or by a
+ * consistent hash of its key, so that only the workers of a dead endpoint move elsewhere.
+ * A background thread checks the endpoints: {@code http(s)://} endpoints are Chromium
+ * DevTools endpoints probed at {@code /json/version}, and {@code ws(s)://} endpoints are
+ * Playwright servers probed by opening a TCP connection. Dead endpoints are skipped until
+ * they pass a check again.
+ */
+public class BrowserEndpointPool implements Closeable {
+
+    private static final Logger logger = LogManager.getLogger(BrowserEndpointPool.class);
+
+    /** The number of points of each endpoint on the hash ring. */
+    protected static final int VIRTUAL_NODES = 100;
+
+    /**
+     * How workers are assigned to endpoints.
+     */
+    public enum Routing {
+        /** The healthy endpoint with the fewest workers. */
+        LEAST_LOADED,
+        /** The next healthy endpoint on a consistent hash ring. */
+        HASH;
+
+        /**
+         * Parses a routing name such as {@code least-loaded} or {@code hash}.
+         *
+         * @param value the routing name
+         * @return the routing
+         */
+        public static Routing parse(final String value) {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+        }
+    }
+
+    /**
+     * A browser endpoint.
+     */
+    protected static class Endpoint {
+
+        /** The endpoint URL. */
+        protected final String url;
+
+        /** Whether the endpoint passed its last check. */
+        protected volatile boolean healthy = true;
+
+        /** The number of workers connected to the endpoint. */
+        protected int workers;
+
+        /**
+         * Creates an endpoint.
+         *
+         * @param url the endpoint URL
+         */
+        protected Endpoint(final String url) {
+            this.url = url;
+        }
+    }
+
+    /** The endpoints in configuration order. */
+    protected final List<Endpoint> endpoints = new ArrayList<>();
+
+    /** The hash ring of the endpoints. */
+    protected final TreeMap<Long, Endpoint> ring = new TreeMap<>();
+
+    /** How workers are assigned to endpoints. */
+    protected final Routing routing;
+
+    /** The interval in milliseconds between health checks. */
+    protected final long interval;
+
+    /** The timeout of a health check. */
+    protected final Duration timeout;
+
+    /** HTTP client for health checks. */
+    protected final HttpClient httpClient;
+
+    /** The health check thread, or null if not started. */
+    protected Thread checker;
+
+    /** Whether the health check thread is running. */
+    protected volatile boolean running;
+
+    /**
+     * Creates an endpoint pool.
+     *
+     * @param urls the endpoint URLs
+     * @param routing how workers are assigned to endpoints
+     * @param interval the interval in milliseconds between health checks
+     * @param timeout the timeout of a health check
+     */
+    public BrowserEndpointPool(final List<String> urls, final Routing routing, final long interval, final Duration timeout) {
+        if (urls.isEmpty()) {
+            throw new CrawlerSystemException("No browser endpoint is configured.");
+        }
+        for (final String url : urls) {
+            final Endpoint endpoint = new Endpoint(url);
+            endpoints.add(endpoint);
+            for (int i = 0; i < VIRTUAL_NODES; i++) {
+                ring.put(hash(url + "#" + i), endpoint);
+            }
+        }
+        this.routing = routing;
+        this.interval = interval;
+        this.timeout = timeout;
+        httpClient = HttpClient.newBuilder().connectTimeout(timeout).build();
+    }
+
+    /**
+     * Creates an endpoint pool from the system properties if remote browser endpoints are configured.
+     *
+     * @param fessConfig the Fess configuration
+     * @return the endpoint pool to start, or null if browsers are launched locally
+     */
+    public static BrowserEndpointPool from(final FessConfig fessConfig) {
+        final PropertyReader reader = new PropertyReader(fessConfig);
+        final List<String> urls = new ArrayList<>();
+        for (final String url : reader.getString("thumbnail.playwright.browser.endpoints", "").split(",")) {
+            if (StringUtil.isNotBlank(url)) {
+                urls.add(url.trim());
+            }
+        }
+        if (urls.isEmpty()) {
+            return null;
+        }
+        return new BrowserEndpointPool(urls, reader.get("thumbnail.playwright.browser.endpoint.routing", Routing.LEAST_LOADED, Routing::parse),
+                reader.getLong("thumbnail.playwright.browser.endpoint.check.interval", 10000L),
+                Duration.ofMillis(reader.getLong("thumbnail.playwright.browser.endpoint.timeout", 5000L)));
+    }
+
+    /**
+     * Starts checking the endpoints in the background.
+     */
+    public void start() {
+        if (interval <= 0L) {
+            return;
+        }
+        running = true;
+        checker = new Thread(() -> {
+            while (running) {
+                try {
+                    Thread.sleep(interval);
+                    check();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (final Exception e) {
+                    logger.warn("Failed to check the browser endpoints.", e);
+                }
+            }
+        }, "Playwright-EndpointChecker");
+        checker.setDaemon(true);
+        checker.start();
+    }
+
+    /**
+     * Checks all endpoints and updates their health.
+     */
+    public void check() {
+        for (final Endpoint endpoint : endpoints) {
+            final boolean healthy = probe(endpoint.url);
+            if (healthy != endpoint.healthy) {
+                if (healthy) {
+                    logger.info("Browser endpoint {} is up.", endpoint.url);
+                } else {
+                    logger.warn("Browser endpoint {} is down.", endpoint.url);
+                }
+                endpoint.healthy = healthy;
+            }
+        }
+    }
+
+    /**
+     * Checks if an endpoint accepts connections.
+     *
+     * @param url the endpoint URL
+     * @return true if the endpoint is reachable
+     */
+    protected boolean probe(final String url) {
+        try {
+            final URI uri = URI.create(url);
+            final String scheme = uri.getScheme() != null ? uri.getScheme().toLowerCase(Locale.ROOT) : "";
+            if (scheme.startsWith("http")) {
+                final URI versionUri = URI.create(url.replaceAll("/+$", "") + "/json/version");
+                final HttpResponse<Void> response = httpClient.send(HttpRequest.newBuilder(versionUri).timeout(timeout).GET().build(),
+                        HttpResponse.BodyHandlers.discarding());
+                return response.statusCode() == 200;
+            }
+            final int port = uri.getPort() > 0 ? uri.getPort() : "wss".equals(scheme) ? 443 : 80;
+            try (Socket socket = new Socket()) {
+                socket.connect(new InetSocketAddress(uri.getHost(), port), (int) timeout.toMillis());
+                return true;
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (final Exception e) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Failed to probe {}", url, e);
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Assigns a worker to a healthy endpoint.
+     *
+     * @param key the key of the worker, used for hash routing
+     * @return the endpoint URL, or null if no endpoint is healthy
+     */
+    public synchronized String acquire(final String key) {
+        Endpoint selected = null;
+        if (routing == Routing.HASH) {
+            final Map.Entry<Long, Endpoint> start = ring.ceilingEntry(hash(key));
+            for (final Endpoint endpoint : ring.tailMap(start != null ? start.getKey() : ring.firstKey()).values()) {
+                if (endpoint.healthy) {
+                    selected = endpoint;
+                    break;
+                }
+            }
+            if (selected == null) {
+                for (final Endpoint endpoint : ring.values()) {
+                    if (endpoint.healthy) {
+                        selected = endpoint;
+                        break;
+                    }
+                }
+            }
+        } else {
+            for (final Endpoint endpoint : endpoints) {
+                if (endpoint.healthy && (selected == null || endpoint.workers < selected.workers)) {
+                    selected = endpoint;
+                }
+            }
+        }
+        if (selected == null) {
+            return null;
+        }
+        selected.workers++;
+        return selected.url;
+    }
+
+    /**
+     * Releases a worker from its endpoint.
+     *
+     * @param url the endpoint URL
+     */
+    public synchronized void release(final String url) {
+        for (final Endpoint endpoint : endpoints) {
+            if (endpoint.url.equals(url) && endpoint.workers > 0) {
+                endpoint.workers--;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Marks an endpoint as dead until it passes a health check, after a failed connection.
+     *
+     * @param url the endpoint URL
+     */
+    public void markDown(final String url) {
+        for (final Endpoint endpoint : endpoints) {
+            if (endpoint.url.equals(url) && endpoint.healthy) {
+                logger.warn("Browser endpoint {} is down.", url);
+                endpoint.healthy = false;
+            }
+        }
+    }
+
+    /**
+     * Gets the number of endpoints.
+     *
+     * @return the number of endpoints
+     */
+    public int size() {
+        return endpoints.size();
+    }
+
+    /**
+     * Gets the timeout for connecting to and checking an endpoint.
+     *
+     * @return the timeout
+     */
+    public Duration getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Gets the metrics of the endpoints.
+     *
+     * @return the metrics keyed by name
+     */
+    public synchronized Map<String, Object> getMetrics() {
+        final Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("endpoint.total", endpoints.size());
+        metrics.put("endpoint.healthy", endpoints.stream().filter(e -> e.healthy).count());
+        metrics.put("endpoint.workers", endpoints.stream().mapToInt(e -> e.workers).sum());
+        return metrics;
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        if (checker != null) {
+            checker.interrupt();
+            checker = null;
+        }
+    }
+
+    /**
+     * Computes the position of a key on the hash ring.
+     *
+     * @param key the key
+     * @return the position
+     */
+    protected static long hash(final String key) {
+        try {
+            return ByteBuffer.wrap(MessageDigest.getInstance("MD5").digest(key.getBytes(StandardCharsets.UTF_8))).getLong();
+        } catch (final NoSuchAlgorithmException e) {
+            throw new CrawlerSystemException("MD5 is not available.", e);
+        }
+    }
+}
@@ -0,0 +1,292 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.thumbnail.playwright;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.codelibs.fess.mylasta.direction.FessConfig;
+
+/**
+ * Per-host circuit breaker for renders. The outcomes of the last renders of each host
+ * are kept in a sliding window; when the failure rate in the window reaches the threshold,
+ * the circuit opens and renders of that host fail fast. After the open duration, a single
+ * probe render is allowed (half-open): its success closes the circuit, its failure reopens it.
+ */
+public class CircuitBreaker {
+
+    /**
+     * The state of a circuit.
+     */
+    public enum State {
+        /** Renders are allowed. */
+        CLOSED,
+        /** Renders fail fast. */
+        OPEN,
+        /** A single probe render is allowed. */
+        HALF_OPEN
+    }
+
+    /**
+     * The circuit of a host.
+     */
+    protected static class Circuit {
+        /** The state of the circuit. */
+        protected State state = State.CLOSED;
+
+        /** The outcomes of the last renders, true for failures. */
+        protected final boolean[] window;
+
+        /** The number of outcomes in the window. */
+        protected int size;
+
+        /** The position of the next outcome. */
+        protected int position;
+
+        /** The number of failures in the window. */
+        protected int failures;
+
+        /** The time the circuit opened. */
+        protected long openedTime;
+
+        /** Whether the probe render of a half-open circuit is in flight. */
+        protected boolean probing;
+
+        /**
+         * Creates a closed circuit.
+         *
+         * @param windowSize the number of outcomes in the sliding window
+         */
+        protected Circuit(final int windowSize) {
+            window = new boolean[windowSize];
+        }
+
+        /**
+         * Adds an outcome to the window.
+         *
+         * @param failure true if the render failed
+         */
+        protected void add(final boolean failure) {
+            if (size == window.length) {
+                if (window[position]) {
+                    failures--;
+                }
+            } else {
+                size++;
+            }
+            window[position] = failure;
+            if (failure) {
+                failures++;
+            }
+            position = (position + 1) % window.length;
+        }
+
+        /**
+         * Clears the window.
+         */
+        protected void reset() {
+            size = 0;
+            position = 0;
+            failures = 0;
+            probing = false;
+        }
+    }
+
+    /** The number of outcomes in the sliding window. */
+    protected final int windowSize;
+
+    /** The minimum number of outcomes before the circuit can open. */
+    protected final int minCalls;
+
+    /** The failure rate at which the circuit opens. */
+    protected final double failureRate;
+
+    /** The time in milliseconds the circuit stays open before a probe. */
+    protected final long openDuration;
+
+    /** The circuits keyed by host. */
+    protected final Map<String, Circuit> circuitMap = new HashMap<>();
+
+    /** The number of renders rejected by open circuits. */
+    protected long rejectedCount;
+
+    /** The number of failed renders that were timeouts. */
+    protected long timeoutCount;
+
+    /** The number of failed renders. */
+    protected long failureCount;
+
+    /**
+     * Creates a circuit breaker.
+     *
+     * @param windowSize the number of outcomes in the sliding window
+     * @param minCalls the minimum number of outcomes before the circuit can open
+     * @param failureRate the failure rate at which the circuit opens
+     * @param openDuration the time in milliseconds the circuit stays open before a probe
+     */
+    public CircuitBreaker(final int windowSize, final int minCalls, final double failureRate, final long openDuration) {
+        this.windowSize = Math.max(windowSize, 1);
+        this.minCalls = Math.min(Math.max(minCalls, 1), this.windowSize);
+        this.failureRate = failureRate;
+        this.openDuration = openDuration;
+    }
+
+    /**
+     * Creates a circuit breaker from the system properties if it is enabled.
+     *
+     * @param fessConfig the Fess configuration
+     * @return the circuit breaker, or null if it is disabled
+     */
+    public static CircuitBreaker from(final FessConfig fessConfig) {
+        final PropertyReader reader = new PropertyReader(fessConfig);
+        if (!reader.getBoolean("thumbnail.playwright.circuit.enabled", false)) {
+            return null;
+        }
+        return new CircuitBreaker(reader.getInt("thumbnail.playwright.circuit.window.size", 10),
+                reader.getInt("thumbnail.playwright.circuit.min.calls", 5), reader.getDouble("thumbnail.playwright.circuit.failure.rate", 0.5),
+                reader.getLong("thumbnail.playwright.circuit.open.duration", 300000L));
+    }
+
+    /**
+     * Checks if a render of the host is allowed, moving an expired open circuit to half-open.
+     *
+     * @param host the host
+     * @param now the current time in milliseconds
+     * @return true if the render is allowed
+     */
+    public synchronized boolean allowRequest(final String host, final long now) {
+        final Circuit circuit = circuitMap.get(host);
+        if (circuit == null || circuit.state == State.CLOSED) {
+            return true;
+        }
+        if (circuit.state == State.OPEN && now - circuit.openedTime >= openDuration) {
+            circuit.state = State.HALF_OPEN;
+            circuit.probing = false;
+        }
+        if (circuit.state == State.HALF_OPEN && !circuit.probing) {
+            circuit.probing = true;
+            return true;
+        }
+        rejectedCount++;
+        return false;
+    }
+
+    /**
+     * Checks if the circuit of the host is open and has not expired yet, without moving it to half-open.
+     *
+     * @param host the host
+     * @param now the current time in milliseconds
+     * @return true if requests to the host are rejected
+     */
+    public synchronized boolean isOpen(final String host, final long now) {
+        final Circuit circuit = circuitMap.get(host);
+        return circuit != null && circuit.state == State.OPEN && now - circuit.openedTime < openDuration;
+    }
+
+    /**
+     * Records a successful render of the host.
+     *
+     * @param host the host
+     */
+    public synchronized void recordSuccess(final String host) {
+        final Circuit circuit = circuitMap.get(host);
+        if (circuit == null) {
+            return;
+        }
+        if (circuit.state == State.HALF_OPEN) {
+            circuit.state = State.CLOSED;
+            circuit.reset();
+        } else if (circuit.state == State.CLOSED) {
+            circuit.add(false);
+            if (circuit.failures == 0) {
+                circuitMap.remove(host);
+            }
+        }
+    }
+
+    /**
+     * Records a failed render of the host, opening the circuit if the failure rate reaches the threshold.
+     *
+     * @param host the host
+     * @param now the current time in milliseconds
+     * @param timeout true if the render timed out
+     */
+    public synchronized void recordFailure(final String host, final long now, final boolean timeout) {
+        failureCount++;
+        if (timeout) {
+            timeoutCount++;
+        }
+        final Circuit circuit = circuitMap.computeIfAbsent(host, k -> new Circuit(windowSize));
+        if (circuit.state == State.HALF_OPEN) {
+            circuit.state = State.OPEN;
+            circuit.openedTime = now;
+            circuit.probing = false;
+            return;
+        }
+        if (circuit.state == State.OPEN) {
+            return;
+        }
+        circuit.add(true);
+        if (circuit.size >= minCalls && circuit.failures >= failureRate * circuit.size) {
+            circuit.state = State.OPEN;
+            circuit.openedTime = now;
+            circuit.reset();
+        }
+    }
+
+    /**
+     * Gets the state of the circuit of the host.
+     *
+     * @param host the host
+     * @return the state
+     */
+    public synchronized State getState(final String host) {
+        final Circuit circuit = circuitMap.get(host);
+        return circuit == null ? State.CLOSED : circuit.state;
+    }
+
+    /**
+     * Gets the hosts whose circuits are not closed.
+     *
+     * @return the open or half-open hosts
+     */
+    public synchronized List<String> getOpenHosts() {
+        final List<String> hosts = new ArrayList<>();
+        circuitMap.forEach((host, circuit) -> {
+            if (circuit.state != State.CLOSED) {
+                hosts.add(host);
+            }
+        });
+        return hosts;
+    }
+
+    /**
+     * Gets the metrics of the circuit breaker.
+     *
+     * @return the metrics keyed by name
+     */
+    public synchronized Map<String, Object> getMetrics() {
+        final Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("circuit.open.hosts", getOpenHosts());
+        metrics.put("circuit.rejected", rejectedCount);
+        metrics.put("circuit.failures", failureCount);
+        metrics.put("circuit.timeouts", timeoutCount);
+        return metrics;
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.thumbnail.playwright;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.codelibs.fess.mylasta.direction.FessConfig;
+
+/**
+ * Tunes the number of concurrent renders with additive increase and multiplicative decrease.
+ * Render outcomes are collected in windows of a fixed duration. At the end of a window,
+ * the limit is halved if the error rate reached its threshold, the 95th percentile latency
+ * exceeded its target, or the throughput dropped after the previous increase. Otherwise the
+ * limit grows by one if the renders in flight reached it during the window. The limit always
+ * stays within the configured bounds.
+ */
+public class ConcurrencyController {
+
+    private static final Logger logger = LogManager.getLogger(ConcurrencyController.class);
+
+    /** The relative throughput drop after an increase that counts as congestion. */
+    protected static final double THROUGHPUT_TOLERANCE = 0.1;
+
+    /** The minimum number of renders in a window before it is evaluated. */
+    protected static final int MIN_SAMPLES = 5;
+
+    /** The minimum number of concurrent renders. */
+    protected final int minLimit;
+
+    /** The maximum number of concurrent renders. */
+    protected final int maxLimit;
+
+    /** The duration of a window in milliseconds. */
+    protected final long interval;
+
+    /** The 95th percentile latency in milliseconds above which the limit is reduced, or 0 to ignore latency. */
+    protected final long latencyTarget;
+
+    /** The failure rate at which the limit is reduced. */
+    protected final double maxErrorRate;
+
+    /** The current number of concurrent renders allowed. */
+    protected volatile int limit;
+
+    /** The number of renders in flight. */
+    protected int inFlight;
+
+    /** The highest number of renders in flight during the window. */
+    protected int peakInFlight;
+
+    /** The start time of the window. */
+    protected long windowStartTime;
+
+    /** The render durations of the window. */
+    protected long[] durations = new long[64];
+
+    /** The number of renders in the window. */
+    protected int count;
+
+    /** The number of failed renders in the window. */
+    protected int failures;
+
+    /** The number of timed out renders in the window. */
+    protected int timeouts;
+
+    /** The throughput of the previous window in renders per second. */
+    protected double lastThroughput;
+
+    /** The 95th percentile latency of the previous window in milliseconds. */
+    protected long lastLatency;
+
+    /** Whether the previous window ended with an increase. */
+    protected boolean increased;
+
+    /** The number of increases. */
+    protected long increaseCount;
+
+    /** The number of decreases. */
+    protected long decreaseCount;
+
+    /**
+     * Creates a concurrency controller starting at the minimum limit.
+     *
+     * @param minLimit the minimum number of concurrent renders
+     * @param maxLimit the maximum number of concurrent renders
+     * @param interval the duration of a window in milliseconds
+     * @param latencyTarget the 95th percentile latency in milliseconds above which the limit is reduced, or 0 to ignore latency
+     * @param maxErrorRate the failure rate at which the limit is reduced
+     */
+    public ConcurrencyController(final int minLimit, final int maxLimit, final long interval, final long latencyTarget,
+            final double maxErrorRate) {
+        this.minLimit = Math.max(minLimit, 1);
+        this.maxLimit = Math.max(maxLimit, this.minLimit);
+        this.interval = interval;
+        this.latencyTarget = latencyTarget;
+        this.maxErrorRate = maxErrorRate;
+        limit = this.minLimit;
+        windowStartTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Creates a concurrency controller from the system properties if automatic tuning is enabled.
+     *
+     * @param fessConfig the Fess configuration
+     * @param slotSize the number of render slots, which also caps the maximum concurrency
+     * @return the concurrency controller, or null if it is disabled
+     */
+    public static ConcurrencyController from(final FessConfig fessConfig, final int slotSize) {
+        final PropertyReader reader = new PropertyReader(fessConfig);
+        if (!reader.getBoolean("thumbnail.playwright.concurrency.auto.enabled", false)) {
+            return null;
+        }
+        final int max = reader.getInt("thumbnail.playwright.concurrency.max", 0);
+        return new ConcurrencyController(reader.getInt("thumbnail.playwright.concurrency.min", 1), max > 0 ? Math.min(max, slotSize) : slotSize,
+                reader.getLong("thumbnail.playwright.concurrency.interval", 30000L),
+                reader.getLong("thumbnail.playwright.concurrency.latency.target", 0L),
+                reader.getDouble("thumbnail.playwright.concurrency.error.rate", 0.2));
+    }
+
+    /**
+     * Records the start of a render.
+     */
+    public synchronized void begin() {
+        inFlight++;
+        peakInFlight = Math.max(peakInFlight, inFlight);
+    }
+
+    /**
+     * Records the end of a render and evaluates the window if it is complete.
+     *
+     * @param duration the duration of the render in milliseconds
+     * @param failed true if the render failed
+     * @param timeout true if the render timed out
+     * @param now the current time in milliseconds
+     */
+    public synchronized void end(final long duration, final boolean failed, final boolean timeout, final long now) {
+        if (inFlight > 0) {
+            inFlight--;
+        }
+        if (count == durations.length) {
+            durations = Arrays.copyOf(durations, count * 2);
+        }
+        durations[count++] = duration;
+        if (failed) {
+            failures++;
+        }
+        if (timeout) {
+            timeouts++;
+        }
+        if (now - windowStartTime >= interval && count >= MIN_SAMPLES) {
+            evaluate(now);
+        }
+    }
+
+    /**
+     * Adjusts the limit from the outcomes of the window and starts a new window.
+     *
+     * @param now the current time in milliseconds
+     */
+    protected void evaluate(final long now) {
+        final double throughput = count * 1000.0 / Math.max(now - windowStartTime, 1L);
+        final long[] sorted = Arrays.copyOf(durations, count);
+        Arrays.sort(sorted);
+        final long latency = sorted[Math.min((int) Math.ceil(count * 0.95) - 1, count - 1)];
+        final double errorRate = (double) failures / count;
+
+        final int oldLimit = limit;
+        String reason = null;
+        if (errorRate >= maxErrorRate) {
+            reason = "error rate " + errorRate + " with " + timeouts + " timeouts";
+        } else if (latencyTarget > 0 && latency > latencyTarget) {
+            reason = "p95 latency " + latency + "ms";
+        } else if (increased && throughput < lastThroughput * (1.0 - THROUGHPUT_TOLERANCE)) {
+            reason = "throughput " + throughput + "/s";
+        }
+        if (reason != null) {
+            limit = Math.max(limit / 2, minLimit);
+            increased = false;
+            if (limit != oldLimit) {
+                decreaseCount++;
+                logger.info("Decreased render concurrency from {} to {}: {}", oldLimit, limit, reason);
+            }
+        } else if (peakInFlight >= limit && limit < maxLimit) {
+            limit++;
+            increased = true;
+            increaseCount++;
+            logger.info("Increased render concurrency from {} to {}: {}/s, p95 {}ms", oldLimit, limit, throughput, latency);
+        } else {
+            increased = false;
+        }
+
+        lastThroughput = throughput;
+        lastLatency = latency;
+        windowStartTime = now;
+        peakInFlight = inFlight;
+        count = 0;
+        failures = 0;
+        timeouts = 0;
+    }
+
+    /**
+     * Gets the number of concurrent renders currently allowed.
+     *
+     * @return the limit
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Returns the concurrency metrics.
+     *
+     * @return the metrics keyed by name
+     */
+    public synchronized Map<String, Object> getMetrics() {
+        final Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("concurrency.limit", limit);
+        metrics.put("concurrency.increases", increaseCount);
+        metrics.put("concurrency.decreases", decreaseCount);
+        metrics.put("concurrency.throughput", lastThroughput);
+        metrics.put("concurrency.latency.p95", lastLatency);
+        return metrics;
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.thumbnail.playwright;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+
+/**
+ * Normalized content fingerprint of an HTML page, used to find pages that would
+ * produce the same thumbnail. A fingerprint consists of a 64-bit SimHash of the
+ * visible text and a 64-bit hash of the element layout, formatted as
+ * {@code <simhash>-<layout>} in hex. Two pages are duplicates when their layouts
+ * are equal and their SimHash values differ only in a few bits.
+ */
+public final class ContentFingerprint {
+
+    /** The system property for the index field that stores fingerprints. Fingerprints are disabled if it is not set. */
+    public static final String FIELD_PROPERTY = "thumbnail.playwright.fingerprint.field";
+
+    /** The system property to fold digits to '0', so that pages differing only in numbers get the same fingerprint. */
+    public static final String FOLD_DIGITS_PROPERTY = "thumbnail.playwright.fingerprint.fold.digits";
+
+    /** The maximum element depth included in the layout signature. */
+    protected static final int MAX_LAYOUT_DEPTH = 6;
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private ContentFingerprint() {
+    }
+
+    /**
+     * Creates the fingerprint of the document.
+     *
+     * @param document the parsed HTML document
+     * @return the fingerprint, or null if the document has no text
+     */
+    public static String create(final Document document) {
+        return create(document, false);
+    }
+
+    /**
+     * Creates the fingerprint of the document.
+     *
+     * @param document the parsed HTML document
+     * @param foldDigits true to fold digits to '0'
+     * @return the fingerprint, or null if the document has no text
+     */
+    public static String create(final Document document, final boolean foldDigits) {
+        final StringBuilder text = new StringBuilder();
+        final List<String> layout = new ArrayList<>();
+        collect(document.getDocumentElement(), 0, text, layout);
+        final List<String> features = toFeatures(text.toString(), foldDigits);
+        if (features.isEmpty()) {
+            return null;
+        }
+        return format(simHash(features), hash(String.join("/", layout)));
+    }
+
+    /**
+     * Walks the DOM tree, collecting visible text and the element layout.
+     *
+     * @param node the current node
+     * @param depth the element depth of the node
+     * @param text the buffer for visible text
+     * @param layout the list of layout tokens
+     */
+    protected static void collect(final Node node, final int depth, final StringBuilder text, final List<String> layout) {
+        if (node == null) {
+            return;
+        }
+        if (node.getNodeType() == Node.TEXT_NODE) {
+            text.append(node.getNodeValue()).append(' ');
+            return;
+        }
+        if (node.getNodeType() != Node.ELEMENT_NODE) {
+            return;
+        }
+        final String name = node.getNodeName().toUpperCase(Locale.ROOT);
+        if ("SCRIPT".equals(name) || "STYLE".equals(name) || "NOSCRIPT".equals(name) || "TEMPLATE".equals(name)) {
+            return;
+        }
+        if (depth < MAX_LAYOUT_DEPTH) {
+            layout.add(depth + name);
+        }
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            collect(child, depth + 1, text, layout);
+        }
+    }
+
+    /**
+     * Splits normalized text into word bigrams. If enabled, digits are folded to '0' so that
+     * counters, dates and session values do not change the fingerprint much. Folding also
+     * merges pages that differ only in numbers, such as prices or product codes.
+     *
+     * @param text the visible text
+     * @param foldDigits true to fold digits to '0'
+     * @return the features
+     */
+    protected static List<String> toFeatures(final String text, final boolean foldDigits) {
+        final List<String> words = new ArrayList<>();
+        final StringBuilder word = new StringBuilder();
+        for (int i = 0; i <= text.length(); i++) {
+            final char c = i < text.length() ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                word.append(foldDigits && Character.isDigit(c) ? '0' : Character.toLowerCase(c));
+            } else if (word.length() > 0) {
+                words.add(word.toString());
+                word.setLength(0);
+            }
+        }
+        if (words.size() < 2) {
+            return words;
+        }
+        final List<String> features = new ArrayList<>(words.size() - 1);
+        for (int i = 1; i < words.size(); i++) {
+            features.add(words.get(i - 1) + ' ' + words.get(i));
+        }
+        return features;
+    }
+
+    /**
+     * Computes the 64-bit SimHash of the features.
+     *
+     * @param features the features
+     * @return the SimHash value
+     */
+    protected static long simHash(final List<String> features) {
+        final int[] weights = new int[64];
+        for (final String feature : features) {
+            final long h = hash(feature);
+            for (int i = 0; i < 64; i++) {
+                weights[i] += (h >>> i & 1L) == 1L ? 1 : -1;
+            }
+        }
+        long value = 0L;
+        for (int i = 0; i < 64; i++) {
+            if (weights[i] > 0) {
+                value |= 1L << i;
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Computes a well-mixed 64-bit hash of the value.
+     *
+     * @param value the value
+     * @return the hash
+     */
+    protected static long hash(final String value) {
+        long h = FNV_OFFSET_BASIS;
+        for (int i = 0; i < value.length(); i++) {
+            h ^= value.charAt(i);
+            h *= FNV_PRIME;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Formats the fingerprint.
+     *
+     * @param simHash the SimHash of the text
+     * @param layout the hash of the layout
+     * @return the fingerprint
+     */
+    protected static String format(final long simHash, final long layout) {
+        return String.format("%016x-%016x", simHash, layout);
+    }
+
+    /**
+     * Gets the SimHash part of the fingerprint.
+     *
+     * @param fingerprint the fingerprint
+     * @return the SimHash value
+     */
+    public static long getSimHash(final String fingerprint) {
+        return Long.parseUnsignedLong(fingerprint.substring(0, 16), 16);
+    }
+
+    /**
+     * Gets the layout part of the fingerprint.
+     *
+     * @param fingerprint the fingerprint
+     * @return the layout hash in hex
+     */
+    public static String getLayout(final String fingerprint) {
+        return fingerprint.substring(17);
+    }
+
+    /**
+     * Checks if the value is a valid fingerprint.
+     *
+     * @param fingerprint the value
+     * @return true if the value is a fingerprint
+     */
+    public static boolean isValid(final String fingerprint) {
+        return fingerprint != null && fingerprint.length() == 33 && fingerprint.charAt(16) == '-';
+    }
+
+    /**
+     * Returns the number of differing bits between the SimHash values of two fingerprints
+     * with the same layout.
+     *
+     * @param fingerprint1 the first fingerprint
+     * @param fingerprint2 the second fingerprint
+     * @return the Hamming distance, or Integer.MAX_VALUE if the layouts differ
+     */
+    public static int distance(final String fingerprint1, final String fingerprint2) {
+        if (!getLayout(fingerprint1).equals(getLayout(fingerprint2))) {
+            return Integer.MAX_VALUE;
+        }
+        return Long.bitCount(getSimHash(fingerprint1) ^ getSimHash(fingerprint2));
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.thumbnail.playwright;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.codelibs.fess.mylasta.direction.FessConfig;
+
+/**
+ * In-memory index of the files and directories under the thumbnail directory.
+ * The index is built by a parallel scan in a background thread and kept up to date
+ * as thumbnails are written. Files are held in a Bloom filter and directories in a set.
+ * Since other processes may write or purge thumbnails after the scan, the answer for a file
+ * is always confirmed on disk, and a file found there is added to the index. A known directory
+ * is not created again unless it has been removed, which the storage reports through
+ * {@link #invalidateDirectory(File)}. Until the scan completes, all checks go to the file system.
+ */
+public class ExistenceIndex {
+
+    private static final Logger logger = LogManager.getLogger(ExistenceIndex.class);
+
+    /** The depth down to which each directory is scanned as a separate parallel task. */
+    protected static final int SPLIT_DEPTH = 2;
+
+    /** The thumbnail directory. */
+    protected final Path baseDir;
+
+    /** The paths of the known files. */
+    protected final BloomFilter fileFilter;
+
+    /** The paths of the known directories. */
+    protected final Set<String> directorySet = ConcurrentHashMap.newKeySet();
+
+    /** Whether the scan has completed. */
+    protected volatile boolean ready;
+
+    /**
+     * Creates an existence index for the thumbnail directory.
+     *
+     * @param baseDir the thumbnail directory
+     * @param expectedSize the expected number of thumbnail files
+     */
+    public ExistenceIndex(final Path baseDir, final long expectedSize) {
+        this.baseDir = baseDir.toAbsolutePath().normalize();
+        fileFilter = new BloomFilter(expectedSize, 0.01);
+    }
+
+    /**
+     * Creates an existence index from the system properties if it is enabled.
+     * Without an explicit path, the directory Fess uses by default is indexed.
+     *
+     * @param fessConfig the Fess configuration
+     * @return the existence index to start, or null if it is disabled or the thumbnail directory is unknown
+     */
+    public static ExistenceIndex from(final FessConfig fessConfig) {
+        final PropertyReader reader = new PropertyReader(fessConfig);
+        if (!reader.getBoolean("thumbnail.playwright.existence.index.enabled", false)) {
+            return null;
+        }
+        String path = reader.getString("thumbnail.playwright.existence.index.path", System.getProperty("fess.thumbnail.path"));
+        if (path == null && System.getProperty("fess.var.path") != null) {
+            path = new File(System.getProperty("fess.var.path"), "thumbnails").getAbsolutePath();
+        }
+        if (path == null) {
+            logger.warn("The thumbnail directory is unknown. Set thumbnail.playwright.existence.index.path to use the existence index.");
+            return null;
+        }
+        return new ExistenceIndex(new File(path).toPath(), reader.getLong("thumbnail.playwright.existence.index.size", 1000000L));
+    }
+
+    /**
+     * Starts scanning the thumbnail directory in a background thread.
+     */
+    public void start() {
+        final Thread thread = new Thread(this::scan, "Playwright-ExistenceIndex");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Scans the thumbnail directory, walking the directories down to {@link #SPLIT_DEPTH} in parallel.
+     */
+    protected void scan() {
+        final long startTime = System.currentTimeMillis();
+        try {
+            if (Files.isDirectory(baseDir)) {
+                ForkJoinPool.commonPool().invoke(new ScanTask(baseDir, 0));
+            }
+            ready = true;
+            logger.info("Scanned the thumbnail directory {} in {}ms.", baseDir, System.currentTimeMillis() - startTime);
+        } catch (final Exception e) {
+            logger.warn("Failed to scan the thumbnail directory {}. The existence index is disabled.", baseDir, e);
+        }
+    }
+
+    /**
+     * Adds the files and directories under a directory to the index. Above the split depth, only the
+     * direct entries are read and each subdirectory is scanned by a forked task; at the split depth,
+     * the whole subtree is walked. The file type comes from the attributes read by the walk,
+     * so each entry costs a single stat.
+     */
+    protected class ScanTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        /** The directory to scan. */
+        protected final Path dir;
+
+        /** The depth of the directory below the thumbnail directory. */
+        protected final int depth;
+
+        /**
+         * Creates a task scanning a directory.
+         *
+         * @param dir the directory
+         * @param depth the depth of the directory below the thumbnail directory
+         */
+        protected ScanTask(final Path dir, final int depth) {
+            this.dir = dir;
+            this.depth = depth;
+        }
+
+        @Override
+        protected void compute() {
+            final boolean split = depth < SPLIT_DEPTH;
+            final List<ScanTask> subtasks = new ArrayList<>();
+            try {
+                Files.walkFileTree(dir, EnumSet.noneOf(FileVisitOption.class), split ? 1 : Integer.MAX_VALUE, new SimpleFileVisitor<>() {
+                    @Override
+                    public FileVisitResult preVisitDirectory(final Path path, final BasicFileAttributes attrs) {
+                        directorySet.add(path.toString());
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFile(final Path path, final BasicFileAttributes attrs) {
+                        if (!attrs.isDirectory()) {
+                            fileFilter.add(path.toString());
+                        } else if (split) {
+                            subtasks.add(new ScanTask(path, depth + 1));
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            invokeAll(subtasks);
+        }
+    }
+
+    /**
+     * Checks if the file exists. A file the index does not know is still checked on disk,
+     * as it may have been written by another process after the scan, and is then added to the index.
+     *
+     * @param file the file
+     * @return true if the file exists
+     */
+    public boolean exists(final File file) {
+        final Path path = toIndexedPath(file);
+        final boolean exists = file.exists();
+        if (exists && path != null && !fileFilter.mightContain(path.toString())) {
+            fileFilter.add(path.toString());
+        }
+        return exists;
+    }
+
+    /**
+     * Records a file written under the thumbnail directory.
+     *
+     * @param file the file
+     */
+    public void addFile(final File file) {
+        final Path path = file.toPath().toAbsolutePath().normalize();
+        if (path.startsWith(baseDir)) {
+            fileFilter.add(path.toString());
+        }
+    }
+
+    /**
+     * Makes sure the directory exists, creating it if the index does not know it.
+     *
+     * @param dir the directory
+     * @return true if the directory exists
+     */
+    public boolean ensureDirectory(final File dir) {
+        final String path = dir.toPath().toAbsolutePath().normalize().toString();
+        if (directorySet.contains(path)) {
+            return true;
+        }
+        if (!dir.exists()) {
+            dir.mkdirs();
+        }
+        if (!dir.isDirectory()) {
+            return false;
+        }
+        directorySet.add(path);
+        return true;
+    }
+
+    /**
+     * Forgets a directory that has been removed from disk, such as by a purge of the
+     * thumbnail directory, so that the next {@link #ensureDirectory(File)} creates it again.
+     *
+     * @param dir the directory
+     */
+    public void invalidateDirectory(final File dir) {
+        directorySet.remove(dir.toPath().toAbsolutePath().normalize().toString());
+    }
+
+    /**
+     * Checks if the scan has completed.
+     *
+     * @return true if existence checks are answered by the index
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Gets the normalized path of the file if the index covers it.
+     *
+     * @param file the file
+     * @return the path, or null if the scan has not completed or the file is outside the thumbnail directory
+     */
+    protected Path toIndexedPath(final File file) {
+        if (!ready) {
+            return null;
+        }
+        final Path path = file.toPath().toAbsolutePath().normalize();
+        return path.startsWith(baseDir) ? path : null;
+    }
+}
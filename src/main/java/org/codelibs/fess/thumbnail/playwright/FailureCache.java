@@ -0,0 +1,145 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.thumbnail.playwright;
+
+import java.io.File;
+import java.nio.file.Path;
+
+import org.codelibs.fess.mylasta.direction.FessConfig;
+
+/**
+ * Persistent record of pages whose thumbnails could not be rendered. Each failure
+ * doubles the time before the page is rendered again, up to a maximum, so that
+ * repeated runs do not spend browser time on pages that keep failing.
+ */
+public class FailureCache extends LogStore<FailureCache.Entry> {
+
+    /**
+     * A failed page.
+     *
+     * @param failureClass the class name of the last error
+     * @param attempts the number of consecutive failures
+     * @param lastFailureTime the time of the last failure
+     * @param nextRetryTime the earliest time the page is rendered again
+     */
+    public record Entry(String failureClass, int attempts, long lastFailureTime, long nextRetryTime) {
+    }
+
+    /** The backoff in milliseconds after the first failure. */
+    protected final long initialBackoff;
+
+    /** The maximum backoff in milliseconds. */
+    protected final long maxBackoff;
+
+    /**
+     * Creates a failure cache backed by the given log file.
+     *
+     * @param path the log file
+     * @param initialBackoff the backoff in milliseconds after the first failure
+     * @param maxBackoff the maximum backoff in milliseconds
+     */
+    public FailureCache(final Path path, final long initialBackoff, final long maxBackoff) {
+        super(path);
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+    }
+
+    /**
+     * Creates a failure cache from the system properties if it is enabled.
+     *
+     * @param fessConfig the Fess configuration
+     * @param dataDirectory the directory of the cache file
+     * @return the failure cache to open, or null if it is disabled
+     */
+    public static FailureCache from(final FessConfig fessConfig, final File dataDirectory) {
+        final PropertyReader reader = new PropertyReader(fessConfig);
+        if (!reader.getBoolean("thumbnail.playwright.failure.cache.enabled", false)) {
+            return null;
+        }
+        return new FailureCache(new File(dataDirectory, "failures.log").toPath(), reader.getLong("thumbnail.playwright.failure.backoff", 3600000L),
+                reader.getLong("thumbnail.playwright.failure.max.backoff", 604800000L));
+    }
+
+    /**
+     * Checks if the page may be rendered now.
+     *
+     * @param url the page URL
+     * @param now the current time in milliseconds
+     * @return true if the page has not failed or its backoff has expired
+     */
+    public boolean isEligible(final String url, final long now) {
+        final Entry entry = get(url);
+        return entry == null || entry.nextRetryTime() <= now;
+    }
+
+    /**
+     * Records a failure of the page and schedules its next attempt.
+     *
+     * @param url the page URL
+     * @param failureClass the class name of the error
+     * @param now the current time in milliseconds
+     * @return the updated entry
+     */
+    public synchronized Entry recordFailure(final String url, final String failureClass, final long now) {
+        final Entry previous = get(url);
+        final int attempts = previous == null ? 1 : previous.attempts() + 1;
+        final Entry entry = new Entry(failureClass, attempts, now, now + getBackoff(attempts));
+        put(url, entry);
+        return entry;
+    }
+
+    /**
+     * Forgets the failures of the page after it was rendered.
+     *
+     * @param url the page URL
+     */
+    public void recordSuccess(final String url) {
+        if (get(url) != null) {
+            remove(url);
+        }
+    }
+
+    /**
+     * Gets the backoff after the given number of consecutive failures.
+     *
+     * @param attempts the number of consecutive failures
+     * @return the backoff in milliseconds
+     */
+    protected long getBackoff(final int attempts) {
+        if (initialBackoff <= 0L) {
+            return 0L;
+        }
+        final int shift = Math.min(attempts - 1, 62);
+        if (initialBackoff > maxBackoff >> shift) {
+            return maxBackoff;
+        }
+        return initialBackoff << shift;
+    }
+
+    @Override
+    protected String[] toFields(final Entry value) {
+        return new String[] { value.failureClass(), Integer.toString(value.attempts()), Long.toString(value.lastFailureTime()),
+                Long.toString(value.nextRetryTime()) };
+    }
+
+    @Override
+    protected Entry fromFields(final String[] fields) {
+        if (fields.length < 4) {
+            return null;
+        }
+        return new Entry(toNullable(fields[0]), (int) toLong(fields[1], 1L), toLong(fields[2], 0L), toLong(fields[3], 0L));
+    }
+}
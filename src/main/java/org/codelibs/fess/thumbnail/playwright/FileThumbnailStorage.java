@@ -0,0 +1,136 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.thumbnail.playwright;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Stores each thumbnail in its own file at the path assigned by Fess, as Fess expects.
+ * Files are replaced by an atomic move of a temporary file in the same directory,
+ * so readers never see a partially written image.
+ */
+public class FileThumbnailStorage implements ThumbnailStorage {
+
+    /** The in-memory index of existing files, or null. */
+    protected ExistenceIndex existenceIndex;
+
+    @Override
+    public boolean prepare(final File file) {
+        final File dir = file.getParentFile();
+        if (existenceIndex != null) {
+            return existenceIndex.ensureDirectory(dir);
+        }
+        if (!dir.exists()) {
+            dir.mkdirs();
+        }
+        return dir.isDirectory();
+    }
+
+    /**
+     * Creates the temporary file in the directory of the thumbnail. If the directory has been
+     * removed since it was prepared, it is created again.
+     */
+    @Override
+    public File createTempFile(final File file) throws IOException {
+        try {
+            return Files.createTempFile(file.getParentFile().toPath(), file.getName(), ".tmp").toFile();
+        } catch (final NoSuchFileException e) {
+            if (existenceIndex != null) {
+                existenceIndex.invalidateDirectory(file.getParentFile());
+            }
+            if (!prepare(file)) {
+                throw e;
+            }
+            return Files.createTempFile(file.getParentFile().toPath(), file.getName(), ".tmp").toFile();
+        }
+    }
+
+    @Override
+    public void store(final File tempFile, final File file) throws IOException {
+        try {
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (final AtomicMoveNotSupportedException e) {
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        if (existenceIndex != null) {
+            existenceIndex.addFile(file);
+        }
+    }
+
+    /**
+     * Links the target to the source file if possible, and copies it through a temporary file otherwise.
+     * Linking is safe because stored files are never modified in place.
+     */
+    @Override
+    public void copy(final File sourceFile, final File targetFile) throws IOException {
+        try {
+            Files.createLink(targetFile.toPath(), sourceFile.toPath());
+            if (existenceIndex != null) {
+                existenceIndex.addFile(targetFile);
+            }
+            return;
+        } catch (final IOException | UnsupportedOperationException e) {
+            // fall back to copying
+        }
+        final Path tempPath = createTempFile(targetFile).toPath();
+        try {
+            Files.copy(sourceFile.toPath(), tempPath, StandardCopyOption.REPLACE_EXISTING);
+            store(tempPath.toFile(), targetFile);
+        } finally {
+            Files.deleteIfExists(tempPath);
+        }
+    }
+
+    @Override
+    public boolean exists(final File file) {
+        return existenceIndex != null ? existenceIndex.exists(file) : file.isFile();
+    }
+
+    @Override
+    public long getLastModified(final File file) {
+        return file.lastModified();
+    }
+
+    @Override
+    public boolean touch(final File file) {
+        return file.setLastModified(System.currentTimeMillis());
+    }
+
+    @Override
+    public boolean delete(final File file) {
+        return !file.exists() || file.delete();
+    }
+
+    @Override
+    public void close() {
+        // nothing to release
+    }
+
+    /**
+     * Sets the in-memory index of existing files.
+     *
+     * @param existenceIndex the existence index
+     */
+    public void setExistenceIndex(final ExistenceIndex existenceIndex) {
+        this.existenceIndex = existenceIndex;
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.thumbnail.playwright;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.codelibs.fess.crawler.exception.CrawlerSystemException;
+import org.codelibs.fess.mylasta.direction.FessConfig;
+
+/**
+ * Persistent index from content fingerprints to rendered thumbnail files.
+ * Near-duplicate lookups use four 16-bit bands of the SimHash value: two fingerprints
+ * within a Hamming distance of three always share at least one band.
+ */
+public class FingerprintIndex extends LogStore<String> {
+
+    private static final Logger logger = LogManager.getLogger(FingerprintIndex.class);
+
+    /** The largest Hamming distance the band index finds all duplicates for. */
+    public static final int MAX_DISTANCE = 3;
+
+    /** The maximum Hamming distance between SimHash values of duplicate pages. */
+    protected int maxDistance;
+
+    /** Checks if a thumbnail file still exists. */
+    protected Predicate<File> fileChecker = File::isFile;
+
+    /** Fingerprints keyed by layout, band number and band value. */
+    protected final Map<String, Set<String>> bandMap = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a fingerprint index backed by the given log file.
+     *
+     * @param path the log file
+     * @param maxDistance the maximum Hamming distance between duplicates, from 0 to {@link #MAX_DISTANCE}
+     * @throws CrawlerSystemException if the distance is out of range
+     */
+    public FingerprintIndex(final Path path, final int maxDistance) {
+        super(path);
+        if (maxDistance < 0 || maxDistance > MAX_DISTANCE) {
+            throw new CrawlerSystemException("The fingerprint distance must be from 0 to " + MAX_DISTANCE + ": " + maxDistance);
+        }
+        this.maxDistance = maxDistance;
+    }
+
+    /**
+     * Creates a fingerprint index from the system properties.
+     * A distance larger than {@link #MAX_DISTANCE} is reduced to it.
+     *
+     * @param fessConfig the Fess configuration
+     * @param dataDirectory the directory of the index file
+     * @return the fingerprint index to open
+     */
+    public static FingerprintIndex from(final FessConfig fessConfig, final File dataDirectory) {
+        final PropertyReader reader = new PropertyReader(fessConfig);
+        int distance = reader.getInt("thumbnail.playwright.fingerprint.distance", 3);
+        if (distance > MAX_DISTANCE) {
+            logger.warn("The fingerprint distance {} is larger than {}, the largest distance the index can find. Using {}.", distance,
+                    MAX_DISTANCE, MAX_DISTANCE);
+            distance = MAX_DISTANCE;
+        }
+        return new FingerprintIndex(new File(dataDirectory, "fingerprints.log").toPath(), distance);
+    }
+
+    @Override
+    public synchronized void open() {
+        super.open();
+        bandMap.clear();
+        entryMap.keySet().stream().filter(ContentFingerprint::isValid).forEach(this::addBands);
+    }
+
+    /**
+     * Adds the thumbnail file rendered for the fingerprint.
+     *
+     * @param fingerprint the content fingerprint
+     * @param thumbnailFile the thumbnail file
+     */
+    public void add(final String fingerprint, final File thumbnailFile) {
+        put(fingerprint, thumbnailFile.getAbsolutePath());
+        addBands(fingerprint);
+    }
+
+    /**
+     * Finds an existing thumbnail file rendered for the same or a near-duplicate fingerprint.
+     * Entries whose files no longer exist are removed.
+     *
+     * @param fingerprint the content fingerprint
+     * @return the thumbnail file, or null if not found
+     */
+    public File find(final String fingerprint) {
+        final File file = getFile(fingerprint);
+        if (file != null || maxDistance <= 0) {
+            return file;
+        }
+        final String layout = ContentFingerprint.getLayout(fingerprint);
+        final long simHash = ContentFingerprint.getSimHash(fingerprint);
+        for (int band = 0; band < 4; band++) {
+            final Set<String> candidates = bandMap.get(getBandKey(layout, band, simHash));
+            if (candidates == null) {
+                continue;
+            }
+            for (final String candidate : candidates) {
+                if (ContentFingerprint.distance(fingerprint, candidate) <= maxDistance) {
+                    final File candidateFile = getFile(candidate);
+                    if (candidateFile != null) {
+                        return candidateFile;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public synchronized void remove(final String key) {
+        super.remove(key);
+        final String layout = ContentFingerprint.getLayout(key);
+        final long simHash = ContentFingerprint.getSimHash(key);
+        for (int band = 0; band < 4; band++) {
+            final Set<String> fingerprints = bandMap.get(getBandKey(layout, band, simHash));
+            if (fingerprints != null) {
+                fingerprints.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Gets the existing thumbnail file for the exact fingerprint, removing a stale entry.
+     *
+     * @param fingerprint the content fingerprint
+     * @return the thumbnail file, or null if not found
+     */
+    protected File getFile(final String fingerprint) {
+        final String path = get(fingerprint);
+        if (path == null) {
+            return null;
+        }
+        final File file = new File(path);
+        if (!fileChecker.test(file)) {
+            remove(fingerprint);
+            return null;
+        }
+        return file;
+    }
+
+    /**
+     * Registers the fingerprint in the band index.
+     *
+     * @param fingerprint the content fingerprint
+     */
+    protected void addBands(final String fingerprint) {
+        final String layout = ContentFingerprint.getLayout(fingerprint);
+        final long simHash = ContentFingerprint.getSimHash(fingerprint);
+        for (int band = 0; band < 4; band++) {
+            bandMap.computeIfAbsent(getBandKey(layout, band, simHash), k -> ConcurrentHashMap.newKeySet()).add(fingerprint);
+        }
+    }
+
+    /**
+     * Creates the key of a band.
+     *
+     * @param layout the layout hash
+     * @param band the band number
+     * @param simHash the SimHash value
+     * @return the band key
+     */
+    protected static String getBandKey(final String layout, final int band, final long simHash) {
+        return layout + ':' + band + ':' + (simHash >>> band * 16 & 0xffffL);
+    }
+
+    @Override
+    protected String[] toFields(final String value) {
+        return new String[] { value };
+    }
+
+    @Override
+    protected String fromFields(final String[] fields) {
+        if (fields.length < 1 || fields[0].isEmpty()) {
+            return null;
+        }
+        return fields[0];
+    }
+
+    /**
+     * Sets the check whether a thumbnail file still exists.
+     *
+     * @param fileChecker the check
+     */
+    public void setFileChecker(final Predicate<File> fileChecker) {
+        this.fileChecker = fileChecker;
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.thumbnail.playwright;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.codelibs.fess.mylasta.direction.FessConfig;
+
+/**
+ * Limits renders per host and in total. A host is available when it has fewer renders
+ * in flight than the per-host limit and the minimum interval since its last render start
+ * has passed. This class is not thread-safe; the render scheduler guards it with its lock.
+ */
+public class HostLimiter {
+
+    /** The number of idle host states kept before expired ones are purged. */
+    protected static final int PURGE_THRESHOLD = 10000;
+
+    /**
+     * The render state of a host.
+     */
+    protected static class HostState {
+        /** The number of renders in flight. */
+        protected int inFlight;
+
+        /** The earliest time the next render may start. */
+        protected long nextStartTime;
+    }
+
+    /** The maximum number of renders in flight per host, or 0 for no limit. */
+    protected final int maxHostConcurrency;
+
+    /** The minimum interval in milliseconds between render starts on a host. */
+    protected final long hostInterval;
+
+    /** The maximum number of renders in flight in total, or 0 for no limit. */
+    protected final int maxConcurrency;
+
+    /** The states keyed by host. */
+    protected final Map<String, HostState> stateMap = new HashMap<>();
+
+    /** The number of renders in flight in total. */
+    protected int inFlight;
+
+    /**
+     * Creates a host limiter.
+     *
+     * @param maxHostConcurrency the maximum number of renders in flight per host, or 0 for no limit
+     * @param hostInterval the minimum interval in milliseconds between render starts on a host
+     * @param maxConcurrency the maximum number of renders in flight in total, or 0 for no limit
+     */
+    public HostLimiter(final int maxHostConcurrency, final long hostInterval, final int maxConcurrency) {
+        this.maxHostConcurrency = maxHostConcurrency;
+        this.hostInterval = hostInterval;
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    /**
+     * Creates a host limiter from the system properties.
+     *
+     * @param fessConfig the Fess configuration
+     * @return the host limiter
+     */
+    public static HostLimiter from(final FessConfig fessConfig) {
+        final PropertyReader reader = new PropertyReader(fessConfig);
+        return new HostLimiter(reader.getInt("thumbnail.playwright.host.max.concurrency", 0), reader.getLong("thumbnail.playwright.host.interval", 0L),
+                reader.getInt("thumbnail.playwright.max.concurrency", 0));
+    }
+
+    /**
+     * Checks if another render may start under the global limit.
+     *
+     * @return true if the global limit is not reached
+     */
+    public boolean canStart() {
+        return maxConcurrency <= 0 || inFlight < maxConcurrency;
+    }
+
+    /**
+     * Checks if a render of the host may start now.
+     *
+     * @param host the host
+     * @param now the current time in milliseconds
+     * @return true if the host is available
+     */
+    public boolean isAvailable(final String host, final long now) {
+        return getDelay(host, now) == 0L;
+    }
+
+    /**
+     * Gets the time until a render of the host may start.
+     *
+     * @param host the host
+     * @param now the current time in milliseconds
+     * @return the delay in milliseconds, 0 if available now, or {@link Long#MAX_VALUE}
+     *         if the host must wait for a render in flight to finish
+     */
+    public long getDelay(final String host, final long now) {
+        final HostState state = stateMap.get(host);
+        if (state == null) {
+            return 0L;
+        }
+        if (maxHostConcurrency > 0 && state.inFlight >= maxHostConcurrency) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(state.nextStartTime - now, 0L);
+    }
+
+    /**
+     * Records the start of a render of the host.
+     *
+     * @param host the host
+     * @param now the current time in milliseconds
+     */
+    public void acquire(final String host, final long now) {
+        if (stateMap.size() >= PURGE_THRESHOLD) {
+            stateMap.values().removeIf(s -> s.inFlight == 0 && s.nextStartTime <= now);
+        }
+        final HostState state = stateMap.computeIfAbsent(host, k -> new HostState());
+        state.inFlight++;
+        state.nextStartTime = now + hostInterval;
+        inFlight++;
+    }
+
+    /**
+     * Records the end of a render of the host.
+     *
+     * @param host the host
+     */
+    public void release(final String host) {
+        final HostState state = stateMap.get(host);
+        if (state != null && state.inFlight > 0) {
+            state.inFlight--;
+            if (state.inFlight == 0 && hostInterval <= 0) {
+                stateMap.remove(host);
+            }
+        }
+        if (inFlight > 0) {
+            inFlight--;
+        }
+    }
+
+    /**
+     * Returns the number of renders in flight in total.
+     *
+     * @return the number of renders in flight
+     */
+    public int getInFlight() {
+        return inFlight;
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.thumbnail.playwright;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import javax.imageio.ImageIO;
+
+import org.codelibs.core.lang.StringUtil;
+import org.codelibs.fess.crawler.exception.CrawlerSystemException;
+
+/**
+ * An additional thumbnail size written from the same capture as the main thumbnail,
+ * such as a hi-DPI variant or a small preview. The derivative is stored next to the
+ * main thumbnail, with the suffix inserted before the extension.
+ *
+ * @param suffix the suffix of the file name
+ * @param width the width in pixels
+ * @param height the maximum height in pixels
+ * @param format the image format name, such as png or jpg
+ */
+public record ImageDerivative(String suffix, int width, int height, String format) {
+
+    /**
+     * Parses a comma-separated list of derivatives in the form {@code suffix:WIDTHxHEIGHT[:format]},
+     * for example {@code @2x:200x200,_s:50x50:jpg}. The height defaults to the width and the format to png.
+     *
+     * @param value the list of derivatives
+     * @return the derivatives
+     */
+    public static List<ImageDerivative> parse(final String value) {
+        final List<ImageDerivative> derivatives = new ArrayList<>();
+        if (StringUtil.isBlank(value)) {
+            return derivatives;
+        }
+        for (final String spec : value.split(",")) {
+            if (StringUtil.isBlank(spec)) {
+                continue;
+            }
+            final String[] parts = spec.trim().split(":");
+            if (parts.length < 2 || parts.length > 3 || StringUtil.isBlank(parts[0])) {
+                throw new CrawlerSystemException("Invalid derivative: " + spec);
+            }
+            final String format = parts.length == 3 ? parts[2].trim().toLowerCase(Locale.ROOT) : "png";
+            if (!ImageIO.getImageWritersByFormatName(format).hasNext()) {
+                throw new CrawlerSystemException("Unsupported image format: " + spec);
+            }
+            try {
+                final String[] size = parts[1].trim().toLowerCase(Locale.ROOT).split("x");
+                final int width = Integer.parseInt(size[0]);
+                final int height = size.length > 1 ? Integer.parseInt(size[1]) : width;
+                if (width <= 0 || height <= 0 || size.length > 2) {
+                    throw new CrawlerSystemException("Invalid derivative: " + spec);
+                }
+                derivatives.add(new ImageDerivative(parts[0].trim(), width, height, format));
+            } catch (final NumberFormatException e) {
+                throw new CrawlerSystemException("Invalid derivative: " + spec, e);
+            }
+        }
+        return derivatives;
+    }
+
+    /**
+     * Gets the file of the derivative of a thumbnail file.
+     *
+     * @param file the main thumbnail file
+     * @return the derivative file
+     */
+    public File getFile(final File file) {
+        if (suffix.isEmpty()) {
+            return file;
+        }
+        final String name = file.getName();
+        final int index = name.lastIndexOf('.');
+        final String baseName = index > 0 ? name.substring(0, index) : name;
+        final String extension = "jpeg".equals(format) ? "jpg" : format;
+        return new File(file.getParentFile(), baseName + suffix + "." + extension);
+    }
+
+    /**
+     * Checks if the format supports transparency.
+     *
+     * @return true for png and gif
+     */
+    public boolean hasAlpha() {
+        return "png".equals(format) || "gif".equals(format);
+    }
+}
@@ -0,0 +1,436 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.thumbnail.playwright;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.codelibs.core.exception.IORuntimeException;
+
+/**
+ * Key-value store persisted as an append-only log of tab-separated lines.
+ * All entries are kept in memory; every update is appended to the log, and the
+ * log is rewritten when it grows much larger than the number of live entries.
+ *
+ * @param <V> the value type
+ */
+public abstract class LogStore<V> implements Closeable {
+
+    private static final Logger logger = LogManager.getLogger(LogStore.class);
+
+    /** Operation marker for an added or updated entry. */
+    protected static final String PUT = "P";
+
+    /** Operation marker for a removed entry. */
+    protected static final String DELETE = "D";
+
+    /** The log file. */
+    protected final Path path;
+
+    /** The live entries keyed by their key. */
+    protected final Map<String, V> entryMap = new ConcurrentHashMap<>();
+
+    /** The output stream of the log file. */
+    protected FileOutputStream outputStream;
+
+    /** The writer appending to the log file. */
+    protected BufferedWriter writer;
+
+    /** The number of lines in the log file. */
+    protected long lineCount;
+
+    /** The log is compacted when it has more lines than this ratio times the number of entries. */
+    protected int compactionRatio = 3;
+
+    /** The minimum number of lines before the log is compacted. */
+    protected int minCompactionLines = 1000;
+
+    /**
+     * Creates a store backed by the given log file.
+     *
+     * @param path the log file
+     */
+    protected LogStore(final Path path) {
+        this.path = path;
+    }
+
+    /**
+     * Loads the log file and opens it for appending.
+     */
+    public synchronized void open() {
+        try {
+            final File parentFile = path.toFile().getParentFile();
+            if (parentFile != null && !parentFile.exists()) {
+                parentFile.mkdirs();
+            }
+            if (Files.exists(path)) {
+                load();
+            }
+            if (needsCompaction()) {
+                compact();
+            } else {
+                openWriter();
+            }
+            if (logger.isDebugEnabled()) {
+                logger.debug("Opened {} with {} entries.", path, entryMap.size());
+            }
+        } catch (final IOException e) {
+            throw new IORuntimeException(e);
+        }
+    }
+
+    /**
+     * Reads all lines of the log file into the entry map.
+     *
+     * @throws IOException if the log file cannot be read
+     */
+    protected void load() throws IOException {
+        lineCount = 0;
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineCount++;
+                final String[] values = line.split("\t", -1);
+                if (values.length < 2) {
+                    logger.warn("Skipped a broken line {} in {}", lineCount, path);
+                    continue;
+                }
+                final String key = unescape(values[1]);
+                if (DELETE.equals(values[0])) {
+                    entryMap.remove(key);
+                    continue;
+                }
+                final String[] fields = new String[values.length - 2];
+                for (int i = 0; i < fields.length; i++) {
+                    fields[i] = unescape(values[i + 2]);
+                }
+                try {
+                    final V value = PUT.equals(values[0]) ? fromFields(fields) : null;
+                    if (value != null) {
+                        entryMap.put(key, value);
+                    } else {
+                        logger.warn("Skipped a broken line {} in {}", lineCount, path);
+                    }
+                } catch (final RuntimeException e) {
+                    logger.warn("Skipped a broken line {} in {}", lineCount, path, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the value for the key.
+     *
+     * @param key the key
+     * @return the value, or null if not found
+     */
+    public V get(final String key) {
+        return entryMap.get(key);
+    }
+
+    /**
+     * Adds or replaces the value for the key.
+     *
+     * @param key the key
+     * @param value the value
+     */
+    public synchronized void put(final String key, final V value) {
+        entryMap.put(key, value);
+        final String[] fields = toFields(value);
+        final StringBuilder buf = new StringBuilder();
+        buf.append(PUT).append('\t').append(escape(key));
+        for (final String field : fields) {
+            buf.append('\t').append(escape(field));
+        }
+        append(buf.toString());
+    }
+
+    /**
+     * Removes the value for the key.
+     *
+     * @param key the key
+     */
+    public synchronized void remove(final String key) {
+        if (entryMap.remove(key) != null) {
+            append(DELETE + "\t" + escape(key));
+        }
+    }
+
+    /**
+     * Returns the number of live entries.
+     *
+     * @return the number of entries
+     */
+    public int size() {
+        return entryMap.size();
+    }
+
+    /**
+     * Returns the keys of all live entries.
+     *
+     * @return the keys
+     */
+    public List<String> keys() {
+        return new ArrayList<>(entryMap.keySet());
+    }
+
+    /**
+     * Writes buffered lines to the log file.
+     */
+    public synchronized void flush() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.flush();
+        } catch (final IOException e) {
+            logger.warn("Failed to flush {}", path, e);
+        }
+    }
+
+    /**
+     * Writes buffered lines to the log file and forces them to the storage device.
+     */
+    public synchronized void sync() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.flush();
+            outputStream.getFD().sync();
+        } catch (final IOException e) {
+            logger.warn("Failed to sync {}", path, e);
+        }
+    }
+
+    /**
+     * Rewrites the log file so that it only contains the live entries.
+     */
+    public synchronized void compact() {
+        try {
+            closeWriter();
+            final Path tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+            long count = 0;
+            try (BufferedWriter out = Files.newBufferedWriter(tempPath, StandardCharsets.UTF_8)) {
+                for (final Map.Entry<String, V> entry : entryMap.entrySet()) {
+                    out.write(PUT);
+                    out.write('\t');
+                    out.write(escape(entry.getKey()));
+                    for (final String field : toFields(entry.getValue())) {
+                        out.write('\t');
+                        out.write(escape(field));
+                    }
+                    out.write('\n');
+                    count++;
+                }
+            }
+            Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            lineCount = count;
+            if (logger.isDebugEnabled()) {
+                logger.debug("Compacted {} to {} entries.", path, count);
+            }
+            openWriter();
+        } catch (final IOException e) {
+            throw new IORuntimeException(e);
+        }
+    }
+
+    /**
+     * Removes all entries and truncates the log file.
+     */
+    public synchronized void clear() {
+        entryMap.clear();
+        compact();
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            if (writer != null && needsCompaction()) {
+                compact();
+            }
+            closeWriter();
+        } catch (final IOException e) {
+            logger.warn("Failed to close {}", path, e);
+        }
+    }
+
+    /**
+     * Appends a line to the log file, compacting the log when needed.
+     *
+     * @param line the line to append
+     */
+    protected void append(final String line) {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.write(line);
+            writer.write('\n');
+            lineCount++;
+        } catch (final IOException e) {
+            logger.warn("Failed to write to {}", path, e);
+            return;
+        }
+        if (needsCompaction()) {
+            compact();
+        }
+    }
+
+    /**
+     * Checks if the log file has grown enough to be compacted.
+     *
+     * @return true if the log should be compacted
+     */
+    protected boolean needsCompaction() {
+        return lineCount > minCompactionLines && lineCount > (long) entryMap.size() * compactionRatio;
+    }
+
+    /**
+     * Opens the writer appending to the log file.
+     *
+     * @throws IOException if the log file cannot be opened
+     */
+    protected void openWriter() throws IOException {
+        outputStream = new FileOutputStream(path.toFile(), true);
+        writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Closes the writer appending to the log file.
+     *
+     * @throws IOException if the writer cannot be closed
+     */
+    protected void closeWriter() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+            outputStream = null;
+        }
+    }
+
+    /**
+     * Converts the value to the fields stored in the log.
+     *
+     * @param value the value
+     * @return the fields
+     */
+    protected abstract String[] toFields(V value);
+
+    /**
+     * Restores the value from the fields stored in the log.
+     *
+     * @param fields the fields
+     * @return the value, or null if the fields are invalid
+     */
+    protected abstract V fromFields(String[] fields);
+
+    /**
+     * Escapes tabs, line breaks and backslashes in the value.
+     * A null value is stored as an empty string.
+     *
+     * @param value the value to escape
+     * @return the escaped value
+     */
+    protected static String escape(final String value) {
+        if (value == null) {
+            return "";
+        }
+        final StringBuilder buf = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            switch (c) {
+            case '\\' -> buf.append("\\\\");
+            case '\t' -> buf.append("\\t");
+            case '\n' -> buf.append("\\n");
+            case '\r' -> buf.append("\\r");
+            default -> buf.append(c);
+            }
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Restores a value escaped by {@link #escape(String)}.
+     *
+     * @param value the escaped value
+     * @return the original value
+     */
+    protected static String unescape(final String value) {
+        if (value.indexOf('\\') < 0) {
+            return value;
+        }
+        final StringBuilder buf = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                final char next = value.charAt(++i);
+                switch (next) {
+                case 't' -> buf.append('\t');
+                case 'n' -> buf.append('\n');
+                case 'r' -> buf.append('\r');
+                default -> buf.append(next);
+                }
+            } else {
+                buf.append(c);
+            }
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Parses a long field, returning the default value for an empty or invalid field.
+     *
+     * @param value the field
+     * @param defaultValue the default value
+     * @return the parsed value
+     */
+    protected static long toLong(final String value, final long defaultValue) {
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (final NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Returns null for an empty field.
+     *
+     * @param value the field
+     * @return the field, or null if empty
+     */
+    protected static String toNullable(final String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.thumbnail.playwright;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Renders thumbnails requested at search time, when a document without a thumbnail is displayed.
+ * Requests are queued by thumbnail ID; a thumbnail already queued or being rendered is not queued
+ * again. When the queue is full, the oldest request is dropped, since the newest ones belong to
+ * the results users are looking at. Long-lived threads take requests as soon as they arrive.
+ */
+public class OnDemandRenderService {
+
+    private static final Logger logger = LogManager.getLogger(OnDemandRenderService.class);
+
+    /**
+     * Renders a requested thumbnail.
+     */
+    @FunctionalInterface
+    public interface Handler {
+        /**
+         * Renders the thumbnail.
+         *
+         * @param thumbnailId the thumbnail ID
+         * @param outputFile the file to save the thumbnail to
+         */
+        void handle(String thumbnailId, File outputFile);
+    }
+
+    /** The handler rendering requests. */
+    protected final Handler handler;
+
+    /** The maximum number of queued requests. */
+    protected final int maxSize;
+
+    /** The queued requests keyed by thumbnail ID, oldest first. */
+    protected final Map<String, File> pendingMap = new LinkedHashMap<>();
+
+    /** The IDs of the thumbnails being rendered. */
+    protected final Set<String> activeSet = new HashSet<>();
+
+    /** The service threads. */
+    protected final Thread[] threads;
+
+    /** Whether requests are accepted. */
+    protected boolean running = true;
+
+    /** The number of accepted requests. */
+    protected long requestedCount;
+
+    /** The number of requests for thumbnails already queued or being rendered. */
+    protected long duplicateCount;
+
+    /** The number of requests dropped from a full queue. */
+    protected long droppedCount;
+
+    /** The number of handled requests. */
+    protected long handledCount;
+
+    /**
+     * Creates an on-demand render service.
+     *
+     * @param threadSize the number of service threads
+     * @param maxSize the maximum number of queued requests
+     * @param handler the handler rendering requests
+     */
+    public OnDemandRenderService(final int threadSize, final int maxSize, final Handler handler) {
+        this.handler = handler;
+        this.maxSize = Math.max(maxSize, 1);
+        threads = new Thread[Math.max(threadSize, 1)];
+    }
+
+    /**
+     * Starts the service threads.
+     */
+    public void start() {
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(this::run, "Playwright-OnDemand-" + i);
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
+    }
+
+    /**
+     * Requests a thumbnail.
+     *
+     * @param thumbnailId the thumbnail ID
+     * @param outputFile the file to save the thumbnail to
+     * @return true if the thumbnail is queued or being rendered
+     */
+    public synchronized boolean request(final String thumbnailId, final File outputFile) {
+        if (!running) {
+            return false;
+        }
+        if (pendingMap.containsKey(thumbnailId) || activeSet.contains(thumbnailId)) {
+            duplicateCount++;
+            return true;
+        }
+        if (pendingMap.size() >= maxSize) {
+            final Iterator<String> it = pendingMap.keySet().iterator();
+            final String dropped = it.next();
+            it.remove();
+            droppedCount++;
+            if (logger.isDebugEnabled()) {
+                logger.debug("Dropped the on-demand request for {}", dropped);
+            }
+        }
+        pendingMap.put(thumbnailId, outputFile);
+        requestedCount++;
+        notifyAll();
+        return true;
+    }
+
+    /**
+     * Handles requests until the service is stopped.
+     */
+    protected void run() {
+        while (true) {
+            final Map.Entry<String, File> request;
+            synchronized (this) {
+                while (running && pendingMap.isEmpty()) {
+                    try {
+                        wait();
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+                if (!running) {
+                    return;
+                }
+                final Iterator<Map.Entry<String, File>> it = pendingMap.entrySet().iterator();
+                final Map.Entry<String, File> first = it.next();
+                request = Map.entry(first.getKey(), first.getValue());
+                it.remove();
+                activeSet.add(request.getKey());
+            }
+            try {
+                handler.handle(request.getKey(), request.getValue());
+            } catch (final Exception e) {
+                logger.warn("[{}] Failed to render the requested thumbnail.", request.getKey(), e);
+            } finally {
+                synchronized (this) {
+                    activeSet.remove(request.getKey());
+                    handledCount++;
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of queued requests.
+     *
+     * @return the number of requests
+     */
+    public synchronized int size() {
+        return pendingMap.size();
+    }
+
+    /**
+     * Waits until no request is queued or being rendered.
+     *
+     * @param deadline the time in milliseconds to wait until
+     * @return true if the service is idle, false if the deadline passed first
+     */
+    public synchronized boolean awaitIdle(final long deadline) {
+        while (!pendingMap.isEmpty() || !activeSet.isEmpty()) {
+            final long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return false;
+            }
+            try {
+                wait(remaining);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stops the service. Queued requests are discarded, as they are made again
+     * when the documents are displayed; renders in progress are awaited.
+     *
+     * @return the discarded requests keyed by thumbnail ID
+     */
+    public Map<String, File> stop() {
+        final Map<String, File> discardedMap;
+        synchronized (this) {
+            running = false;
+            discardedMap = new LinkedHashMap<>(pendingMap);
+            pendingMap.clear();
+            notifyAll();
+        }
+        for (final Thread thread : threads) {
+            if (thread == null) {
+                continue;
+            }
+            try {
+                thread.join();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.warn("Interrupted to wait for {}", thread.getName());
+                return discardedMap;
+            }
+        }
+        return discardedMap;
+    }
+
+    /**
+     * Returns the on-demand metrics.
+     *
+     * @return the metrics keyed by name
+     */
+    public synchronized Map<String, Object> getMetrics() {
+        final Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("ondemand.requested", requestedCount);
+        metrics.put("ondemand.duplicates", duplicateCount);
+        metrics.put("ondemand.dropped", droppedCount);
+        metrics.put("ondemand.handled", handledCount);
+        metrics.put("ondemand.pending", pendingMap.size());
+        return metrics;
+    }
+}
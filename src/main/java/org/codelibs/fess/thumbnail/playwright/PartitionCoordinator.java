@@ -0,0 +1,576 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.thumbnail.playwright;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.codelibs.core.exception.IORuntimeException;
+import org.codelibs.fess.mylasta.direction.FessConfig;
+
+/**
+ * Splits thumbnail IDs between thumbnail job processes that share a directory.
+ * IDs are hashed into a fixed number of partitions, and each process holds leases on
+ * its share of them as files in the shared directory. Every process writes a heartbeat
+ * file, renews its leases periodically, and takes free or expired partitions until it
+ * holds its fair share, so the partitions of a dead process are taken over once its
+ * leases expire. A free partition is claimed by creating its lease file exclusively, and an
+ * expired lease is first renamed away and checked to be the one found expired, so two processes
+ * never both hold a partition. Leases compare timestamps across hosts, so their clocks must be in sync.
+ * A process that receives an ID of a partition held by another process hands it off as a
+ * file in the directory of the partition, so that the holder renders it instead of the ID being lost.
+ */
+public class PartitionCoordinator implements Closeable {
+
+    private static final Logger logger = LogManager.getLogger(PartitionCoordinator.class);
+
+    /** The suffix of lease files. */
+    protected static final String LEASE_SUFFIX = ".lease";
+
+    /** The suffix of heartbeat files. */
+    protected static final String HEARTBEAT_SUFFIX = ".heartbeat";
+
+    /** The prefix of the directories of handed off IDs. */
+    protected static final String HANDOFF_PREFIX = "handoff-";
+
+    /**
+     * A lease on a partition.
+     *
+     * @param nodeId the ID of the process holding the lease
+     * @param expiresTime the time the lease expires
+     */
+    public record Lease(String nodeId, long expiresTime) {
+    }
+
+    /**
+     * A thumbnail ID handed off to the process holding its partition.
+     *
+     * @param thumbnailId the thumbnail ID
+     * @param outputFile the file to save the thumbnail to
+     * @param path the handoff file
+     */
+    public record Handoff(String thumbnailId, File outputFile, Path path) {
+    }
+
+    /** The shared directory of the lease and heartbeat files. */
+    protected final Path directory;
+
+    /** The ID of this process. */
+    protected final String nodeId;
+
+    /** The number of partitions. */
+    protected final int partitionSize;
+
+    /** The time in milliseconds a lease or heartbeat stays valid without renewal. */
+    protected final long leaseDuration;
+
+    /** The interval in milliseconds between lease renewals. */
+    protected final long interval;
+
+    /** The partitions held by this process. */
+    protected volatile Set<Integer> ownedPartitions = Collections.emptySet();
+
+    /** The number of live processes seen at the last update. */
+    protected volatile int nodeCount = 1;
+
+    /** The renewal thread, or null if not started. */
+    protected Thread renewer;
+
+    /** Whether the renewal thread is running. */
+    protected volatile boolean running;
+
+    /**
+     * Creates a partition coordinator.
+     *
+     * @param directory the shared directory of the lease and heartbeat files
+     * @param nodeId the ID of this process
+     * @param partitionSize the number of partitions
+     * @param leaseDuration the time in milliseconds a lease stays valid without renewal
+     * @param interval the interval in milliseconds between lease renewals
+     */
+    public PartitionCoordinator(final Path directory, final String nodeId, final int partitionSize, final long leaseDuration,
+            final long interval) {
+        this.directory = directory;
+        this.nodeId = nodeId;
+        this.partitionSize = Math.max(partitionSize, 1);
+        this.leaseDuration = leaseDuration;
+        this.interval = interval;
+    }
+
+    /**
+     * Creates a partition coordinator from the system properties if a shared partition directory is configured.
+     * Without an explicit node ID, the host name and the process ID identify this process.
+     *
+     * @param fessConfig the Fess configuration
+     * @return the partition coordinator to start, or null if all thumbnail IDs are rendered in this process
+     */
+    public static PartitionCoordinator from(final FessConfig fessConfig) {
+        final PropertyReader reader = new PropertyReader(fessConfig);
+        final String directory = reader.getString("thumbnail.playwright.partition.directory", null);
+        if (directory == null) {
+            return null;
+        }
+        String nodeId = reader.getString("thumbnail.playwright.partition.node.id", null);
+        if (nodeId == null) {
+            String hostName;
+            try {
+                hostName = InetAddress.getLocalHost().getHostName();
+            } catch (final IOException e) {
+                hostName = "localhost";
+            }
+            nodeId = hostName + "-" + ProcessHandle.current().pid();
+        }
+        return new PartitionCoordinator(new File(directory).toPath(), nodeId.replaceAll("[^A-Za-z0-9._-]", "_"),
+                reader.getInt("thumbnail.playwright.partition.size", 64), reader.getLong("thumbnail.playwright.partition.lease.duration", 60000L),
+                reader.getLong("thumbnail.playwright.partition.interval", 15000L));
+    }
+
+    /**
+     * Writes the heartbeat, waits one renewal interval so that the processes already running
+     * release partitions for this one and the processes started at the same time see each other,
+     * then takes the initial share of partitions and starts renewing the leases in the background.
+     */
+    public void start() {
+        try {
+            Files.createDirectories(directory);
+        } catch (final IOException e) {
+            throw new IORuntimeException(e);
+        }
+        writeHeartbeat(System.currentTimeMillis());
+        try {
+            Thread.sleep(interval);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        update(System.currentTimeMillis());
+        running = true;
+        renewer = new Thread(() -> {
+            while (running) {
+                try {
+                    Thread.sleep(interval);
+                    update(System.currentTimeMillis());
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (final Exception e) {
+                    logger.warn("Failed to renew the partition leases.", e);
+                }
+            }
+        }, "Playwright-PartitionRenewer");
+        renewer.setDaemon(true);
+        renewer.start();
+    }
+
+    /**
+     * Checks if a thumbnail ID belongs to a partition held by this process.
+     *
+     * @param thumbnailId the thumbnail ID
+     * @return true if this process should render the thumbnail
+     */
+    public boolean isOwned(final String thumbnailId) {
+        return ownedPartitions.contains(getPartition(thumbnailId, partitionSize));
+    }
+
+    /**
+     * Writes the heartbeat, renews the held leases, releases partitions beyond the
+     * fair share, and takes free or expired partitions up to the fair share.
+     *
+     * @param now the current time in milliseconds
+     */
+    public synchronized void update(final long now) {
+        writeHeartbeat(now);
+        nodeCount = Math.max(countLiveNodes(now), 1);
+        final int fairShare = (partitionSize + nodeCount - 1) / nodeCount;
+        final TreeSet<Integer> owned = new TreeSet<>();
+        final Set<Integer> free = new TreeSet<>();
+        for (int partition = 0; partition < partitionSize; partition++) {
+            final Lease lease = readLease(partition);
+            if (lease != null && nodeId.equals(lease.nodeId()) && lease.expiresTime() > now) {
+                owned.add(partition);
+            } else if (lease == null || lease.expiresTime() <= now) {
+                free.add(partition);
+            }
+        }
+        while (owned.size() > fairShare) {
+            final int partition = owned.pollLast();
+            deleteFile(getLeaseFile(partition));
+        }
+        for (final int partition : owned) {
+            writeLease(partition, now);
+        }
+        for (final int partition : free) {
+            if (owned.size() >= fairShare) {
+                break;
+            }
+            if (claimLease(partition, now)) {
+                owned.add(partition);
+            }
+        }
+        if (!owned.equals(ownedPartitions)) {
+            logger.info("Holding {} of {} partitions with {} live nodes.", owned.size(), partitionSize, nodeCount);
+        }
+        ownedPartitions = Collections.unmodifiableSet(owned);
+    }
+
+    /**
+     * Writes the heartbeat of this process.
+     *
+     * @param now the current time in milliseconds
+     */
+    protected void writeHeartbeat(final long now) {
+        writeFile(directory.resolve(nodeId + HEARTBEAT_SUFFIX), nodeId + "\t" + (now + leaseDuration));
+    }
+
+    /**
+     * Hands off a thumbnail ID to the process holding its partition. Handing off the same ID
+     * again replaces the earlier handoff.
+     *
+     * @param thumbnailId the thumbnail ID
+     * @param outputFile the file to save the thumbnail to
+     */
+    public void handOff(final String thumbnailId, final File outputFile) {
+        final Path handoffDirectory = getHandoffDirectory(getPartition(thumbnailId, partitionSize));
+        try {
+            Files.createDirectories(handoffDirectory);
+        } catch (final IOException e) {
+            throw new IORuntimeException(e);
+        }
+        final String fileName = Base64.getUrlEncoder().withoutPadding().encodeToString(thumbnailId.getBytes(StandardCharsets.UTF_8));
+        writeFile(handoffDirectory.resolve(fileName), thumbnailId + "\t" + outputFile.getAbsolutePath());
+    }
+
+    /**
+     * Gets the IDs handed off to the partitions held by this process.
+     *
+     * @return the handoffs
+     */
+    public List<Handoff> getHandoffs() {
+        return getHandoffs(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Gets up to the given number of IDs handed off to the partitions held by this process.
+     *
+     * @param maxSize the maximum number of handoffs
+     * @return the handoffs
+     */
+    public List<Handoff> getHandoffs(final int maxSize) {
+        final List<Handoff> handoffs = new ArrayList<>();
+        for (final int partition : ownedPartitions) {
+            if (handoffs.size() >= maxSize) {
+                break;
+            }
+            final Path handoffDirectory = getHandoffDirectory(partition);
+            if (!Files.isDirectory(handoffDirectory)) {
+                continue;
+            }
+            try (Stream<Path> paths = Files.list(handoffDirectory)) {
+                for (final Path path : (Iterable<Path>) paths::iterator) {
+                    if (handoffs.size() >= maxSize) {
+                        break;
+                    }
+                    final String content = readFile(path);
+                    final int index = content == null ? -1 : content.indexOf('\t');
+                    if (index > 0) {
+                        handoffs.add(new Handoff(content.substring(0, index), new File(content.substring(index + 1).trim()), path));
+                    } else if (content != null) {
+                        logger.warn("Removed a broken handoff: {}", path);
+                        deleteFile(path);
+                    }
+                }
+            } catch (final IOException e) {
+                throw new IORuntimeException(e);
+            }
+        }
+        return handoffs;
+    }
+
+    /**
+     * Removes a handoff whose thumbnail has been processed.
+     *
+     * @param handoff the handoff
+     */
+    public void complete(final Handoff handoff) {
+        deleteFile(handoff.path());
+    }
+
+    /**
+     * Gets the directory of the IDs handed off to a partition.
+     *
+     * @param partition the partition
+     * @return the directory
+     */
+    protected Path getHandoffDirectory(final int partition) {
+        return directory.resolve(HANDOFF_PREFIX + partition);
+    }
+
+    /**
+     * Counts the processes whose heartbeat has not expired.
+     *
+     * @param now the current time in milliseconds
+     * @return the number of live processes
+     */
+    protected int countLiveNodes(final long now) {
+        int count = 0;
+        try (Stream<Path> paths = Files.list(directory)) {
+            for (final Path path : (Iterable<Path>) paths::iterator) {
+                if (path.getFileName().toString().endsWith(HEARTBEAT_SUFFIX)) {
+                    final Lease heartbeat = parseLease(readFile(path));
+                    if (heartbeat != null && heartbeat.expiresTime() > now) {
+                        count++;
+                    }
+                }
+            }
+        } catch (final IOException e) {
+            throw new IORuntimeException(e);
+        }
+        return count;
+    }
+
+    /**
+     * Reads the lease of a partition.
+     *
+     * @param partition the partition
+     * @return the lease, or null if the partition has no lease
+     */
+    protected Lease readLease(final int partition) {
+        return parseLease(readFile(getLeaseFile(partition)));
+    }
+
+    /**
+     * Claims a free or expired partition. An expired lease file is renamed to a name unique
+     * to this process and compared with the content found expired; if another process has
+     * replaced it in the meantime, it is put back. The lease is then created exclusively,
+     * so only one of the processes racing for the partition succeeds.
+     *
+     * @param partition the partition
+     * @param now the current time in milliseconds
+     * @return true if this process holds the lease
+     */
+    protected boolean claimLease(final int partition, final long now) {
+        final Path leaseFile = getLeaseFile(partition);
+        final String content = readFile(leaseFile);
+        if (content != null && !removeExpiredLease(leaseFile, content, now)) {
+            return false;
+        }
+        try {
+            Files.write(leaseFile, (nodeId + "\t" + (now + leaseDuration)).getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.WRITE);
+            return true;
+        } catch (final FileAlreadyExistsException e) {
+            return false;
+        } catch (final IOException e) {
+            throw new IORuntimeException(e);
+        }
+    }
+
+    /**
+     * Removes an expired lease file by renaming it and checking that the renamed file
+     * still has the content found expired.
+     *
+     * @param leaseFile the lease file
+     * @param content the content of the lease file
+     * @param now the current time in milliseconds
+     * @return true if the lease file has been removed or no longer exists
+     */
+    protected boolean removeExpiredLease(final Path leaseFile, final String content, final long now) {
+        final Lease lease = parseLease(content);
+        try {
+            if (lease != null ? lease.expiresTime() > now : Files.getLastModifiedTime(leaseFile).toMillis() + leaseDuration > now) {
+                // the lease is valid, or a broken lease may still be being written
+                return false;
+            }
+            final Path expiredFile = directory.resolve(".expired-" + nodeId + "-" + leaseFile.getFileName());
+            Files.move(leaseFile, expiredFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            if (!content.equals(readFile(expiredFile))) {
+                Files.move(expiredFile, leaseFile, StandardCopyOption.ATOMIC_MOVE);
+                return false;
+            }
+            Files.delete(expiredFile);
+            return true;
+        } catch (final NoSuchFileException e) {
+            return true;
+        } catch (final IOException e) {
+            throw new IORuntimeException(e);
+        }
+    }
+
+    /**
+     * Writes a lease of this process on a partition.
+     *
+     * @param partition the partition
+     * @param now the current time in milliseconds
+     */
+    protected void writeLease(final int partition, final long now) {
+        writeFile(getLeaseFile(partition), nodeId + "\t" + (now + leaseDuration));
+    }
+
+    /**
+     * Gets the lease file of a partition.
+     *
+     * @param partition the partition
+     * @return the lease file
+     */
+    protected Path getLeaseFile(final int partition) {
+        return directory.resolve("partition-" + partition + LEASE_SUFFIX);
+    }
+
+    /**
+     * Parses the content of a lease or heartbeat file.
+     *
+     * @param content the content, or null
+     * @return the lease, or null if the content is missing or broken
+     */
+    protected static Lease parseLease(final String content) {
+        if (content == null) {
+            return null;
+        }
+        final String[] values = content.trim().split("\t");
+        if (values.length < 2) {
+            return null;
+        }
+        try {
+            return new Lease(values[0], Long.parseLong(values[1]));
+        } catch (final NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Reads a small file.
+     *
+     * @param path the file
+     * @return the content, or null if the file does not exist
+     */
+    protected static String readFile(final Path path) {
+        try {
+            return Files.readString(path, StandardCharsets.UTF_8);
+        } catch (final NoSuchFileException e) {
+            return null;
+        } catch (final IOException e) {
+            throw new IORuntimeException(e);
+        }
+    }
+
+    /**
+     * Replaces a file atomically, so that readers never see a partial file.
+     *
+     * @param path the file
+     * @param content the content
+     */
+    protected void writeFile(final Path path, final String content) {
+        try {
+            final Path tempFile = Files.createTempFile(directory, ".write-", ".tmp");
+            Files.writeString(tempFile, content, StandardCharsets.UTF_8);
+            Files.move(tempFile, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (final IOException e) {
+            throw new IORuntimeException(e);
+        }
+    }
+
+    /**
+     * Deletes a file if it exists.
+     *
+     * @param path the file
+     */
+    protected static void deleteFile(final Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (final IOException e) {
+            logger.warn("Failed to delete {}", path, e);
+        }
+    }
+
+    /**
+     * Gets the interval between lease renewals.
+     *
+     * @return the interval in milliseconds
+     */
+    public long getInterval() {
+        return interval;
+    }
+
+    /**
+     * Gets the partition of a thumbnail ID. The hash is stable across processes.
+     *
+     * @param thumbnailId the thumbnail ID
+     * @param partitionSize the number of partitions
+     * @return the partition
+     */
+    public static int getPartition(final String thumbnailId, final int partitionSize) {
+        int h = thumbnailId.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return Math.floorMod(h, partitionSize);
+    }
+
+    /**
+     * Gets the metrics of the partitions.
+     *
+     * @return the metrics keyed by name
+     */
+    public Map<String, Object> getMetrics() {
+        final Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("partition.owned", ownedPartitions.size());
+        metrics.put("partition.total", partitionSize);
+        metrics.put("partition.nodes", nodeCount);
+        return metrics;
+    }
+
+    /**
+     * Stops renewing the leases and releases them with the heartbeat, so that other
+     * processes can take the partitions over immediately.
+     */
+    @Override
+    public synchronized void close() {
+        running = false;
+        if (renewer != null) {
+            renewer.interrupt();
+            renewer = null;
+        }
+        for (final int partition : ownedPartitions) {
+            final Lease lease = readLease(partition);
+            if (lease != null && nodeId.equals(lease.nodeId())) {
+                deleteFile(getLeaseFile(partition));
+            }
+        }
+        ownedPartitions = Collections.emptySet();
+        deleteFile(directory.resolve(nodeId + HEARTBEAT_SUFFIX));
+    }
+}
@@ -15,17 +15,33 @@
  */
 package org.codelibs.fess.thumbnail.playwright;
 
-import java.awt.Graphics2D;
-import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 
+import javax.imageio.IIOImage;
 import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -37,17 +53,23 @@ import org.codelibs.fess.crawler.exception.CrawlerSystemException;
 import org.codelibs.fess.mylasta.direction.FessConfig;
 import org.codelibs.fess.thumbnail.impl.BaseThumbnailGenerator;
 import org.codelibs.fess.util.ComponentUtil;
+import org.codelibs.fess.util.DocumentUtil;
 
 import com.microsoft.playwright.Browser;
 import com.microsoft.playwright.Browser.NewContextOptions;
 import com.microsoft.playwright.BrowserContext;
 import com.microsoft.playwright.BrowserType;
+import com.microsoft.playwright.BrowserType.ConnectOptions;
+import com.microsoft.playwright.BrowserType.ConnectOverCDPOptions;
 import com.microsoft.playwright.BrowserType.LaunchOptions;
 import com.microsoft.playwright.Page;
 import com.microsoft.playwright.Page.ScreenshotOptions;
 import com.microsoft.playwright.Playwright;
+import com.microsoft.playwright.PlaywrightException;
 import com.microsoft.playwright.Response;
+import com.microsoft.playwright.TimeoutError;
 import com.microsoft.playwright.options.LoadState;
+import com.microsoft.playwright.options.ViewportSize;
 
 import jakarta.annotation.PostConstruct;
 
@@ -103,14 +125,170 @@ public class PlaywrightThumbnailGenerator extends BaseThumbnailGenerator {
     /** Timeout in milliseconds for page navigation. */
     protected double navigationTimeout = 30000;
 
+    /** Directory for the persistent data of this generator, or null to use the default location. */
+    protected String dataPath;
+
+    /** The cache of HTTP validators recorded at render time. */
+    protected ValidatorCache validatorCache;
+
+    /** The directory of the thumbnail copies kept for the validator cache, independent of the thumbnail files Fess purges. */
+    protected File retainedDirectory;
+
+    /** The index field holding content fingerprints, or null to disable deduplication. */
+    protected String fingerprintField;
+
+    /** The index of thumbnails rendered per content fingerprint. */
+    protected FingerprintIndex fingerprintIndex;
+
+    /** The queue of stale thumbnails to re-render at the end of the run. */
+    protected RefreshQueue refreshQueue;
+
+    /** The priority of re-rendering stale thumbnails, below that of pages without a thumbnail. */
+    protected static final double REFRESH_PRIORITY = -1000.0;
+
+    /** The maximum time in milliseconds the end of a run waits for background renders, refreshes and retries. */
+    protected long drainTimeout = 600000L;
+
+    /** The renders completing in the background, awaited at the end of the run. */
+    protected final Set<CompletableFuture<?>> pendingRenderSet = ConcurrentHashMap.newKeySet();
+
+    /** Whether the run is ending, so that failed renders are no longer queued for retries. */
+    protected volatile boolean stopping;
+
+    /** Whether to render pages through the host-grouping render scheduler. */
+    protected boolean schedulerEnabled = false;
+
+    /** The number of render slots, each with its own browser, when the scheduler is enabled. */
+    protected int workerSize = 1;
+
+    /** Whether generate() returns as soon as the page is queued instead of waiting for the render. */
+    protected boolean asyncEnabled = false;
+
+    /** The admission controller of the render scheduler, or null if disabled. */
+    protected AdmissionController admissionController;
+
+    /** The concurrency controller of the render scheduler, or null if disabled. */
+    protected ConcurrencyController concurrencyController;
+
+    /** The priority function, or null if disabled. */
+    protected ThumbnailPriority thumbnailPriority;
+
+    /** The maximum number of handed off thumbnails generated per poll of the handoff directories. */
+    protected static final int HANDOFF_POLL_SIZE = 100;
+
+    /** The priority of thumbnails requested at search time. */
+    protected static final double ON_DEMAND_PRIORITY = 1000.0;
+
+    /** Whether to render thumbnails requested at search time and limit batch generation. */
+    protected boolean onDemandEnabled = false;
+
+    /** The maximum number of thumbnails rendered in batch per run when on-demand rendering is enabled. */
+    protected int onDemandBatchSize = 1000;
+
+    /** Whether deferred batch thumbnails keep their thumbnail field for a search-time caller of {@link #requestThumbnail(String, File)}. */
+    protected boolean onDemandKeepField = false;
+
+    /** The maximum number of queued on-demand requests. */
+    protected int onDemandQueueSize = 10000;
+
+    /** The service rendering thumbnails requested at search time, or null if disabled. */
+    protected OnDemandRenderService onDemandService;
+
+    /** The batch thumbnails to render at the end of the run, or null if on-demand rendering is disabled. */
+    protected BatchQueue batchQueue;
+
+    /** The number of batch thumbnails left for on-demand rendering during this run. */
+    protected final AtomicLong deferredCount = new AtomicLong();
+
+    /** The persistent model of render durations, or null if disabled. */
+    protected RenderCostModel renderCostModel;
+
+    /** The cache of static subresources, or null if disabled. */
+    protected SubresourceCache subresourceCache;
+
+    /** The DevTools endpoint of a running render daemon, or null to launch browsers in process. */
+    protected String daemonEndpoint;
+
+    /** The timeout in milliseconds for connecting to the render daemon. */
+    protected double daemonConnectTimeout = 5000;
+
+    /** The remote browser endpoints, or null if browsers are launched locally. */
+    protected BrowserEndpointPool endpointPool;
+
+    /** The remote endpoints of the connected browsers. */
+    protected final Map<Browser, String> browserEndpointMap = new ConcurrentHashMap<>();
+
+    /** The coordinator of partitions between thumbnail processes, or null if disabled. */
+    protected PartitionCoordinator partitionCoordinator;
+
+    /** The number of thumbnails handed off because another process holds their partition. */
+    protected final AtomicLong partitionHandedOffCount = new AtomicLong();
+
+    /** The time in milliseconds the handoff directories were last polled. */
+    protected final AtomicLong handoffPollTime = new AtomicLong();
+
+    /** The journal of finished thumbnails, or null if disabled. */
+    protected ProgressJournal progressJournal;
+
+    /** The number of thumbnails skipped because the journal records them as finished. */
+    protected final AtomicLong journalSkippedCount = new AtomicLong();
+
+    /** The per-host circuit breaker, or null if disabled. */
+    protected CircuitBreaker circuitBreaker;
+
+    /** The persistent cache of failed pages, or null if disabled. */
+    protected FailureCache failureCache;
+
+    /** The queue of renders waiting for a retry, or null if disabled. */
+    protected RetryQueue retryQueue;
+
+    /** The buffered updater of thumbnail fields, or null if updates are not batched. */
+    protected ThumbnailFieldUpdater fieldUpdater;
+
+    /** The in-memory index of existing thumbnails, or null if disabled. */
+    protected ExistenceIndex existenceIndex;
+
+    /** The storage thumbnails are written to. */
+    protected ThumbnailStorage thumbnailStorage = new FileThumbnailStorage();
+
+    /** The additional thumbnail sizes written from the same capture. */
+    protected List<ImageDerivative> derivatives = new ArrayList<>();
+
+    /** The URL glob patterns of requests to abort while rendering. */
+    protected List<String> blockUrls = new ArrayList<>();
+
+    /** The compression quality of the image encoder from 0 to 1, or a negative value for the encoder default. */
+    protected float encoderQuality = -1.0f;
+
+    /** The render settings keyed by crawling config ID. */
+    protected final Map<String, RenderProfile> renderProfileMap = new ConcurrentHashMap<>();
+
+    /** The minimum ratio of the decoded screenshot width to the largest thumbnail width, or 0 to decode at full resolution. */
+    protected int decodeScale = 0;
+
+    /** The results of thumbnails being generated, keyed by output file path. */
+    protected final Map<String, CompletableFuture<Boolean>> inFlightMap = new ConcurrentHashMap<>();
+
+    /** The scheduler distributing render tasks to the render slots. */
+    protected RenderScheduler renderScheduler;
+
+    /** The workers of the render slots other than the first one, which uses {@link #worker}. */
+    protected List<Tuple4<Playwright, Browser, BrowserContext, Page>> slotWorkers = new ArrayList<>();
+
     /**
      * Initializes the Playwright thumbnail generator after dependency injection.
-     * Creates browser worker if running in thumbnail mode.
+     * Creates browser worker if running in thumbnail mode. In other processes, such as
+     * the web application, only the on-demand render service is started if it is enabled.
      */
     @PostConstruct
     public void init() {
         final String lastaEnv = System.getProperty("lasta.env");
         if (!Constants.EXECUTE_TYPE_THUMBNAIL.equals(lastaEnv)) {
+            updateProperties();
+            if (onDemandEnabled) {
+                initSearchTimeService();
+                return;
+            }
             if (logger.isDebugEnabled()) {
                 logger.debug("lasta.env is {}. PlaywrightThumbnailGenerator is disabled.", lastaEnv);
             }
@@ -118,6 +296,21 @@ public class PlaywrightThumbnailGenerator extends BaseThumbnailGenerator {
         }
 
         createWorker();
+        initExistenceIndex();
+        initThumbnailStorage();
+        initValidatorCache();
+        initFingerprintIndex();
+        initFailureCache();
+        final FessConfig fessConfig = ComponentUtil.getFessConfig();
+        refreshQueue = RefreshQueue.from(fessConfig);
+        fieldUpdater = ThumbnailFieldUpdater.from(fessConfig);
+        retryQueue = RetryQueue.from(fessConfig);
+        circuitBreaker = CircuitBreaker.from(fessConfig);
+        initCostModel();
+        initProgressJournal();
+        initPartitionCoordinator();
+        initRenderScheduler();
+        initOnDemandService();
     }
 
     /**
@@ -130,123 +323,1482 @@ public class PlaywrightThumbnailGenerator extends BaseThumbnailGenerator {
         }
 
         updateProperties();
+        initSubresourceCache();
+        initEndpointPool();
+
+        try {
+            worker = newWorker();
+            navigateOptions = new Page.NavigateOptions().setTimeout(navigationTimeout);
+            available = true;
+        } catch (final Exception e) {
+            available = false;
+            if (logger.isDebugEnabled()) {
+                logger.debug("Failed to create Playwright instance.", e);
+            }
+            throw new CrawlerSystemException("Failed to create PlaywrightThumbnailGenerator.", e);
+        }
+    }
 
+    /**
+     * Launches a browser and creates a context and a page for it.
+     * The resources created so far are closed if any step fails.
+     *
+     * @return the worker containing the Playwright, browser, context and page instances
+     */
+    protected Tuple4<Playwright, Browser, BrowserContext, Page> newWorker() {
+        return newWorker(0);
+    }
+
+    /**
+     * Connects to or launches a browser for a render slot and creates a context and a page for it.
+     * The resources created so far are closed if any step fails.
+     *
+     * @param slot the render slot, used to route the worker to a remote browser endpoint
+     * @return the worker containing the Playwright, browser, context and page instances
+     */
+    protected Tuple4<Playwright, Browser, BrowserContext, Page> newWorker(final int slot) {
         Playwright playwright = null;
         Browser browser = null;
         BrowserContext browserContext = null;
         Page page = null;
         try {
             playwright = Playwright.create(new Playwright.CreateOptions().setEnv(options));
-            browser = getBrowserType(playwright).launch(launchOptions);
+            browser = connectBrowser(playwright, slot);
+            if (browser == null) {
+                browser = getBrowserType(playwright).launch(launchOptions);
+            }
             browserContext = browser.newContext(newContextOptions);
+            if (subresourceCache != null) {
+                browserContext.route("**/*", subresourceCache::handle);
+            }
             page = browserContext.newPage();
             page.setViewportSize(viewportWidth, viewportHeight);
-            worker = new Tuple4<>(playwright, browser, browserContext, page);
-            navigateOptions = new Page.NavigateOptions().setTimeout(navigationTimeout);
-            available = true;
-        } catch (final Exception e) {
-            available = false;
+            return new Tuple4<>(playwright, browser, browserContext, page);
+        } catch (final RuntimeException e) {
+            close(playwright, browser, browserContext, page);
+            throw e;
+        }
+    }
+
+    /**
+     * Connects to a remote browser endpoint, or to the browser of the render daemon, if configured.
+     * An endpoint that cannot be connected to is marked as down and the next one is tried.
+     *
+     * @param playwright the Playwright instance
+     * @param slot the render slot, used to route the worker to a remote browser endpoint
+     * @return the connected browser, or null if no endpoint is configured or available
+     */
+    protected Browser connectBrowser(final Playwright playwright, final int slot) {
+        if (endpointPool != null) {
+            final double timeout = endpointPool.getTimeout().toMillis();
+            for (int i = 0; i < endpointPool.size(); i++) {
+                final String endpoint = endpointPool.acquire(Integer.toString(slot));
+                if (endpoint == null) {
+                    break;
+                }
+                try {
+                    final Browser browser = endpoint.startsWith("ws")
+                            ? getBrowserType(playwright).connect(endpoint, new ConnectOptions().setTimeout(timeout))
+                            : playwright.chromium().connectOverCDP(endpoint, new ConnectOverCDPOptions().setTimeout(timeout));
+                    browserEndpointMap.put(browser, endpoint);
+                    if (logger.isDebugEnabled()) {
+                        logger.debug("Connected slot {} to the browser endpoint {}", slot, endpoint);
+                    }
+                    return browser;
+                } catch (final RuntimeException e) {
+                    logger.warn("Failed to connect to the browser endpoint {}", endpoint, e);
+                    endpointPool.release(endpoint);
+                    endpointPool.markDown(endpoint);
+                }
+            }
+            logger.warn("No remote browser endpoint is available for slot {}.", slot);
+        }
+        if (StringUtil.isBlank(daemonEndpoint)) {
+            return null;
+        }
+        try {
+            final Browser browser =
+                    playwright.chromium().connectOverCDP(daemonEndpoint, new ConnectOverCDPOptions().setTimeout(daemonConnectTimeout));
             if (logger.isDebugEnabled()) {
-                logger.debug("Failed to create Playwright instance.", e);
+                logger.debug("Connected to the render daemon at {}", daemonEndpoint);
             }
-            close(playwright, browser, browserContext, page);
-            throw new CrawlerSystemException("Failed to create PlaywrightThumbnailGenerator.", e);
+            return browser;
+        } catch (final RuntimeException e) {
+            logger.warn("The render daemon at {} is not available. Launching a browser in process.", daemonEndpoint, e);
+            return null;
         }
     }
 
     /**
      * Updates configuration properties from system properties.
-     * Reads viewport dimensions and navigation timeout from Fess configuration.
+     * Reads the settings of the generator itself; each component reads its own settings when it is created.
+     * An invalid value is logged and the current value is kept.
      */
     protected void updateProperties() {
+        final PropertyReader reader = new PropertyReader(ComponentUtil.getFessConfig());
+        viewportWidth = reader.getInt("thumbnail.playwright.viewport.width", viewportWidth);
+        viewportHeight = reader.getInt("thumbnail.playwright.viewport.height", viewportHeight);
+        navigationTimeout = reader.getDouble("thumbnail.playwright.navigation.timeout", navigationTimeout);
+        dataPath = reader.getString("thumbnail.playwright.data.path", dataPath);
+        fingerprintField = reader.getString(ContentFingerprint.FIELD_PROPERTY, fingerprintField);
+        drainTimeout = reader.getLong("thumbnail.playwright.drain.timeout", drainTimeout);
+        schedulerEnabled = reader.getBoolean("thumbnail.playwright.scheduler.enabled", schedulerEnabled);
+        workerSize = reader.getInt("thumbnail.playwright.worker.size", workerSize);
+        asyncEnabled = reader.getBoolean("thumbnail.playwright.async.enabled", asyncEnabled);
+        onDemandEnabled = reader.getBoolean("thumbnail.playwright.ondemand.enabled", onDemandEnabled);
+        onDemandBatchSize = reader.getInt("thumbnail.playwright.ondemand.batch.size", onDemandBatchSize);
+        onDemandKeepField = reader.getBoolean("thumbnail.playwright.ondemand.keep.field", onDemandKeepField);
+        onDemandQueueSize = reader.getInt("thumbnail.playwright.ondemand.queue.size", onDemandQueueSize);
+        daemonEndpoint = reader.getString("thumbnail.playwright.daemon.endpoint", daemonEndpoint);
+        daemonConnectTimeout = reader.getDouble("thumbnail.playwright.daemon.connect.timeout", daemonConnectTimeout);
+        derivatives = reader.get("thumbnail.playwright.derivatives", derivatives, ImageDerivative::parse);
+        blockUrls = reader.get("thumbnail.playwright.block.urls", blockUrls, RenderProfile::parseBlockUrls);
+        encoderQuality = reader.getFloat("thumbnail.playwright.encoder.quality", encoderQuality);
+        decodeScale = reader.getInt("thumbnail.playwright.decode.scale", decodeScale);
+    }
+
+    /**
+     * Gets the directory for the persistent data of this generator.
+     * Defaults to a directory under fess.var.path, or under the temporary directory if it is not set.
+     *
+     * @return the data directory
+     */
+    protected File getDataDirectory() {
+        final File dataDir;
+        if (dataPath != null) {
+            dataDir = new File(dataPath);
+        } else {
+            final String varPath = System.getProperty("fess.var.path");
+            if (varPath != null) {
+                dataDir = new File(varPath, "thumbnail_playwright");
+            } else {
+                dataDir = new File(System.getProperty("java.io.tmpdir"), "fess-thumbnail-playwright");
+            }
+        }
+        if (!dataDir.exists()) {
+            dataDir.mkdirs();
+        }
+        return dataDir;
+    }
+
+    /**
+     * Opens the validator cache if it is enabled.
+     */
+    protected void initValidatorCache() {
+        validatorCache = ValidatorCache.from(ComponentUtil.getFessConfig(), getDataDirectory());
+        if (validatorCache == null) {
+            return;
+        }
+        validatorCache.setHeaders(getValidatorHeaders());
+        validatorCache.setFileRemover(this::deleteThumbnail);
+        validatorCache.open();
+        retainedDirectory = new File(getDataDirectory(), "retained");
+    }
+
+    /**
+     * Gets the headers of conditional requests from the browser context options, so that
+     * the server sees the User-Agent, extra headers such as cookies, and credentials
+     * the pages are rendered with.
+     *
+     * @return the header names and values
+     */
+    protected Map<String, String> getValidatorHeaders() {
+        final Map<String, String> headers = new LinkedHashMap<>();
+        if (newContextOptions.userAgent != null) {
+            headers.put("User-Agent", newContextOptions.userAgent);
+        }
+        if (newContextOptions.extraHTTPHeaders != null) {
+            headers.putAll(newContextOptions.extraHTTPHeaders);
+        }
+        if (newContextOptions.httpCredentials != null) {
+            final String credentials = newContextOptions.httpCredentials.username + ":" + newContextOptions.httpCredentials.password;
+            headers.put("Authorization", "Basic " + Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.UTF_8)));
+        }
+        return headers;
+    }
+
+    /**
+     * Gets the file of the thumbnail copy kept for a URL in the validator cache.
+     *
+     * @param url the page URL
+     * @return the retained thumbnail file
+     */
+    protected File getRetainedFile(final String url) {
+        final String hash = ValidatorCache.digest(url.getBytes(StandardCharsets.UTF_8));
+        return new File(new File(retainedDirectory, hash.substring(0, 2)), hash + ".png");
+    }
+
+    /**
+     * Opens the fingerprint index if a fingerprint field is configured.
+     */
+    protected void initFingerprintIndex() {
+        if (StringUtil.isBlank(fingerprintField)) {
+            return;
+        }
+        fingerprintIndex = FingerprintIndex.from(ComponentUtil.getFessConfig(), getDataDirectory());
+        fingerprintIndex.setFileChecker(thumbnailStorage::exists);
+        fingerprintIndex.open();
+    }
+
+    /**
+     * Opens the failure cache if it is enabled.
+     */
+    protected void initFailureCache() {
+        failureCache = FailureCache.from(ComponentUtil.getFessConfig(), getDataDirectory());
+        if (failureCache != null) {
+            failureCache.open();
+        }
+    }
+
+    /**
+     * Starts checking the remote browser endpoints if any are configured. It must be
+     * started before the workers are created, as each worker connects to an endpoint.
+     */
+    protected void initEndpointPool() {
+        if (endpointPool != null) {
+            return;
+        }
+        endpointPool = BrowserEndpointPool.from(ComponentUtil.getFessConfig());
+        if (endpointPool == null) {
+            return;
+        }
+        endpointPool.start();
+        logger.info("Rendering on {} remote browser endpoints.", endpointPool.size());
+    }
+
+    /**
+     * Opens the cache of static subresources if it is enabled. It must be opened before
+     * the browser contexts are created, as each context routes its requests through it.
+     */
+    protected void initSubresourceCache() {
+        if (subresourceCache != null) {
+            return;
+        }
+        subresourceCache = SubresourceCache.from(ComponentUtil.getFessConfig(), getDataDirectory());
+        if (subresourceCache != null) {
+            subresourceCache.open();
+        }
+    }
+
+    /**
+     * Opens the progress journal if it is enabled, resuming an interrupted run.
+     */
+    protected void initProgressJournal() {
+        progressJournal = ProgressJournal.from(ComponentUtil.getFessConfig(), getDataDirectory());
+        if (progressJournal != null) {
+            progressJournal.open();
+        }
+    }
+
+    /**
+     * Records a finished thumbnail in the progress journal if it is enabled.
+     *
+     * @param thumbnailId the thumbnail ID
+     * @param success true if the thumbnail was created, false if it failed
+     */
+    protected void recordProgress(final String thumbnailId, final boolean success) {
+        if (progressJournal != null) {
+            progressJournal.record(thumbnailId, success, System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Takes this process's share of the thumbnail ID partitions if a shared partition
+     * directory is configured.
+     */
+    protected void initPartitionCoordinator() {
+        partitionCoordinator = PartitionCoordinator.from(ComponentUtil.getFessConfig());
+        if (partitionCoordinator != null) {
+            partitionCoordinator.start();
+        }
+    }
+
+    /**
+     * Opens the persistent model of render durations if cost ordering is enabled.
+     */
+    protected void initCostModel() {
+        renderCostModel = RenderCostModel.from(ComponentUtil.getFessConfig(), getDataDirectory());
+        if (renderCostModel != null) {
+            renderCostModel.open();
+        }
+    }
+
+    /**
+     * Starts building the existence index of the thumbnail directory if it is enabled.
+     */
+    protected void initExistenceIndex() {
+        existenceIndex = ExistenceIndex.from(ComponentUtil.getFessConfig());
+        if (existenceIndex != null) {
+            existenceIndex.start();
+        }
+    }
+
+    /**
+     * Connects the thumbnail storage to the existence index.
+     */
+    protected void initThumbnailStorage() {
+        if (thumbnailStorage instanceof final FileThumbnailStorage storage) {
+            storage.setExistenceIndex(existenceIndex);
+        }
+    }
+
+    /**
+     * Creates the render slots and starts the render scheduler if it is enabled.
+     * The first slot uses the primary worker; each additional slot launches its own browser.
+     */
+    protected void initRenderScheduler() {
+        if (!schedulerEnabled) {
+            return;
+        }
+        for (int i = 1; i < workerSize; i++) {
+            try {
+                slotWorkers.add(newWorker(i));
+            } catch (final Exception e) {
+                logger.warn("Failed to create a render slot. {} slots are available.", i, e);
+                break;
+            }
+        }
         final FessConfig fessConfig = ComponentUtil.getFessConfig();
-        final String viewportWidthStr = fessConfig.getSystemProperty("thumbnail.playwright.viewport.width");
-        if (viewportWidthStr != null) {
-            viewportWidth = Integer.valueOf(viewportWidthStr);
+        final PropertyReader reader = new PropertyReader(fessConfig);
+        final int slotSize = slotWorkers.size() + 1;
+        renderScheduler = new RenderScheduler(slotSize, reader.getInt("thumbnail.playwright.queue.size", 1000), this::renderOnSlot);
+        renderScheduler.setHostLimiter(HostLimiter.from(fessConfig));
+        final double switchThreshold = reader.getDouble("thumbnail.playwright.priority.switch.threshold", 1.0);
+        thumbnailPriority = ThumbnailPriority.from(fessConfig);
+        if (thumbnailPriority != null) {
+            renderScheduler.setPriorityOrder(reader.getDouble("thumbnail.playwright.priority.aging", 0.1), switchThreshold);
+        }
+        if (renderCostModel != null) {
+            if (thumbnailPriority == null) {
+                renderScheduler.setPriorityOrder(0.0, switchThreshold);
+            }
+            renderScheduler.setCostOrder(reader.getDouble("thumbnail.playwright.cost.weight", 1.0));
         }
-        final String viewportHeightStr = fessConfig.getSystemProperty("thumbnail.playwright.viewport.height");
-        if (viewportHeightStr != null) {
-            viewportHeight = Integer.valueOf(viewportHeightStr);
+        renderScheduler.setConfigPolicy(new RenderScheduler.ConfigPolicy() {
+            @Override
+            public int getMaxConcurrency(final String configId) {
+                return getRenderProfile(configId).maxConcurrency();
+            }
+
+            @Override
+            public double getWeight(final String configId) {
+                return getRenderProfile(configId).weight();
+            }
+        });
+        admissionController = AdmissionController.from(fessConfig, slotSize);
+        if (admissionController != null) {
+            renderScheduler.setAdmissionController(admissionController);
+        }
+        concurrencyController = ConcurrencyController.from(fessConfig, slotSize);
+        if (concurrencyController != null) {
+            renderScheduler.setConcurrencyController(concurrencyController);
+        }
+        renderScheduler.start();
+        logger.info("Started the render scheduler with {} slots.", slotSize);
+    }
+
+    /**
+     * Starts the service rendering thumbnails requested at search time if enabled.
+     * It has a thread per render slot, so that each slot can take a request.
+     * The service also renders the batch thumbnails selected during the run, so its queue holds at least all of them.
+     */
+    protected void initOnDemandService() {
+        if (!onDemandEnabled) {
+            return;
+        }
+        batchQueue = new BatchQueue(onDemandBatchSize);
+        onDemandService = new OnDemandRenderService(slotWorkers.size() + 1, Math.max(onDemandQueueSize, onDemandBatchSize),
+                (thumbnailId, outputFile) -> generate(thumbnailId, outputFile, true));
+        onDemandService.start();
+        logger.info("Started the on-demand render service. Batch generation is limited to {} thumbnails per run.", onDemandBatchSize);
+    }
+
+    /**
+     * Starts the on-demand render service in a process other than the thumbnail job, such as
+     * the web application, where search-time code calls {@link #requestThumbnail(String, File)}.
+     * The service has a single thread and a bounded queue, and its browser is launched
+     * on the first request, so that a process that never requests a thumbnail runs no browser.
+     */
+    protected void initSearchTimeService() {
+        onDemandService = new OnDemandRenderService(1, onDemandQueueSize,
+                (thumbnailId, outputFile) -> {
+                    if (ensureWorker()) {
+                        generate(thumbnailId, outputFile, true);
+                    }
+                });
+        onDemandService.start();
+        logger.info("Started the on-demand render service for search-time requests.");
+    }
+
+    /**
+     * Launches the browser of the on-demand render service if it is not running yet.
+     *
+     * @return true if the browser is available
+     */
+    protected synchronized boolean ensureWorker() {
+        if (worker != null) {
+            return true;
+        }
+        try {
+            initSubresourceCache();
+            initEndpointPool();
+            worker = newWorker();
+            navigateOptions = new Page.NavigateOptions().setTimeout(navigationTimeout);
+            available = true;
+            return true;
+        } catch (final Exception e) {
+            logger.warn("Failed to launch a browser for on-demand rendering.", e);
+            return false;
+        }
+    }
+
+    /**
+     * Gets the browser type based on the configured browser name.
+     *
+     * @param playwright the Playwright instance
+     * @return the browser type (chromium, firefox, or webkit)
+     */
+    protected BrowserType getBrowserType(final Playwright playwright) {
+        if (logger.isDebugEnabled()) {
+            logger.debug("Create {}...", browserName);
         }
-        final String navigationTimeoutStr = fessConfig.getSystemProperty("thumbnail.playwright.navigation.timeout");
-        if (navigationTimeoutStr != null) {
-            navigationTimeout = Double.valueOf(navigationTimeoutStr);
+        return switch (browserName) {
+        case "firefox":
+            yield playwright.firefox();
+        case "webkit":
+            yield playwright.webkit();
+        case "chromium":
+            yield playwright.chromium();
+        default:
+            throw new CrawlerSystemException("Unknown browser name: " + browserName);
+        };
+    }
+
+    @Override
+    public boolean generate(final String thumbnailId, final File outputFile) {
+        return generate(thumbnailId, outputFile, false);
+    }
+
+    /**
+     * Requests a thumbnail for a document displayed without one, such as on a search result page.
+     * The thumbnail is rendered in the background by the on-demand render service; repeated
+     * requests for the same thumbnail are merged. Search-time code can look up this component
+     * as {@code htmlThumbnailGenerator} and call this method for results without a thumbnail file.
+     *
+     * @param thumbnailId the thumbnail ID
+     * @param outputFile the file to save the thumbnail to
+     * @return true if the thumbnail is queued or being rendered
+     */
+    public boolean requestThumbnail(final String thumbnailId, final File outputFile) {
+        if (onDemandService == null || thumbnailStorage.exists(outputFile)) {
+            return false;
         }
+        return onDemandService.request(thumbnailId, outputFile);
+    }
+
+    /**
+     * Generates a thumbnail in batch or on demand. When on-demand rendering is enabled,
+     * batch thumbnails are queued and the configured number of them with the highest priority
+     * are rendered at the end of the run; the rest are deferred by {@link #deferThumbnail(String)}.
+     *
+     * @param thumbnailId the thumbnail ID
+     * @param outputFile the file to save the thumbnail to
+     * @param onDemand true if the thumbnail was requested at search time
+     * @return true if the thumbnail was created or queued
+     */
+    protected boolean generate(final String thumbnailId, final File outputFile, final boolean onDemand) {
+        if (worker == null) {
+            logger.warn("[{}] Playwright is not availavle.", thumbnailId);
+            return false;
+        }
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("Generate Thumbnail: {}", thumbnailId);
+        }
+
+        if (partitionCoordinator != null && !onDemand) {
+            pollHandedOffThumbnails(System.currentTimeMillis());
+        }
+
+        if (partitionCoordinator != null && !onDemand && !partitionCoordinator.isOwned(thumbnailId)) {
+            // Fess deletes the queue entry, so the ID is handed off to the process holding its partition
+            try {
+                partitionCoordinator.handOff(thumbnailId, outputFile);
+            } catch (final Exception e) {
+                logger.warn("[{}] Failed to hand off the thumbnail to the process holding its partition.", thumbnailId, e);
+                return false;
+            }
+            partitionHandedOffCount.incrementAndGet();
+            if (logger.isDebugEnabled()) {
+                logger.debug("[{}] Handed off a thumbnail of a partition held by another process.", thumbnailId);
+            }
+            return true;
+        }
+
+        if (progressJournal != null && !onDemand) {
+            final ProgressJournal.Entry entry = progressJournal.getFinished(thumbnailId);
+            if (entry != null) {
+                journalSkippedCount.incrementAndGet();
+                if (logger.isDebugEnabled()) {
+                    logger.debug("[{}] Skipped a thumbnail finished earlier in the run.", thumbnailId);
+                }
+                return entry.success();
+            }
+        }
+
+        if (retryQueue != null && renderScheduler != null) {
+            submitDueRetries();
+        }
+
+        if (thumbnailStorage.exists(outputFile)) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("The thumbnail file exists: {}", outputFile.getAbsolutePath());
+            }
+            if (refreshQueue != null) {
+                offerRefresh(thumbnailId, outputFile);
+            }
+            recordProgress(thumbnailId, true);
+            return true;
+        }
+
+        if (!thumbnailStorage.prepare(outputFile)) {
+            logger.warn("Not found: {}", outputFile.getParentFile().getAbsolutePath());
+            return false;
+        }
+
+        final String flightKey = outputFile.getAbsolutePath();
+        final CompletableFuture<Boolean> flight = new CompletableFuture<>();
+        final CompletableFuture<Boolean> leader = inFlightMap.putIfAbsent(flightKey, flight);
+        if (leader != null) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("[{}] Waiting for the thumbnail in progress: {}", thumbnailId, flightKey);
+            }
+            return awaitResult(leader);
+        }
+        boolean created = false;
+        try {
+            if (thumbnailStorage.exists(outputFile)) {
+                created = true;
+            } else {
+                created = generateThumbnail(thumbnailId, outputFile, onDemand);
+            }
+            return created;
+        } finally {
+            flight.complete(created);
+            inFlightMap.remove(flightKey, flight);
+        }
+    }
+
+    /**
+     * Queues a batch thumbnail that does not exist yet, to be rendered at the end of the run
+     * if it is among the configured number of thumbnails with the highest priority.
+     *
+     * @param thumbnailId the thumbnail ID
+     * @param outputFile the file to save the thumbnail to
+     * @param priority the priority computed from the document lookup of {@link #generateThumbnail(String, File, boolean)}
+     * @return true if the thumbnail was queued, false if it was deferred
+     */
+    protected boolean queueBatchThumbnail(final String thumbnailId, final File outputFile, final double priority) {
+        final BatchQueue.Item left = batchQueue.offer(thumbnailId, outputFile, priority);
+        if (left == null) {
+            return true;
+        }
+        deferThumbnail(left.thumbnailId());
+        return !thumbnailId.equals(left.thumbnailId());
+    }
+
+    /**
+     * Leaves a batch thumbnail that is not rendered in this run. Fess deletes the queue entry
+     * regardless, so unless the thumbnail field is kept for a search-time caller of
+     * {@link #requestThumbnail(String, File)}, the field is cleared as for a failed thumbnail.
+     *
+     * @param thumbnailId the thumbnail ID
+     */
+    protected void deferThumbnail(final String thumbnailId) {
+        deferredCount.incrementAndGet();
+        if (!onDemandKeepField) {
+            updateThumbnailField(thumbnailId, StringUtil.EMPTY);
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("[{}] Left the thumbnail for on-demand rendering.", thumbnailId);
+        }
+    }
+
+    /**
+     * Renders the queued batch thumbnails, highest priority first, on the on-demand render service
+     * and waits for them until the deadline. The thumbnails not started by then are deferred.
+     *
+     * @param deadline the time in milliseconds to wait until
+     */
+    protected void renderBatchThumbnails(final long deadline) {
+        final List<BatchQueue.Item> items = batchQueue.drain();
+        if (!items.isEmpty()) {
+            logger.info("Rendering {} batch thumbnails.", items.size());
+            for (final BatchQueue.Item item : items) {
+                onDemandService.request(item.thumbnailId(), item.file());
+            }
+            if (!onDemandService.awaitIdle(deadline)) {
+                logger.warn("Stopped rendering batch thumbnails at the drain timeout.");
+            }
+        }
+        final Map<String, File> discardedMap = onDemandService.stop();
+        for (final BatchQueue.Item item : items) {
+            if (discardedMap.containsKey(item.thumbnailId())) {
+                deferThumbnail(item.thumbnailId());
+            }
+        }
+    }
+
+    /**
+     * Generates the thumbnails handed off to the partitions held by this process while the run is live,
+     * polling the handoff directories at most once per partition renewal interval. A nested call from
+     * the generation of a handed off thumbnail returns immediately, as the poll time has been updated.
+     *
+     * @param now the current time in milliseconds
+     */
+    protected void pollHandedOffThumbnails(final long now) {
+        final long lastTime = handoffPollTime.get();
+        if (now - lastTime < partitionCoordinator.getInterval() || !handoffPollTime.compareAndSet(lastTime, now)) {
+            return;
+        }
+        int count = 0;
+        for (final PartitionCoordinator.Handoff handoff : partitionCoordinator.getHandoffs(HANDOFF_POLL_SIZE)) {
+            if (generateHandedOffThumbnail(handoff)) {
+                count++;
+            }
+        }
+        if (count > 0 && logger.isDebugEnabled()) {
+            logger.debug("Generated {} handed off thumbnails.", count);
+        }
+    }
+
+    /**
+     * Generates the thumbnails handed off to the partitions held by this process until the deadline.
+     * A handoff is removed once its thumbnail has been processed; the rest are left for the next run.
+     *
+     * @param deadline the time in milliseconds after which no thumbnail is started
+     */
+    protected void generateHandedOffThumbnails(final long deadline) {
+        int count = 0;
+        for (final PartitionCoordinator.Handoff handoff : partitionCoordinator.getHandoffs()) {
+            if (System.currentTimeMillis() >= deadline) {
+                logger.warn("Stopped generating handed off thumbnails at the drain timeout.");
+                break;
+            }
+            if (generateHandedOffThumbnail(handoff)) {
+                count++;
+            }
+        }
+        if (count > 0) {
+            logger.info("Generated {} handed off thumbnails.", count);
+        }
+    }
+
+    /**
+     * Generates a handed off thumbnail if its partition is still held by this process,
+     * and removes the handoff once the thumbnail has been processed.
+     *
+     * @param handoff the handoff
+     * @return true if the thumbnail was processed
+     */
+    protected boolean generateHandedOffThumbnail(final PartitionCoordinator.Handoff handoff) {
+        if (!partitionCoordinator.isOwned(handoff.thumbnailId())) {
+            return false;
+        }
+        try {
+            generate(handoff.thumbnailId(), handoff.outputFile());
+        } catch (final Exception e) {
+            logger.warn("[{}] Failed to generate the handed off thumbnail.", handoff.thumbnailId(), e);
+        }
+        partitionCoordinator.complete(handoff);
+        return true;
+    }
+
+    /**
+     * Generates the thumbnail of the document. Only one caller at a time runs this method
+     * for the same output file; concurrent callers wait for its result.
+     *
+     * @param thumbnailId the thumbnail ID
+     * @param outputFile the file to save the thumbnail to
+     * @param onDemand true if the thumbnail was requested at search time
+     * @return true if the thumbnail was created or queued
+     */
+    protected boolean generateThumbnail(final String thumbnailId, final File outputFile, final boolean onDemand) {
+        return process(thumbnailId, (configId, url) -> {
+            final Map<String, Object> doc = getRenderDocument(thumbnailId, onDemand);
+            final String fingerprint = getFingerprint(doc);
+            if (fingerprint != null && reuseDuplicateThumbnail(thumbnailId, fingerprint, outputFile)) {
+                recordProgress(thumbnailId, true);
+                return true;
+            }
+            if (failureCache != null && !failureCache.isEligible(url, System.currentTimeMillis())) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Skipped a failed page until its backoff expires: {} -> {}", thumbnailId, url);
+                }
+                updateThumbnailField(thumbnailId, StringUtil.EMPTY);
+                recordProgress(thumbnailId, false);
+                return false;
+            }
+            if (reuseThumbnail(thumbnailId, url, outputFile)) {
+                recordProgress(thumbnailId, true);
+                return true;
+            }
+            if (batchQueue != null && !onDemand) {
+                return queueBatchThumbnail(thumbnailId, outputFile, thumbnailPriority != null ? getPriority(doc, false) : 0);
+            }
+            final FessConfig fessConfig = ComponentUtil.getFessConfig();
+            final RenderTask task = new RenderTask(thumbnailId, configId, url, outputFile,
+                    fessConfig.getThumbnailHtmlImageThumbnailWidthAsInteger(), fessConfig.getThumbnailHtmlImageThumbnailHeightAsInteger());
+            task.setFingerprint(fingerprint);
+            if (onDemand) {
+                task.setPriority(ON_DEMAND_PRIORITY);
+            } else if (thumbnailPriority != null) {
+                task.setPriority(getPriority(doc, thumbnailStorage.exists(outputFile)));
+            }
+            if (renderCostModel != null) {
+                task.setCost(renderCostModel.predict(url));
+            }
+            return render(task);
+        });
+    }
+
+    /**
+     * Waits for the result of a thumbnail generated by another caller.
+     *
+     * @param future the result of the other caller
+     * @return the result, or false if waiting failed
+     */
+    protected boolean awaitResult(final CompletableFuture<Boolean> future) {
+        try {
+            return Boolean.TRUE.equals(future.get());
+        } catch (final ExecutionException e) {
+            return false;
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Renders the task, directly or through the render scheduler.
+     * In asynchronous mode, this method returns true once the task is queued,
+     * and the result is handled when the render completes.
+     *
+     * @param task the task to render
+     * @return true if the thumbnail was created or queued
+     */
+    protected boolean render(final RenderTask task) {
+        if (renderScheduler == null) {
+            Throwable error = null;
+            try {
+                renderOnSlot(0, task);
+            } catch (final Throwable t) {
+                error = t;
+            }
+            return completeRender(task, error);
+        }
+
+        final CompletableFuture<Boolean> future = renderScheduler.submit(task);
+        if (future != task.getFuture()) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("[{}] Joined the pending render of {}", task.getThumbnailId(), task.getOutputFile().getAbsolutePath());
+            }
+            return asyncEnabled || task.isRefresh() || awaitResult(future) && thumbnailStorage.exists(task.getOutputFile());
+        }
+        if (asyncEnabled || task.isRefresh()) {
+            trackRender(future.whenComplete((result, error) -> completeRender(task, error)));
+            return true;
+        }
+        try {
+            future.get();
+            return completeRender(task, null);
+        } catch (final ExecutionException e) {
+            return completeRender(task, e.getCause());
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return completeRender(task, e);
+        }
+    }
+
+    /**
+     * Keeps track of a render completing in the background until it is done.
+     *
+     * @param future the future completed after the result of the render has been handled
+     */
+    protected void trackRender(final CompletableFuture<?> future) {
+        pendingRenderSet.add(future);
+        future.whenComplete((result, error) -> pendingRenderSet.remove(future));
+    }
+
+    /**
+     * Waits for the renders completing in the background.
+     *
+     * @param deadline the time in milliseconds to wait until
+     * @return true if all renders are done, or false if the deadline has passed first
+     */
+    protected boolean awaitRenders(final long deadline) {
+        while (!pendingRenderSet.isEmpty()) {
+            final long wait = deadline - System.currentTimeMillis();
+            if (wait <= 0L) {
+                return false;
+            }
+            try {
+                CompletableFuture.allOf(pendingRenderSet.toArray(new CompletableFuture<?>[0])).get(wait, TimeUnit.MILLISECONDS);
+            } catch (final ExecutionException e) {
+                // failures are handled by completeRender
+            } catch (final TimeoutException e) {
+                return false;
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    protected void updateThumbnailField(final String thumbnailId, final String value) {
+        if (fieldUpdater != null) {
+            fieldUpdater.add(thumbnailId, value);
+        } else {
+            super.updateThumbnailField(thumbnailId, value);
+        }
+    }
+
+    /**
+     * Hands the retries whose delay has passed to the render scheduler without waiting for them.
+     * Retries that do not fit in the pending queue stay in the retry queue for a later call.
+     */
+    protected void submitDueRetries() {
+        final long now = System.currentTimeMillis();
+        final List<RenderTask> tasks = retryQueue.pollDue(now);
+        for (int i = 0; i < tasks.size(); i++) {
+            final RenderTask task = tasks.get(i);
+            final CompletableFuture<Boolean> future = renderScheduler.offer(task);
+            if (future == null) {
+                for (int j = i; j < tasks.size(); j++) {
+                    retryQueue.requeue(tasks.get(j), now);
+                }
+                return;
+            }
+            if (future != task.getFuture()) {
+                continue;
+            }
+            if (logger.isDebugEnabled()) {
+                logger.debug("Retrying {} (attempt {})", task.getUrl(), task.getAttempts() + 1);
+            }
+            trackRender(future.whenComplete((result, error) -> completeRender(task, error)));
+        }
+    }
+
+    /**
+     * Renders the queued retries at the end of the run, through the render scheduler if it is enabled,
+     * waiting for their delays until the deadline. Retries left at the deadline are given up.
+     *
+     * @param deadline the time in milliseconds after which no retry is started
+     */
+    protected void drainRetries(final long deadline) {
+        if (retryQueue.size() > 0) {
+            logger.info("Retrying {} thumbnails.", retryQueue.size());
+        }
+        while (true) {
+            final long now = System.currentTimeMillis();
+            if (now >= deadline) {
+                break;
+            }
+            if (renderScheduler != null) {
+                submitDueRetries();
+            } else {
+                for (final RenderTask task : retryQueue.pollDue(now)) {
+                    render(task);
+                }
+            }
+            final long nextDueTime = retryQueue.getNextDueTime();
+            if (nextDueTime < 0L) {
+                // renders in flight may queue more retries
+                if (pendingRenderSet.isEmpty() || !awaitRenders(deadline)) {
+                    break;
+                }
+                continue;
+            }
+            final long wait = Math.min(nextDueTime, deadline) - System.currentTimeMillis();
+            if (wait > 0L) {
+                try {
+                    Thread.sleep(wait);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    logger.warn("Interrupted while waiting to retry {} thumbnails.", retryQueue.size());
+                    break;
+                }
+            }
+        }
+        final List<RenderTask> tasks = retryQueue.pollDue(Long.MAX_VALUE);
+        if (!tasks.isEmpty()) {
+            logger.warn("Gave up {} retries at the drain timeout.", tasks.size());
+            stopping = true;
+            for (final RenderTask task : tasks) {
+                completeRender(task, new RenderRejectedException("The run ended before the retry started."));
+            }
+        }
+    }
+
+    /**
+     * Checks if a render failure is likely to be transient.
+     *
+     * @param t the error thrown by the render
+     * @return true if rendering the page again later may succeed
+     */
+    protected boolean isRetryable(final Throwable t) {
+        if (t instanceof RetryableRenderException || t instanceof RenderRejectedException || isTimeout(t)) {
+            return true;
+        }
+        if (t instanceof PlaywrightException && t.getMessage() != null) {
+            final String message = t.getMessage();
+            return message.contains("net::ERR_CONNECTION_") || message.contains("net::ERR_TIMED_OUT")
+                    || message.contains("net::ERR_NETWORK_CHANGED") || message.contains("net::ERR_EMPTY_RESPONSE");
+        }
+        return false;
+    }
+
+    /**
+     * Checks if an HTTP status indicates a transient server condition.
+     *
+     * @param status the HTTP status code
+     * @return true for 429, 502, 503 and 504
+     */
+    protected boolean isRetryableStatus(final int status) {
+        return status == 429 || status == 502 || status == 503 || status == 504;
+    }
+
+    /**
+     * Handles the result of a render. On a transient failure, the render is queued for a retry
+     * if the retry queue accepts it. On other failures, the thumbnail field of the document
+     * is cleared and a partially written file is deleted. A failed refresh keeps the stale thumbnail.
+     *
+     * @param task the rendered task
+     * @param error the error thrown by the render, or null on success
+     * @return true if the thumbnail file was created
+     */
+    protected boolean completeRender(final RenderTask task, final Throwable error) {
+        final File outputFile = task.getOutputFile();
+        if (error == null) {
+            if (task.getFingerprint() != null) {
+                fingerprintIndex.add(task.getFingerprint(), outputFile);
+            }
+            if (failureCache != null) {
+                failureCache.recordSuccess(task.getUrl());
+            }
+            final boolean created = thumbnailStorage.exists(outputFile);
+            recordProgress(task.getThumbnailId(), created);
+            return created;
+        }
+
+        if (!task.isRefresh() && !deleteThumbnail(outputFile)) {
+            logger.warn("Failed to delete {}", outputFile.getAbsolutePath());
+        }
+        if (retryQueue != null && !task.isRefresh() && !stopping && isRetryable(error)
+                && retryQueue.offer(task, System.currentTimeMillis())) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Queued a retry of {} after {}:{}", task.getUrl(), error.getClass().getCanonicalName(), error.getMessage());
+            }
+            return false;
+        }
+
+        if (failureCache != null && !(error instanceof RenderRejectedException)) {
+            final FailureCache.Entry entry =
+                    failureCache.recordFailure(task.getUrl(), error.getClass().getName(), System.currentTimeMillis());
+            if (logger.isDebugEnabled()) {
+                logger.debug("Recorded failure #{} of {}. The next attempt is after {}.", entry.attempts(), task.getUrl(),
+                        entry.nextRetryTime());
+            }
+        }
+
+        if (task.isRefresh()) {
+            logger.warn("[{}] Failed to refresh the thumbnail: {} ({}:{})", task.getThumbnailId(), task.getUrl(),
+                    error.getClass().getCanonicalName(), error.getMessage());
+            return false;
+        }
+        logger.warn("Failed to create thumbnail: {} -> {} ({}:{})", task.getThumbnailId(), task.getUrl(),
+                error.getClass().getCanonicalName(), error.getMessage());
+        if (logger.isDebugEnabled()) {
+            logger.debug("Details for failed thumbnail creation.", error);
+        }
+        updateThumbnailField(task.getThumbnailId(), StringUtil.EMPTY);
+        recordProgress(task.getThumbnailId(), false);
+        return false;
+    }
+
+    /**
+     * Renders the task on a render slot. The first slot shares the primary worker
+     * with direct callers of {@link #createScreenshot(String, int, int, File)}.
+     * If the circuit of the host is open, the render fails without loading the page.
+     * A disconnected slot is reconnected before the circuit is checked, so that a failure
+     * to reconnect does not take the probe of a half-open circuit without recording an outcome.
+     *
+     * @param slot the slot number
+     * @param task the task to render
+     */
+    protected void renderOnSlot(final int slot, final RenderTask task) {
+        if (endpointPool != null) {
+            reconnectWorker(slot);
+        }
+        if (circuitBreaker != null && !circuitBreaker.allowRequest(task.getHost(), System.currentTimeMillis())) {
+            throw new RenderRejectedException("The circuit for " + task.getHost() + " is open.");
+        }
+        if (concurrencyController != null) {
+            concurrencyController.begin();
+        }
+        final RenderProfile profile = getRenderProfile(task.getConfigId());
+        final long startTime = System.currentTimeMillis();
+        try {
+            if (slot == 0) {
+                createScreenshot(profile, task.getUrl(), task.getWidth(), task.getHeight(), task.getOutputFile());
+            } else {
+                createScreenshot(slotWorkers.get(slot - 1).getValue4(), profile, task.getUrl(), task.getWidth(), task.getHeight(),
+                        task.getOutputFile());
+            }
+        } catch (final RuntimeException | Error e) {
+            final long now = System.currentTimeMillis();
+            if (circuitBreaker != null) {
+                circuitBreaker.recordFailure(task.getHost(), now, isTimeout(e));
+            }
+            if (concurrencyController != null) {
+                concurrencyController.end(now - startTime, true, isTimeout(e), now);
+            }
+            if (renderCostModel != null) {
+                renderCostModel.record(task.getUrl(), now - startTime, now);
+            }
+            throw e;
+        }
+        if (circuitBreaker != null) {
+            circuitBreaker.recordSuccess(task.getHost());
+        }
+        final long now = System.currentTimeMillis();
+        if (concurrencyController != null) {
+            concurrencyController.end(now - startTime, false, false, now);
+        }
+        if (renderCostModel != null) {
+            renderCostModel.record(task.getUrl(), now - startTime, now);
+        }
+    }
+
+    /**
+     * Replaces the worker of a render slot whose browser has disconnected, such as after its
+     * remote endpoint died, with a worker on another endpoint.
+     *
+     * @param slot the render slot
+     */
+    protected void reconnectWorker(final int slot) {
+        if (slot == 0) {
+            synchronized (this) {
+                if (!worker.getValue2().isConnected()) {
+                    final Tuple4<Playwright, Browser, BrowserContext, Page> oldWorker = worker;
+                    worker = newWorker(0);
+                    close(oldWorker.getValue1(), oldWorker.getValue2(), oldWorker.getValue3(), oldWorker.getValue4());
+                    logger.info("Reconnected render slot 0.");
+                }
+            }
+            return;
+        }
+        final Tuple4<Playwright, Browser, BrowserContext, Page> oldWorker = slotWorkers.get(slot - 1);
+        if (!oldWorker.getValue2().isConnected()) {
+            slotWorkers.set(slot - 1, newWorker(slot));
+            close(oldWorker.getValue1(), oldWorker.getValue2(), oldWorker.getValue3(), oldWorker.getValue4());
+            logger.info("Reconnected render slot {}.", slot);
+        }
+    }
+
+    /**
+     * Gets the render settings of a crawling config. The settings are read from the
+     * {@code thumbnail.playwright.config.<configId>.*} system properties on first use,
+     * with the generator-wide settings as defaults.
+     *
+     * @param configId the crawling config ID, or null
+     * @return the render settings
+     */
+    protected RenderProfile getRenderProfile(final String configId) {
+        if (StringUtil.isBlank(configId)) {
+            return getDefaultRenderProfile();
+        }
+        return renderProfileMap.computeIfAbsent(configId, this::loadRenderProfile);
+    }
+
+    /**
+     * Gets the generator-wide render settings.
+     *
+     * @return the render settings
+     */
+    protected RenderProfile getDefaultRenderProfile() {
+        return new RenderProfile(viewportWidth, viewportHeight, renderedState, blockUrls, encoderQuality, 0, 1.0);
+    }
+
+    /**
+     * Reads the render settings of a crawling config from the system properties.
+     *
+     * @param configId the crawling config ID
+     * @return the render settings
+     */
+    protected RenderProfile loadRenderProfile(final String configId) {
+        final RenderProfile defaults = getDefaultRenderProfile();
+        final FessConfig fessConfig = ComponentUtil.getFessConfig();
+        final String prefix = RenderProfile.PROPERTY_PREFIX + configId + ".";
+        int width = defaults.viewportWidth();
+        final String widthStr = fessConfig.getSystemProperty(prefix + "viewport.width");
+        if (widthStr != null) {
+            width = Integer.parseInt(widthStr);
+        }
+        int height = defaults.viewportHeight();
+        final String heightStr = fessConfig.getSystemProperty(prefix + "viewport.height");
+        if (heightStr != null) {
+            height = Integer.parseInt(heightStr);
+        }
+        LoadState loadState = defaults.renderedState();
+        final String loadStateStr = fessConfig.getSystemProperty(prefix + "rendered.state");
+        if (StringUtil.isNotBlank(loadStateStr)) {
+            loadState = RenderProfile.parseLoadState(loadStateStr);
+        }
+        List<String> patterns = defaults.blockUrls();
+        final String patternsStr = fessConfig.getSystemProperty(prefix + "block.urls");
+        if (patternsStr != null) {
+            patterns = RenderProfile.parseBlockUrls(patternsStr);
+        }
+        float quality = defaults.quality();
+        final String qualityStr = fessConfig.getSystemProperty(prefix + "encoder.quality");
+        if (qualityStr != null) {
+            quality = Float.parseFloat(qualityStr);
+        }
+        int quota = defaults.maxConcurrency();
+        final String quotaStr = fessConfig.getSystemProperty(prefix + "max.concurrency");
+        if (quotaStr != null) {
+            quota = Integer.parseInt(quotaStr);
+        }
+        double weight = defaults.weight();
+        final String weightStr = fessConfig.getSystemProperty(prefix + "weight");
+        if (weightStr != null) {
+            weight = Double.parseDouble(weightStr);
+        }
+        final RenderProfile profile = new RenderProfile(width, height, loadState, patterns, quality, quota, weight);
+        if (logger.isDebugEnabled()) {
+            logger.debug("Render settings of {}: {}", configId, profile);
+        }
+        return profile;
+    }
+
+    /**
+     * Checks if a render failed because the page did not load in time.
+     *
+     * @param t the error thrown by the render
+     * @return true if the error is caused by a timeout
+     */
+    protected boolean isTimeout(final Throwable t) {
+        for (Throwable cause = t; cause != null; cause = cause.getCause()) {
+            if (cause instanceof TimeoutError) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the metrics of this generator, such as the state of the circuit breaker.
+     *
+     * @return the metrics keyed by name
+     */
+    public Map<String, Object> getMetrics() {
+        final Map<String, Object> metrics = new LinkedHashMap<>();
+        if (circuitBreaker != null) {
+            metrics.putAll(circuitBreaker.getMetrics());
+        }
+        if (admissionController != null) {
+            metrics.putAll(admissionController.getMetrics());
+        }
+        if (concurrencyController != null) {
+            metrics.putAll(concurrencyController.getMetrics());
+        }
+        if (renderCostModel != null) {
+            metrics.putAll(renderCostModel.getMetrics());
+        }
+        if (subresourceCache != null) {
+            metrics.putAll(subresourceCache.getMetrics());
+        }
+        if (endpointPool != null) {
+            metrics.putAll(endpointPool.getMetrics());
+        }
+        if (progressJournal != null) {
+            metrics.putAll(progressJournal.getMetrics());
+            metrics.put("journal.skipped", journalSkippedCount.get());
+        }
+        if (partitionCoordinator != null) {
+            metrics.putAll(partitionCoordinator.getMetrics());
+            metrics.put("partition.handed.off", partitionHandedOffCount.get());
+        }
+        if (onDemandService != null) {
+            metrics.putAll(onDemandService.getMetrics());
+            if (batchQueue != null) {
+                metrics.put("ondemand.batch.queued", batchQueue.size());
+            }
+            metrics.put("ondemand.batch.deferred", deferredCount.get());
+        }
+        return metrics;
+    }
+
+    /**
+     * Copies a thumbnail rendered earlier for the same URL to the output file
+     * if the page has not changed since then. The thumbnail is copied from the retained copy,
+     * so that it can be reused after Fess has deleted or expired the thumbnail file.
+     *
+     * @param thumbnailId the thumbnail ID
+     * @param url the page URL
+     * @param outputFile the file to save the thumbnail to
+     * @return true if the thumbnail was reused
+     */
+    protected boolean reuseThumbnail(final String thumbnailId, final String url, final File outputFile) {
+        if (validatorCache == null) {
+            return false;
+        }
+        final ValidatorCache.Entry entry = validatorCache.get(url);
+        if (entry == null) {
+            return false;
+        }
+        final File sourceFile = new File(entry.path());
+        if (!thumbnailStorage.exists(sourceFile) || !isNotModified(url, entry)) {
+            return false;
+        }
+        try {
+            copyThumbnail(sourceFile, outputFile);
+        } catch (final IOException e) {
+            logger.warn("Failed to copy {} to {}", sourceFile.getAbsolutePath(), outputFile.getAbsolutePath(), e);
+            deleteThumbnail(outputFile);
+            return false;
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("[{}] Reused the thumbnail of the unchanged page: {} -> {}", thumbnailId, url, sourceFile.getAbsolutePath());
+        }
+        return true;
+    }
+
+    /**
+     * Checks with a conditional request if the page has not changed since the entry was recorded.
+     * No request is sent while the circuit of the host is open, so that an unreachable host
+     * does not hold up the caller until the request times out.
+     *
+     * @param url the page URL
+     * @param entry the recorded entry
+     * @return true if the page is known to be unchanged
+     */
+    protected boolean isNotModified(final String url, final ValidatorCache.Entry entry) {
+        if (circuitBreaker != null && circuitBreaker.isOpen(RenderTask.parseHost(url), System.currentTimeMillis())) {
+            return false;
+        }
+        return validatorCache.isNotModified(url, entry);
+    }
+
+    /**
+     * Queues an existing thumbnail for re-rendering if it is older than the refresh TTL.
+     * The stale thumbnail is still served until it is replaced. The document is only looked up
+     * for thumbnails that are stale and that the refresh queue can accept.
+     *
+     * @param thumbnailId the thumbnail ID
+     * @param outputFile the existing thumbnail file
+     */
+    protected void offerRefresh(final String thumbnailId, final File outputFile) {
+        final long lastModified = thumbnailStorage.getLastModified(outputFile);
+        if (!refreshQueue.isStale(lastModified, System.currentTimeMillis()) || !refreshQueue.canAccept(thumbnailId, lastModified)) {
+            return;
+        }
+        if (refreshQueue.offer(
+                new RefreshQueue.Item(thumbnailId, outputFile, lastModified, isModifiedSince(thumbnailId, lastModified)))
+                && logger.isDebugEnabled()) {
+            logger.debug("[{}] Queued the stale thumbnail: {}", thumbnailId, outputFile.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Checks if the document was modified after its thumbnail was rendered.
+     *
+     * @param thumbnailId the thumbnail ID
+     * @param time the time the thumbnail was rendered
+     * @return true if the last modified time of the document is later
+     */
+    protected boolean isModifiedSince(final String thumbnailId, final long time) {
+        final String field = ComponentUtil.getFessConfig().getIndexFieldLastModified();
+        final Map<String, Object> doc = getDocument(thumbnailId, field);
+        return doc != null && ThumbnailPriority.toTime(doc.get(field)) > time;
+    }
+
+    /**
+     * Gets fields of the document of a thumbnail from the index.
+     *
+     * @param thumbnailId the thumbnail ID
+     * @param fields the field names
+     * @return the field values, or null if the document cannot be read
+     */
+    protected Map<String, Object> getDocument(final String thumbnailId, final String... fields) {
+        try {
+            return ComponentUtil.getIndexingHelper().getDocument(ComponentUtil.getSearchEngineClient(), thumbnailId, fields);
+        } catch (final Exception e) {
+            logger.warn("[{}] Failed to get the document.", thumbnailId, e);
+            return null;
+        }
+    }
+
+    /**
+     * Re-renders the queued stale thumbnails as low priority tasks, highest ranked first.
+     * No refresh is started after the deadline.
+     *
+     * @param deadline the time in milliseconds after which no refresh is started
+     */
+    protected void refreshStaleThumbnails(final long deadline) {
+        final List<RefreshQueue.Item> items = refreshQueue.drain();
+        if (items.isEmpty()) {
+            return;
+        }
+        logger.info("Refreshing {} stale thumbnails.", items.size());
+        int count = 0;
+        for (final RefreshQueue.Item item : items) {
+            if (System.currentTimeMillis() >= deadline) {
+                logger.warn("Stopped refreshing stale thumbnails at the drain timeout.");
+                break;
+            }
+            try {
+                if (process(item.thumbnailId(), (configId, url) -> refreshThumbnail(item.thumbnailId(), configId, url, item.file()))) {
+                    count++;
+                }
+            } catch (final Exception e) {
+                logger.warn("[{}] Failed to refresh the thumbnail: {}", item.thumbnailId(), e.getMessage());
+            }
+        }
+        logger.info("Refreshed or queued {}/{} stale thumbnails.", count, items.size());
+    }
+
+    /**
+     * Re-renders a stale thumbnail through {@link #render(RenderTask)}, so that the render goes
+     * through the scheduler, host limits and circuit breaker like any other. The existing thumbnail
+     * is replaced only when the new one has been written, and is kept if the render fails.
+     * If the validator cache shows that the page is unchanged, the existing thumbnail is kept and touched.
+     *
+     * @param thumbnailId the thumbnail ID
+     * @param configId the crawling config ID
+     * @param url the page URL
+     * @param outputFile the existing thumbnail file
+     * @return true if the thumbnail was refreshed or queued
+     */
+    protected boolean refreshThumbnail(final String thumbnailId, final String configId, final String url, final File outputFile) {
+        if (failureCache != null && !failureCache.isEligible(url, System.currentTimeMillis())) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Skipped refreshing a failed page until its backoff expires: {} -> {}", thumbnailId, url);
+            }
+            return false;
+        }
+        if (validatorCache != null) {
+            final ValidatorCache.Entry entry = validatorCache.get(url);
+            if (entry != null && isNotModified(url, entry)) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug("[{}] The page is unchanged: {}", thumbnailId, url);
+                }
+                return thumbnailStorage.touch(outputFile);
+            }
+        }
+        final FessConfig fessConfig = ComponentUtil.getFessConfig();
+        final RenderTask task = new RenderTask(thumbnailId, configId, url, outputFile, fessConfig.getThumbnailHtmlImageThumbnailWidthAsInteger(),
+                fessConfig.getThumbnailHtmlImageThumbnailHeightAsInteger());
+        task.setRefresh(true);
+        task.setPriority(REFRESH_PRIORITY);
+        if (renderCostModel != null) {
+            task.setCost(renderCostModel.predict(url));
+        }
+        return render(task);
+    }
+
+    /**
+     * Gets the fields a render needs from the document in a single lookup:
+     * the content fingerprint if the fingerprint index is enabled, and the priority signals
+     * if priorities are enabled and the thumbnail was not requested at search time.
+     *
+     * @param thumbnailId the thumbnail ID
+     * @param onDemand true if the thumbnail was requested at search time
+     * @return the field values, or null if no field is needed or the document cannot be read
+     */
+    protected Map<String, Object> getRenderDocument(final String thumbnailId, final boolean onDemand) {
+        final List<String> fieldList = new ArrayList<>();
+        if (fingerprintIndex != null) {
+            fieldList.add(fingerprintField);
+        }
+        if (thumbnailPriority != null && !onDemand) {
+            fieldList.addAll(Arrays.asList(getPriorityFields()));
+        }
+        if (fieldList.isEmpty()) {
+            return null;
+        }
+        return getDocument(thumbnailId, fieldList.toArray(new String[fieldList.size()]));
+    }
+
+    /**
+     * Gets the content fingerprint stored by the transformer for the document.
+     *
+     * @param doc the document fields returned by {@link #getRenderDocument(String, boolean)}, or null
+     * @return the fingerprint, or null if not available
+     */
+    protected String getFingerprint(final Map<String, Object> doc) {
+        if (fingerprintIndex == null || doc == null) {
+            return null;
+        }
+        final String fingerprint = DocumentUtil.getValue(doc, fingerprintField, String.class);
+        return ContentFingerprint.isValid(fingerprint) ? fingerprint : null;
+    }
+
+    /**
+     * Gets the names of the boost, click count, favorite count and last modified fields.
+     *
+     * @return the field names
+     */
+    protected String[] getPriorityFields() {
+        final FessConfig fessConfig = ComponentUtil.getFessConfig();
+        return new String[] { fessConfig.getIndexFieldBoost(), fessConfig.getIndexFieldClickCount(), fessConfig.getIndexFieldFavoriteCount(),
+                fessConfig.getIndexFieldLastModified() };
     }
 
     /**
-     * Gets the browser type based on the configured browser name.
+     * Computes the render priority of a thumbnail from the boost, click count, favorite count
+     * and last modified time of its document.
      *
-     * @param playwright the Playwright instance
-     * @return the browser type (chromium, firefox, or webkit)
+     * @param doc the document fields returned by {@link #getRenderDocument(String, boolean)}, or null
+     * @param hasThumbnail true if the document already has a thumbnail
+     * @return the priority, or 0 if the document cannot be read
      */
-    protected BrowserType getBrowserType(final Playwright playwright) {
-        if (logger.isDebugEnabled()) {
-            logger.debug("Create {}...", browserName);
+    protected double getPriority(final Map<String, Object> doc, final boolean hasThumbnail) {
+        if (doc == null) {
+            return 0;
         }
-        return switch (browserName) {
-        case "firefox":
-            yield playwright.firefox();
-        case "webkit":
-            yield playwright.webkit();
-        case "chromium":
-            yield playwright.chromium();
-        default:
-            throw new CrawlerSystemException("Unknown browser name: " + browserName);
-        };
+        final String[] fields = getPriorityFields();
+        return thumbnailPriority.compute(doc.get(fields[0]), doc.get(fields[1]), doc.get(fields[2]), doc.get(fields[3]), hasThumbnail,
+                System.currentTimeMillis());
     }
 
-    @Override
-    public boolean generate(final String thumbnailId, final File outputFile) {
-        if (worker == null) {
-            logger.warn("[{}] Playwright is not availavle.", thumbnailId);
+    /**
+     * Links or copies a thumbnail already rendered for a page with the same content fingerprint.
+     *
+     * @param thumbnailId the thumbnail ID
+     * @param fingerprint the content fingerprint
+     * @param outputFile the file to save the thumbnail to
+     * @return true if an existing thumbnail was reused
+     */
+    protected boolean reuseDuplicateThumbnail(final String thumbnailId, final String fingerprint, final File outputFile) {
+        final File sourceFile = fingerprintIndex.find(fingerprint);
+        if (sourceFile == null) {
             return false;
         }
-
-        if (logger.isDebugEnabled()) {
-            logger.debug("Generate Thumbnail: {}", thumbnailId);
-        }
-
-        if (outputFile.exists()) {
-            if (logger.isDebugEnabled()) {
-                logger.debug("The thumbnail file exists: {}", outputFile.getAbsolutePath());
-            }
-            return true;
-        }
-
-        final File parentFile = outputFile.getParentFile();
-        if (!parentFile.exists()) {
-            parentFile.mkdirs();
-        }
-        if (!parentFile.isDirectory()) {
-            logger.warn("Not found: {}", parentFile.getAbsolutePath());
+        try {
+            copyThumbnail(sourceFile, outputFile);
+        } catch (final IOException e) {
+            logger.warn("Failed to copy {} to {}", sourceFile.getAbsolutePath(), outputFile.getAbsolutePath(), e);
+            deleteThumbnail(outputFile);
             return false;
         }
-
-        return process(thumbnailId, (configId, url) -> {
-            boolean created = false;
-            final FessConfig fessConfig = ComponentUtil.getFessConfig();
-            final int targetWidth = fessConfig.getThumbnailHtmlImageThumbnailWidthAsInteger();
-            final int maxHeight = fessConfig.getThumbnailHtmlImageThumbnailHeightAsInteger();
-            try {
-                createScreenshot(url, targetWidth, maxHeight, outputFile);
-                created = true;
-            } catch (final Throwable t) {
-                logger.warn("Failed to create thumbnail: {} -> {} ({}:{})", thumbnailId, url, t.getClass().getCanonicalName(),
-                        t.getMessage());
-                if (logger.isDebugEnabled()) {
-                    logger.debug("Details for failed thumbnail creation.", t);
-                }
-            } finally {
-                if (!created) {
-                    updateThumbnailField(thumbnailId, StringUtil.EMPTY);
-                    if (outputFile.exists() && !outputFile.delete()) {
-                        logger.warn("Failed to delete {}", outputFile.getAbsolutePath());
-                    }
-                }
-            }
-            return outputFile.exists();
-        });
+        if (logger.isDebugEnabled()) {
+            logger.debug("[{}] Reused the thumbnail of the duplicate page: {} -> {}", thumbnailId, fingerprint, sourceFile.getAbsolutePath());
+        }
+        return true;
     }
 
     /**
@@ -259,11 +1811,66 @@ public class PlaywrightThumbnailGenerator extends BaseThumbnailGenerator {
      * @param outputFile the file to save the thumbnail to
      */
     protected synchronized void createScreenshot(final String url, final int width, final int height, final File outputFile) {
-        final Page page = worker.getValue4();
+        createScreenshot(worker.getValue4(), getRenderProfile(null), url, width, height, outputFile);
+    }
+
+    /**
+     * Creates a screenshot of the specified URL with the render settings of a crawling config
+     * on the primary browser page. This method is synchronized to ensure thread-safe access to the browser page.
+     *
+     * @param profile the render settings
+     * @param url the URL to capture
+     * @param width the target width for the thumbnail
+     * @param height the maximum height for the thumbnail
+     * @param outputFile the file to save the thumbnail to
+     */
+    protected synchronized void createScreenshot(final RenderProfile profile, final String url, final int width, final int height,
+            final File outputFile) {
+        createScreenshot(worker.getValue4(), profile, url, width, height, outputFile);
+    }
+
+    /**
+     * Creates a screenshot of the specified URL on the given page and resizes it to the target dimensions.
+     * The page must not be used by other threads at the same time.
+     *
+     * @param page the page to render the URL on
+     * @param url the URL to capture
+     * @param width the target width for the thumbnail
+     * @param height the maximum height for the thumbnail
+     * @param outputFile the file to save the thumbnail to
+     */
+    protected void createScreenshot(final Page page, final String url, final int width, final int height, final File outputFile) {
+        createScreenshot(page, getRenderProfile(null), url, width, height, outputFile);
+    }
+
+    /**
+     * Creates a screenshot of the specified URL on the given page with the render settings of a crawling config.
+     * The viewport is resized if needed, and the blocked URLs are aborted while the page loads.
+     * The page must not be used by other threads at the same time.
+     *
+     * @param page the page to render the URL on
+     * @param profile the render settings
+     * @param url the URL to capture
+     * @param width the target width for the thumbnail
+     * @param height the maximum height for the thumbnail
+     * @param outputFile the file to save the thumbnail to
+     */
+    protected void createScreenshot(final Page page, final RenderProfile profile, final String url, final int width, final int height,
+            final File outputFile) {
+        final ViewportSize viewportSize = page.viewportSize();
+        if (viewportSize == null || viewportSize.width != profile.viewportWidth() || viewportSize.height != profile.viewportHeight()) {
+            page.setViewportSize(profile.viewportWidth(), profile.viewportHeight());
+        }
+        for (final String pattern : profile.blockUrls()) {
+            page.route(pattern, route -> route.abort());
+        }
         File tempPngFile = null;
         try {
             final Response response = page.navigate(url, navigateOptions);
-            page.waitForLoadState(renderedState);
+            if (retryQueue != null && response != null && isRetryableStatus(response.status())) {
+                throw new RetryableRenderException("Received " + response.status() + " from " + url);
+            }
+            page.waitForLoadState(profile.renderedState());
             if (logger.isDebugEnabled()) {
                 logger.debug("Loaded {} -> {}", url, response.url());
             }
@@ -275,49 +1882,208 @@ public class PlaywrightThumbnailGenerator extends BaseThumbnailGenerator {
                 logger.debug("Saved screenshot: {}", tempPngFile.getAbsolutePath());
             }
 
-            // Load the original screenshot
-            final BufferedImage img = ImageIO.read(tempPngFile);
+            // Decode only the part of the screenshot the thumbnails need
+            final List<ImageDerivative> outputs = getOutputs(width, height);
+            final double aspectRatio = outputs.stream().mapToDouble(o -> (double) o.height() / o.width()).max().orElse(1.0);
+            final BufferedImage img = ImageResizer.read(tempPngFile, outputs.get(0).width(), aspectRatio, decodeScale);
 
-            final int imageWidth = img.getWidth();
-            final int imageHeight = img.getHeight();
             if (logger.isDebugEnabled()) {
-                logger.debug("Screenshot is {}x{}", imageWidth, imageHeight);
+                logger.debug("Decoded screenshot is {}x{}", img.getWidth(), img.getHeight());
             }
 
-            // Calculate the target height to maintain the aspect ratio
-            final int targetHeight = (int) ((double) imageHeight / imageWidth * width);
+            writeImages(img, outputs, outputFile, profile.quality());
 
-            // Create a new image with the target dimensions
-            BufferedImage resizedImg = new BufferedImage(width, targetHeight, BufferedImage.TYPE_INT_ARGB);
-            Graphics2D g2d = null;
-            try {
-                g2d = resizedImg.createGraphics();
-                g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-                g2d.drawImage(img, 0, 0, width, targetHeight, null);
-            } finally {
-                if (g2d != null) {
-                    g2d.dispose();
-                }
+            if (validatorCache != null) {
+                recordValidators(url, response, outputFile);
+            }
+        } catch (final IOException e) {
+            throw new IORuntimeException(e);
+        } finally {
+            for (final String pattern : profile.blockUrls()) {
+                page.unroute(pattern);
+            }
+            if (tempPngFile != null) {
+                tempPngFile.delete();
             }
+        }
+    }
+
+    /**
+     * Gets the main thumbnail and the configured derivatives, largest first.
+     * The main thumbnail has an empty suffix.
+     *
+     * @param width the target width of the main thumbnail
+     * @param height the maximum height of the main thumbnail
+     * @return the thumbnail sizes
+     */
+    protected List<ImageDerivative> getOutputs(final int width, final int height) {
+        final List<ImageDerivative> outputs = new ArrayList<>(derivatives);
+        outputs.add(new ImageDerivative(StringUtil.EMPTY, width, height, "png"));
+        outputs.sort(Comparator.comparingInt(ImageDerivative::width).reversed());
+        return outputs;
+    }
 
+    /**
+     * Writes the main thumbnail and the configured derivatives from one captured image.
+     * The sizes are produced from the largest to the smallest, each one resized from the
+     * previous one by successive halving. The main thumbnail is stored last, so that its
+     * existence means all derivatives have been written.
+     *
+     * @param image the captured image
+     * @param outputs the thumbnail sizes, largest first, as returned by {@link #getOutputs(int, int)}
+     * @param outputFile the file to save the main thumbnail to
+     * @param quality the compression quality from 0 to 1, or a negative value for the encoder default
+     * @throws IOException if an image cannot be written
+     */
+    protected void writeImages(final BufferedImage image, final List<ImageDerivative> outputs, final File outputFile,
+            final float quality) throws IOException {
+        ImageDerivative main = null;
+        final Map<ImageDerivative, BufferedImage> imageMap = new LinkedHashMap<>();
+        BufferedImage source = image;
+        for (final ImageDerivative output : outputs) {
+            // Calculate the target height to maintain the aspect ratio of the capture
+            final int targetHeight = Math.max((int) ((double) image.getHeight() / image.getWidth() * output.width()), 1);
+            source = ImageResizer.resize(source, output.width(), targetHeight);
             if (logger.isDebugEnabled()) {
-                logger.debug("Resized screenshot is {}x{}", resizedImg.getWidth(), resizedImg.getHeight());
+                logger.debug("Resized screenshot is {}x{}", source.getWidth(), source.getHeight());
             }
-
             // If the resized image is taller than the maximum height, clip it
-            if (resizedImg.getHeight() > height) {
-                resizedImg = resizedImg.getSubimage(0, 0, width, height);
+            imageMap.put(output,
+                    source.getHeight() > output.height() ? source.getSubimage(0, 0, output.width(), output.height()) : source);
+        }
+
+        for (final ImageDerivative output : outputs) {
+            if (output.suffix().isEmpty()) {
+                main = output;
+            } else {
+                writeImage(imageMap.get(output), output, output.getFile(outputFile), quality);
             }
+        }
+        writeImage(imageMap.get(main), main, outputFile, quality);
+    }
 
-            // Save the resized/clipped image
-            ImageIO.write(resizedImg, "png", outputFile);
-        } catch (final IOException e) {
-            throw new IORuntimeException(e);
+    /**
+     * Copies a thumbnail with its derivatives. The main thumbnail is copied last,
+     * so that its existence still means all derivatives have been written.
+     *
+     * @param sourceFile the main thumbnail file to copy
+     * @param targetFile the main thumbnail file to copy to
+     * @throws IOException if the thumbnail or one of its derivatives cannot be copied
+     */
+    protected void copyThumbnail(final File sourceFile, final File targetFile) throws IOException {
+        for (final ImageDerivative derivative : derivatives) {
+            thumbnailStorage.copy(derivative.getFile(sourceFile), derivative.getFile(targetFile));
+        }
+        thumbnailStorage.copy(sourceFile, targetFile);
+    }
+
+    /**
+     * Deletes a thumbnail with its derivatives. The main thumbnail is deleted first,
+     * so that a thumbnail is never seen without its derivatives.
+     *
+     * @param file the main thumbnail file
+     * @return true if the thumbnail and all derivatives no longer exist
+     */
+    protected boolean deleteThumbnail(final File file) {
+        boolean deleted = thumbnailStorage.delete(file);
+        for (final ImageDerivative derivative : derivatives) {
+            if (!thumbnailStorage.delete(derivative.getFile(file))) {
+                logger.warn("Failed to delete {}", derivative.getFile(file).getAbsolutePath());
+                deleted = false;
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * Encodes an image and stores it, replacing the stored thumbnail at once.
+     *
+     * @param image the image
+     * @param output the size and format of the image
+     * @param file the thumbnail file
+     * @param quality the compression quality from 0 to 1, or a negative value for the encoder default
+     * @throws IOException if the image cannot be written
+     */
+    protected void writeImage(final BufferedImage image, final ImageDerivative output, final File file, final float quality)
+            throws IOException {
+        final Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(output.format());
+        if (!writers.hasNext()) {
+            throw new IOException("No image writer for " + output.format());
+        }
+        final ImageWriter writer = writers.next();
+        final File tempFile = thumbnailStorage.createTempFile(file);
+        try {
+            final ImageWriteParam param = writer.getDefaultWriteParam();
+            if (quality >= 0 && param.canWriteCompressed()) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                if (param.getCompressionType() == null && param.getCompressionTypes() != null) {
+                    param.setCompressionType(param.getCompressionTypes()[0]);
+                }
+                param.setCompressionQuality(Math.min(quality, 1.0f));
+            }
+            try (ImageOutputStream out = ImageIO.createImageOutputStream(tempFile)) {
+                writer.setOutput(out);
+                writer.write(null, new IIOImage(output.hasAlpha() ? image : ImageResizer.toOpaque(image), null, null), param);
+            }
+            thumbnailStorage.store(tempFile, file);
         } finally {
-            if (tempPngFile != null) {
-                tempPngFile.delete();
+            writer.dispose();
+            if (tempFile.exists() && !tempFile.delete()) {
+                logger.warn("Failed to delete {}", tempFile.getAbsolutePath());
+            }
+        }
+    }
+
+    /**
+     * Records the HTTP validators of the rendered page.
+     *
+     * @param url the page URL
+     * @param response the navigation response
+     * @param outputFile the thumbnail file
+     */
+    protected void recordValidators(final String url, final Response response, final File outputFile) {
+        if (response == null) {
+            return;
+        }
+        byte[] body = null;
+        try {
+            body = response.body();
+        } catch (final Exception e) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Failed to read the response body of {}", url, e);
             }
         }
+        recordValidators(url, response.headerValue("etag"), response.headerValue("last-modified"), body, outputFile);
+    }
+
+    /**
+     * Records the HTTP validators of a rendered page with a retained copy of its thumbnail.
+     * Nothing is recorded if the page has no validators or the copy cannot be made.
+     *
+     * @param url the page URL
+     * @param etag the ETag header, or null
+     * @param lastModified the Last-Modified header, or null
+     * @param body the page body, or null if not available
+     * @param outputFile the thumbnail file
+     */
+    protected void recordValidators(final String url, final String etag, final String lastModified, final byte[] body,
+            final File outputFile) {
+        if (etag == null && lastModified == null && body == null) {
+            return;
+        }
+        final File retainedFile = getRetainedFile(url);
+        try {
+            if (!thumbnailStorage.prepare(retainedFile)) {
+                logger.warn("Not found: {}", retainedFile.getParentFile().getAbsolutePath());
+                return;
+            }
+            copyThumbnail(outputFile, retainedFile);
+        } catch (final IOException e) {
+            logger.warn("Failed to copy {} to {}", outputFile.getAbsolutePath(), retainedFile.getAbsolutePath(), e);
+            deleteThumbnail(retainedFile);
+            return;
+        }
+        validatorCache.record(url, etag, lastModified, body, retainedFile);
     }
 
     /**
@@ -332,9 +2098,73 @@ public class PlaywrightThumbnailGenerator extends BaseThumbnailGenerator {
 
     @Override
     public void destroy() {
+        final long deadline = System.currentTimeMillis() + drainTimeout;
+        if (partitionCoordinator != null && worker != null) {
+            generateHandedOffThumbnails(deadline);
+        }
+        if (onDemandService != null) {
+            if (batchQueue != null) {
+                renderBatchThumbnails(deadline);
+            } else {
+                onDemandService.stop();
+            }
+            onDemandService = null;
+        }
+        if (refreshQueue != null && worker != null) {
+            refreshStaleThumbnails(deadline);
+        }
+        if (retryQueue != null && worker != null) {
+            drainRetries(deadline);
+        }
+        if (renderScheduler != null) {
+            if (!awaitRenders(deadline)) {
+                stopping = true;
+                final int discarded = renderScheduler.discardPending(new RenderRejectedException("The run ended before the render started."));
+                logger.warn("Discarded {} pending renders at the drain timeout.", discarded);
+            }
+            renderScheduler.shutdown();
+            renderScheduler = null;
+        }
+        for (final Tuple4<Playwright, Browser, BrowserContext, Page> slotWorker : slotWorkers) {
+            close(slotWorker.getValue1(), slotWorker.getValue2(), slotWorker.getValue3(), slotWorker.getValue4());
+        }
+        slotWorkers.clear();
+        if (validatorCache != null) {
+            validatorCache.close();
+        }
+        if (fingerprintIndex != null) {
+            fingerprintIndex.close();
+        }
+        if (failureCache != null) {
+            failureCache.close();
+        }
+        if (renderCostModel != null) {
+            renderCostModel.close();
+        }
+        thumbnailStorage.close();
+        if (fieldUpdater != null) {
+            fieldUpdater.flush();
+        }
         if (worker != null) {
             close(worker.getValue1(), worker.getValue2(), worker.getValue3(), worker.getValue4());
         }
+        if (subresourceCache != null) {
+            subresourceCache.close();
+        }
+        if (endpointPool != null) {
+            endpointPool.close();
+        }
+        final Map<String, Object> metrics = getMetrics();
+        if (partitionCoordinator != null) {
+            partitionCoordinator.close();
+        }
+        if (progressJournal != null) {
+            progressJournal.complete();
+            progressJournal.close();
+        }
+        if (!metrics.isEmpty()) {
+            logger.info("Thumbnail metrics: {}", metrics);
+        }
     }
 
     /**
@@ -363,6 +2193,12 @@ public class PlaywrightThumbnailGenerator extends BaseThumbnailGenerator {
                 context.close();
             }
         });
+        if (browser != null && endpointPool != null) {
+            final String endpoint = browserEndpointMap.remove(browser);
+            if (endpoint != null) {
+                endpointPool.release(endpoint);
+            }
+        }
         closeInBackground(() -> {
             if (browser != null) {
                 if (logger.isDebugEnabled()) {
@@ -480,4 +2316,149 @@ public class PlaywrightThumbnailGenerator extends BaseThumbnailGenerator {
     public void setLoadFullPage(boolean loadFullPage) {
         this.loadFullPage = loadFullPage;
     }
+
+    /**
+     * Sets the directory for the persistent data of this generator.
+     *
+     * @param dataPath the data directory path
+     */
+    public void setDataPath(final String dataPath) {
+        this.dataPath = dataPath;
+    }
+
+    /**
+     * Sets the index field holding content fingerprints.
+     *
+     * @param fingerprintField the field name, or null to disable deduplication
+     */
+    public void setFingerprintField(final String fingerprintField) {
+        this.fingerprintField = fingerprintField;
+    }
+
+    /**
+     * Sets whether to render pages through the host-grouping render scheduler.
+     *
+     * @param schedulerEnabled true to enable the render scheduler
+     */
+    public void setSchedulerEnabled(final boolean schedulerEnabled) {
+        this.schedulerEnabled = schedulerEnabled;
+    }
+
+    /**
+     * Sets the number of render slots used by the render scheduler.
+     *
+     * @param workerSize the number of render slots
+     */
+    public void setWorkerSize(final int workerSize) {
+        this.workerSize = workerSize;
+    }
+
+    /**
+     * Sets whether generate() returns as soon as the page is queued.
+     *
+     * @param asyncEnabled true to render asynchronously
+     */
+    public void setAsyncEnabled(final boolean asyncEnabled) {
+        this.asyncEnabled = asyncEnabled;
+    }
+
+    /**
+     * Sets the additional thumbnail sizes written from the same capture.
+     *
+     * @param derivatives the derivatives
+     */
+    public void setDerivatives(final List<ImageDerivative> derivatives) {
+        this.derivatives = derivatives;
+    }
+
+    /**
+     * Sets the minimum ratio of the decoded screenshot width to the largest thumbnail width.
+     *
+     * @param decodeScale the ratio, or 0 to decode screenshots at full resolution
+     */
+    public void setDecodeScale(final int decodeScale) {
+        this.decodeScale = decodeScale;
+    }
+
+    /**
+     * Sets the URL glob patterns of requests to abort while rendering.
+     *
+     * @param blockUrls the URL patterns
+     */
+    public void setBlockUrls(final List<String> blockUrls) {
+        this.blockUrls = blockUrls;
+    }
+
+    /**
+     * Sets the compression quality of the image encoder.
+     *
+     * @param encoderQuality the quality from 0 to 1, or a negative value for the encoder default
+     */
+    public void setEncoderQuality(final float encoderQuality) {
+        this.encoderQuality = encoderQuality;
+    }
+
+    /**
+     * Sets whether to render thumbnails requested at search time and limit batch generation.
+     *
+     * @param onDemandEnabled true to enable on-demand rendering
+     */
+    public void setOnDemandEnabled(final boolean onDemandEnabled) {
+        this.onDemandEnabled = onDemandEnabled;
+    }
+
+    /**
+     * Sets the maximum number of thumbnails rendered in batch per run when on-demand rendering is enabled.
+     *
+     * @param onDemandBatchSize the number of thumbnails
+     */
+    public void setOnDemandBatchSize(final int onDemandBatchSize) {
+        this.onDemandBatchSize = onDemandBatchSize;
+    }
+
+    /**
+     * Sets whether deferred batch thumbnails keep their thumbnail field for a search-time caller of {@link #requestThumbnail(String, File)}.
+     *
+     * @param onDemandKeepField true to keep the field
+     */
+    public void setOnDemandKeepField(final boolean onDemandKeepField) {
+        this.onDemandKeepField = onDemandKeepField;
+    }
+
+    /**
+     * Sets the maximum number of queued on-demand requests.
+     *
+     * @param onDemandQueueSize the number of requests
+     */
+    public void setOnDemandQueueSize(final int onDemandQueueSize) {
+        this.onDemandQueueSize = onDemandQueueSize;
+    }
+
+    /**
+     * Sets the DevTools endpoint of a running render daemon.
+     *
+     * @param daemonEndpoint the endpoint URL, or null to launch browsers in process
+     */
+    public void setDaemonEndpoint(final String daemonEndpoint) {
+        this.daemonEndpoint = daemonEndpoint;
+    }
+
+    /**
+     * Sets the timeout for connecting to the render daemon.
+     *
+     * @param daemonConnectTimeout the timeout in milliseconds
+     */
+    public void setDaemonConnectTimeout(final double daemonConnectTimeout) {
+        this.daemonConnectTimeout = daemonConnectTimeout;
+    }
+
+    /**
+     * Sets the maximum time the end of a run waits for background renders, refreshes and retries.
+     * Renders still pending after it are discarded.
+     *
+     * @param drainTimeout the time in milliseconds
+     */
+    public void setDrainTimeout(final long drainTimeout) {
+        this.drainTimeout = drainTimeout;
+    }
 }
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.thumbnail.playwright;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.codelibs.fess.mylasta.direction.FessConfig;
+
+/**
+ * Journal of the thumbnails finished during a run, so that a run that was killed or
+ * crashed resumes where it stopped: the next run skips the recorded thumbnail IDs
+ * without checking their files or looking up their documents. Entries are appended
+ * sequentially and forced to disk periodically. The journal is cleared when a run
+ * completes, and discarded when it is older than its maximum age.
+ */
+public class ProgressJournal extends LogStore<ProgressJournal.Entry> {
+
+    private static final Logger logger = LogManager.getLogger(ProgressJournal.class);
+
+    /** The key of the entry recording the start of the run. */
+    protected static final String RUN_KEY = "#run";
+
+    /**
+     * A finished thumbnail.
+     *
+     * @param success true if the thumbnail was created, false if it failed
+     * @param time the time the thumbnail was finished
+     */
+    public record Entry(boolean success, long time) {
+    }
+
+    /** The maximum age in milliseconds of a journal that is resumed. */
+    protected final long maxAge;
+
+    /** The interval in milliseconds between forcing the journal to disk. */
+    protected final long syncInterval;
+
+    /** The time the journal was last forced to disk. */
+    protected volatile long lastSyncTime;
+
+    /** The number of thumbnails recorded before this process started. */
+    protected int resumedSize;
+
+    /**
+     * Creates a progress journal backed by the given log file.
+     *
+     * @param path the log file
+     * @param maxAge the maximum age in milliseconds of a journal that is resumed
+     * @param syncInterval the interval in milliseconds between forcing the journal to disk
+     */
+    public ProgressJournal(final Path path, final long maxAge, final long syncInterval) {
+        super(path);
+        this.maxAge = maxAge;
+        this.syncInterval = syncInterval;
+    }
+
+    /**
+     * Creates a progress journal from the system properties if it is enabled.
+     *
+     * @param fessConfig the Fess configuration
+     * @param dataDirectory the directory of the journal file
+     * @return the progress journal to open, or null if it is disabled
+     */
+    public static ProgressJournal from(final FessConfig fessConfig, final File dataDirectory) {
+        final PropertyReader reader = new PropertyReader(fessConfig);
+        if (!reader.getBoolean("thumbnail.playwright.journal.enabled", false)) {
+            return null;
+        }
+        return new ProgressJournal(new File(dataDirectory, "progress.log").toPath(), reader.getLong("thumbnail.playwright.journal.max.age", 86400000L),
+                reader.getLong("thumbnail.playwright.journal.sync.interval", 5000L));
+    }
+
+    /**
+     * Loads the journal of an interrupted run, or starts a new one if there is none or it is too old.
+     */
+    @Override
+    public synchronized void open() {
+        super.open();
+        final long now = System.currentTimeMillis();
+        final Entry run = get(RUN_KEY);
+        if (run != null && now - run.time() > maxAge) {
+            logger.info("Discarded a progress journal of {} thumbnails started at {}.", size() - 1, run.time());
+            clear();
+        }
+        if (get(RUN_KEY) == null) {
+            put(RUN_KEY, new Entry(true, now));
+        } else {
+            resumedSize = size() - 1;
+            logger.info("Resuming a run with {} finished thumbnails.", resumedSize);
+        }
+        lastSyncTime = now;
+    }
+
+    /**
+     * Gets the result of a thumbnail finished earlier in the run.
+     *
+     * @param thumbnailId the thumbnail ID
+     * @return the entry, or null if the thumbnail is not finished
+     */
+    public Entry getFinished(final String thumbnailId) {
+        return RUN_KEY.equals(thumbnailId) ? null : get(thumbnailId);
+    }
+
+    /**
+     * Records a finished thumbnail, forcing the journal to disk if the sync interval has passed.
+     *
+     * @param thumbnailId the thumbnail ID
+     * @param success true if the thumbnail was created, false if it failed
+     * @param now the current time in milliseconds
+     */
+    public void record(final String thumbnailId, final boolean success, final long now) {
+        if (RUN_KEY.equals(thumbnailId)) {
+            return;
+        }
+        put(thumbnailId, new Entry(success, now));
+        if (now - lastSyncTime >= syncInterval) {
+            lastSyncTime = now;
+            sync();
+        }
+    }
+
+    /**
+     * Clears the journal after the run has completed.
+     */
+    public synchronized void complete() {
+        clear();
+        if (logger.isDebugEnabled()) {
+            logger.debug("Cleared the progress journal {}", path);
+        }
+    }
+
+    /**
+     * Gets the metrics of the journal.
+     *
+     * @return the metrics keyed by name
+     */
+    public Map<String, Object> getMetrics() {
+        final Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("journal.resumed", resumedSize);
+        metrics.put("journal.finished", Math.max(size() - 1, 0));
+        return metrics;
+    }
+
+    @Override
+    protected String[] toFields(final Entry value) {
+        return new String[] { value.success() ? "1" : "0", Long.toString(value.time()) };
+    }
+
+    @Override
+    protected Entry fromFields(final String[] fields) {
+        if (fields.length < 2) {
+            return null;
+        }
+        return new Entry("1".equals(fields[0]), toLong(fields[1], 0L));
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.thumbnail.playwright;
+
+import java.util.Locale;
+import java.util.function.Function;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.codelibs.core.lang.StringUtil;
+import org.codelibs.fess.mylasta.direction.FessConfig;
+
+/**
+ * Reads the system properties of this plugin from the Fess configuration.
+ * A blank property leaves the default, and a value that cannot be parsed is logged
+ * and replaced by the default, so that a typo does not stop the thumbnail job.
+ */
+public class PropertyReader {
+
+    private static final Logger logger = LogManager.getLogger(PropertyReader.class);
+
+    /** The Fess configuration holding the system properties. */
+    protected final FessConfig fessConfig;
+
+    /**
+     * Creates a reader of the system properties.
+     *
+     * @param fessConfig the Fess configuration
+     */
+    public PropertyReader(final FessConfig fessConfig) {
+        this.fessConfig = fessConfig;
+    }
+
+    /**
+     * Gets a string property.
+     *
+     * @param key the property key
+     * @param defaultValue the value if the property is blank
+     * @return the trimmed value, or the default
+     */
+    public String getString(final String key, final String defaultValue) {
+        final String value = fessConfig.getSystemProperty(key);
+        return StringUtil.isBlank(value) ? defaultValue : value.trim();
+    }
+
+    /**
+     * Gets a boolean property, which must be true or false.
+     *
+     * @param key the property key
+     * @param defaultValue the value if the property is blank or invalid
+     * @return the value, or the default
+     */
+    public boolean getBoolean(final String key, final boolean defaultValue) {
+        return get(key, defaultValue, value -> switch (value.toLowerCase(Locale.ROOT)) {
+        case "true" -> Boolean.TRUE;
+        case "false" -> Boolean.FALSE;
+        default -> throw new IllegalArgumentException(value);
+        });
+    }
+
+    /**
+     * Gets an int property.
+     *
+     * @param key the property key
+     * @param defaultValue the value if the property is blank or invalid
+     * @return the value, or the default
+     */
+    public int getInt(final String key, final int defaultValue) {
+        return get(key, defaultValue, Integer::valueOf);
+    }
+
+    /**
+     * Gets a long property.
+     *
+     * @param key the property key
+     * @param defaultValue the value if the property is blank or invalid
+     * @return the value, or the default
+     */
+    public long getLong(final String key, final long defaultValue) {
+        return get(key, defaultValue, Long::valueOf);
+    }
+
+    /**
+     * Gets a double property.
+     *
+     * @param key the property key
+     * @param defaultValue the value if the property is blank or invalid
+     * @return the value, or the default
+     */
+    public double getDouble(final String key, final double defaultValue) {
+        return get(key, defaultValue, Double::valueOf);
+    }
+
+    /**
+     * Gets a float property.
+     *
+     * @param key the property key
+     * @param defaultValue the value if the property is blank or invalid
+     * @return the value, or the default
+     */
+    public float getFloat(final String key, final float defaultValue) {
+        return get(key, defaultValue, Float::valueOf);
+    }
+
+    /**
+     * Gets a property converted by a parser.
+     *
+     * @param <T> the type of the value
+     * @param key the property key
+     * @param defaultValue the value if the property is blank or invalid
+     * @param parser the parser of the trimmed property value
+     * @return the value, or the default
+     */
+    public <T> T get(final String key, final T defaultValue, final Function<String, T> parser) {
+        final String value = fessConfig.getSystemProperty(key);
+        if (StringUtil.isBlank(value)) {
+            return defaultValue;
+        }
+        try {
+            return parser.apply(value.trim());
+        } catch (final RuntimeException e) {
+            logger.warn("Invalid value of {}: {}. Using the default value {}.", key, value, defaultValue);
+            return defaultValue;
+        }
+    }
+}
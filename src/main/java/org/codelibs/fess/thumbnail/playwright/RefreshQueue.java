@@ -0,0 +1,168 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.thumbnail.playwright;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import org.codelibs.fess.mylasta.direction.FessConfig;
+
+/**
+ * Bounded queue of stale thumbnails to re-render. Thumbnails of documents modified
+ * since they were rendered come first, then the oldest ones. When the queue is full,
+ * a thumbnail ranked higher replaces the lowest ranked one, so the queue always holds
+ * the most changed and oldest thumbnails seen during a run.
+ */
+public class RefreshQueue {
+
+    /**
+     * A stale thumbnail.
+     *
+     * @param thumbnailId the thumbnail ID
+     * @param file the thumbnail file
+     * @param lastModified the last modified time of the thumbnail file
+     * @param changed true if the document was modified after the thumbnail was rendered
+     */
+    public record Item(String thumbnailId, File file, long lastModified, boolean changed) {
+    }
+
+    /** The order of re-rendering: changed documents first, then the oldest thumbnails. */
+    protected static final Comparator<Item> ORDER = Comparator.comparing((final Item item) -> !item.changed()).thenComparingLong(Item::lastModified);
+
+    /** The maximum number of thumbnails to re-render per run. */
+    protected final int maxSize;
+
+    /** The age in milliseconds after which a thumbnail is stale. */
+    protected final long ttl;
+
+    /** The queued thumbnails, lowest ranked first. */
+    protected final PriorityQueue<Item> queue = new PriorityQueue<>(ORDER.reversed());
+
+    /** The IDs of the queued thumbnails. */
+    protected final Set<String> idSet = new HashSet<>();
+
+    /**
+     * Creates a refresh queue of thumbnails of any age.
+     *
+     * @param maxSize the maximum number of thumbnails to re-render per run
+     */
+    public RefreshQueue(final int maxSize) {
+        this(maxSize, 0L);
+    }
+
+    /**
+     * Creates a refresh queue.
+     *
+     * @param maxSize the maximum number of thumbnails to re-render per run
+     * @param ttl the age in milliseconds after which a thumbnail is stale
+     */
+    public RefreshQueue(final int maxSize, final long ttl) {
+        this.maxSize = maxSize;
+        this.ttl = ttl;
+    }
+
+    /**
+     * Creates a refresh queue from the system properties if refreshing is enabled.
+     *
+     * @param fessConfig the Fess configuration
+     * @return the refresh queue, or null if thumbnails are kept forever
+     */
+    public static RefreshQueue from(final FessConfig fessConfig) {
+        final PropertyReader reader = new PropertyReader(fessConfig);
+        final long ttl = reader.getLong("thumbnail.playwright.refresh.ttl", 0L);
+        if (ttl <= 0L) {
+            return null;
+        }
+        return new RefreshQueue(reader.getInt("thumbnail.playwright.refresh.max.size", 100), ttl);
+    }
+
+    /**
+     * Checks if a thumbnail is older than the TTL.
+     *
+     * @param lastModified the last modified time of the thumbnail file, or 0 if unknown
+     * @param now the current time in milliseconds
+     * @return true if the thumbnail is stale
+     */
+    public boolean isStale(final long lastModified, final long now) {
+        return lastModified > 0 && now - lastModified > ttl;
+    }
+
+    /**
+     * Checks if a stale thumbnail could be queued, assuming the best rank for its age,
+     * so that the document lookup for the changed flag is only done for thumbnails
+     * the queue can accept.
+     *
+     * @param thumbnailId the thumbnail ID
+     * @param lastModified the last modified time of the thumbnail file
+     * @return true if the thumbnail could be queued
+     */
+    public synchronized boolean canAccept(final String thumbnailId, final long lastModified) {
+        if (maxSize <= 0 || idSet.contains(thumbnailId)) {
+            return false;
+        }
+        return queue.size() < maxSize || ORDER.compare(queue.peek(), new Item(thumbnailId, null, lastModified, true)) > 0;
+    }
+
+    /**
+     * Offers a stale thumbnail.
+     *
+     * @param item the stale thumbnail
+     * @return true if the thumbnail was queued
+     */
+    public synchronized boolean offer(final Item item) {
+        if (maxSize <= 0 || idSet.contains(item.thumbnailId())) {
+            return false;
+        }
+        if (queue.size() >= maxSize) {
+            final Item lowest = queue.peek();
+            if (ORDER.compare(lowest, item) <= 0) {
+                return false;
+            }
+            queue.poll();
+            idSet.remove(lowest.thumbnailId());
+        }
+        queue.add(item);
+        idSet.add(item.thumbnailId());
+        return true;
+    }
+
+    /**
+     * Removes all queued thumbnails.
+     *
+     * @return the queued thumbnails, highest ranked first
+     */
+    public synchronized List<Item> drain() {
+        final List<Item> items = new ArrayList<>(queue);
+        items.sort(ORDER);
+        queue.clear();
+        idSet.clear();
+        return items;
+    }
+
+    /**
+     * Returns the number of queued thumbnails.
+     *
+     * @return the number of thumbnails
+     */
+    public synchronized int size() {
+        return queue.size();
+    }
+}
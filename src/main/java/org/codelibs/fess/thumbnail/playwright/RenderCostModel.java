@@ -0,0 +1,225 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.thumbnail.playwright;
+
+import java.io.File;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.codelibs.fess.mylasta.direction.FessConfig;
+
+/**
+ * Persistent record of render durations used to predict the cost of rendering a page.
+ * Durations are kept as exponentially weighted moving averages per host and per URL
+ * pattern, the host with the first path segment and the path depth. A page is predicted
+ * from its pattern once the pattern has enough samples, then from its host, and otherwise
+ * from the average of all renders.
+ */
+public class RenderCostModel extends LogStore<RenderCostModel.Entry> {
+
+    /** The key of the average of all renders. */
+    protected static final String GLOBAL_KEY = "*";
+
+    /** The prefix of host keys. */
+    protected static final String HOST_PREFIX = "h:";
+
+    /** The prefix of URL pattern keys. */
+    protected static final String PATTERN_PREFIX = "p:";
+
+    /** The maximum number of path segments in a URL pattern. */
+    protected static final int MAX_DEPTH = 8;
+
+    /**
+     * The render durations of a host or URL pattern.
+     *
+     * @param average the moving average of the durations in milliseconds
+     * @param count the number of recorded renders
+     * @param updatedTime the time of the last recorded render
+     */
+    public record Entry(double average, long count, long updatedTime) {
+    }
+
+    /** The weight of a new duration in the moving average. */
+    protected final double alpha;
+
+    /** The number of samples a URL pattern needs before it is used for predictions. */
+    protected final int minSamples;
+
+    /** The maximum number of entries; the least recently updated entry is dropped when full. */
+    protected final int maxSize;
+
+    /**
+     * Creates a cost model backed by the given log file.
+     *
+     * @param path the log file
+     * @param alpha the weight of a new duration in the moving average
+     * @param minSamples the number of samples a URL pattern needs before it is used for predictions
+     * @param maxSize the maximum number of entries
+     */
+    public RenderCostModel(final Path path, final double alpha, final int minSamples, final int maxSize) {
+        super(path);
+        this.alpha = alpha;
+        this.minSamples = minSamples;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Creates a cost model from the system properties if cost ordering is enabled.
+     *
+     * @param fessConfig the Fess configuration
+     * @param dataDirectory the directory of the model file
+     * @return the cost model to open, or null if cost ordering is disabled
+     */
+    public static RenderCostModel from(final FessConfig fessConfig, final File dataDirectory) {
+        final PropertyReader reader = new PropertyReader(fessConfig);
+        if (!reader.getBoolean("thumbnail.playwright.cost.enabled", false)) {
+            return null;
+        }
+        return new RenderCostModel(new File(dataDirectory, "costs.log").toPath(), reader.getDouble("thumbnail.playwright.cost.alpha", 0.3),
+                reader.getInt("thumbnail.playwright.cost.min.samples", 3), reader.getInt("thumbnail.playwright.cost.max.size", 10000));
+    }
+
+    /**
+     * Predicts the render duration of a page.
+     *
+     * @param url the page URL
+     * @return the predicted duration in milliseconds, or 0 if nothing has been recorded yet
+     */
+    public double predict(final String url) {
+        final Entry pattern = get(PATTERN_PREFIX + getPattern(url));
+        if (pattern != null && pattern.count() >= minSamples) {
+            return pattern.average();
+        }
+        final Entry host = get(HOST_PREFIX + RenderTask.parseHost(url));
+        if (host != null) {
+            return host.average();
+        }
+        final Entry global = get(GLOBAL_KEY);
+        return global != null ? global.average() : 0.0;
+    }
+
+    /**
+     * Records the duration of a render, successful or not.
+     *
+     * @param url the page URL
+     * @param duration the duration in milliseconds
+     * @param now the current time in milliseconds
+     */
+    public synchronized void record(final String url, final long duration, final long now) {
+        update(GLOBAL_KEY, duration, now);
+        update(HOST_PREFIX + RenderTask.parseHost(url), duration, now);
+        update(PATTERN_PREFIX + getPattern(url), duration, now);
+    }
+
+    /**
+     * Adds a duration to the moving average of the key.
+     *
+     * @param key the key
+     * @param duration the duration in milliseconds
+     * @param now the current time in milliseconds
+     */
+    protected void update(final String key, final long duration, final long now) {
+        final Entry previous = get(key);
+        if (previous == null && maxSize > 0 && size() >= maxSize) {
+            evict();
+        }
+        final double average = previous == null ? duration : previous.average() + alpha * (duration - previous.average());
+        put(key, new Entry(average, previous == null ? 1L : previous.count() + 1L, now));
+    }
+
+    /**
+     * Removes the least recently updated entry other than the average of all renders.
+     */
+    protected void evict() {
+        String oldestKey = null;
+        long oldestTime = Long.MAX_VALUE;
+        for (final Map.Entry<String, Entry> entry : entryMap.entrySet()) {
+            if (!GLOBAL_KEY.equals(entry.getKey()) && entry.getValue().updatedTime() < oldestTime) {
+                oldestKey = entry.getKey();
+                oldestTime = entry.getValue().updatedTime();
+            }
+        }
+        if (oldestKey != null) {
+            remove(oldestKey);
+        }
+    }
+
+    /**
+     * Gets the URL pattern of a page: the host, the first path segment, and a wildcard
+     * for each further segment, such as {@code example.com/docs/*}{@code /*}.
+     *
+     * @param url the page URL
+     * @return the URL pattern
+     */
+    public static String getPattern(final String url) {
+        String path = null;
+        try {
+            path = URI.create(url).getRawPath();
+        } catch (final IllegalArgumentException e) {
+            // invalid URL
+        }
+        final StringBuilder buf = new StringBuilder(RenderTask.parseHost(url)).append('/');
+        if (path == null) {
+            return buf.toString();
+        }
+        int depth = 0;
+        for (final String segment : path.split("/")) {
+            if (segment.isEmpty()) {
+                continue;
+            }
+            if (depth > 0) {
+                buf.append('/');
+            }
+            if (depth == 0) {
+                buf.append(segment);
+            } else {
+                buf.append('*');
+            }
+            if (++depth >= MAX_DEPTH) {
+                break;
+            }
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Gets the metrics of the cost model.
+     *
+     * @return the metrics keyed by name
+     */
+    public Map<String, Object> getMetrics() {
+        final Map<String, Object> metrics = new LinkedHashMap<>();
+        final Entry global = get(GLOBAL_KEY);
+        metrics.put("cost.entries", size());
+        metrics.put("cost.average", global != null ? Math.round(global.average()) : 0L);
+        return metrics;
+    }
+
+    @Override
+    protected String[] toFields(final Entry value) {
+        return new String[] { Double.toString(value.average()), Long.toString(value.count()), Long.toString(value.updatedTime()) };
+    }
+
+    @Override
+    protected Entry fromFields(final String[] fields) {
+        if (fields.length < 3) {
+            return null;
+        }
+        return new Entry(Double.parseDouble(fields[0]), toLong(fields[1], 1L), toLong(fields[2], 0L));
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.thumbnail.playwright;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.microsoft.playwright.Browser;
+import com.microsoft.playwright.BrowserType.LaunchOptions;
+import com.microsoft.playwright.Playwright;
+
+/**
+ * Long-lived process keeping a Chromium browser running with a DevTools endpoint on the
+ * loopback interface, so that thumbnail jobs connect to a warm browser over CDP instead
+ * of launching one on every run. The browser is relaunched if it exits.
+ * <p>
+ * Run it with the plugin and Playwright jars on the class path:
+ * {@code java -cp <jars> org.codelibs.fess.thumbnail.playwright.RenderDaemon --port=9222}
+ * and set {@code thumbnail.playwright.daemon.endpoint=http://127.0.0.1:9222}.
+ */
+public class RenderDaemon implements Closeable {
+
+    private static final Logger logger = LogManager.getLogger(RenderDaemon.class);
+
+    /** The port of the DevTools endpoint. */
+    protected final int port;
+
+    /** The additional browser arguments. */
+    protected final List<String> args;
+
+    /** The Playwright instance, or null if not started. */
+    protected Playwright playwright;
+
+    /** The browser, or null if not started. */
+    protected Browser browser;
+
+    /**
+     * Creates a render daemon.
+     *
+     * @param port the port of the DevTools endpoint
+     * @param args the additional browser arguments
+     */
+    public RenderDaemon(final int port, final List<String> args) {
+        this.port = port;
+        this.args = args;
+    }
+
+    /**
+     * Launches the browser with its DevTools endpoint.
+     */
+    public synchronized void start() {
+        final List<String> browserArgs = new ArrayList<>(args);
+        browserArgs.add("--remote-debugging-address=127.0.0.1");
+        browserArgs.add("--remote-debugging-port=" + port);
+        playwright = Playwright.create();
+        try {
+            browser = playwright.chromium().launch(new LaunchOptions().setHeadless(true).setArgs(browserArgs));
+        } catch (final RuntimeException e) {
+            close();
+            throw e;
+        }
+        logger.info("Render daemon is listening on {}", getEndpoint());
+    }
+
+    /**
+     * Checks if the browser is running.
+     *
+     * @return true if the browser is connected
+     */
+    public synchronized boolean isAlive() {
+        return browser != null && browser.isConnected();
+    }
+
+    /**
+     * Gets the DevTools endpoint of the browser.
+     *
+     * @return the endpoint URL
+     */
+    public String getEndpoint() {
+        return "http://127.0.0.1:" + port;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (browser != null) {
+            try {
+                browser.close();
+            } catch (final RuntimeException e) {
+                logger.warn("Failed to close the browser.", e);
+            }
+            browser = null;
+        }
+        if (playwright != null) {
+            try {
+                playwright.close();
+            } catch (final RuntimeException e) {
+                logger.warn("Failed to close Playwright.", e);
+            }
+            playwright = null;
+        }
+    }
+
+    /**
+     * Parses the command line options {@code --port=<port>}, {@code --interval=<milliseconds>}
+     * and {@code --arg=<browser argument>}, which may be repeated.
+     *
+     * @param argv the command line arguments
+     * @param port the default port
+     * @param interval the default interval
+     * @param browserArgs the list receiving the browser arguments
+     * @return the port and the interval of the health check in milliseconds
+     */
+    protected static long[] parseOptions(final String[] argv, final int port, final long interval, final List<String> browserArgs) {
+        final long[] values = { port, interval };
+        for (final String arg : argv) {
+            if (arg.startsWith("--port=")) {
+                values[0] = Integer.parseInt(arg.substring(7));
+            } else if (arg.startsWith("--interval=")) {
+                values[1] = Long.parseLong(arg.substring(11));
+            } else if (arg.startsWith("--arg=")) {
+                browserArgs.add(arg.substring(6));
+            } else {
+                throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Runs the daemon until the process is stopped, relaunching the browser if it exits.
+     *
+     * @param argv the command line arguments
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public static void main(final String[] argv) throws InterruptedException {
+        final List<String> browserArgs = new ArrayList<>();
+        final long[] values = parseOptions(argv, 9222, 5000L, browserArgs);
+        final RenderDaemon daemon = new RenderDaemon((int) values[0], browserArgs);
+        Runtime.getRuntime().addShutdownHook(new Thread(daemon::close, "RenderDaemon-Shutdown"));
+        daemon.start();
+        while (true) {
+            Thread.sleep(values[1]);
+            if (!daemon.isAlive()) {
+                logger.warn("The browser exited. Relaunching it...");
+                daemon.close();
+                try {
+                    daemon.start();
+                } catch (final RuntimeException e) {
+                    logger.warn("Failed to relaunch the browser.", e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.thumbnail.playwright;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import org.codelibs.core.lang.StringUtil;
+import org.codelibs.fess.crawler.exception.CrawlerSystemException;
+
+import com.microsoft.playwright.options.LoadState;
+
+/**
+ * Render settings of a crawling config. Each setting defaults to the generator-wide value
+ * and can be overridden per config with system properties named
+ * {@code thumbnail.playwright.config.<configId>.<setting>}.
+ *
+ * @param viewportWidth the browser viewport width in pixels
+ * @param viewportHeight the browser viewport height in pixels
+ * @param renderedState the load state to wait for before capturing
+ * @param blockUrls the URL glob patterns of requests to abort while rendering
+ * @param quality the compression quality of the encoder from 0 to 1, or a negative value for the encoder default
+ * @param maxConcurrency the maximum number of renders of the config in flight, or 0 for no limit
+ * @param weight the weight of the config in the fair share of the render slots
+ */
+public record RenderProfile(int viewportWidth, int viewportHeight, LoadState renderedState, List<String> blockUrls, float quality,
+        int maxConcurrency, double weight) {
+
+    /** The prefix of per-config system properties. */
+    public static final String PROPERTY_PREFIX = "thumbnail.playwright.config.";
+
+    /**
+     * Parses a load state name.
+     *
+     * @param value the name, such as {@code networkidle}
+     * @return the load state
+     * @throws CrawlerSystemException if the name is unknown
+     */
+    public static LoadState parseLoadState(final String value) {
+        try {
+            return LoadState.valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (final IllegalArgumentException e) {
+            throw new CrawlerSystemException("Unknown load state: " + value, e);
+        }
+    }
+
+    /**
+     * Parses a comma-separated list of URL glob patterns.
+     *
+     * @param value the patterns
+     * @return the list of patterns
+     */
+    public static List<String> parseBlockUrls(final String value) {
+        final List<String> list = new ArrayList<>();
+        if (value != null) {
+            for (final String pattern : value.split(",")) {
+                if (StringUtil.isNotBlank(pattern)) {
+                    list.add(pattern.trim());
+                }
+            }
+        }
+        return list;
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.thumbnail.playwright;
+
+import org.codelibs.fess.crawler.exception.CrawlerSystemException;
+
+/**
+ * Thrown when a render is refused without loading the page, for example
+ * because the circuit of the host is open.
+ */
+public class RenderRejectedException extends CrawlerSystemException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Creates an exception with the given message.
+     *
+     * @param message the detail message
+     */
+    public RenderRejectedException(final String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,791 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.thumbnail.playwright;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.codelibs.fess.crawler.exception.CrawlerSystemException;
+
+/**
+ * Schedules render tasks on a fixed number of render slots.
+ * Pending tasks are grouped by crawling config and host, and each slot keeps draining
+ * the group it rendered last, so that pages of the same site are rendered on the
+ * same browser context with a warm HTTP cache and reused connections.
+ * Groups are started in the order their first task arrived.
+ * The slots are shared between crawling configs in proportion to their weights:
+ * a slot leaves its group when another config with pending tasks has fewer renders
+ * in flight per weight, and a config never exceeds its concurrency quota. A large
+ * config thus only uses the capacity the other configs leave.
+ * When priorities are enabled, each group is ordered by task priority plus aging, and a
+ * slot leaves its group for a group whose next task ranks clearly higher.
+ * With cost ordering, the rank also grows with the predicted render duration, so that
+ * expensive pages start early and cheap pages fill the slots at the end of a batch.
+ * A {@link HostLimiter} caps renders per host and in total; a slot whose host is
+ * throttled moves on to another host instead of waiting.
+ * A task for an output file that is already pending or rendering is not queued again;
+ * its submitter gets the future of the earlier task.
+ * An optional {@link AdmissionController} lowers the number of renders in flight and
+ * pauses intake under memory pressure, and an optional {@link ConcurrencyController} tunes
+ * the number of renders in flight from their outcomes; one render is always allowed so the
+ * queue drains.
+ */
+public class RenderScheduler {
+
+    private static final Logger logger = LogManager.getLogger(RenderScheduler.class);
+
+    /**
+     * Renders a task on a slot.
+     */
+    @FunctionalInterface
+    public interface Renderer {
+        /**
+         * Renders the task.
+         *
+         * @param slot the slot number
+         * @param task the task to render
+         * @throws Exception if the task fails
+         */
+        void render(int slot, RenderTask task) throws Exception;
+    }
+
+    /**
+     * Provides the share of the render slots of each crawling config.
+     */
+    public interface ConfigPolicy {
+        /**
+         * Gets the maximum number of renders of the config in flight.
+         *
+         * @param configId the crawling config ID
+         * @return the maximum number of renders, or 0 for no limit
+         */
+        int getMaxConcurrency(String configId);
+
+        /**
+         * Gets the weight of the config in the fair share of the slots.
+         *
+         * @param configId the crawling config ID
+         * @return the weight, greater than 0
+         */
+        double getWeight(String configId);
+    }
+
+    /**
+     * The tasks of a crawling config.
+     */
+    protected static class ConfigState {
+        /** The number of pending tasks. */
+        protected int pending;
+
+        /** The number of renders in flight. */
+        protected int inFlight;
+    }
+
+    /** The renderer executing tasks. */
+    protected final Renderer renderer;
+
+    /** The maximum number of pending tasks before submit blocks. */
+    protected final int maxPendingSize;
+
+    /** Pending tasks grouped by crawling config and host, in order of arrival of each group. */
+    protected final Map<String, Queue<RenderTask>> groupMap = new LinkedHashMap<>();
+
+    /** Pending and rendering tasks keyed by output file path. */
+    protected final Map<String, RenderTask> activeMap = new HashMap<>();
+
+    /** The task counts keyed by crawling config ID. */
+    protected final Map<String, ConfigState> configStateMap = new HashMap<>();
+
+    /** The group each slot rendered last. */
+    protected final String[] slotGroups;
+
+    /** The slot threads. */
+    protected final Thread[] threads;
+
+    /** Lock guarding the scheduler state. */
+    protected final ReentrantLock lock = new ReentrantLock();
+
+    /** Signaled when tasks are added or the state changes. */
+    protected final Condition available = lock.newCondition();
+
+    /** Signaled when pending tasks are taken. */
+    protected final Condition notFull = lock.newCondition();
+
+    /** The limiter of renders per host, guarded by the lock. */
+    protected HostLimiter hostLimiter = new HostLimiter(0, 0L, 0);
+
+    /** The controller of renders under memory pressure, or null. */
+    protected AdmissionController admissionController;
+
+    /** The controller tuning the number of renders in flight, or null. */
+    protected ConcurrencyController concurrencyController;
+
+    /** The number of pending tasks. */
+    protected int pendingSize;
+
+    /** Whether new tasks are accepted. */
+    protected boolean running = true;
+
+    /**
+     * Creates a scheduler.
+     *
+     * @param slotSize the number of render slots
+     * @param maxPendingSize the maximum number of pending tasks
+     * @param renderer the renderer executing tasks
+     */
+    public RenderScheduler(final int slotSize, final int maxPendingSize, final Renderer renderer) {
+        this.renderer = renderer;
+        this.maxPendingSize = Math.max(maxPendingSize, 1);
+        slotGroups = new String[slotSize];
+        threads = new Thread[slotSize];
+    }
+
+    /**
+     * Sets the limiter of renders per host. This must be called before {@link #start()}.
+     *
+     * @param hostLimiter the host limiter
+     */
+    public void setHostLimiter(final HostLimiter hostLimiter) {
+        this.hostLimiter = hostLimiter;
+    }
+
+    /** Whether tasks are ordered by priority instead of arrival. */
+    protected boolean prioritized;
+
+    /** The priority gained per minute of waiting. */
+    protected double agingRate;
+
+    /** The rank difference above which a slot leaves its group for a higher ranked one. */
+    protected double switchThreshold;
+
+    /** The rank gained per natural logarithm of the predicted duration in seconds. */
+    protected double costWeight;
+
+    /** The arrival number of the next task. */
+    protected long sequence;
+
+    /** The order of tasks in a group when prioritized, highest rank first. */
+    protected final Comparator<RenderTask> rankComparator =
+            Comparator.<RenderTask> comparingDouble(this::getRank).reversed().thenComparingLong(RenderTask::getSequence);
+
+    /** The quotas and weights of crawling configs, or null for equal shares without quotas. */
+    protected ConfigPolicy configPolicy;
+
+    /**
+     * Sets the quotas and weights of crawling configs. This must be called before {@link #start()}.
+     *
+     * @param configPolicy the config policy
+     */
+    public void setConfigPolicy(final ConfigPolicy configPolicy) {
+        this.configPolicy = configPolicy;
+    }
+
+    /**
+     * Orders tasks by priority. The rank of a task is its priority plus the aging rate times
+     * the minutes it has been waiting, so that low priority tasks are not starved.
+     * This must be called before any task is submitted.
+     *
+     * @param agingRate the priority gained per minute of waiting
+     * @param switchThreshold the rank difference above which a slot leaves its group for a higher ranked one
+     */
+    public void setPriorityOrder(final double agingRate, final double switchThreshold) {
+        prioritized = true;
+        this.agingRate = agingRate;
+        this.switchThreshold = switchThreshold;
+    }
+
+    /**
+     * Orders tasks by predicted render duration, longest first. The rank of a task grows by
+     * the cost weight times {@code log(1 + seconds)}, so it can be combined with priorities.
+     * This must be called before any task is submitted.
+     *
+     * @param costWeight the rank gained per natural logarithm of the predicted duration in seconds
+     */
+    public void setCostOrder(final double costWeight) {
+        prioritized = true;
+        this.costWeight = costWeight;
+    }
+
+    /**
+     * Sets the controller of renders under memory pressure. This must be called before {@link #start()}.
+     *
+     * @param admissionController the admission controller
+     */
+    public void setAdmissionController(final AdmissionController admissionController) {
+        this.admissionController = admissionController;
+    }
+
+    /**
+     * Sets the controller tuning the number of renders in flight. This must be called before {@link #start()}.
+     *
+     * @param concurrencyController the concurrency controller
+     */
+    public void setConcurrencyController(final ConcurrencyController concurrencyController) {
+        this.concurrencyController = concurrencyController;
+    }
+
+    /**
+     * Starts the slot threads.
+     */
+    public void start() {
+        if (admissionController != null) {
+            admissionController.start(this::getInFlight, this::signalAll);
+        }
+        for (int i = 0; i < threads.length; i++) {
+            final int slot = i;
+            threads[i] = new Thread(() -> runSlot(slot), "Playwright-Renderer-" + i);
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
+    }
+
+    /**
+     * Submits a task, waiting while the pending queue is full.
+     *
+     * @param task the task to render
+     * @return the future completed when the task is rendered, or the future of the
+     *         earlier task if the same output file is already pending or rendering
+     */
+    public CompletableFuture<Boolean> submit(final RenderTask task) {
+        lock.lock();
+        try {
+            final String key = task.getOutputFile().getAbsolutePath();
+            if (activeMap.containsKey(key)) {
+                return activeMap.get(key).getFuture();
+            }
+            while (running && (pendingSize >= maxPendingSize || isIntakePaused())) {
+                notFull.await();
+            }
+            if (!running) {
+                task.getFuture().completeExceptionally(new CrawlerSystemException("The render scheduler is stopped."));
+                return task.getFuture();
+            }
+            final RenderTask activeTask = activeMap.get(key);
+            if (activeTask != null) {
+                return activeTask.getFuture();
+            }
+            add(task);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            task.getFuture().completeExceptionally(e);
+        } finally {
+            lock.unlock();
+        }
+        return task.getFuture();
+    }
+
+    /**
+     * Submits a task if it can be queued without waiting.
+     *
+     * @param task the task to render
+     * @return the future completed when the task is rendered, the future of the earlier task if the
+     *         same output file is already pending or rendering, or null if the pending queue is full
+     *         or the scheduler is stopped
+     */
+    public CompletableFuture<Boolean> offer(final RenderTask task) {
+        lock.lock();
+        try {
+            final RenderTask activeTask = activeMap.get(task.getOutputFile().getAbsolutePath());
+            if (activeTask != null) {
+                return activeTask.getFuture();
+            }
+            if (!running || pendingSize >= maxPendingSize || isIntakePaused()) {
+                return null;
+            }
+            add(task);
+        } finally {
+            lock.unlock();
+        }
+        return task.getFuture();
+    }
+
+    /**
+     * Adds a task to the pending groups. The lock must be held.
+     *
+     * @param task the task to render
+     */
+    protected void add(final RenderTask task) {
+        activeMap.put(task.getOutputFile().getAbsolutePath(), task);
+        task.setSequence(sequence++);
+        groupMap.computeIfAbsent(getGroupKey(task), k -> prioritized ? new PriorityQueue<>(rankComparator) : new ArrayDeque<>()).add(task);
+        configStateMap.computeIfAbsent(getConfigKey(task), k -> new ConfigState()).pending++;
+        pendingSize++;
+        available.signalAll();
+    }
+
+    /**
+     * Removes the pending tasks without rendering them and completes them with the error.
+     * Renders in flight are not affected.
+     *
+     * @param error the error to complete the removed tasks with
+     * @return the number of removed tasks
+     */
+    public int discardPending(final Throwable error) {
+        final List<RenderTask> tasks = new ArrayList<>();
+        lock.lock();
+        try {
+            for (final Queue<RenderTask> group : groupMap.values()) {
+                tasks.addAll(group);
+            }
+            groupMap.clear();
+            for (final RenderTask task : tasks) {
+                activeMap.remove(task.getOutputFile().getAbsolutePath(), task);
+                final String configKey = getConfigKey(task);
+                final ConfigState state = configStateMap.get(configKey);
+                if (state != null) {
+                    state.pending--;
+                    if (state.inFlight <= 0 && state.pending <= 0) {
+                        configStateMap.remove(configKey);
+                    }
+                }
+            }
+            pendingSize = 0;
+            available.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        for (final RenderTask task : tasks) {
+            task.getFuture().completeExceptionally(error);
+        }
+        return tasks.size();
+    }
+
+    /**
+     * Runs tasks on a slot until the scheduler is stopped and no task is pending.
+     *
+     * @param slot the slot number
+     */
+    protected void runSlot(final int slot) {
+        while (true) {
+            final RenderTask task;
+            try {
+                task = take(slot);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (task == null) {
+                return;
+            }
+            Throwable error = null;
+            try {
+                renderer.render(slot, task);
+            } catch (final Throwable t) {
+                error = t;
+            }
+            release(task);
+            if (error == null) {
+                task.getFuture().complete(Boolean.TRUE);
+            } else {
+                task.getFuture().completeExceptionally(error);
+            }
+        }
+    }
+
+    /**
+     * Releases the host limit held by a finished task.
+     *
+     * @param task the finished task
+     */
+    protected void release(final RenderTask task) {
+        lock.lock();
+        try {
+            hostLimiter.release(task.getHost());
+            final String configKey = getConfigKey(task);
+            final ConfigState state = configStateMap.get(configKey);
+            if (state != null) {
+                state.inFlight--;
+                if (state.inFlight <= 0 && state.pending <= 0) {
+                    configStateMap.remove(configKey);
+                }
+            }
+            activeMap.remove(task.getOutputFile().getAbsolutePath(), task);
+            available.signalAll();
+            if (admissionController != null) {
+                notFull.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes the next task for the slot, waiting until one is available within the host limits.
+     *
+     * @param slot the slot number
+     * @return the task, or null if the scheduler is stopped and no task is pending
+     * @throws InterruptedException if interrupted while waiting
+     */
+    protected RenderTask take(final int slot) throws InterruptedException {
+        lock.lock();
+        try {
+            while (true) {
+                final long now = System.currentTimeMillis();
+                final boolean canStart = hostLimiter.canStart() && isAdmitted();
+                if (canStart) {
+                    final RenderTask task = poll(slot, now);
+                    if (task != null) {
+                        pendingSize--;
+                        hostLimiter.acquire(task.getHost(), now);
+                        final ConfigState state = configStateMap.get(getConfigKey(task));
+                        state.pending--;
+                        state.inFlight++;
+                        notFull.signal();
+                        return task;
+                    }
+                }
+                if (!running && pendingSize == 0) {
+                    return null;
+                }
+                final long delay = canStart ? getMinDelay(now) : Long.MAX_VALUE;
+                if (delay == Long.MAX_VALUE) {
+                    available.await();
+                } else {
+                    available.await(Math.max(delay, 1L), TimeUnit.MILLISECONDS);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Checks if another render may start under the admission and concurrency limits.
+     * A render is always admitted when none is in flight.
+     *
+     * @return true if a render may start
+     */
+    protected boolean isAdmitted() {
+        final int inFlight = hostLimiter.getInFlight();
+        if (inFlight == 0) {
+            return true;
+        }
+        if (admissionController != null && inFlight >= admissionController.getLimit()) {
+            return false;
+        }
+        return concurrencyController == null || inFlight < concurrencyController.getLimit();
+    }
+
+    /**
+     * Checks if submitters must wait because intake is paused under memory pressure.
+     * Intake is only held back while tasks are pending or rendering, so that it resumes
+     * once they have drained.
+     *
+     * @return true if intake is paused
+     */
+    protected boolean isIntakePaused() {
+        return admissionController != null && admissionController.isPaused() && pendingSize + hostLimiter.getInFlight() > 0;
+    }
+
+    /**
+     * Wakes up the slots and submitters waiting for a state change.
+     */
+    protected void signalAll() {
+        lock.lock();
+        try {
+            available.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the next task for the slot from the pending groups.
+     * The slot continues with its current group unless another config deserves the slot
+     * more, or starts the available group of the config furthest below its fair share,
+     * preferring a group no other slot is working on and then the oldest one.
+     *
+     * @param slot the slot number
+     * @param now the current time in milliseconds
+     * @return the task, or null if no task is available for the slot
+     */
+    protected RenderTask poll(final int slot, final long now) {
+        String key = slotGroups[slot];
+        if (key == null || !groupMap.containsKey(key) || !isAvailable(key, now) || hasPriorConfig(key) || hasPriorGroup(key, now)) {
+            key = selectGroup(slot, now);
+            if (key == null) {
+                return null;
+            }
+            if (logger.isDebugEnabled()) {
+                logger.debug("Slot {} switched to {}", slot, key);
+            }
+            slotGroups[slot] = key;
+        }
+        final Queue<RenderTask> group = groupMap.get(key);
+        final RenderTask task = group.poll();
+        if (group.isEmpty()) {
+            groupMap.remove(key);
+        }
+        return task;
+    }
+
+    /**
+     * Selects the group a slot should work on next.
+     *
+     * @param slot the slot number
+     * @param now the current time in milliseconds
+     * @return the key of the group, or null if no group is available
+     */
+    protected String selectGroup(final int slot, final long now) {
+        String selected = null;
+        double selectedUsage = Double.MAX_VALUE;
+        double selectedRank = 0;
+        boolean selectedAssigned = true;
+        for (final Map.Entry<String, Queue<RenderTask>> entry : groupMap.entrySet()) {
+            final String key = entry.getKey();
+            if (!isAvailable(key, now)) {
+                continue;
+            }
+            final RenderTask head = entry.getValue().peek();
+            final double usage = getUsage(getConfigKey(head));
+            final double rank = prioritized ? getRank(head) : 0;
+            final boolean assigned = isAssigned(key, slot);
+            if (selected == null || usage < selectedUsage || usage == selectedUsage
+                    && (rank > selectedRank + switchThreshold || rank >= selectedRank - switchThreshold && selectedAssigned && !assigned)) {
+                selected = key;
+                selectedUsage = usage;
+                selectedRank = rank;
+                selectedAssigned = assigned;
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * Checks if a task of the group may start now under the host limits and the config quota.
+     *
+     * @param key the key of the group
+     * @param now the current time in milliseconds
+     * @return true if the group is available
+     */
+    protected boolean isAvailable(final String key, final long now) {
+        return getDelay(key, now) == 0L;
+    }
+
+    /**
+     * Gets the time until a task of the group may start.
+     *
+     * @param key the key of the group
+     * @param now the current time in milliseconds
+     * @return the delay in milliseconds, or {@link Long#MAX_VALUE} if the group waits for renders in flight
+     */
+    protected long getDelay(final String key, final long now) {
+        final RenderTask task = groupMap.get(key).peek();
+        final String configKey = getConfigKey(task);
+        if (configPolicy != null) {
+            final int maxConcurrency = configPolicy.getMaxConcurrency(configKey);
+            final ConfigState state = configStateMap.get(configKey);
+            if (maxConcurrency > 0 && state != null && state.inFlight >= maxConcurrency) {
+                return Long.MAX_VALUE;
+            }
+        }
+        return hostLimiter.getDelay(task.getHost(), now);
+    }
+
+    /**
+     * Checks if another config with pending tasks has fewer renders in flight per weight
+     * than the config of the group, so that a slot should move over to it.
+     *
+     * @param key the key of the group
+     * @return true if another config should get the slot
+     */
+    protected boolean hasPriorConfig(final String key) {
+        if (configStateMap.size() < 2) {
+            return false;
+        }
+        final String configKey = getConfigKey(groupMap.get(key).peek());
+        final double usage = getUsage(configKey);
+        for (final Map.Entry<String, ConfigState> entry : configStateMap.entrySet()) {
+            final ConfigState state = entry.getValue();
+            if (state.pending > 0 && !entry.getKey().equals(configKey) && getUsage(entry.getKey()) < usage) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks if another available group of the same or a less used config has a next task
+     * ranked clearly higher than the next task of the group.
+     *
+     * @param key the key of the group
+     * @param now the current time in milliseconds
+     * @return true if the slot should move to another group
+     */
+    protected boolean hasPriorGroup(final String key, final long now) {
+        if (!prioritized) {
+            return false;
+        }
+        final RenderTask current = groupMap.get(key).peek();
+        final double usage = getUsage(getConfigKey(current));
+        final double rank = getRank(current) + switchThreshold;
+        for (final Map.Entry<String, Queue<RenderTask>> entry : groupMap.entrySet()) {
+            final RenderTask head = entry.getValue().peek();
+            if (getRank(head) > rank && getUsage(getConfigKey(head)) <= usage && isAvailable(entry.getKey(), now)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the rank of a task: its priority plus the aging rate times the minutes it has been waiting,
+     * plus the cost weight times the logarithm of its predicted duration.
+     * The current time is left out, as it adds the same value to every task.
+     *
+     * @param task the task
+     * @return the rank
+     */
+    protected double getRank(final RenderTask task) {
+        return task.getPriority() - agingRate * task.getCreatedTime() / 60000.0 + costWeight * Math.log1p(task.getCost() / 1000.0);
+    }
+
+    /**
+     * Gets the renders of the config in flight per weight.
+     *
+     * @param configKey the config key
+     * @return the usage of the config
+     */
+    protected double getUsage(final String configKey) {
+        final ConfigState state = configStateMap.get(configKey);
+        final int inFlight = state != null ? state.inFlight : 0;
+        final double weight = configPolicy != null ? configPolicy.getWeight(configKey) : 1.0;
+        return inFlight / (weight > 0 ? weight : 1.0);
+    }
+
+    /**
+     * Gets the time until the first pending group becomes available.
+     *
+     * @param now the current time in milliseconds
+     * @return the delay in milliseconds, or {@link Long#MAX_VALUE} if all pending groups
+     *         wait for renders in flight
+     */
+    protected long getMinDelay(final long now) {
+        long delay = Long.MAX_VALUE;
+        for (final String key : groupMap.keySet()) {
+            delay = Math.min(delay, getDelay(key, now));
+        }
+        return delay;
+    }
+
+    /**
+     * Checks if another slot is working on the group.
+     *
+     * @param key the key of the group
+     * @param slot the slot number asking
+     * @return true if another slot is assigned to the group
+     */
+    protected boolean isAssigned(final String key, final int slot) {
+        for (int i = 0; i < slotGroups.length; i++) {
+            if (i != slot && key.equals(slotGroups[i])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the key of the crawling config of a task.
+     *
+     * @param task the task
+     * @return the config ID, or an empty string if the task has none
+     */
+    protected static String getConfigKey(final RenderTask task) {
+        return task.getConfigId() != null ? task.getConfigId() : "";
+    }
+
+    /**
+     * Gets the key of the group of a task.
+     *
+     * @param task the task
+     * @return the config ID and the host of the task
+     */
+    protected static String getGroupKey(final RenderTask task) {
+        return getConfigKey(task) + "|" + task.getHost();
+    }
+
+    /**
+     * Returns the number of pending tasks.
+     *
+     * @return the number of pending tasks
+     */
+    public int getPendingSize() {
+        lock.lock();
+        try {
+            return pendingSize;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of renders in flight.
+     *
+     * @return the number of renders in flight
+     */
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return hostLimiter.getInFlight();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops accepting tasks and waits until all pending tasks are rendered.
+     */
+    public void shutdown() {
+        if (admissionController != null) {
+            admissionController.stop();
+        }
+        lock.lock();
+        try {
+            running = false;
+            available.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        for (final Thread thread : threads) {
+            if (thread == null) {
+                continue;
+            }
+            try {
+                thread.join();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.warn("Interrupted to wait for {}", thread.getName());
+                return;
+            }
+        }
+    }
+}
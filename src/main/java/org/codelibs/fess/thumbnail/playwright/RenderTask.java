@@ -0,0 +1,311 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.thumbnail.playwright;
+
+import java.io.File;
+import java.net.URI;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A page to be rendered into a thumbnail file.
+ */
+public class RenderTask {
+
+    /** The thumbnail ID. */
+    protected final String thumbnailId;
+
+    /** The crawling config ID of the document. */
+    protected final String configId;
+
+    /** The page URL. */
+    protected final String url;
+
+    /** The host of the page URL, used to group tasks. */
+    protected final String host;
+
+    /** The file to save the thumbnail to. */
+    protected final File outputFile;
+
+    /** The target width of the thumbnail. */
+    protected final int width;
+
+    /** The maximum height of the thumbnail. */
+    protected final int height;
+
+    /** The content fingerprint of the page, or null. */
+    protected String fingerprint;
+
+    /** The number of earlier failed attempts to render the page. */
+    protected int attempts;
+
+    /** The priority of the task; higher values are rendered first. */
+    protected double priority;
+
+    /** The arrival number of the task in the render scheduler. */
+    protected long sequence;
+
+    /** The predicted render duration in milliseconds, or 0 if unknown. */
+    protected double cost;
+
+    /** Whether the task re-renders an existing thumbnail, which is kept if the render fails. */
+    protected boolean refresh;
+
+    /** The time the task was created. */
+    protected final long createdTime = System.currentTimeMillis();
+
+    /** The result of the task. */
+    protected final CompletableFuture<Boolean> future = new CompletableFuture<>();
+
+    /**
+     * Creates a render task.
+     *
+     * @param thumbnailId the thumbnail ID
+     * @param configId the crawling config ID
+     * @param url the page URL
+     * @param outputFile the file to save the thumbnail to
+     * @param width the target width of the thumbnail
+     * @param height the maximum height of the thumbnail
+     */
+    public RenderTask(final String thumbnailId, final String configId, final String url, final File outputFile, final int width,
+            final int height) {
+        this.thumbnailId = thumbnailId;
+        this.configId = configId;
+        this.url = url;
+        this.outputFile = outputFile;
+        this.width = width;
+        this.height = height;
+        host = parseHost(url);
+    }
+
+    /**
+     * Creates a task rendering the same page again after a failed attempt.
+     *
+     * @return the new task
+     */
+    public RenderTask createRetry() {
+        final RenderTask task = new RenderTask(thumbnailId, configId, url, outputFile, width, height);
+        task.fingerprint = fingerprint;
+        task.priority = priority;
+        task.cost = cost;
+        task.refresh = refresh;
+        task.attempts = attempts + 1;
+        return task;
+    }
+
+    /**
+     * Gets the lower-cased host of the URL.
+     *
+     * @param url the URL
+     * @return the host, or an empty string if the URL has no host
+     */
+    public static String parseHost(final String url) {
+        try {
+            final String host = URI.create(url).getHost();
+            if (host != null) {
+                return host.toLowerCase(Locale.ROOT);
+            }
+        } catch (final IllegalArgumentException e) {
+            // invalid URL
+        }
+        return "";
+    }
+
+    /**
+     * Gets the thumbnail ID.
+     *
+     * @return the thumbnail ID
+     */
+    public String getThumbnailId() {
+        return thumbnailId;
+    }
+
+    /**
+     * Gets the crawling config ID of the document.
+     *
+     * @return the crawling config ID
+     */
+    public String getConfigId() {
+        return configId;
+    }
+
+    /**
+     * Gets the page URL.
+     *
+     * @return the page URL
+     */
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * Gets the host of the page URL.
+     *
+     * @return the host
+     */
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * Gets the file to save the thumbnail to.
+     *
+     * @return the output file
+     */
+    public File getOutputFile() {
+        return outputFile;
+    }
+
+    /**
+     * Gets the target width of the thumbnail.
+     *
+     * @return the width in pixels
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Gets the maximum height of the thumbnail.
+     *
+     * @return the height in pixels
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Gets the content fingerprint of the page.
+     *
+     * @return the fingerprint, or null
+     */
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * Sets the content fingerprint of the page.
+     *
+     * @param fingerprint the fingerprint
+     */
+    public void setFingerprint(final String fingerprint) {
+        this.fingerprint = fingerprint;
+    }
+
+    /**
+     * Gets the priority of the task.
+     *
+     * @return the priority, higher values first
+     */
+    public double getPriority() {
+        return priority;
+    }
+
+    /**
+     * Sets the priority of the task.
+     *
+     * @param priority the priority, higher values first
+     */
+    public void setPriority(final double priority) {
+        this.priority = priority;
+    }
+
+    /**
+     * Gets the arrival number of the task in the render scheduler.
+     *
+     * @return the arrival number
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Sets the arrival number of the task in the render scheduler.
+     *
+     * @param sequence the arrival number
+     */
+    public void setSequence(final long sequence) {
+        this.sequence = sequence;
+    }
+
+    /**
+     * Gets the predicted render duration.
+     *
+     * @return the duration in milliseconds, or 0 if unknown
+     */
+    public double getCost() {
+        return cost;
+    }
+
+    /**
+     * Sets the predicted render duration.
+     *
+     * @param cost the duration in milliseconds
+     */
+    public void setCost(final double cost) {
+        this.cost = cost;
+    }
+
+    /**
+     * Checks if the task re-renders an existing thumbnail.
+     *
+     * @return true if the existing thumbnail is kept when the render fails
+     */
+    public boolean isRefresh() {
+        return refresh;
+    }
+
+    /**
+     * Sets whether the task re-renders an existing thumbnail.
+     *
+     * @param refresh true if the existing thumbnail is kept when the render fails
+     */
+    public void setRefresh(final boolean refresh) {
+        this.refresh = refresh;
+    }
+
+    /**
+     * Gets the number of earlier failed attempts to render the page.
+     *
+     * @return the number of failed attempts
+     */
+    public int getAttempts() {
+        return attempts;
+    }
+
+    /**
+     * Gets the time the task was created.
+     *
+     * @return the creation time in milliseconds
+     */
+    public long getCreatedTime() {
+        return createdTime;
+    }
+
+    /**
+     * Gets the future completed when the task is rendered.
+     *
+     * @return the future
+     */
+    public CompletableFuture<Boolean> getFuture() {
+        return future;
+    }
+
+    @Override
+    public String toString() {
+        return "RenderTask [thumbnailId=" + thumbnailId + ", url=" + url + "]";
+    }
+}
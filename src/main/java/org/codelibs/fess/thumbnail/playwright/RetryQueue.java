@@ -0,0 +1,146 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.thumbnail.playwright;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.codelibs.fess.mylasta.direction.FessConfig;
+
+/**
+ * Bounded queue of renders to retry after a transient failure. The delay before
+ * a retry doubles with each attempt and is spread by a random jitter, so that
+ * retries of the same host do not arrive at once.
+ */
+public class RetryQueue {
+
+    /**
+     * A render waiting for its retry time.
+     *
+     * @param task the task to render
+     * @param dueTime the earliest time to render the task
+     */
+    public record Item(RenderTask task, long dueTime) {
+    }
+
+    /** The maximum number of waiting renders. */
+    protected final int maxSize;
+
+    /** The maximum number of attempts per page, including the first one. */
+    protected final int maxAttempts;
+
+    /** The delay in milliseconds before the first retry. */
+    protected final long delay;
+
+    /** The relative jitter applied to the delay, between 0 and 1. */
+    protected final double jitter;
+
+    /** The waiting renders, earliest first. */
+    protected final PriorityQueue<Item> queue = new PriorityQueue<>(Comparator.comparingLong(Item::dueTime));
+
+    /**
+     * Creates a retry queue.
+     *
+     * @param maxSize the maximum number of waiting renders
+     * @param maxAttempts the maximum number of attempts per page, including the first one
+     * @param delay the delay in milliseconds before the first retry
+     * @param jitter the relative jitter applied to the delay, between 0 and 1
+     */
+    public RetryQueue(final int maxSize, final int maxAttempts, final long delay, final double jitter) {
+        this.maxSize = maxSize;
+        this.maxAttempts = maxAttempts;
+        this.delay = delay;
+        this.jitter = Math.min(Math.max(jitter, 0.0), 1.0);
+    }
+
+    /**
+     * Creates a retry queue from the system properties if retries are enabled.
+     *
+     * @param fessConfig the Fess configuration
+     * @return the retry queue, or null if retries are disabled
+     */
+    public static RetryQueue from(final FessConfig fessConfig) {
+        final PropertyReader reader = new PropertyReader(fessConfig);
+        if (!reader.getBoolean("thumbnail.playwright.retry.enabled", false)) {
+            return null;
+        }
+        return new RetryQueue(reader.getInt("thumbnail.playwright.retry.max.size", 1000), reader.getInt("thumbnail.playwright.retry.max.attempts", 3),
+                reader.getLong("thumbnail.playwright.retry.delay", 30000L), reader.getDouble("thumbnail.playwright.retry.jitter", 0.2));
+    }
+
+    /**
+     * Queues a retry of a failed render.
+     *
+     * @param task the failed task
+     * @param now the current time in milliseconds
+     * @return true if a retry was queued, false if the attempts are exhausted or the queue is full
+     */
+    public synchronized boolean offer(final RenderTask task, final long now) {
+        if (task.getAttempts() + 1 >= maxAttempts || queue.size() >= maxSize) {
+            return false;
+        }
+        final long base = delay << Math.min(task.getAttempts(), 20);
+        final double factor = jitter > 0.0 ? 1.0 + jitter * (ThreadLocalRandom.current().nextDouble() * 2.0 - 1.0) : 1.0;
+        queue.add(new Item(task.createRetry(), now + (long) (base * factor)));
+        return true;
+    }
+
+    /**
+     * Puts back a retry that was taken but could not be started, keeping its attempt count.
+     *
+     * @param task the retry task
+     * @param dueTime the time in milliseconds to retry at
+     */
+    public synchronized void requeue(final RenderTask task, final long dueTime) {
+        queue.add(new Item(task, dueTime));
+    }
+
+    /**
+     * Removes the renders whose retry time has come.
+     *
+     * @param now the current time in milliseconds
+     * @return the tasks to render, earliest first
+     */
+    public synchronized List<RenderTask> pollDue(final long now) {
+        final List<RenderTask> tasks = new ArrayList<>();
+        while (!queue.isEmpty() && queue.peek().dueTime() <= now) {
+            tasks.add(queue.poll().task());
+        }
+        return tasks;
+    }
+
+    /**
+     * Gets the retry time of the earliest waiting render.
+     *
+     * @return the time in milliseconds, or -1 if the queue is empty
+     */
+    public synchronized long getNextDueTime() {
+        final Item item = queue.peek();
+        return item == null ? -1L : item.dueTime();
+    }
+
+    /**
+     * Returns the number of waiting renders.
+     *
+     * @return the number of renders
+     */
+    public synchronized int size() {
+        return queue.size();
+    }
+}
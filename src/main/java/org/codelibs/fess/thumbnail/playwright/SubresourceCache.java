@@ -0,0 +1,404 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.thumbnail.playwright;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.codelibs.core.exception.IORuntimeException;
+import org.codelibs.fess.mylasta.direction.FessConfig;
+
+import com.microsoft.playwright.APIResponse;
+import com.microsoft.playwright.Request;
+import com.microsoft.playwright.Route;
+
+/**
+ * Disk-backed cache of static subresources, such as stylesheets, scripts, fonts and
+ * images, shared by all browser contexts and kept across runs. It is installed as a
+ * route handler: a fresh cached response is served without a network request, and
+ * other responses are fetched and stored when their Cache-Control or Expires headers
+ * allow it. Bodies are stored as files, and the least recently used ones are removed
+ * when the cache grows beyond its size.
+ */
+public class SubresourceCache extends LogStore<SubresourceCache.Entry> {
+
+    private static final Logger logger = LogManager.getLogger(SubresourceCache.class);
+
+    /** The resource types that are cached. */
+    protected static final Set<String> RESOURCE_TYPES = Set.of("stylesheet", "script", "font", "image");
+
+    /** The response headers that are not stored with a body. */
+    protected static final Set<String> EXCLUDED_HEADERS =
+            Set.of("set-cookie", "connection", "keep-alive", "transfer-encoding", "content-encoding", "content-length", "date", "age");
+
+    /**
+     * A cached response.
+     *
+     * @param file the name of the body file
+     * @param size the size of the body in bytes
+     * @param expiresTime the time the response becomes stale
+     * @param headers the response headers as {@code name: value} lines
+     * @param accessTime the time the response was last served or stored
+     */
+    public record Entry(String file, long size, long expiresTime, String headers, long accessTime) {
+    }
+
+    /** The directory of the body files. */
+    protected final Path directory;
+
+    /** The maximum total size of the bodies in bytes. */
+    protected final long maxBytes;
+
+    /** The maximum size of a cached body in bytes. */
+    protected final long maxEntrySize;
+
+    /** The freshness lifetime in milliseconds of responses without Cache-Control or Expires, or 0 to skip them. */
+    protected final long defaultTtl;
+
+    /** The total size of the bodies in bytes. */
+    protected final AtomicLong totalBytes = new AtomicLong();
+
+    /** The number of requests served from the cache. */
+    protected final AtomicLong hitCount = new AtomicLong();
+
+    /** The number of cacheable requests sent to the network. */
+    protected final AtomicLong missCount = new AtomicLong();
+
+    /** The number of stored responses. */
+    protected final AtomicLong storeCount = new AtomicLong();
+
+    /** The number of responses removed to stay within the size. */
+    protected final AtomicLong evictionCount = new AtomicLong();
+
+    /**
+     * Creates a subresource cache.
+     *
+     * @param path the log file of the index
+     * @param directory the directory of the body files
+     * @param maxBytes the maximum total size of the bodies in bytes
+     * @param maxEntrySize the maximum size of a cached body in bytes
+     * @param defaultTtl the freshness lifetime in milliseconds of responses without Cache-Control or Expires, or 0 to skip them
+     */
+    public SubresourceCache(final Path path, final Path directory, final long maxBytes, final long maxEntrySize, final long defaultTtl) {
+        super(path);
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.maxEntrySize = maxEntrySize;
+        this.defaultTtl = defaultTtl;
+    }
+
+    /**
+     * Creates a subresource cache from the system properties if it is enabled.
+     *
+     * @param fessConfig the Fess configuration
+     * @param dataDirectory the directory of the cache log and the cached bodies
+     * @return the subresource cache to open, or null if it is disabled
+     */
+    public static SubresourceCache from(final FessConfig fessConfig, final File dataDirectory) {
+        final PropertyReader reader = new PropertyReader(fessConfig);
+        if (!reader.getBoolean("thumbnail.playwright.subresource.cache.enabled", false)) {
+            return null;
+        }
+        return new SubresourceCache(new File(dataDirectory, "subresources.log").toPath(), new File(dataDirectory, "subresources").toPath(),
+                reader.getLong("thumbnail.playwright.subresource.cache.size", 268435456L),
+                reader.getLong("thumbnail.playwright.subresource.cache.max.entry.size", 10485760L),
+                reader.getLong("thumbnail.playwright.subresource.cache.default.ttl", 0L));
+    }
+
+    /**
+     * Loads the index, drops entries whose body file is missing, deletes body files
+     * that are not indexed, and trims the cache to its size.
+     */
+    @Override
+    public synchronized void open() {
+        super.open();
+        try {
+            Files.createDirectories(directory);
+            for (final String key : keys()) {
+                final Entry entry = get(key);
+                if (Files.exists(directory.resolve(entry.file()))) {
+                    totalBytes.addAndGet(entry.size());
+                } else {
+                    remove(key);
+                }
+            }
+            final Set<String> files = entryMap.values().stream().map(Entry::file).collect(Collectors.toSet());
+            try (Stream<Path> paths = Files.list(directory)) {
+                paths.filter(p -> !files.contains(p.getFileName().toString())).forEach(p -> p.toFile().delete());
+            }
+        } catch (final IOException e) {
+            throw new IORuntimeException(e);
+        }
+        trim();
+    }
+
+    /**
+     * Handles a request of a page: serves a fresh cached response, or fetches the
+     * response and stores it if it is cacheable. Other requests fall back to the
+     * next route handler.
+     *
+     * @param route the route of the request
+     */
+    public void handle(final Route route) {
+        final Request request = route.request();
+        if (!"GET".equals(request.method()) || request.isNavigationRequest() || !RESOURCE_TYPES.contains(request.resourceType())) {
+            route.fallback();
+            return;
+        }
+        final String url = request.url();
+        final long now = System.currentTimeMillis();
+        final Entry entry = get(url);
+        final byte[] body = load(url, entry, now);
+        if (body != null) {
+            hitCount.incrementAndGet();
+            route.fulfill(new Route.FulfillOptions().setStatus(200).setHeaders(parseHeaders(entry.headers())).setBodyBytes(body));
+            return;
+        }
+        missCount.incrementAndGet();
+        final APIResponse response;
+        try {
+            response = route.fetch();
+        } catch (final RuntimeException e) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Failed to fetch {}", url, e);
+            }
+            route.abort();
+            return;
+        }
+        if (response.status() == 200) {
+            store(url, response.headers(), response.body(), now);
+        }
+        route.fulfill(new Route.FulfillOptions().setResponse(response));
+    }
+
+    /**
+     * Reads the body of a fresh cached response and marks it as used.
+     *
+     * @param url the URL
+     * @param entry the cached response, or null
+     * @param now the current time in milliseconds
+     * @return the body, or null if the response is not cached or stale
+     */
+    public byte[] load(final String url, final Entry entry, final long now) {
+        if (entry == null || entry.expiresTime() <= now) {
+            return null;
+        }
+        try {
+            final byte[] body = Files.readAllBytes(directory.resolve(entry.file()));
+            entryMap.replace(url, entry, new Entry(entry.file(), entry.size(), entry.expiresTime(), entry.headers(), now));
+            return body;
+        } catch (final IOException e) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Failed to read the cached body of {}", url, e);
+            }
+            synchronized (this) {
+                if (get(url) == entry) {
+                    remove(url);
+                    totalBytes.addAndGet(-entry.size());
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Stores a response if its headers allow caching and its body is not too large.
+     *
+     * @param url the URL
+     * @param headers the response headers with lower-case names
+     * @param body the response body
+     * @param now the current time in milliseconds
+     * @return true if the response was stored
+     */
+    public boolean store(final String url, final Map<String, String> headers, final byte[] body, final long now) {
+        final long expiresTime = getExpiresTime(headers, now);
+        if (expiresTime <= now || body == null || body.length > maxEntrySize || body.length > maxBytes) {
+            return false;
+        }
+        final String vary = headers.get("vary");
+        if (vary != null && !"accept-encoding".equalsIgnoreCase(vary.trim())) {
+            return false;
+        }
+        final String file = ValidatorCache.digest(url.getBytes(StandardCharsets.UTF_8));
+        try {
+            final Path tempFile = Files.createTempFile(directory, file, ".tmp");
+            Files.write(tempFile, body);
+            synchronized (this) {
+                Files.move(tempFile, directory.resolve(file), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                final Entry previous = get(url);
+                put(url, new Entry(file, body.length, expiresTime, formatHeaders(headers), now));
+                totalBytes.addAndGet(body.length - (previous != null ? previous.size() : 0L));
+                storeCount.incrementAndGet();
+                trim();
+            }
+            return true;
+        } catch (final IOException e) {
+            logger.warn("Failed to store the body of {}", url, e);
+            return false;
+        }
+    }
+
+    /**
+     * Removes the least recently used responses until the cache is at 90% of its size.
+     */
+    protected synchronized void trim() {
+        if (totalBytes.get() <= maxBytes) {
+            return;
+        }
+        final long target = maxBytes * 9 / 10;
+        final List<Map.Entry<String, Entry>> entries = new ArrayList<>(entryMap.entrySet());
+        entries.sort(Comparator.comparingLong(e -> e.getValue().accessTime()));
+        for (final Map.Entry<String, Entry> entry : entries) {
+            if (totalBytes.get() <= target) {
+                break;
+            }
+            remove(entry.getKey());
+            new File(directory.toFile(), entry.getValue().file()).delete();
+            totalBytes.addAndGet(-entry.getValue().size());
+            evictionCount.incrementAndGet();
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("Trimmed the subresource cache to {} bytes.", totalBytes.get());
+        }
+    }
+
+    /**
+     * Gets the time a response becomes stale from its Cache-Control, Age and Expires headers.
+     * Responses marked no-store, no-cache or private are not cached, as they must not be
+     * shared or must be revalidated.
+     *
+     * @param headers the response headers with lower-case names
+     * @param now the current time in milliseconds
+     * @return the expiration time, or 0 if the response must not be cached
+     */
+    public long getExpiresTime(final Map<String, String> headers, final long now) {
+        final String cacheControl = headers.get("cache-control");
+        if (cacheControl != null) {
+            long maxAge = -1L;
+            for (final String directive : cacheControl.toLowerCase(Locale.ROOT).split(",")) {
+                final String value = directive.trim();
+                if ("no-store".equals(value) || "no-cache".equals(value) || "private".equals(value)) {
+                    return 0L;
+                }
+                if (value.startsWith("max-age=")) {
+                    maxAge = toLong(value.substring(8).replace("\"", ""), -1L);
+                }
+            }
+            if (maxAge >= 0L) {
+                return now + (maxAge - Math.max(toLong(headers.get("age"), 0L), 0L)) * 1000L;
+            }
+        }
+        final String expires = headers.get("expires");
+        if (expires != null) {
+            try {
+                return ZonedDateTime.parse(expires.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+            } catch (final DateTimeParseException e) {
+                return 0L;
+            }
+        }
+        return defaultTtl > 0L ? now + defaultTtl : 0L;
+    }
+
+    /**
+     * Formats the stored response headers as {@code name: value} lines.
+     *
+     * @param headers the response headers
+     * @return the formatted headers
+     */
+    protected static String formatHeaders(final Map<String, String> headers) {
+        final StringBuilder buf = new StringBuilder();
+        for (final Map.Entry<String, String> header : headers.entrySet()) {
+            final String name = header.getKey().toLowerCase(Locale.ROOT);
+            if (EXCLUDED_HEADERS.contains(name) || header.getValue() == null || header.getValue().indexOf('\n') >= 0) {
+                continue;
+            }
+            buf.append(name).append(": ").append(header.getValue()).append('\n');
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Parses headers formatted by {@link #formatHeaders(Map)}.
+     *
+     * @param headers the formatted headers
+     * @return the headers
+     */
+    protected static Map<String, String> parseHeaders(final String headers) {
+        final Map<String, String> map = new LinkedHashMap<>();
+        if (headers == null) {
+            return map;
+        }
+        for (final String line : headers.split("\n")) {
+            final int pos = line.indexOf(": ");
+            if (pos > 0) {
+                map.put(line.substring(0, pos), line.substring(pos + 2));
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Gets the metrics of the cache.
+     *
+     * @return the metrics keyed by name
+     */
+    public Map<String, Object> getMetrics() {
+        final Map<String, Object> metrics = new LinkedHashMap<>();
+        final long hits = hitCount.get();
+        final long requests = hits + missCount.get();
+        metrics.put("subresource.hits", hits);
+        metrics.put("subresource.misses", missCount.get());
+        metrics.put("subresource.hit.rate", requests > 0 ? (double) hits / requests : 0.0);
+        metrics.put("subresource.stores", storeCount.get());
+        metrics.put("subresource.evictions", evictionCount.get());
+        metrics.put("subresource.entries", size());
+        metrics.put("subresource.bytes", totalBytes.get());
+        return metrics;
+    }
+
+    @Override
+    protected String[] toFields(final Entry value) {
+        return new String[] { value.file(), Long.toString(value.size()), Long.toString(value.expiresTime()), value.headers(),
+                Long.toString(value.accessTime()) };
+    }
+
+    @Override
+    protected Entry fromFields(final String[] fields) {
+        if (fields.length < 5 || fields[0].isEmpty()) {
+            return null;
+        }
+        return new Entry(fields[0], toLong(fields[1], 0L), toLong(fields[2], 0L), fields[3], toLong(fields[4], 0L));
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.thumbnail.playwright;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.codelibs.fess.mylasta.direction.FessConfig;
+import org.codelibs.fess.util.ComponentUtil;
+import org.opensearch.action.bulk.BulkRequestBuilder;
+import org.opensearch.action.bulk.BulkResponse;
+import org.opensearch.action.update.UpdateRequest;
+
+/**
+ * Buffers updates of the thumbnail field and writes them to the search index as bulk requests.
+ * The buffer is flushed when it reaches the batch size, when the flush interval has passed
+ * since the last flush, and when the generator is destroyed. Later updates of a document
+ * replace earlier ones in the buffer.
+ */
+public class ThumbnailFieldUpdater {
+
+    private static final Logger logger = LogManager.getLogger(ThumbnailFieldUpdater.class);
+
+    /** The number of buffered updates that triggers a flush. */
+    protected final int batchSize;
+
+    /** The time in milliseconds after the last flush that triggers a flush. */
+    protected final long flushInterval;
+
+    /** The buffered field values keyed by thumbnail ID. */
+    protected final Map<String, String> updateMap = new LinkedHashMap<>();
+
+    /** The time of the last flush. */
+    protected long lastFlushTime = System.currentTimeMillis();
+
+    /**
+     * Creates a thumbnail field updater.
+     *
+     * @param batchSize the number of buffered updates that triggers a flush
+     * @param flushInterval the time in milliseconds after the last flush that triggers a flush
+     */
+    public ThumbnailFieldUpdater(final int batchSize, final long flushInterval) {
+        this.batchSize = batchSize;
+        this.flushInterval = flushInterval;
+    }
+
+    /**
+     * Creates a field updater from the system properties if updates are batched.
+     *
+     * @param fessConfig the Fess configuration
+     * @return the field updater, or null if each document is updated directly
+     */
+    public static ThumbnailFieldUpdater from(final FessConfig fessConfig) {
+        final PropertyReader reader = new PropertyReader(fessConfig);
+        final int batchSize = reader.getInt("thumbnail.playwright.field.update.batch.size", 0);
+        if (batchSize <= 0) {
+            return null;
+        }
+        return new ThumbnailFieldUpdater(batchSize, reader.getLong("thumbnail.playwright.field.update.interval", 10000L));
+    }
+
+    /**
+     * Buffers an update of the thumbnail field, flushing the buffer if a threshold is reached.
+     *
+     * @param thumbnailId the thumbnail ID
+     * @param value the new field value
+     */
+    public void add(final String thumbnailId, final String value) {
+        final Map<String, String> updates;
+        synchronized (this) {
+            updateMap.put(thumbnailId, value);
+            if (updateMap.size() < batchSize && System.currentTimeMillis() - lastFlushTime < flushInterval) {
+                return;
+            }
+            updates = drain();
+        }
+        write(updates);
+    }
+
+    /**
+     * Writes all buffered updates.
+     */
+    public void flush() {
+        final Map<String, String> updates;
+        synchronized (this) {
+            updates = drain();
+        }
+        write(updates);
+    }
+
+    /**
+     * Returns the number of buffered updates.
+     *
+     * @return the number of updates
+     */
+    public synchronized int size() {
+        return updateMap.size();
+    }
+
+    /**
+     * Removes all buffered updates and resets the flush timer.
+     *
+     * @return the buffered updates
+     */
+    protected Map<String, String> drain() {
+        final Map<String, String> updates = new LinkedHashMap<>(updateMap);
+        updateMap.clear();
+        lastFlushTime = System.currentTimeMillis();
+        return updates;
+    }
+
+    /**
+     * Writes the updates to the search index in a single bulk request.
+     *
+     * @param updates the field values keyed by thumbnail ID
+     */
+    protected void write(final Map<String, String> updates) {
+        if (updates.isEmpty()) {
+            return;
+        }
+        final FessConfig fessConfig = ComponentUtil.getFessConfig();
+        final String index = fessConfig.getIndexDocumentUpdateIndex();
+        final String field = fessConfig.getIndexFieldThumbnail();
+        try {
+            final BulkRequestBuilder builder = ComponentUtil.getSearchEngineClient().prepareBulk();
+            updates.forEach((id, value) -> builder.add(new UpdateRequest(index, id).doc(field, value)));
+            final BulkResponse response = builder.execute().actionGet(fessConfig.getIndexBulkTimeout());
+            if (response.hasFailures()) {
+                logger.warn("Failed to update some thumbnail fields: {}", response.buildFailureMessage());
+            } else if (logger.isDebugEnabled()) {
+                logger.debug("Updated {} thumbnail fields.", updates.size());
+            }
+        } catch (final Exception e) {
+            logger.warn("Failed to update {} thumbnail fields.", updates.size(), e);
+        }
+    }
+}
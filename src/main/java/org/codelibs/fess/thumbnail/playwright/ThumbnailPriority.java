@@ -0,0 +1,160 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.thumbnail.playwright;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Date;
+
+import org.codelibs.fess.mylasta.direction.FessConfig;
+
+/**
+ * Computes the render priority of a thumbnail from document signals. The priority is the
+ * weighted sum of the logarithm of the document boost, the logarithm of its click and
+ * favorite counts, its freshness (1 when just modified, halved every half-life), and 1 if
+ * the document has no thumbnail yet.
+ */
+public class ThumbnailPriority {
+
+    /** The weight of the document boost. */
+    protected final double boostWeight;
+
+    /** The weight of the click and favorite counts. */
+    protected final double clickWeight;
+
+    /** The weight of the freshness. */
+    protected final double freshnessWeight;
+
+    /** The time in milliseconds after which the freshness is halved. */
+    protected final long freshnessHalfLife;
+
+    /** The weight of documents without a thumbnail. */
+    protected final double newWeight;
+
+    /**
+     * Creates a priority function.
+     *
+     * @param boostWeight the weight of the document boost
+     * @param clickWeight the weight of the click and favorite counts
+     * @param freshnessWeight the weight of the freshness
+     * @param freshnessHalfLife the time in milliseconds after which the freshness is halved
+     * @param newWeight the weight of documents without a thumbnail
+     */
+    public ThumbnailPriority(final double boostWeight, final double clickWeight, final double freshnessWeight,
+            final long freshnessHalfLife, final double newWeight) {
+        this.boostWeight = boostWeight;
+        this.clickWeight = clickWeight;
+        this.freshnessWeight = freshnessWeight;
+        this.freshnessHalfLife = freshnessHalfLife;
+        this.newWeight = newWeight;
+    }
+
+    /**
+     * Creates a priority function from the system properties if it is enabled.
+     *
+     * @param fessConfig the Fess configuration
+     * @return the priority function, or null if it is disabled
+     */
+    public static ThumbnailPriority from(final FessConfig fessConfig) {
+        final PropertyReader reader = new PropertyReader(fessConfig);
+        if (!reader.getBoolean("thumbnail.playwright.priority.enabled", false)) {
+            return null;
+        }
+        return new ThumbnailPriority(reader.getDouble("thumbnail.playwright.priority.boost.weight", 1.0),
+                reader.getDouble("thumbnail.playwright.priority.click.weight", 1.0),
+                reader.getDouble("thumbnail.playwright.priority.freshness.weight", 1.0),
+                reader.getLong("thumbnail.playwright.priority.freshness.half.life", 2592000000L),
+                reader.getDouble("thumbnail.playwright.priority.new.weight", 1.0));
+    }
+
+    /**
+     * Computes the priority of a thumbnail.
+     *
+     * @param boost the document boost, or null
+     * @param clickCount the click count, or null
+     * @param favoriteCount the favorite count, or null
+     * @param lastModified the last modified time of the document as a date or string, or null
+     * @param hasThumbnail true if the document already has a thumbnail
+     * @param now the current time in milliseconds
+     * @return the priority, higher values first
+     */
+    public double compute(final Object boost, final Object clickCount, final Object favoriteCount, final Object lastModified,
+            final boolean hasThumbnail, final long now) {
+        double priority = 0;
+        final double boostValue = toDouble(boost);
+        if (boostValue > 0) {
+            priority += boostWeight * Math.log1p(boostValue);
+        }
+        final double clicks = Math.max(toDouble(clickCount), 0) + Math.max(toDouble(favoriteCount), 0);
+        priority += clickWeight * Math.log1p(clicks);
+        final long time = toTime(lastModified);
+        if (time > 0 && freshnessHalfLife > 0) {
+            priority += freshnessWeight * Math.pow(0.5, (double) Math.max(now - time, 0L) / freshnessHalfLife);
+        }
+        if (!hasThumbnail) {
+            priority += newWeight;
+        }
+        return priority;
+    }
+
+    /**
+     * Converts a field value to a number.
+     *
+     * @param value the value
+     * @return the number, or 0 if the value is not numeric
+     */
+    protected static double toDouble(final Object value) {
+        if (value instanceof final Number number) {
+            return number.doubleValue();
+        }
+        if (value instanceof final String str) {
+            try {
+                return Double.parseDouble(str);
+            } catch (final NumberFormatException e) {
+                // not numeric
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Converts a field value to a time.
+     *
+     * @param value the date, ISO-8601 string or epoch milliseconds
+     * @return the time in milliseconds, or 0 if the value is not a time
+     */
+    protected static long toTime(final Object value) {
+        if (value instanceof final Date date) {
+            return date.getTime();
+        }
+        if (value instanceof final Number number) {
+            return number.longValue();
+        }
+        if (value instanceof final String str) {
+            try {
+                return Instant.parse(str).toEpochMilli();
+            } catch (final DateTimeParseException e) {
+                try {
+                    return OffsetDateTime.parse(str).toInstant().toEpochMilli();
+                } catch (final DateTimeParseException e2) {
+                    // not a time
+                }
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.thumbnail.playwright;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Storage of encoded thumbnail images. Thumbnails are addressed by the output file
+ * path Fess assigns to them, which is also where Fess serves them from.
+ */
+public interface ThumbnailStorage extends Closeable {
+
+    /**
+     * Prepares the storage for writing the thumbnail, for example by creating its directory.
+     *
+     * @param file the thumbnail file
+     * @return true if the thumbnail can be written
+     */
+    boolean prepare(File file);
+
+    /**
+     * Creates a temporary file to encode the thumbnail into before it is stored.
+     *
+     * @param file the thumbnail file
+     * @return the temporary file
+     * @throws IOException if the file cannot be created
+     */
+    File createTempFile(File file) throws IOException;
+
+    /**
+     * Stores an encoded thumbnail, replacing any existing one at once.
+     * The temporary file is consumed.
+     *
+     * @param tempFile the temporary file holding the encoded image
+     * @param file the thumbnail file
+     * @throws IOException if the thumbnail cannot be stored
+     */
+    void store(File tempFile, File file) throws IOException;
+
+    /**
+     * Copies a stored thumbnail to another thumbnail file.
+     *
+     * @param sourceFile the stored thumbnail file
+     * @param targetFile the thumbnail file to create or replace
+     * @throws IOException if the thumbnail cannot be copied
+     */
+    void copy(File sourceFile, File targetFile) throws IOException;
+
+    /**
+     * Checks if the thumbnail is stored.
+     *
+     * @param file the thumbnail file
+     * @return true if the thumbnail exists
+     */
+    boolean exists(File file);
+
+    /**
+     * Gets the time the thumbnail was stored.
+     *
+     * @param file the thumbnail file
+     * @return the time in milliseconds, or 0 if the thumbnail does not exist
+     */
+    long getLastModified(File file);
+
+    /**
+     * Marks the thumbnail as stored now without changing it, such as after its page was found unchanged.
+     *
+     * @param file the thumbnail file
+     * @return true if the thumbnail exists and was touched
+     */
+    boolean touch(File file);
+
+    /**
+     * Deletes the thumbnail.
+     *
+     * @param file the thumbnail file
+     * @return true if the thumbnail no longer exists
+     */
+    boolean delete(File file);
+
+    /**
+     * Releases the resources of the storage.
+     */
+    @Override
+    void close();
+}
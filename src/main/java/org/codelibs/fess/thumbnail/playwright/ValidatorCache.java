@@ -0,0 +1,294 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.thumbnail.playwright;
+
+import java.io.File;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.codelibs.fess.crawler.exception.CrawlerSystemException;
+import org.codelibs.fess.mylasta.direction.FessConfig;
+
+/**
+ * Persistent cache of the HTTP validators (ETag, Last-Modified and a content digest)
+ * observed when a page was rendered. On recrawl, a conditional GET tells whether
+ * the page has changed, so that an existing thumbnail can be copied forward instead
+ * of rendering the page again.
+ */
+public class ValidatorCache extends LogStore<ValidatorCache.Entry> {
+
+    private static final Logger logger = LogManager.getLogger(ValidatorCache.class);
+
+    /**
+     * Validators of a rendered page and the thumbnail file created from it.
+     *
+     * @param etag the ETag header, or null
+     * @param lastModified the Last-Modified header, or null
+     * @param digest the SHA-256 digest of the page body, or null
+     * @param path the absolute path of the thumbnail file
+     * @param time the time the page was rendered
+     */
+    public record Entry(String etag, String lastModified, String digest, String path, long time) {
+    }
+
+    /** The headers the HTTP client sets itself, which cannot be set on a request. */
+    protected static final Set<String> RESTRICTED_HEADERS = Set.of("connection", "content-length", "expect", "host", "upgrade");
+
+    /** HTTP client for conditional requests. */
+    protected HttpClient httpClient;
+
+    /** Timeout for conditional requests. */
+    protected Duration timeout;
+
+    /** Headers sent with conditional requests, such as the User-Agent and credentials the pages are rendered with. */
+    protected Map<String, String> headers = Collections.emptyMap();
+
+    /** The maximum number of entries; the oldest entries are evicted beyond it. */
+    protected int maxSize = 100000;
+
+    /** The maximum age of an entry in milliseconds, or 0 to keep entries until they are evicted by size. */
+    protected long maxAge = 0L;
+
+    /** Deletes the thumbnail file of an evicted entry. */
+    protected Consumer<File> fileRemover = File::delete;
+
+    /**
+     * Creates a validator cache backed by the given log file.
+     *
+     * @param path the log file
+     * @param timeout the timeout for conditional requests
+     */
+    public ValidatorCache(final Path path, final Duration timeout) {
+        super(path);
+        this.timeout = timeout;
+        httpClient = HttpClient.newBuilder().connectTimeout(timeout).followRedirects(HttpClient.Redirect.NORMAL).build();
+    }
+
+    /**
+     * Creates a validator cache from the system properties if it is enabled.
+     *
+     * @param fessConfig the Fess configuration
+     * @param dataDirectory the directory of the cache file
+     * @return the validator cache to open, or null if it is disabled
+     */
+    public static ValidatorCache from(final FessConfig fessConfig, final File dataDirectory) {
+        final PropertyReader reader = new PropertyReader(fessConfig);
+        if (!reader.getBoolean("thumbnail.playwright.validator.cache.enabled", false)) {
+            return null;
+        }
+        final ValidatorCache cache = new ValidatorCache(new File(dataDirectory, "validators.log").toPath(),
+                Duration.ofMillis(reader.getLong("thumbnail.playwright.validator.timeout", 5000L)));
+        cache.setMaxSize(reader.getInt("thumbnail.playwright.validator.cache.max.size", 100000));
+        cache.setMaxAge(reader.getLong("thumbnail.playwright.validator.cache.max.age", 2592000000L));
+        return cache;
+    }
+
+    /**
+     * Records the validators of a page rendered into the thumbnail file.
+     *
+     * @param url the page URL
+     * @param etag the ETag header, or null
+     * @param lastModified the Last-Modified header, or null
+     * @param body the page body, or null if not available
+     * @param thumbnailFile the thumbnail file
+     */
+    public void record(final String url, final String etag, final String lastModified, final byte[] body, final File thumbnailFile) {
+        final String digest = body != null ? digest(body) : null;
+        if (etag == null && lastModified == null && digest == null) {
+            return;
+        }
+        put(url, new Entry(etag, lastModified, digest, thumbnailFile.getAbsolutePath(), System.currentTimeMillis()));
+        if (size() > maxSize) {
+            evict(System.currentTimeMillis());
+        }
+    }
+
+    @Override
+    public synchronized void open() {
+        super.open();
+        evict(System.currentTimeMillis());
+    }
+
+    /**
+     * Removes the entries older than the maximum age and, if the cache is over its size,
+     * the oldest entries until it is at 90% of its size. The thumbnail file of each removed entry
+     * is deleted with it.
+     *
+     * @param now the current time in milliseconds
+     * @return the number of removed entries
+     */
+    public synchronized int evict(final long now) {
+        final boolean overSize = size() > maxSize;
+        if (!overSize && maxAge <= 0) {
+            return 0;
+        }
+        final List<Map.Entry<String, Entry>> entries = new ArrayList<>(entryMap.entrySet());
+        entries.sort(Comparator.comparingLong(e -> e.getValue().time()));
+        final int target = overSize ? maxSize * 9 / 10 : maxSize;
+        int count = 0;
+        for (final Map.Entry<String, Entry> entry : entries) {
+            final boolean expired = maxAge > 0 && now - entry.getValue().time() > maxAge;
+            if (!expired && size() <= target) {
+                break;
+            }
+            remove(entry.getKey());
+            fileRemover.accept(new File(entry.getValue().path()));
+            count++;
+        }
+        if (count > 0 && logger.isDebugEnabled()) {
+            logger.debug("Evicted {} validator entries.", count);
+        }
+        return count;
+    }
+
+    /**
+     * Checks if the page has not changed since the entry was recorded.
+     * A conditional GET is sent with the stored validators; the page is unchanged
+     * if the server answers 304, or if the body has the same digest as before.
+     *
+     * @param url the page URL
+     * @param entry the recorded entry
+     * @return true if the page is known to be unchanged
+     */
+    public boolean isNotModified(final String url, final Entry entry) {
+        try {
+            final HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url)).timeout(timeout).GET();
+            for (final Map.Entry<String, String> header : headers.entrySet()) {
+                if (!RESTRICTED_HEADERS.contains(header.getKey().toLowerCase(Locale.ROOT))) {
+                    builder.header(header.getKey(), header.getValue());
+                }
+            }
+            if (entry.etag() != null) {
+                builder.header("If-None-Match", entry.etag());
+            }
+            if (entry.lastModified() != null) {
+                builder.header("If-Modified-Since", entry.lastModified());
+            }
+            final CompletableFuture<HttpResponse<byte[]>> future =
+                    httpClient.sendAsync(builder.build(), HttpResponse.BodyHandlers.ofByteArray());
+            final HttpResponse<byte[]> response;
+            try {
+                response = future.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+            } catch (final TimeoutException e) {
+                future.cancel(true);
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Timed out validating {}", url);
+                }
+                return false;
+            }
+            final int status = response.statusCode();
+            if (logger.isDebugEnabled()) {
+                logger.debug("Validated {} -> {}", url, status);
+            }
+            if (status == 304) {
+                return true;
+            }
+            return status == 200 && entry.digest() != null && entry.digest().equals(digest(response.body()));
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (final Exception e) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Failed to validate {}", url, e);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Sets the headers sent with conditional requests, so that the server sees the same
+     * client as when the page was rendered.
+     *
+     * @param headers the header names and values
+     */
+    public void setHeaders(final Map<String, String> headers) {
+        this.headers = headers;
+    }
+
+    /**
+     * Sets the maximum number of entries.
+     *
+     * @param maxSize the maximum number of entries
+     */
+    public void setMaxSize(final int maxSize) {
+        this.maxSize = Math.max(maxSize, 1);
+    }
+
+    /**
+     * Sets the maximum age of an entry.
+     *
+     * @param maxAge the maximum age in milliseconds, or 0 for no limit
+     */
+    public void setMaxAge(final long maxAge) {
+        this.maxAge = maxAge;
+    }
+
+    /**
+     * Sets the function deleting the thumbnail file of an evicted entry, so that
+     * derivatives and stored copies are removed with it.
+     *
+     * @param fileRemover the function deleting a thumbnail file
+     */
+    public void setFileRemover(final Consumer<File> fileRemover) {
+        this.fileRemover = fileRemover;
+    }
+
+    /**
+     * Computes the hex-encoded SHA-256 digest of the content.
+     *
+     * @param content the content
+     * @return the digest
+     */
+    protected static String digest(final byte[] content) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+        } catch (final NoSuchAlgorithmException e) {
+            throw new CrawlerSystemException("SHA-256 is not available.", e);
+        }
+    }
+
+    @Override
+    protected String[] toFields(final Entry value) {
+        return new String[] { value.etag(), value.lastModified(), value.digest(), value.path(), Long.toString(value.time()) };
+    }
+
+    @Override
+    protected Entry fromFields(final String[] fields) {
+        if (fields.length < 5 || fields[3].isEmpty()) {
+            return null;
+        }
+        return new Entry(toNullable(fields[0]), toNullable(fields[1]), toNullable(fields[2]), fields[3], toLong(fields[4], 0L));
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.thumbnail.playwright;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+public class AdmissionControllerTest extends UnitTestCase {
+
+    @Override
+    protected boolean isSuppressTestCaseTransaction() {
+        return true;
+    }
+
+    /**
+     * Test that heap pressure halves the limit, then pauses intake, and that the limit recovers.
+     */
+    public void test_heapPressure() {
+        final AdmissionController controller = new AdmissionController(8, 0.85, 0.7, 0L, 0L, 1000L);
+        assertEquals(8, controller.getLimit());
+
+        assertFalse("Should hold between thresholds", controller.update(0.8, -1L, 8));
+        assertTrue("Should shrink", controller.update(0.9, -1L, 8));
+        assertEquals(4, controller.getLimit());
+        assertTrue("Should shrink relative to renders in flight", controller.update(0.9, -1L, 2));
+        assertEquals(1, controller.getLimit());
+        assertFalse("Should not be paused yet", controller.isPaused());
+        assertTrue("Should pause", controller.update(0.9, -1L, 1));
+        assertTrue("Should be paused", controller.isPaused());
+        assertFalse("Should stay paused", controller.update(0.9, -1L, 1));
+
+        assertTrue("Should resume", controller.update(0.5, -1L, 1));
+        assertFalse("Should not be paused", controller.isPaused());
+        assertEquals(2, controller.getLimit());
+        for (int i = 0; i < 10; i++) {
+            controller.update(0.5, -1L, 1);
+        }
+        assertEquals(8, controller.getLimit());
+        assertEquals(2L, controller.getMetrics().get("admission.shrinks"));
+        assertEquals(1L, controller.getMetrics().get("admission.pauses"));
+    }
+
+    /**
+     * Test that browser memory is only used when known and configured.
+     */
+    public void test_rssPressure() {
+        final AdmissionController controller = new AdmissionController(4, 0.85, 0.7, 1000L, 800L, 1000L);
+        assertTrue("Should shrink on high RSS", controller.update(0.1, 1500L, 4));
+        assertEquals(2, controller.getLimit());
+        assertFalse("Should hold above the low RSS", controller.update(0.1, 900L, 4));
+        assertTrue("Should grow below the low RSS", controller.update(0.1, 700L, 4));
+        assertEquals(3, controller.getLimit());
+        assertTrue("Should ignore an unknown RSS", controller.update(0.1, -1L, 4));
+        assertEquals(4, controller.getLimit());
+    }
+
+    /**
+     * Test that the resident memory is read from a status file.
+     */
+    public void test_readRss() throws Exception {
+        final File file = File.createTempFile("status-", ".txt");
+        try {
+            Files.writeString(file.toPath(), "Name:\tchrome\nVmPeak:\t  2048 kB\nVmRSS:\t  1024 kB\n", StandardCharsets.UTF_8);
+            assertEquals(1024L * 1024L, AdmissionController.readRss(file.toPath()));
+            Files.writeString(file.toPath(), "Name:\tchrome\n", StandardCharsets.UTF_8);
+            assertEquals(-1L, AdmissionController.readRss(file.toPath()));
+        } finally {
+            file.delete();
+        }
+        assertEquals(-1L, AdmissionController.readRss(new File(file, "missing").toPath()));
+    }
+
+    /**
+     * Test that the proportional set size is read from a smaps_rollup file.
+     */
+    public void test_readPss() throws Exception {
+        final File file = File.createTempFile("smaps_rollup-", ".txt");
+        try {
+            Files.writeString(file.toPath(), "00400000-7fff [rollup]\nRss:\t  4096 kB\nPss:\t  2048 kB\nPss_Anon:\t  1024 kB\n",
+                    StandardCharsets.UTF_8);
+            assertEquals(2048L * 1024L, AdmissionController.readPss(file.toPath()));
+            Files.writeString(file.toPath(), "Pss_Anon:\t  1024 kB\n", StandardCharsets.UTF_8);
+            assertEquals(-1L, AdmissionController.readPss(file.toPath()));
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Test that the heap ratio is a valid ratio of the maximum heap.
+     */
+    public void test_getHeapRatio() {
+        final double ratio = new AdmissionController(4, 0.85, 0.7, 0L, 0L, 1000L).getHeapRatio();
+        assertTrue("Should be a ratio: " + ratio, ratio > 0.0 && ratio <= 1.0);
+    }
+}
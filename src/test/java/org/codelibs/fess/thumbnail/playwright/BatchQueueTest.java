@@ -0,0 +1,65 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.thumbnail.playwright;
+
+import java.io.File;
+import java.util.List;
+
+public class BatchQueueTest extends UnitTestCase {
+
+    @Override
+    protected boolean isSuppressTestCaseTransaction() {
+        return true;
+    }
+
+    /**
+     * Test that the queue keeps the thumbnails with the highest priority, whatever their arrival order.
+     */
+    public void test_offer_keepsHighestPriority() {
+        final BatchQueue queue = new BatchQueue(2);
+        assertNull("Should queue", queue.offer("a", new File("a.png"), 1.0));
+        assertNull("Should queue", queue.offer("b", new File("b.png"), 3.0));
+        assertEquals("a", queue.offer("c", new File("c.png"), 2.0).thumbnailId());
+        assertEquals("d", queue.offer("d", new File("d.png"), 0.5).thumbnailId());
+        assertNull("Duplicate should be ignored", queue.offer("b", new File("b.png"), 3.0));
+
+        final List<BatchQueue.Item> items = queue.drain();
+        assertEquals(2, items.size());
+        assertEquals("b", items.get(0).thumbnailId());
+        assertEquals("c", items.get(1).thumbnailId());
+        assertEquals(0, queue.size());
+    }
+
+    /**
+     * Test that thumbnails with the same priority are kept in arrival order.
+     */
+    public void test_offer_samePriority() {
+        final BatchQueue queue = new BatchQueue(2);
+        assertNull("Should queue", queue.offer("a", new File("a.png"), 0.0));
+        assertNull("Should queue", queue.offer("b", new File("b.png"), 0.0));
+        assertEquals("c", queue.offer("c", new File("c.png"), 0.0).thumbnailId());
+        assertEquals(List.of("a", "b"), queue.drain().stream().map(BatchQueue.Item::thumbnailId).toList());
+    }
+
+    /**
+     * Test that a zero budget leaves every thumbnail out.
+     */
+    public void test_offer_zeroBudget() {
+        final BatchQueue queue = new BatchQueue(0);
+        assertEquals("a", queue.offer("a", new File("a.png"), 1.0).thumbnailId());
+        assertTrue("Should be empty", queue.drain().isEmpty());
+    }
+}
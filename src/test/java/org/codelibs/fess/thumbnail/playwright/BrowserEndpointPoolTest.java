@@ -0,0 +1,100 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.thumbnail.playwright;
+
+import java.net.ServerSocket;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class BrowserEndpointPoolTest extends UnitTestCase {
+
+    private static final List<String> ENDPOINTS = List.of("ws://127.0.0.1:3001/", "ws://127.0.0.1:3002/", "ws://127.0.0.1:3003/");
+
+    @Override
+    protected boolean isSuppressTestCaseTransaction() {
+        return true;
+    }
+
+    private BrowserEndpointPool newPool(final BrowserEndpointPool.Routing routing) {
+        return new BrowserEndpointPool(ENDPOINTS, routing, 0L, Duration.ofMillis(500));
+    }
+
+    /**
+     * Test that workers go to the endpoint with the fewest workers, skipping dead endpoints.
+     */
+    public void test_leastLoaded() {
+        try (BrowserEndpointPool pool = newPool(BrowserEndpointPool.Routing.parse("least-loaded"))) {
+            assertEquals(ENDPOINTS.get(0), pool.acquire("1"));
+            assertEquals(ENDPOINTS.get(1), pool.acquire("2"));
+            assertEquals(ENDPOINTS.get(2), pool.acquire("3"));
+            pool.release(ENDPOINTS.get(1));
+            assertEquals(ENDPOINTS.get(1), pool.acquire("4"));
+            pool.markDown(ENDPOINTS.get(0));
+            assertEquals(ENDPOINTS.get(1), pool.acquire("5"));
+            pool.markDown(ENDPOINTS.get(1));
+            pool.markDown(ENDPOINTS.get(2));
+            assertNull("Should have no healthy endpoint", pool.acquire("6"));
+            assertEquals(0L, pool.getMetrics().get("endpoint.healthy"));
+        }
+    }
+
+    /**
+     * Test that hash routing is stable and only moves the workers of a dead endpoint.
+     */
+    public void test_hash() {
+        try (BrowserEndpointPool pool = newPool(BrowserEndpointPool.Routing.HASH)) {
+            final Map<String, String> assignments = new HashMap<>();
+            for (int i = 0; i < 100; i++) {
+                final String key = Integer.toString(i);
+                assignments.put(key, pool.acquire(key));
+                assertEquals(assignments.get(key), pool.acquire(key));
+            }
+            assertEquals("Should use every endpoint", 3, assignments.values().stream().distinct().count());
+            pool.markDown(ENDPOINTS.get(0));
+            for (final Map.Entry<String, String> entry : assignments.entrySet()) {
+                final String endpoint = pool.acquire(entry.getKey());
+                if (ENDPOINTS.get(0).equals(entry.getValue())) {
+                    assertFalse("Should move off the dead endpoint", ENDPOINTS.get(0).equals(endpoint));
+                } else {
+                    assertEquals(entry.getValue(), endpoint);
+                }
+            }
+        }
+    }
+
+    /**
+     * Test that health checks mark unreachable endpoints as down and reachable ones as up.
+     */
+    public void test_check() throws Exception {
+        try (ServerSocket server = new ServerSocket(0)) {
+            final String up = "ws://127.0.0.1:" + server.getLocalPort() + "/";
+            final int closedPort;
+            try (ServerSocket closed = new ServerSocket(0)) {
+                closedPort = closed.getLocalPort();
+            }
+            final String down = "ws://127.0.0.1:" + closedPort + "/";
+            try (BrowserEndpointPool pool =
+                    new BrowserEndpointPool(List.of(down, up), BrowserEndpointPool.Routing.LEAST_LOADED, 0L, Duration.ofMillis(500))) {
+                pool.check();
+                assertEquals(up, pool.acquire("1"));
+                assertEquals(up, pool.acquire("2"));
+                assertEquals(1L, pool.getMetrics().get("endpoint.healthy"));
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.thumbnail.playwright;
+
+import java.util.List;
+import java.util.Map;
+
+public class CircuitBreakerTest extends UnitTestCase {
+
+    @Override
+    protected boolean isSuppressTestCaseTransaction() {
+        return true;
+    }
+
+    /**
+     * Test that the circuit opens when the failure rate reaches the threshold.
+     */
+    public void test_opensOnFailureRate() {
+        final CircuitBreaker breaker = new CircuitBreaker(4, 4, 0.5, 1000L);
+        breaker.recordFailure("a", 0L, true);
+        breaker.recordSuccess("a");
+        breaker.recordSuccess("a");
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState("a"));
+        breaker.recordFailure("a", 0L, false);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState("a"));
+        assertFalse("Should fail fast", breaker.allowRequest("a", 500L));
+        assertTrue("Other hosts should be allowed", breaker.allowRequest("b", 500L));
+
+        final Map<String, Object> metrics = breaker.getMetrics();
+        assertEquals(List.of("a"), metrics.get("circuit.open.hosts"));
+        assertEquals(1L, metrics.get("circuit.rejected"));
+        assertEquals(2L, metrics.get("circuit.failures"));
+        assertEquals(1L, metrics.get("circuit.timeouts"));
+    }
+
+    /**
+     * Test that a successful probe closes the circuit.
+     */
+    public void test_halfOpenSuccess() {
+        final CircuitBreaker breaker = new CircuitBreaker(2, 2, 1.0, 1000L);
+        breaker.recordFailure("a", 0L, true);
+        breaker.recordFailure("a", 0L, true);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState("a"));
+        assertTrue("Should be open", breaker.isOpen("a", 500L));
+        assertFalse("Should not be open after the duration", breaker.isOpen("a", 1000L));
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState("a"));
+        assertFalse("Other hosts should not be open", breaker.isOpen("b", 500L));
+
+        assertTrue("Should allow a probe", breaker.allowRequest("a", 1000L));
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState("a"));
+        assertFalse("Should allow only one probe", breaker.allowRequest("a", 1000L));
+        breaker.recordSuccess("a");
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState("a"));
+        assertTrue("Should allow renders", breaker.allowRequest("a", 1000L));
+    }
+
+    /**
+     * Test that a failed probe reopens the circuit.
+     */
+    public void test_halfOpenFailure() {
+        final CircuitBreaker breaker = new CircuitBreaker(2, 2, 1.0, 1000L);
+        breaker.recordFailure("a", 0L, false);
+        breaker.recordFailure("a", 0L, false);
+        assertTrue("Should allow a probe", breaker.allowRequest("a", 1500L));
+        breaker.recordFailure("a", 1500L, false);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState("a"));
+        assertFalse("Should stay open", breaker.allowRequest("a", 2000L));
+        assertTrue("Should allow a probe later", breaker.allowRequest("a", 2500L));
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.thumbnail.playwright;
+
+public class ConcurrencyControllerTest extends UnitTestCase {
+
+    @Override
+    protected boolean isSuppressTestCaseTransaction() {
+        return true;
+    }
+
+    /**
+     * Renders a window of pages at the current limit.
+     */
+    private static void window(final ConcurrencyController controller, final long start, final int count, final long duration,
+            final int failed) {
+        for (int i = 0; i < controller.getLimit(); i++) {
+            controller.begin();
+        }
+        for (int i = 0; i < count; i++) {
+            if (i >= controller.getLimit()) {
+                controller.begin();
+            }
+            controller.end(duration, i < failed, false, start + (i + 1) * 1000L / count);
+        }
+    }
+
+    /**
+     * Test that the limit grows additively while the slots are saturated.
+     */
+    public void test_additiveIncrease() {
+        final ConcurrencyController controller = new ConcurrencyController(1, 3, 1000L, 0L, 0.2);
+        controller.windowStartTime = 0L;
+        assertEquals(1, controller.getLimit());
+        window(controller, 0L, 10, 100L, 0);
+        assertEquals(2, controller.getLimit());
+        window(controller, 1000L, 20, 100L, 0);
+        assertEquals(3, controller.getLimit());
+        window(controller, 2000L, 30, 100L, 0);
+        assertEquals("Should stay at the maximum", 3, controller.getLimit());
+        assertEquals(2L, controller.getMetrics().get("concurrency.increases"));
+    }
+
+    /**
+     * Test that failures, latency and a throughput drop halve the limit.
+     */
+    public void test_multiplicativeDecrease() {
+        final ConcurrencyController controller = new ConcurrencyController(1, 8, 1000L, 500L, 0.2);
+        controller.windowStartTime = 0L;
+        controller.limit = 8;
+        window(controller, 0L, 10, 100L, 5);
+        assertEquals("Should halve on failures", 4, controller.getLimit());
+        window(controller, 1000L, 10, 1000L, 0);
+        assertEquals("Should halve on latency", 2, controller.getLimit());
+        window(controller, 2000L, 20, 100L, 0);
+        assertEquals(3, controller.getLimit());
+        window(controller, 3000L, 10, 100L, 0);
+        assertEquals("Should halve when the increase lowered throughput", 1, controller.getLimit());
+        window(controller, 4000L, 10, 100L, 10);
+        assertEquals("Should not go below the minimum", 1, controller.getLimit());
+        assertEquals(3L, controller.getMetrics().get("concurrency.decreases"));
+    }
+
+    /**
+     * Test that the limit is not raised when it was not reached.
+     */
+    public void test_noIncreaseWhenIdle() {
+        final ConcurrencyController controller = new ConcurrencyController(1, 4, 1000L, 0L, 0.2);
+        controller.windowStartTime = 0L;
+        controller.limit = 2;
+        for (int i = 0; i < 10; i++) {
+            controller.begin();
+            controller.end(100L, false, false, (i + 1) * 100L);
+        }
+        assertEquals(2, controller.getLimit());
+    }
+}
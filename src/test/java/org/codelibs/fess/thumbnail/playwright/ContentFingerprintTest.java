@@ -0,0 +1,92 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.thumbnail.playwright;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.w3c.dom.Document;
+
+public class ContentFingerprintTest extends UnitTestCase {
+
+    private static final String ARTICLE = "Fess is an open source enterprise search server. It crawls web sites and file systems, "
+            + "indexes documents and provides a search interface with thumbnails for every result page.";
+
+    @Override
+    protected boolean isSuppressTestCaseTransaction() {
+        return true;
+    }
+
+    private static Document parse(final String html) throws Exception {
+        return DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new ByteArrayInputStream(html.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static String page(final String body) {
+        return "<HTML><HEAD><TITLE>t</TITLE><SCRIPT>var session = 'abc';</SCRIPT></HEAD><BODY><DIV><P>" + body + "</P></DIV></BODY></HTML>";
+    }
+
+    /**
+     * Test that identical pages have identical fingerprints and scripts are ignored.
+     */
+    public void test_create_identical() throws Exception {
+        final String fingerprint = ContentFingerprint.create(parse(page(ARTICLE)));
+        assertTrue("Should be a valid fingerprint", ContentFingerprint.isValid(fingerprint));
+        assertEquals(fingerprint, ContentFingerprint.create(parse(page(ARTICLE).replace("abc", "xyz"))));
+    }
+
+    /**
+     * Test that digits are normalized only when folding is enabled, so that counters do not change the fingerprint.
+     */
+    public void test_create_digitsNormalized() throws Exception {
+        assertEquals(ContentFingerprint.create(parse(page(ARTICLE + " Visitors: 12345")), true),
+                ContentFingerprint.create(parse(page(ARTICLE + " Visitors: 67890")), true));
+        assertFalse("Digits should not be folded by default", ContentFingerprint.create(parse(page(ARTICLE + " Price: 12345")))
+                .equals(ContentFingerprint.create(parse(page(ARTICLE + " Price: 67890")))));
+    }
+
+    /**
+     * Test that a small text change gives a small distance and a different layout gives no match.
+     */
+    public void test_distance() throws Exception {
+        final String fingerprint1 = ContentFingerprint.create(parse(page(ARTICLE)));
+        final String fingerprint2 = ContentFingerprint.create(parse(page(ARTICLE.replace("every", "each"))));
+        final String fingerprint3 = ContentFingerprint.create(parse(page("A completely different page about cooking pasta with tomato sauce.")));
+        final String fingerprint4 = ContentFingerprint.create(parse("<HTML><BODY><TABLE><TR><TD>" + ARTICLE + "</TD></TR></TABLE></BODY></HTML>"));
+
+        assertTrue("Near duplicates should be close", ContentFingerprint.distance(fingerprint1, fingerprint2) < 16);
+        assertTrue("Different pages should be far", ContentFingerprint.distance(fingerprint1, fingerprint3) > 3);
+        assertEquals(Integer.MAX_VALUE, ContentFingerprint.distance(fingerprint1, fingerprint4));
+    }
+
+    /**
+     * Test that a page without text has no fingerprint.
+     */
+    public void test_create_noText() throws Exception {
+        assertNull("Should not create a fingerprint", ContentFingerprint.create(parse("<HTML><BODY><DIV></DIV></BODY></HTML>")));
+    }
+
+    /**
+     * Test the validation of fingerprint values.
+     */
+    public void test_isValid() {
+        assertTrue("Should be valid", ContentFingerprint.isValid(ContentFingerprint.format(-1L, 42L)));
+        assertFalse("Should be invalid", ContentFingerprint.isValid(null));
+        assertFalse("Should be invalid", ContentFingerprint.isValid("abc"));
+        assertEquals(-1L, ContentFingerprint.getSimHash(ContentFingerprint.format(-1L, 42L)));
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.thumbnail.playwright;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.TestInfo;
+
+public class ExistenceIndexTest extends UnitTestCase {
+
+    private Path tempDir;
+
+    @Override
+    protected boolean isSuppressTestCaseTransaction() {
+        return true;
+    }
+
+    @Override
+    protected void setUp(TestInfo testInfo) throws Exception {
+        super.setUp(testInfo);
+        tempDir = Files.createTempDirectory("existence-index-");
+    }
+
+    @Override
+    protected void tearDown(TestInfo testInfo) throws Exception {
+        try (var paths = Files.walk(tempDir)) {
+            paths.sorted((a, b) -> b.compareTo(a)).map(Path::toFile).forEach(File::delete);
+        }
+        super.tearDown(testInfo);
+    }
+
+    /**
+     * Test that the Bloom filter has no false negatives.
+     */
+    public void test_bloomFilter() {
+        final BloomFilter filter = new BloomFilter(1000, 0.01);
+        for (int i = 0; i < 1000; i++) {
+            filter.add("/thumbnails/" + i + ".png");
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 1000; i++) {
+            assertTrue("Added values should be found", filter.mightContain("/thumbnails/" + i + ".png"));
+            if (filter.mightContain("/other/" + i + ".png")) {
+                falsePositives++;
+            }
+        }
+        assertTrue("Too many false positives: " + falsePositives, falsePositives < 50);
+    }
+
+    /**
+     * Test that scanned and written files are found and unknown files are not.
+     */
+    public void test_exists() throws Exception {
+        final File dir = Files.createDirectories(tempDir.resolve("ab/cd")).toFile();
+        final File existing = Files.createFile(dir.toPath().resolve("a.png")).toFile();
+        final ExistenceIndex index = new ExistenceIndex(tempDir, 1000);
+        index.scan();
+        assertTrue("Should be ready", index.isReady());
+        assertTrue("Scanned file should exist", index.exists(existing));
+        assertFalse("Unknown file should not exist", index.exists(new File(dir, "b.png")));
+
+        final File written = Files.createFile(dir.toPath().resolve("c.png")).toFile();
+        assertTrue("File written by another process should be found", index.exists(written));
+        assertTrue("Found file should be added", index.fileFilter.mightContain(written.toPath().toAbsolutePath().normalize().toString()));
+        final File recorded = Files.createFile(dir.toPath().resolve("d.png")).toFile();
+        index.addFile(recorded);
+        assertTrue("Recorded file should exist", index.exists(recorded));
+
+        existing.delete();
+        assertFalse("Deleted file should be confirmed on disk", index.exists(existing));
+    }
+
+    /**
+     * Test that files and directories above, at and below the split depth are scanned.
+     */
+    public void test_scan_deepTree() throws Exception {
+        final List<File> files = new ArrayList<>();
+        files.add(Files.createFile(tempDir.resolve("top.png")).toFile());
+        Path dir = tempDir;
+        for (int depth = 1; depth <= ExistenceIndex.SPLIT_DEPTH + 2; depth++) {
+            dir = Files.createDirectories(dir.resolve("d" + depth));
+            Files.createDirectories(tempDir.resolve("e" + depth));
+            files.add(Files.createFile(dir.resolve(depth + ".png")).toFile());
+        }
+        final ExistenceIndex index = new ExistenceIndex(tempDir, 1000);
+        index.scan();
+        assertTrue("Should be ready", index.isReady());
+        for (final File file : files) {
+            assertTrue(file + " should exist", index.exists(file));
+        }
+        assertTrue("Deepest directory should be known", index.directorySet.contains(dir.toAbsolutePath().normalize().toString()));
+        assertTrue("Empty directory should be known", index.directorySet.contains(tempDir.resolve("e1").toAbsolutePath().normalize().toString()));
+        assertFalse("Directory should not be a file", index.fileFilter.mightContain(dir.toAbsolutePath().normalize().toString()));
+    }
+
+    /**
+     * Test that directories are created once and remembered.
+     */
+    public void test_ensureDirectory() {
+        final ExistenceIndex index = new ExistenceIndex(tempDir, 1000);
+        final File dir = tempDir.resolve("x/y").toFile();
+        assertTrue("Should create the directory", index.ensureDirectory(dir));
+        assertTrue("Should exist", dir.isDirectory());
+        assertTrue("Should be remembered", index.directorySet.contains(dir.getAbsolutePath()));
+        assertTrue("Should be known", index.ensureDirectory(dir));
+    }
+
+    /**
+     * Test that a temporary file can be created after the directory has been purged by another process.
+     */
+    public void test_createTempFile_afterPurge() throws Exception {
+        final ExistenceIndex index = new ExistenceIndex(tempDir, 1000);
+        final FileThumbnailStorage storage = new FileThumbnailStorage();
+        storage.setExistenceIndex(index);
+        final File file = tempDir.resolve("x/y/a.png").toFile();
+        assertTrue("Should prepare the directory", storage.prepare(file));
+        assertTrue("Should be purged", file.getParentFile().delete());
+
+        assertTrue("Should still be known", storage.prepare(file));
+        final File tempFile = storage.createTempFile(file);
+        assertTrue("Should create the temporary file", tempFile.isFile());
+        storage.store(tempFile, file);
+        assertTrue("Should exist", storage.exists(file));
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.thumbnail.playwright;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.TestInfo;
+
+public class FailureCacheTest extends UnitTestCase {
+
+    private Path tempDir;
+
+    @Override
+    protected boolean isSuppressTestCaseTransaction() {
+        return true;
+    }
+
+    @Override
+    protected void setUp(TestInfo testInfo) throws Exception {
+        super.setUp(testInfo);
+        tempDir = Files.createTempDirectory("failure-cache-");
+    }
+
+    @Override
+    protected void tearDown(TestInfo testInfo) throws Exception {
+        try (var paths = Files.walk(tempDir)) {
+            paths.sorted((a, b) -> b.compareTo(a)).map(Path::toFile).forEach(File::delete);
+        }
+        super.tearDown(testInfo);
+    }
+
+    private FailureCache newCache() {
+        final FailureCache cache = new FailureCache(tempDir.resolve("failures.log"), 1000L, 5000L);
+        cache.open();
+        return cache;
+    }
+
+    /**
+     * Test that the backoff doubles on each failure up to the maximum.
+     */
+    public void test_backoff() {
+        try (FailureCache cache = newCache()) {
+            final String url = "https://example.com/";
+            assertTrue("Should be eligible", cache.isEligible(url, 0L));
+            assertEquals(1000L, cache.recordFailure(url, "TimeoutError", 0L).nextRetryTime());
+            assertFalse("Should wait for the backoff", cache.isEligible(url, 999L));
+            assertTrue("Should be eligible after the backoff", cache.isEligible(url, 1000L));
+            assertEquals(3000L, cache.recordFailure(url, "TimeoutError", 1000L).nextRetryTime());
+            assertEquals(7000L, cache.recordFailure(url, "TimeoutError", 3000L).nextRetryTime());
+            final FailureCache.Entry entry = cache.recordFailure(url, "TimeoutError", 7000L);
+            assertEquals(12000L, entry.nextRetryTime());
+            assertEquals(4, entry.attempts());
+        }
+    }
+
+    /**
+     * Test that failures survive a restart and are cleared by a success.
+     */
+    public void test_persistence() {
+        final String url = "https://example.com/";
+        try (FailureCache cache = newCache()) {
+            cache.recordFailure(url, "java.io.IOException", 0L);
+            cache.recordFailure(url, "java.io.IOException", 0L);
+        }
+        try (FailureCache cache = newCache()) {
+            final FailureCache.Entry entry = cache.get(url);
+            assertEquals("java.io.IOException", entry.failureClass());
+            assertEquals(2, entry.attempts());
+            cache.recordSuccess(url);
+        }
+        try (FailureCache cache = newCache()) {
+            assertNull("Should be cleared", cache.get(url));
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.thumbnail.playwright;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.codelibs.fess.crawler.exception.CrawlerSystemException;
+import org.junit.jupiter.api.TestInfo;
+
+public class FingerprintIndexTest extends UnitTestCase {
+
+    private Path tempDir;
+
+    @Override
+    protected boolean isSuppressTestCaseTransaction() {
+        return true;
+    }
+
+    @Override
+    protected void setUp(TestInfo testInfo) throws Exception {
+        super.setUp(testInfo);
+        tempDir = Files.createTempDirectory("fingerprint-index-");
+    }
+
+    @Override
+    protected void tearDown(TestInfo testInfo) throws Exception {
+        try (var paths = Files.walk(tempDir)) {
+            paths.sorted((a, b) -> b.compareTo(a)).map(Path::toFile).forEach(File::delete);
+        }
+        super.tearDown(testInfo);
+    }
+
+    private FingerprintIndex newIndex(final int maxDistance) {
+        final FingerprintIndex index = new FingerprintIndex(tempDir.resolve("fingerprints.log"), maxDistance);
+        index.open();
+        return index;
+    }
+
+    /**
+     * Test that a distance the band index cannot find all duplicates for is rejected.
+     */
+    public void test_maxDistance() {
+        try {
+            new FingerprintIndex(tempDir.resolve("fingerprints.log"), FingerprintIndex.MAX_DISTANCE + 1);
+            fail("Should reject a distance larger than " + FingerprintIndex.MAX_DISTANCE);
+        } catch (final CrawlerSystemException e) {
+            assertTrue("Should name the range", e.getMessage().contains("from 0 to 3"));
+        }
+    }
+
+    /**
+     * Test exact and near-duplicate lookups, including after reopening the index.
+     */
+    public void test_find() throws Exception {
+        final File thumbnailFile = Files.createFile(tempDir.resolve("a.png")).toFile();
+        final String fingerprint = ContentFingerprint.format(0x0123456789abcdefL, 7L);
+
+        FingerprintIndex index = newIndex(3);
+        index.add(fingerprint, thumbnailFile);
+        index.close();
+
+        index = newIndex(3);
+        try {
+            assertEquals(thumbnailFile, index.find(fingerprint));
+            assertEquals(thumbnailFile, index.find(ContentFingerprint.format(0x0123456789abcdefL ^ 0x8001000000000001L, 7L)));
+            assertNull("Too far", index.find(ContentFingerprint.format(0x0123456789abcdefL ^ 0xf, 7L)));
+            assertNull("Different layout", index.find(ContentFingerprint.format(0x0123456789abcdefL, 8L)));
+        } finally {
+            index.close();
+        }
+    }
+
+    /**
+     * Test that exact matching only is used with a distance of zero.
+     */
+    public void test_find_exactOnly() throws Exception {
+        final File thumbnailFile = Files.createFile(tempDir.resolve("a.png")).toFile();
+        final FingerprintIndex index = newIndex(0);
+        try {
+            index.add(ContentFingerprint.format(1L, 7L), thumbnailFile);
+            assertEquals(thumbnailFile, index.find(ContentFingerprint.format(1L, 7L)));
+            assertNull("Not exact", index.find(ContentFingerprint.format(3L, 7L)));
+        } finally {
+            index.close();
+        }
+    }
+
+    /**
+     * Test that entries whose thumbnail files were deleted are dropped.
+     */
+    public void test_find_deletedFile() throws Exception {
+        final File thumbnailFile = Files.createFile(tempDir.resolve("a.png")).toFile();
+        final String fingerprint = ContentFingerprint.format(1L, 7L);
+        final FingerprintIndex index = newIndex(3);
+        try {
+            index.add(fingerprint, thumbnailFile);
+            thumbnailFile.delete();
+            assertNull("Deleted file", index.find(fingerprint));
+            assertEquals(0, index.size());
+        } finally {
+            index.close();
+        }
+    }
+}
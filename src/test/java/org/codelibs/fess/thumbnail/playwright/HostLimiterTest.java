@@ -0,0 +1,63 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.thumbnail.playwright;
+
+public class HostLimiterTest extends UnitTestCase {
+
+    @Override
+    protected boolean isSuppressTestCaseTransaction() {
+        return true;
+    }
+
+    /**
+     * Test the per-host concurrency limit.
+     */
+    public void test_hostConcurrency() {
+        final HostLimiter limiter = new HostLimiter(2, 0L, 0);
+        limiter.acquire("a", 0L);
+        assertTrue("Should be available", limiter.isAvailable("a", 0L));
+        limiter.acquire("a", 0L);
+        assertFalse("Should be at the limit", limiter.isAvailable("a", 0L));
+        assertEquals(Long.MAX_VALUE, limiter.getDelay("a", 0L));
+        assertTrue("Other hosts should be available", limiter.isAvailable("b", 0L));
+        limiter.release("a");
+        assertTrue("Should be available after release", limiter.isAvailable("a", 0L));
+    }
+
+    /**
+     * Test the minimum interval between render starts.
+     */
+    public void test_hostInterval() {
+        final HostLimiter limiter = new HostLimiter(0, 1000L, 0);
+        limiter.acquire("a", 100L);
+        limiter.release("a");
+        assertEquals(600L, limiter.getDelay("a", 500L));
+        assertEquals(0L, limiter.getDelay("a", 1100L));
+    }
+
+    /**
+     * Test the global concurrency limit.
+     */
+    public void test_globalConcurrency() {
+        final HostLimiter limiter = new HostLimiter(0, 0L, 2);
+        limiter.acquire("a", 0L);
+        limiter.acquire("b", 0L);
+        assertFalse("Should be at the global limit", limiter.canStart());
+        limiter.release("b");
+        assertTrue("Should start after release", limiter.canStart());
+        assertEquals(1, limiter.getInFlight());
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.thumbnail.playwright;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+import org.codelibs.fess.crawler.exception.CrawlerSystemException;
+
+public class ImageDerivativeTest extends UnitTestCase {
+
+    @Override
+    protected boolean isSuppressTestCaseTransaction() {
+        return true;
+    }
+
+    /**
+     * Test parsing a list of derivatives.
+     */
+    public void test_parse() {
+        final List<ImageDerivative> derivatives = ImageDerivative.parse("@2x:200x200, _s:50:JPG");
+        assertEquals(2, derivatives.size());
+        assertEquals(new ImageDerivative("@2x", 200, 200, "png"), derivatives.get(0));
+        assertEquals(new ImageDerivative("_s", 50, 50, "jpg"), derivatives.get(1));
+        assertTrue("Blank value should be empty", ImageDerivative.parse("").isEmpty());
+
+        for (final String invalid : new String[] { "_s", "_s:0x10", "_s:axb", ":10x10", "_s:10x10:unknown" }) {
+            try {
+                ImageDerivative.parse(invalid);
+                fail("Should reject " + invalid);
+            } catch (final CrawlerSystemException e) {
+                // expected
+            }
+        }
+    }
+
+    /**
+     * Test that derivative files are placed next to the main thumbnail.
+     */
+    public void test_getFile() {
+        final File file = new File("/thumbnails/ab/cd/abcd.png");
+        assertEquals(new File("/thumbnails/ab/cd/abcd@2x.png"), new ImageDerivative("@2x", 200, 200, "png").getFile(file));
+        assertEquals(new File("/thumbnails/ab/cd/abcd_s.jpg"), new ImageDerivative("_s", 50, 50, "jpeg").getFile(file));
+        assertSame(file, new ImageDerivative("", 100, 100, "png").getFile(file));
+    }
+
+    /**
+     * Test that successive halving reaches the exact target size.
+     */
+    public void test_resize() {
+        final BufferedImage image = new BufferedImage(960, 1920, BufferedImage.TYPE_INT_ARGB);
+        final BufferedImage resized = ImageResizer.resize(image, 100, 200);
+        assertEquals(100, resized.getWidth());
+        assertEquals(200, resized.getHeight());
+        final BufferedImage enlarged = ImageResizer.resize(resized, 150, 300);
+        assertEquals(150, enlarged.getWidth());
+        assertSame(resized, ImageResizer.resize(resized, 100, 200));
+        assertEquals(BufferedImage.TYPE_INT_RGB, ImageResizer.toOpaque(resized).getType());
+    }
+
+    /**
+     * Test that only the needed region is decoded, subsampled to the requested scale.
+     */
+    public void test_read() throws Exception {
+        final BufferedImage image = new BufferedImage(800, 4000, BufferedImage.TYPE_INT_RGB);
+        image.setRGB(0, 0, 0xff0000);
+        final File file = File.createTempFile("decode-", ".png");
+        try {
+            ImageIO.write(image, "png", file);
+
+            final BufferedImage decoded = ImageResizer.read(file, 100, 1.5, 2);
+            assertEquals(200, decoded.getWidth());
+            assertEquals(300, decoded.getHeight());
+            assertEquals(0xff0000, decoded.getRGB(0, 0) & 0xffffff);
+
+            final BufferedImage full = ImageResizer.read(file, 100, 10.0, 0);
+            assertEquals(800, full.getWidth());
+            assertEquals(4000, full.getHeight());
+
+            final BufferedImage small = ImageResizer.read(file, 1000, 0.5, 2);
+            assertEquals(800, small.getWidth());
+            assertEquals(400, small.getHeight());
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.thumbnail.playwright;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class OnDemandRenderServiceTest extends UnitTestCase {
+
+    @Override
+    protected boolean isSuppressTestCaseTransaction() {
+        return true;
+    }
+
+    /**
+     * Test that repeated requests are merged and a full queue drops the oldest request.
+     */
+    public void test_request() {
+        final List<String> handled = new ArrayList<>();
+        final OnDemandRenderService service = new OnDemandRenderService(1, 2, (id, file) -> handled.add(id));
+        assertTrue("Should queue", service.request("a", new File("a.png")));
+        assertTrue("Should merge", service.request("a", new File("a.png")));
+        assertTrue("Should queue", service.request("b", new File("b.png")));
+        assertTrue("Should queue", service.request("c", new File("c.png")));
+        assertEquals(2, service.size());
+        assertEquals(List.of("b", "c"), new ArrayList<>(service.pendingMap.keySet()));
+        assertEquals(1L, service.getMetrics().get("ondemand.duplicates"));
+        assertEquals(1L, service.getMetrics().get("ondemand.dropped"));
+
+        assertEquals(List.of("b", "c"), new ArrayList<>(service.stop().keySet()));
+        assertFalse("Should reject after stop", service.request("d", new File("d.png")));
+        assertTrue("Should not render after stop", handled.isEmpty());
+    }
+
+    /**
+     * Test that requests are rendered in the background and merged while rendering.
+     */
+    public void test_render() throws Exception {
+        final List<String> handled = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final OnDemandRenderService service = new OnDemandRenderService(1, 10, (id, file) -> {
+            started.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            handled.add(id);
+        });
+        service.start();
+        service.request("a", new File("a.png"));
+        assertTrue("Should start rendering", started.await(10, TimeUnit.SECONDS));
+        service.request("a", new File("a.png"));
+        assertEquals("Should merge with the render in progress", 0, service.size());
+        release.countDown();
+        service.stop();
+        assertEquals(List.of("a"), handled);
+        assertEquals(1L, service.getMetrics().get("ondemand.handled"));
+    }
+
+    /**
+     * Test that waiting for the service returns once all requests are rendered, or at the deadline.
+     */
+    public void test_awaitIdle() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final OnDemandRenderService service = new OnDemandRenderService(2, 10, (id, file) -> {
+            if ("slow".equals(id)) {
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        service.start();
+        service.request("a", new File("a.png"));
+        service.request("b", new File("b.png"));
+        assertTrue("Should be idle", service.awaitIdle(System.currentTimeMillis() + 10000L));
+        assertEquals(2L, service.getMetrics().get("ondemand.handled"));
+
+        service.request("slow", new File("slow.png"));
+        assertFalse("Should time out", service.awaitIdle(System.currentTimeMillis() + 100L));
+        release.countDown();
+        assertTrue("Should be idle", service.awaitIdle(System.currentTimeMillis() + 10000L));
+        assertTrue("Should not discard", service.stop().isEmpty());
+    }
+}
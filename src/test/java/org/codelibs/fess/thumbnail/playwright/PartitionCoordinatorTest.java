@@ -0,0 +1,153 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.thumbnail.playwright;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.TestInfo;
+
+public class PartitionCoordinatorTest extends UnitTestCase {
+
+    private Path tempDir;
+
+    @Override
+    protected boolean isSuppressTestCaseTransaction() {
+        return true;
+    }
+
+    @Override
+    protected void setUp(TestInfo testInfo) throws Exception {
+        super.setUp(testInfo);
+        tempDir = Files.createTempDirectory("partitions-");
+    }
+
+    @Override
+    protected void tearDown(TestInfo testInfo) throws Exception {
+        try (var paths = Files.walk(tempDir)) {
+            paths.sorted((a, b) -> b.compareTo(a)).map(Path::toFile).forEach(File::delete);
+        }
+        super.tearDown(testInfo);
+    }
+
+    private PartitionCoordinator newCoordinator(final String nodeId) {
+        return new PartitionCoordinator(tempDir, nodeId, 4, 1000L, 100L);
+    }
+
+    /**
+     * Test that partitions are split between live processes, with each ID held by exactly one of them.
+     */
+    public void test_split() {
+        final PartitionCoordinator a = newCoordinator("a");
+        final PartitionCoordinator b = newCoordinator("b");
+        a.update(0L);
+        assertEquals(4, a.getMetrics().get("partition.owned"));
+        b.update(1L);
+        assertEquals(0, b.getMetrics().get("partition.owned"));
+        a.update(10L);
+        b.update(11L);
+        assertEquals(2, a.getMetrics().get("partition.owned"));
+        assertEquals(2, b.getMetrics().get("partition.owned"));
+        for (int i = 0; i < 100; i++) {
+            final String id = "thumbnail-" + i;
+            assertTrue("Should be held by one process: " + id, a.isOwned(id) != b.isOwned(id));
+        }
+    }
+
+    /**
+     * Test that the partitions of a dead process are taken over after its leases expire,
+     * and those of a closed process immediately.
+     */
+    public void test_takeover() {
+        final PartitionCoordinator a = newCoordinator("a");
+        final PartitionCoordinator b = newCoordinator("b");
+        a.update(0L);
+        b.update(1L);
+        a.update(10L);
+        b.update(11L);
+
+        a.update(500L);
+        assertEquals("Should wait for the leases to expire", 2, a.getMetrics().get("partition.owned"));
+        a.update(2000L);
+        assertEquals(4, a.getMetrics().get("partition.owned"));
+        assertEquals(1, a.getMetrics().get("partition.nodes"));
+
+        b.update(2001L);
+        a.update(2002L);
+        b.update(2003L);
+        assertEquals(2, b.getMetrics().get("partition.owned"));
+        a.close();
+        b.update(2004L);
+        assertEquals(4, b.getMetrics().get("partition.owned"));
+    }
+
+    /**
+     * Test that only one process claims a free or expired partition, and that a broken lease
+     * is only taken over once it is older than the lease duration.
+     */
+    public void test_claimLease() throws Exception {
+        final PartitionCoordinator a = newCoordinator("a");
+        final PartitionCoordinator b = newCoordinator("b");
+        assertTrue("Should claim a free partition", a.claimLease(0, 0L));
+        assertFalse("Should not claim a held partition", b.claimLease(0, 0L));
+        assertFalse("Should not claim a valid lease", b.claimLease(0, 500L));
+
+        assertTrue("Should take over an expired lease", b.claimLease(0, 2000L));
+        assertFalse("Should not take over the new lease", a.claimLease(0, 2000L));
+        assertEquals("b", a.readLease(0).nodeId());
+
+        Files.writeString(a.getLeaseFile(1), "broken");
+        assertFalse("Should not take over a fresh broken lease", a.claimLease(1, System.currentTimeMillis()));
+        assertTrue("Should take over a stale broken lease", a.claimLease(1, System.currentTimeMillis() + 2000L));
+        assertEquals("a", a.readLease(1).nodeId());
+        try (var paths = Files.list(tempDir)) {
+            assertTrue("Should not leave renamed leases", paths.noneMatch(p -> p.getFileName().toString().startsWith(".expired-")));
+        }
+    }
+
+    /**
+     * Test that IDs handed off are listed by the process holding their partition until completed.
+     */
+    public void test_handOff() {
+        final PartitionCoordinator a = newCoordinator("a");
+        final PartitionCoordinator b = newCoordinator("b");
+        a.update(0L);
+        b.update(1L);
+        b.handOff("thumbnail-1", new File("thumbnail-1.png"));
+        b.handOff("thumbnail-1", new File("thumbnail-1.png"));
+        assertTrue("Should not be listed by a process without the partition", b.getHandoffs().isEmpty());
+
+        final List<PartitionCoordinator.Handoff> handoffs = a.getHandoffs();
+        assertEquals(1, handoffs.size());
+        assertEquals("thumbnail-1", handoffs.get(0).thumbnailId());
+        assertEquals(new File("thumbnail-1.png").getAbsoluteFile(), handoffs.get(0).outputFile());
+        a.complete(handoffs.get(0));
+        assertTrue("Should be removed", a.getHandoffs().isEmpty());
+    }
+
+    /**
+     * Test that the partition of an ID is stable and within range.
+     */
+    public void test_getPartition() {
+        assertEquals(PartitionCoordinator.getPartition("abc", 64), PartitionCoordinator.getPartition("abc", 64));
+        for (int i = 0; i < 1000; i++) {
+            final int partition = PartitionCoordinator.getPartition(Integer.toString(i), 7);
+            assertTrue("Should be in range", partition >= 0 && partition < 7);
+        }
+    }
+}
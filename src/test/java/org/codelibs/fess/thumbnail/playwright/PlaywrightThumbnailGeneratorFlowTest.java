@@ -0,0 +1,510 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.thumbnail.playwright;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiPredicate;
+
+import org.codelibs.core.exception.IORuntimeException;
+import org.codelibs.core.misc.Tuple4;
+import org.codelibs.fess.mylasta.direction.FessConfig;
+import org.codelibs.fess.util.ComponentUtil;
+import org.junit.jupiter.api.TestInfo;
+
+import com.microsoft.playwright.Page;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tests of the thumbnail generation flow with a fake renderer, which writes a small file
+ * instead of capturing a page in a browser.
+ */
+public class PlaywrightThumbnailGeneratorFlowTest extends UnitTestCase {
+
+    private Path tempDir;
+
+    private HttpServer server;
+
+    private final Map<String, String> urlMap = new ConcurrentHashMap<>();
+
+    private final Map<String, String> fieldMap = new ConcurrentHashMap<>();
+
+    private final Map<String, Map<String, Object>> docMap = new ConcurrentHashMap<>();
+
+    private final Map<String, String> systemPropertyMap = new ConcurrentHashMap<>();
+
+    private final List<List<String>> lookupList = new CopyOnWriteArrayList<>();
+
+    private final AtomicInteger renderCount = new AtomicInteger();
+
+    private final AtomicInteger validationCount = new AtomicInteger();
+
+    private volatile boolean reconnectFailing;
+
+    private final CountDownLatch renderStarted = new CountDownLatch(1);
+
+    private final CountDownLatch renderReleased = new CountDownLatch(1);
+
+    private TestGenerator generator;
+
+    @Override
+    protected boolean isSuppressTestCaseTransaction() {
+        return true;
+    }
+
+    @Override
+    protected void setUp(TestInfo testInfo) throws Exception {
+        super.setUp(testInfo);
+        tempDir = Files.createTempDirectory("generator-flow-");
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/page", exchange -> {
+            if (exchange.getRequestHeaders().getFirst("If-None-Match") != null) {
+                validationCount.incrementAndGet();
+            }
+            if ("\"v1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))
+                    && "FessTest".equals(exchange.getRequestHeaders().getFirst("User-Agent"))) {
+                exchange.sendResponseHeaders(304, -1);
+            } else {
+                exchange.sendResponseHeaders(200, -1);
+            }
+            exchange.close();
+        });
+        server.start();
+        ComponentUtil.setFessConfig((FessConfig) Proxy.newProxyInstance(FessConfig.class.getClassLoader(), new Class<?>[] { FessConfig.class },
+                (proxy, method, args) -> {
+                    if (method.getReturnType() == Integer.class) {
+                        return Integer.valueOf(100);
+                    }
+                    if ("getSystemProperty".equals(method.getName())) {
+                        return systemPropertyMap.get(args[0]);
+                    }
+                    return method.getName().startsWith("getIndexField") ? method.getName() : null;
+                }));
+        generator = new TestGenerator();
+        generator.setDataPath(tempDir.resolve("data").toString());
+        generator.worker = new Tuple4<>(null, null, null, null);
+    }
+
+    @Override
+    protected void tearDown(TestInfo testInfo) throws Exception {
+        generator.destroy();
+        server.stop(0);
+        try (var paths = Files.walk(tempDir)) {
+            paths.sorted((a, b) -> b.compareTo(a)).map(Path::toFile).forEach(File::delete);
+        }
+        super.tearDown(testInfo);
+    }
+
+    private String url(String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+
+    private File outputFile(String thumbnailId) {
+        return tempDir.resolve("thumbnails").resolve(thumbnailId + ".png").toFile();
+    }
+
+    /**
+     * Test that a thumbnail of an unchanged page is reused after Fess has deleted the thumbnail file,
+     * and that the conditional request is sent with the User-Agent of the browser context.
+     */
+    public void test_reuseThumbnail_afterDelete() {
+        generator.newContextOptions.userAgent = "FessTest";
+        systemPropertyMap.put("thumbnail.playwright.validator.cache.enabled", "true");
+        generator.initValidatorCache();
+        urlMap.put("id1", url("/page"));
+        final File outputFile = outputFile("id1");
+
+        assertTrue("should be rendered", generator.generate("id1", outputFile));
+        assertEquals(1, renderCount.get());
+        assertTrue("should be deleted", outputFile.delete());
+
+        assertTrue("should be reused", generator.generate("id1", outputFile));
+        assertEquals(1, renderCount.get());
+        assertTrue("should exist", outputFile.exists());
+    }
+
+    /**
+     * Test that no conditional request is sent while the circuit of the host is open.
+     */
+    public void test_reuseThumbnail_circuitOpen() {
+        generator.newContextOptions.userAgent = "FessTest";
+        systemPropertyMap.put("thumbnail.playwright.validator.cache.enabled", "true");
+        generator.initValidatorCache();
+        urlMap.put("id1", url("/page"));
+        final File outputFile = outputFile("id1");
+        assertTrue("should be rendered", generator.generate("id1", outputFile));
+        assertTrue("should be deleted", outputFile.delete());
+
+        generator.circuitBreaker = new CircuitBreaker(1, 1, 1.0, 60000L);
+        generator.circuitBreaker.recordFailure("127.0.0.1", System.currentTimeMillis(), true);
+        assertFalse("should not be reused", generator.generate("id1", outputFile));
+        assertEquals(0, validationCount.get());
+        assertEquals(1, renderCount.get());
+    }
+
+    /**
+     * Test that a reused thumbnail is copied with its derivatives, and that a failed render
+     * deletes the derivatives together with the thumbnail.
+     */
+    public void test_reuseThumbnail_derivatives() throws Exception {
+        generator.newContextOptions.userAgent = "FessTest";
+        generator.setDerivatives(ImageDerivative.parse("small:50x50"));
+        systemPropertyMap.put("thumbnail.playwright.validator.cache.enabled", "true");
+        generator.initValidatorCache();
+        final ImageDerivative small = generator.derivatives.get(0);
+        urlMap.put("id1", url("/page"));
+        final File outputFile = outputFile("id1");
+
+        assertTrue("should be rendered", generator.generate("id1", outputFile));
+        assertTrue("should be deleted", outputFile.delete());
+        assertTrue("should be deleted", small.getFile(outputFile).delete());
+        assertTrue("should be reused", generator.generate("id1", outputFile));
+        assertEquals(1, renderCount.get());
+        assertTrue("should restore the derivative", small.getFile(outputFile).exists());
+
+        urlMap.put("id2", url("/fail"));
+        final File failedFile = outputFile("id2");
+        Files.writeString(small.getFile(failedFile).toPath(), "partial");
+        assertFalse("should fail", generator.generate("id2", failedFile));
+        assertFalse("should delete the derivative", small.getFile(failedFile).exists());
+    }
+
+    /**
+     * Test that the fingerprint and the priority signals are read in one document lookup,
+     * and that a page with the same fingerprint reuses the thumbnail.
+     */
+    public void test_generate_singleDocumentLookup() {
+        final String fingerprint = "0123456789abcdef-0123456789abcdef";
+        generator.setFingerprintField("fingerprint");
+        generator.initFingerprintIndex();
+        generator.thumbnailPriority = new ThumbnailPriority(1.0, 1.0, 1.0, 86400000L, 1.0);
+        urlMap.put("id1", url("/page1"));
+        urlMap.put("id2", url("/page2"));
+        docMap.put("id1", Map.of("fingerprint", fingerprint, "getIndexFieldBoost", 2.0));
+        docMap.put("id2", Map.of("fingerprint", fingerprint));
+
+        assertTrue("should be rendered", generator.generate("id1", outputFile("id1")));
+        assertEquals(1, lookupList.size());
+        assertEquals(List.of("fingerprint", "getIndexFieldBoost", "getIndexFieldClickCount", "getIndexFieldFavoriteCount",
+                "getIndexFieldLastModified"), lookupList.get(0));
+
+        assertTrue("should reuse the duplicate", generator.generate("id2", outputFile("id2")));
+        assertEquals(1, renderCount.get());
+        assertEquals(2, lookupList.size());
+        assertTrue("should exist", outputFile("id2").exists());
+    }
+
+    /**
+     * Test that with on-demand rendering, the batch thumbnails with the highest priority are rendered
+     * at the end of the run, and the thumbnail field of the deferred ones is cleared.
+     */
+    public void test_generate_onDemandBatch() {
+        generator.setOnDemandEnabled(true);
+        generator.setOnDemandBatchSize(2);
+        generator.thumbnailPriority = new ThumbnailPriority(1.0, 0.0, 0.0, 86400000L, 0.0);
+        generator.initOnDemandService();
+        final double[] boosts = { 1.0, 5.0, 3.0 };
+        for (int i = 0; i < boosts.length; i++) {
+            final String thumbnailId = "id" + (i + 1);
+            urlMap.put(thumbnailId, url("/page" + (i + 1)));
+            docMap.put(thumbnailId, Map.of("getIndexFieldBoost", boosts[i]));
+            assertTrue("should be queued", generator.generate(thumbnailId, outputFile(thumbnailId)));
+        }
+        assertEquals(0, renderCount.get());
+        assertEquals("", fieldMap.get("id1"));
+        assertEquals(3, lookupList.size());
+
+        generator.destroy();
+        assertEquals(2, renderCount.get());
+        assertEquals(3, lookupList.size());
+        assertFalse("should not render the lowest priority", outputFile("id1").exists());
+        assertTrue("should render", outputFile("id2").exists());
+        assertTrue("should render", outputFile("id3").exists());
+        assertNull("should keep the thumbnail field", fieldMap.get("id2"));
+        assertNull("should keep the thumbnail field", fieldMap.get("id3"));
+    }
+
+    /**
+     * Test that the service started outside the thumbnail job renders requested thumbnails
+     * and merges repeated requests.
+     */
+    public void test_requestThumbnail_searchTime() {
+        generator.setOnDemandEnabled(true);
+        generator.initSearchTimeService();
+        urlMap.put("id1", url("/page1"));
+        final File outputFile = outputFile("id1");
+        outputFile.getParentFile().mkdirs();
+
+        assertTrue("should be queued", generator.requestThumbnail("id1", outputFile));
+        generator.requestThumbnail("id1", outputFile);
+        assertTrue("should finish", generator.onDemandService.awaitIdle(System.currentTimeMillis() + 10000L));
+        assertTrue("should render", outputFile.exists());
+        assertEquals(1, renderCount.get());
+        assertFalse("should not request an existing thumbnail", generator.requestThumbnail("id1", outputFile));
+        assertNull("should not queue batch thumbnails", generator.batchQueue);
+    }
+
+    /**
+     * Test that a failure to reconnect a render slot does not take the probe of a half-open circuit.
+     */
+    public void test_renderOnSlot_reconnectFailure() {
+        generator.circuitBreaker = new CircuitBreaker(1, 1, 0.5, 0L);
+        generator.endpointPool = new BrowserEndpointPool(List.of("ws://127.0.0.1:1"), BrowserEndpointPool.Routing.LEAST_LOADED, 60000L,
+                Duration.ofSeconds(1));
+        generator.circuitBreaker.recordFailure("127.0.0.1", System.currentTimeMillis(), false);
+        final RenderTask task = new RenderTask("id1", "config", url("/page"), outputFile("id1"), 100, 100);
+        assertTrue("should create the directory", outputFile("id1").getParentFile().mkdirs());
+
+        reconnectFailing = true;
+        try {
+            generator.renderOnSlot(0, task);
+            fail("Should fail to reconnect");
+        } catch (final IllegalStateException e) {
+            // expected
+        }
+        assertEquals(CircuitBreaker.State.OPEN, generator.circuitBreaker.getState("127.0.0.1"));
+
+        reconnectFailing = false;
+        generator.renderOnSlot(0, task);
+        assertEquals(1, renderCount.get());
+        assertEquals(CircuitBreaker.State.CLOSED, generator.circuitBreaker.getState("127.0.0.1"));
+    }
+
+    /**
+     * Test that IDs of partitions held by another process are handed off and rendered by that process as it polls
+     * the handoffs during its run, so that no ID is dropped.
+     */
+    public void test_generate_partitionHandoff() throws Exception {
+        final Path partitionDirectory = Files.createDirectories(tempDir.resolve("partitions"));
+        final PartitionCoordinator self = new PartitionCoordinator(partitionDirectory, "self", 4, 60000L, 60000L);
+        final PartitionCoordinator other = new PartitionCoordinator(partitionDirectory, "other", 4, 60000L, 60000L);
+        final long now = System.currentTimeMillis();
+        self.update(now);
+        other.update(now);
+        self.update(now);
+        other.update(now);
+        generator.partitionCoordinator = self;
+        final TestGenerator otherGenerator = new TestGenerator();
+        otherGenerator.setDataPath(tempDir.resolve("data-other").toString());
+        otherGenerator.worker = new Tuple4<>(null, null, null, null);
+        otherGenerator.partitionCoordinator = other;
+
+        int owned = 0;
+        for (int i = 0; i < 10; i++) {
+            final String thumbnailId = "id" + i;
+            urlMap.put(thumbnailId, url("/page" + i));
+            assertTrue("should be rendered or handed off", generator.generate(thumbnailId, outputFile(thumbnailId)));
+            if (self.isOwned(thumbnailId)) {
+                owned++;
+            }
+        }
+        assertTrue("should hand off some IDs", owned > 0 && owned < 10);
+        assertEquals(owned, renderCount.get());
+
+        String otherId = null;
+        for (int i = 0; otherId == null; i++) {
+            if (other.isOwned("other" + i)) {
+                otherId = "other" + i;
+            }
+        }
+        urlMap.put(otherId, url("/other"));
+        assertTrue("should be rendered", otherGenerator.generate(otherId, outputFile(otherId)));
+        assertEquals("should render the handoffs while the run is live", 11, renderCount.get());
+        for (int i = 0; i < 10; i++) {
+            assertTrue("should exist: id" + i, outputFile("id" + i).exists());
+        }
+        assertTrue("should complete the handoffs", other.getHandoffs().isEmpty());
+
+        otherGenerator.destroy();
+        assertEquals(11, renderCount.get());
+    }
+
+    /**
+     * Test that stale thumbnails are refreshed through the render path, and that a failed
+     * refresh keeps the stale thumbnail and the thumbnail field.
+     */
+    public void test_refreshStaleThumbnails() throws Exception {
+        generator.refreshQueue = new RefreshQueue(10, 1000L);
+        urlMap.put("id1", url("/page"));
+        urlMap.put("id2", url("/fail"));
+        final File outputFile1 = outputFile("id1");
+        final File outputFile2 = outputFile("id2");
+        for (final File file : new File[] { outputFile1, outputFile2 }) {
+            file.getParentFile().mkdirs();
+            Files.writeString(file.toPath(), "stale");
+            assertTrue("should be old", file.setLastModified(System.currentTimeMillis() - 60000L));
+        }
+
+        assertTrue("should exist", generator.generate("id1", outputFile1));
+        assertTrue("should exist", generator.generate("id2", outputFile2));
+        assertEquals(0, renderCount.get());
+        assertEquals(2, generator.refreshQueue.size());
+        assertEquals(2, lookupList.size());
+
+        final File outputFile3 = outputFile("id3");
+        Files.writeString(outputFile3.toPath(), "fresh");
+        assertTrue("should exist", generator.generate("id3", outputFile3));
+        assertEquals(2, lookupList.size());
+
+        generator.refreshStaleThumbnails(Long.MAX_VALUE);
+        assertEquals(2, renderCount.get());
+        assertEquals(url("/page"), Files.readString(outputFile1.toPath()));
+        assertEquals("stale", Files.readString(outputFile2.toPath()));
+        assertNull("should keep the thumbnail field", fieldMap.get("id2"));
+    }
+
+    /**
+     * Test that retries are drained through the render scheduler at the end of the run.
+     */
+    public void test_drainRetries() {
+        generator.retryQueue = new RetryQueue(10, 3, 10L, 0.0);
+        generator.setSchedulerEnabled(true);
+        generator.initRenderScheduler();
+        urlMap.put("id1", url("/flaky"));
+        final File outputFile = outputFile("id1");
+
+        assertFalse("should be queued for a retry", generator.generate("id1", outputFile));
+        assertEquals(1, generator.retryQueue.size());
+        generator.destroy();
+        assertEquals(2, renderCount.get());
+        assertTrue("should be rendered by the retry", outputFile.exists());
+        assertNull("should keep the thumbnail field", fieldMap.get("id1"));
+    }
+
+    /**
+     * Test that retries due after the drain timeout are given up without waiting for them.
+     */
+    public void test_drainRetries_timeout() {
+        generator.retryQueue = new RetryQueue(10, 3, 60000L, 0.0);
+        generator.setDrainTimeout(100L);
+        urlMap.put("id1", url("/flaky"));
+        final File outputFile = outputFile("id1");
+
+        assertFalse("should be queued for a retry", generator.generate("id1", outputFile));
+        final long startTime = System.currentTimeMillis();
+        generator.destroy();
+        assertTrue("should not wait for the retry", System.currentTimeMillis() - startTime < 10000L);
+        assertEquals(1, renderCount.get());
+        assertEquals(0, generator.retryQueue.size());
+        assertEquals("", fieldMap.get("id1"));
+    }
+
+    /**
+     * Test that concurrent calls for the same thumbnail render it once and all get the result.
+     */
+    public void test_generate_singleFlight() throws Exception {
+        urlMap.put("id1", url("/slow"));
+        final File outputFile = outputFile("id1");
+
+        final CompletableFuture<Boolean> first = CompletableFuture.supplyAsync(() -> generator.generate("id1", outputFile));
+        assertTrue("should start rendering", renderStarted.await(10, TimeUnit.SECONDS));
+        final CompletableFuture<Boolean> second = CompletableFuture.supplyAsync(() -> generator.generate("id1", outputFile));
+        Thread.sleep(200L);
+        assertFalse("should wait for the render in progress", second.isDone());
+        renderReleased.countDown();
+
+        assertTrue("first caller should get the thumbnail", first.get(10, TimeUnit.SECONDS));
+        assertTrue("second caller should get the thumbnail", second.get(10, TimeUnit.SECONDS));
+        assertEquals(1, renderCount.get());
+        assertTrue("should exist", outputFile.exists());
+    }
+
+    /**
+     * Generator with a fake document lookup and renderer.
+     */
+    private class TestGenerator extends PlaywrightThumbnailGenerator {
+
+        @Override
+        protected void updateProperties() {
+        }
+
+        @Override
+        protected boolean process(final String id, final BiPredicate<String, String> consumer) {
+            final String url = urlMap.get(id);
+            return url != null && consumer.test("config", url);
+        }
+
+        @Override
+        protected Map<String, Object> getDocument(final String thumbnailId, final String... fields) {
+            lookupList.add(Arrays.asList(fields));
+            return docMap.get(thumbnailId);
+        }
+
+        @Override
+        protected void reconnectWorker(final int slot) {
+            if (reconnectFailing) {
+                throw new IllegalStateException("No browser endpoint is available.");
+            }
+        }
+
+        @Override
+        protected void updateThumbnailField(final String thumbnailId, final String value) {
+            fieldMap.put(thumbnailId, value);
+        }
+
+        @Override
+        protected void createScreenshot(final Page page, final RenderProfile profile, final String url, final int width, final int height,
+                final File outputFile) {
+            final int count = renderCount.incrementAndGet();
+            if (url.endsWith("/fail")) {
+                throw new IllegalStateException("Failed to render " + url);
+            }
+            if (url.endsWith("/flaky") && count == 1) {
+                throw new RetryableRenderException("Received 503 from " + url);
+            }
+            if (url.endsWith("/slow")) {
+                renderStarted.countDown();
+                try {
+                    renderReleased.await(10, TimeUnit.SECONDS);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            try {
+                for (final ImageDerivative derivative : derivatives) {
+                    write(url, derivative.getFile(outputFile));
+                }
+                write(url, outputFile);
+            } catch (final IOException e) {
+                throw new IORuntimeException(e);
+            }
+            if (validatorCache != null) {
+                recordValidators(url, "\"v1\"", null, null, outputFile);
+            }
+        }
+
+        private void write(final String url, final File file) throws IOException {
+            final File tempFile = thumbnailStorage.createTempFile(file);
+            Files.write(tempFile.toPath(), url.getBytes(StandardCharsets.UTF_8));
+            thumbnailStorage.store(tempFile, file);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.thumbnail.playwright;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.TestInfo;
+
+public class ProgressJournalTest extends UnitTestCase {
+
+    private Path tempDir;
+
+    @Override
+    protected boolean isSuppressTestCaseTransaction() {
+        return true;
+    }
+
+    @Override
+    protected void setUp(TestInfo testInfo) throws Exception {
+        super.setUp(testInfo);
+        tempDir = Files.createTempDirectory("progress-journal-");
+    }
+
+    @Override
+    protected void tearDown(TestInfo testInfo) throws Exception {
+        try (var paths = Files.walk(tempDir)) {
+            paths.sorted((a, b) -> b.compareTo(a)).map(Path::toFile).forEach(File::delete);
+        }
+        super.tearDown(testInfo);
+    }
+
+    private ProgressJournal newJournal(final long maxAge) {
+        final ProgressJournal journal = new ProgressJournal(tempDir.resolve("progress.log"), maxAge, 0L);
+        journal.open();
+        return journal;
+    }
+
+    /**
+     * Test that an interrupted run resumes with its finished thumbnails, and a completed run starts over.
+     */
+    public void test_resume() {
+        try (ProgressJournal journal = newJournal(60000L)) {
+            assertNull("Should start empty", journal.getFinished("a"));
+            journal.record("a", true, System.currentTimeMillis());
+            journal.record("b", false, System.currentTimeMillis());
+        }
+        try (ProgressJournal journal = newJournal(60000L)) {
+            assertTrue("Should resume a success", journal.getFinished("a").success());
+            assertFalse("Should resume a failure", journal.getFinished("b").success());
+            assertNull("Should not resume an unfinished thumbnail", journal.getFinished("c"));
+            assertNull("Should not expose the run entry", journal.getFinished(ProgressJournal.RUN_KEY));
+            assertEquals(2, journal.getMetrics().get("journal.resumed"));
+            journal.complete();
+        }
+        try (ProgressJournal journal = newJournal(60000L)) {
+            assertNull("Should start over after a completed run", journal.getFinished("a"));
+            assertEquals(0, journal.getMetrics().get("journal.resumed"));
+        }
+    }
+
+    /**
+     * Test that a journal older than the maximum age is discarded.
+     */
+    public void test_maxAge() throws Exception {
+        try (ProgressJournal journal = newJournal(60000L)) {
+            journal.record("a", true, System.currentTimeMillis());
+        }
+        Thread.sleep(20L);
+        try (ProgressJournal journal = newJournal(10L)) {
+            assertNull("Should discard an old journal", journal.getFinished("a"));
+        }
+    }
+}
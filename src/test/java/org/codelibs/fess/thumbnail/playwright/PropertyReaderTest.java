@@ -0,0 +1,96 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.thumbnail.playwright;
+
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.codelibs.fess.mylasta.direction.FessConfig;
+import org.junit.jupiter.api.TestInfo;
+
+public class PropertyReaderTest extends UnitTestCase {
+
+    private final Map<String, String> propertyMap = new HashMap<>();
+
+    private FessConfig fessConfig;
+
+    @Override
+    protected boolean isSuppressTestCaseTransaction() {
+        return true;
+    }
+
+    @Override
+    protected void setUp(TestInfo testInfo) throws Exception {
+        super.setUp(testInfo);
+        fessConfig = (FessConfig) Proxy.newProxyInstance(FessConfig.class.getClassLoader(), new Class<?>[] { FessConfig.class },
+                (proxy, method, args) -> "getSystemProperty".equals(method.getName()) ? propertyMap.get(args[0]) : null);
+    }
+
+    /**
+     * Test that valid values are parsed and blank values keep the default.
+     */
+    public void test_get() {
+        propertyMap.put("int", " 12 ");
+        propertyMap.put("long", "3000000000");
+        propertyMap.put("double", "0.5");
+        propertyMap.put("boolean", "TRUE");
+        propertyMap.put("string", " value ");
+        propertyMap.put("blank", " ");
+        final PropertyReader reader = new PropertyReader(fessConfig);
+
+        assertEquals(12, reader.getInt("int", 1));
+        assertEquals(3000000000L, reader.getLong("long", 1L));
+        assertEquals(0.5, reader.getDouble("double", 1.0));
+        assertTrue("Should be true", reader.getBoolean("boolean", false));
+        assertEquals("value", reader.getString("string", "default"));
+        assertEquals("default", reader.getString("blank", "default"));
+        assertEquals(7, reader.getInt("blank", 7));
+        assertEquals(7, reader.getInt("missing", 7));
+    }
+
+    /**
+     * Test that invalid values keep the default instead of failing.
+     */
+    public void test_get_invalid() {
+        propertyMap.put("int", "10k");
+        propertyMap.put("long", "1.5");
+        propertyMap.put("boolean", "yes");
+        propertyMap.put("routing", "random");
+        final PropertyReader reader = new PropertyReader(fessConfig);
+
+        assertEquals(7, reader.getInt("int", 7));
+        assertEquals(7L, reader.getLong("long", 7L));
+        assertTrue("Should keep the default", reader.getBoolean("boolean", true));
+        assertEquals(BrowserEndpointPool.Routing.HASH,
+                reader.get("routing", BrowserEndpointPool.Routing.HASH, BrowserEndpointPool.Routing::parse));
+    }
+
+    /**
+     * Test that a component factory keeps the default for an invalid value.
+     */
+    public void test_from_invalid() {
+        propertyMap.put("thumbnail.playwright.refresh.ttl", "1000");
+        propertyMap.put("thumbnail.playwright.refresh.max.size", "many");
+
+        final RefreshQueue queue = RefreshQueue.from(fessConfig);
+        assertNotNull("Should be enabled", queue);
+        assertEquals(100, queue.maxSize);
+        assertTrue("Should be stale", queue.isStale(1L, 2000L));
+        assertFalse("Should be fresh", queue.isStale(1500L, 2000L));
+        assertNull("Should be disabled", CircuitBreaker.from(fessConfig));
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.thumbnail.playwright;
+
+import java.io.File;
+import java.util.List;
+
+public class RefreshQueueTest extends UnitTestCase {
+
+    @Override
+    protected boolean isSuppressTestCaseTransaction() {
+        return true;
+    }
+
+    private static RefreshQueue.Item item(final String id, final long lastModified) {
+        return item(id, lastModified, false);
+    }
+
+    private static RefreshQueue.Item item(final String id, final long lastModified, final boolean changed) {
+        return new RefreshQueue.Item(id, new File(id + ".png"), lastModified, changed);
+    }
+
+    /**
+     * Test that the queue keeps the oldest thumbnails within its budget.
+     */
+    public void test_offer_keepsOldest() {
+        final RefreshQueue queue = new RefreshQueue(2);
+        assertTrue("Should queue", queue.offer(item("a", 300L)));
+        assertTrue("Should queue", queue.offer(item("b", 100L)));
+        assertTrue("Older item should replace the newest", queue.offer(item("c", 200L)));
+        assertFalse("Newer item should be rejected", queue.offer(item("d", 400L)));
+        assertFalse("Duplicate should be rejected", queue.offer(item("b", 100L)));
+
+        final List<RefreshQueue.Item> items = queue.drain();
+        assertEquals(2, items.size());
+        assertEquals("b", items.get(0).thumbnailId());
+        assertEquals("c", items.get(1).thumbnailId());
+        assertEquals(0, queue.size());
+    }
+
+    /**
+     * Test that thumbnails of changed documents outrank older unchanged ones.
+     */
+    public void test_offer_prefersChanged() {
+        final RefreshQueue queue = new RefreshQueue(2);
+        assertTrue("Should queue", queue.offer(item("a", 100L)));
+        assertTrue("Should queue", queue.offer(item("b", 200L)));
+        assertTrue("Changed item should replace the newest", queue.offer(item("c", 300L, true)));
+        assertTrue("Older item should replace the newest unchanged one", queue.offer(item("d", 50L)));
+
+        final List<RefreshQueue.Item> items = queue.drain();
+        assertEquals(2, items.size());
+        assertEquals("c", items.get(0).thumbnailId());
+        assertEquals("d", items.get(1).thumbnailId());
+
+        final RefreshQueue changedQueue = new RefreshQueue(1);
+        assertTrue("Should queue", changedQueue.offer(item("e", 300L, true)));
+        assertFalse("Unchanged item should not replace a changed one", changedQueue.offer(item("f", 10L)));
+    }
+
+    /**
+     * Test that a full queue only accepts thumbnails that could outrank its lowest item.
+     */
+    public void test_canAccept() {
+        final RefreshQueue queue = new RefreshQueue(1);
+        assertTrue("Should accept in an empty queue", queue.canAccept("a", 100L));
+        assertTrue("Should queue", queue.offer(item("a", 100L, true)));
+        assertFalse("Should not accept a queued item", queue.canAccept("a", 100L));
+        assertTrue("Should accept an older item", queue.canAccept("b", 50L));
+        assertFalse("Should not accept a newer item", queue.canAccept("c", 200L));
+        assertFalse("Should not accept with a zero budget", new RefreshQueue(0).canAccept("a", 100L));
+    }
+
+    /**
+     * Test that a zero budget disables refreshing.
+     */
+    public void test_offer_zeroBudget() {
+        final RefreshQueue queue = new RefreshQueue(0);
+        assertFalse("Should not queue", queue.offer(item("a", 100L)));
+        assertTrue("Should be empty", queue.drain().isEmpty());
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.thumbnail.playwright;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.TestInfo;
+
+public class RenderCostModelTest extends UnitTestCase {
+
+    private Path tempDir;
+
+    @Override
+    protected boolean isSuppressTestCaseTransaction() {
+        return true;
+    }
+
+    @Override
+    protected void setUp(TestInfo testInfo) throws Exception {
+        super.setUp(testInfo);
+        tempDir = Files.createTempDirectory("render-cost-");
+    }
+
+    @Override
+    protected void tearDown(TestInfo testInfo) throws Exception {
+        try (var paths = Files.walk(tempDir)) {
+            paths.sorted((a, b) -> b.compareTo(a)).map(Path::toFile).forEach(File::delete);
+        }
+        super.tearDown(testInfo);
+    }
+
+    private RenderCostModel newModel(final int maxSize) {
+        final RenderCostModel model = new RenderCostModel(tempDir.resolve("costs.log"), 0.5, 2, maxSize);
+        model.open();
+        return model;
+    }
+
+    /**
+     * Test the URL patterns of pages.
+     */
+    public void test_getPattern() {
+        assertEquals("example.com/", RenderCostModel.getPattern("https://example.com/"));
+        assertEquals("example.com/docs", RenderCostModel.getPattern("https://Example.com/docs"));
+        assertEquals("example.com/docs/*/*", RenderCostModel.getPattern("https://example.com/docs/guide/index.html?q=1"));
+        assertEquals("/", RenderCostModel.getPattern("not a url"));
+    }
+
+    /**
+     * Test that predictions fall back from the URL pattern to the host and the global average,
+     * and survive a restart.
+     */
+    public void test_predict() {
+        try (RenderCostModel model = newModel(100)) {
+            assertEquals(0.0, model.predict("https://a.example.com/"), 0.0);
+            model.record("https://a.example.com/slow/1", 10000L, 1L);
+            assertEquals(10000.0, model.predict("https://a.example.com/slow/2"), 0.0);
+            model.record("https://a.example.com/fast/1", 1000L, 2L);
+            model.record("https://a.example.com/fast/2", 1000L, 3L);
+            assertEquals(1000.0, model.predict("https://a.example.com/fast/3"), 0.0);
+            assertEquals(3250.0, model.predict("https://a.example.com/slow/2"), 0.0);
+            assertEquals(3250.0, model.predict("https://b.example.com/"), 0.0);
+        }
+        try (RenderCostModel model = newModel(100)) {
+            assertEquals(1000.0, model.predict("https://a.example.com/fast/3"), 0.0);
+            assertEquals(3250.0, model.predict("https://b.example.com/"), 0.0);
+        }
+    }
+
+    /**
+     * Test that the least recently updated entry is dropped when the model is full.
+     */
+    public void test_evict() {
+        try (RenderCostModel model = newModel(4)) {
+            model.record("https://a.example.com/", 1000L, 1L);
+            model.record("https://b.example.com/", 2000L, 2L);
+            assertEquals(4, model.size());
+            assertEquals(2000.0, model.predict("https://b.example.com/"), 0.0);
+            assertTrue("Should drop an entry of the older host", model.get(RenderCostModel.HOST_PREFIX + "a.example.com") == null
+                    || model.get(RenderCostModel.PATTERN_PREFIX + "a.example.com/") == null);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.thumbnail.playwright;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class RenderDaemonTest extends UnitTestCase {
+
+    @Override
+    protected boolean isSuppressTestCaseTransaction() {
+        return true;
+    }
+
+    /**
+     * Test parsing the command line options of the daemon.
+     */
+    public void test_parseOptions() {
+        final List<String> browserArgs = new ArrayList<>();
+        long[] values = RenderDaemon.parseOptions(new String[0], 9222, 5000L, browserArgs);
+        assertEquals(9222L, values[0]);
+        assertEquals(5000L, values[1]);
+        assertTrue("Should have no browser arguments", browserArgs.isEmpty());
+
+        values = RenderDaemon.parseOptions(new String[] { "--port=9333", "--interval=1000", "--arg=--disable-gpu", "--arg=--no-sandbox" },
+                9222, 5000L, browserArgs);
+        assertEquals(9333L, values[0]);
+        assertEquals(1000L, values[1]);
+        assertEquals(List.of("--disable-gpu", "--no-sandbox"), browserArgs);
+        assertEquals("http://127.0.0.1:9333", new RenderDaemon(9333, browserArgs).getEndpoint());
+
+        try {
+            RenderDaemon.parseOptions(new String[] { "--unknown" }, 9222, 5000L, browserArgs);
+            fail("Should reject an unknown option");
+        } catch (final IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
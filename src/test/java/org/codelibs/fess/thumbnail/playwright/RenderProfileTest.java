@@ -0,0 +1,53 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.thumbnail.playwright;
+
+import java.util.List;
+
+import org.codelibs.fess.crawler.exception.CrawlerSystemException;
+
+import com.microsoft.playwright.options.LoadState;
+
+public class RenderProfileTest extends UnitTestCase {
+
+    @Override
+    protected boolean isSuppressTestCaseTransaction() {
+        return true;
+    }
+
+    /**
+     * Test parsing load states.
+     */
+    public void test_parseLoadState() {
+        assertEquals(LoadState.NETWORKIDLE, RenderProfile.parseLoadState("networkidle"));
+        assertEquals(LoadState.DOMCONTENTLOADED, RenderProfile.parseLoadState(" DomContentLoaded "));
+        try {
+            RenderProfile.parseLoadState("ready");
+            fail("Should reject an unknown state");
+        } catch (final CrawlerSystemException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Test parsing blocked URL patterns.
+     */
+    public void test_parseBlockUrls() {
+        assertEquals(List.of("**/*.mp4", "**/ads/**"), RenderProfile.parseBlockUrls(" **/*.mp4, ,**/ads/** "));
+        assertTrue("Should be empty", RenderProfile.parseBlockUrls("").isEmpty());
+        assertTrue("Should be empty", RenderProfile.parseBlockUrls(null).isEmpty());
+    }
+}
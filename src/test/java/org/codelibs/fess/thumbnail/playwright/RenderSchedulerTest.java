@@ -0,0 +1,342 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.thumbnail.playwright;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RenderSchedulerTest extends UnitTestCase {
+
+    @Override
+    protected boolean isSuppressTestCaseTransaction() {
+        return true;
+    }
+
+    private static RenderTask task(final String id, final String url) {
+        return new RenderTask(id, "config", url, new File(id + ".png"), 100, 100);
+    }
+
+    /**
+     * Test that the host is parsed from URLs.
+     */
+    public void test_parseHost() {
+        assertEquals("example.com", RenderTask.parseHost("https://Example.COM/path?q=1"));
+        assertEquals("", RenderTask.parseHost("not a url"));
+        assertEquals("", RenderTask.parseHost("file:///tmp/a.html"));
+    }
+
+    /**
+     * Test that pending tasks of the same host are rendered together.
+     */
+    public void test_groupsByHost() throws Exception {
+        final List<String> rendered = Collections.synchronizedList(new ArrayList<>());
+        final RenderScheduler scheduler = new RenderScheduler(1, 100, (slot, task) -> rendered.add(task.getThumbnailId()));
+        final List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+        futures.add(scheduler.submit(task("a1", "https://a.example.com/1")));
+        futures.add(scheduler.submit(task("b1", "https://b.example.com/1")));
+        futures.add(scheduler.submit(task("a2", "https://a.example.com/2")));
+        futures.add(scheduler.submit(task("b2", "https://b.example.com/2")));
+        futures.add(scheduler.submit(task("a3", "https://a.example.com/3")));
+        assertEquals(5, scheduler.getPendingSize());
+
+        scheduler.start();
+        for (final CompletableFuture<Boolean> future : futures) {
+            assertTrue("Should be rendered", future.get());
+        }
+        scheduler.shutdown();
+        assertEquals(List.of("a1", "a2", "a3", "b1", "b2"), rendered);
+    }
+
+    /**
+     * Test that slots start different hosts before sharing one.
+     */
+    public void test_slotsPreferDifferentHosts() {
+        final RenderScheduler scheduler = new RenderScheduler(2, 100, (slot, task) -> {});
+        scheduler.submit(task("a1", "https://a.example.com/1"));
+        scheduler.submit(task("a2", "https://a.example.com/2"));
+        scheduler.submit(task("b1", "https://b.example.com/1"));
+
+        assertEquals("a1", scheduler.poll(0, 0L).getThumbnailId());
+        assertEquals("b1", scheduler.poll(1, 0L).getThumbnailId());
+        assertEquals("a2", scheduler.poll(1, 0L).getThumbnailId());
+        assertNull("Should be empty", scheduler.poll(0, 0L));
+    }
+
+    /**
+     * Test that offer does not wait when the pending queue is full.
+     */
+    public void test_offer() throws Exception {
+        final RenderScheduler scheduler = new RenderScheduler(1, 1, (slot, task) -> {});
+        final RenderTask task = task("a1", "https://a.example.com/1");
+        final CompletableFuture<Boolean> future = scheduler.offer(task);
+        assertSame(task.getFuture(), future);
+        assertSame(future, scheduler.offer(task("a1", "https://a.example.com/1")));
+        assertNull("Should not wait when full", scheduler.offer(task("b1", "https://b.example.com/1")));
+
+        scheduler.start();
+        assertTrue("Should be rendered", future.get());
+        scheduler.shutdown();
+        assertNull("Should not accept after shutdown", scheduler.offer(task("c1", "https://c.example.com/1")));
+    }
+
+    /**
+     * Test that discarded tasks are completed with the error and are no longer pending.
+     */
+    public void test_discardPending() throws Exception {
+        final List<String> rendered = Collections.synchronizedList(new ArrayList<>());
+        final RenderScheduler scheduler = new RenderScheduler(1, 100, (slot, task) -> rendered.add(task.getThumbnailId()));
+        final CompletableFuture<Boolean> future1 = scheduler.submit(task("a1", "https://a.example.com/1"));
+        final CompletableFuture<Boolean> future2 = scheduler.submit(task("b1", "https://b.example.com/1"));
+
+        assertEquals(2, scheduler.discardPending(new RenderRejectedException("discarded")));
+        assertEquals(0, scheduler.getPendingSize());
+        assertTrue("Should be completed", future1.isCompletedExceptionally() && future2.isCompletedExceptionally());
+
+        final CompletableFuture<Boolean> future3 = scheduler.submit(task("a1", "https://a.example.com/1"));
+        scheduler.start();
+        assertTrue("Should be rendered", future3.get());
+        scheduler.shutdown();
+        assertEquals(List.of("a1"), rendered);
+    }
+
+    /**
+     * Test that failures complete the future exceptionally and shutdown drains pending tasks.
+     */
+    public void test_failureAndShutdown() throws Exception {
+        final RenderScheduler scheduler = new RenderScheduler(2, 1, (slot, task) -> {
+            if (task.getThumbnailId().startsWith("x")) {
+                throw new IllegalStateException("failed");
+            }
+        });
+        scheduler.start();
+        final CompletableFuture<Boolean> failed = scheduler.submit(task("x1", "https://a.example.com/1"));
+        final CompletableFuture<Boolean> succeeded = scheduler.submit(task("b1", "https://b.example.com/1"));
+        scheduler.shutdown();
+
+        try {
+            failed.get();
+            fail("Should fail");
+        } catch (final ExecutionException e) {
+            assertTrue("Should keep the cause", e.getCause() instanceof IllegalStateException);
+        }
+        assertTrue("Should be rendered before shutdown", succeeded.get());
+        assertEquals(0, scheduler.getPendingSize());
+
+        final CompletableFuture<Boolean> rejected = scheduler.submit(task("c1", "https://c.example.com/1"));
+        assertTrue("Should be rejected after shutdown", rejected.isCompletedExceptionally());
+    }
+
+    /**
+     * Test that a throttled host yields to other hosts.
+     */
+    public void test_throttledHostYields() {
+        final RenderScheduler scheduler = new RenderScheduler(1, 100, (slot, task) -> {});
+        scheduler.setHostLimiter(new HostLimiter(1, 1000L, 0));
+        scheduler.submit(task("a1", "https://a.example.com/1"));
+        scheduler.submit(task("a2", "https://a.example.com/2"));
+        scheduler.submit(task("b1", "https://b.example.com/1"));
+
+        final RenderTask first = scheduler.poll(0, 0L);
+        assertEquals("a1", first.getThumbnailId());
+        scheduler.hostLimiter.acquire(first.getHost(), 0L);
+        scheduler.hostLimiter.release(first.getHost());
+        assertEquals("b1", scheduler.poll(0, 500L).getThumbnailId());
+        assertNull("Throttled host should wait", scheduler.poll(0, 500L));
+        assertEquals(500L, scheduler.getMinDelay(500L));
+        assertEquals("a2", scheduler.poll(0, 1000L).getThumbnailId());
+    }
+
+    /**
+     * Test that renders run within the per-host limit.
+     */
+    public void test_hostConcurrency() throws Exception {
+        final AtomicInteger current = new AtomicInteger();
+        final AtomicInteger max = new AtomicInteger();
+        final RenderScheduler scheduler = new RenderScheduler(4, 100, (slot, task) -> {
+            max.accumulateAndGet(current.incrementAndGet(), Math::max);
+            Thread.sleep(10L);
+            current.decrementAndGet();
+        });
+        scheduler.setHostLimiter(new HostLimiter(2, 0L, 0));
+        scheduler.start();
+        final List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            futures.add(scheduler.submit(task("a" + i, "https://a.example.com/" + i)));
+        }
+        for (final CompletableFuture<Boolean> future : futures) {
+            assertTrue("Should be rendered", future.get());
+        }
+        scheduler.shutdown();
+        assertTrue("Should not exceed the host limit: " + max.get(), max.get() <= 2);
+        assertEquals(0, scheduler.hostLimiter.getInFlight());
+    }
+
+    /**
+     * Test that a task for an output file already pending joins the earlier task.
+     */
+    public void test_coalescesSameOutputFile() throws Exception {
+        final List<String> rendered = Collections.synchronizedList(new ArrayList<>());
+        final RenderScheduler scheduler = new RenderScheduler(1, 100, (slot, task) -> rendered.add(task.getThumbnailId()));
+        final RenderTask first = task("a", "https://a.example.com/1");
+        final RenderTask second = task("a", "https://a.example.com/1");
+        final CompletableFuture<Boolean> firstFuture = scheduler.submit(first);
+        final CompletableFuture<Boolean> secondFuture = scheduler.submit(second);
+        assertSame(first.getFuture(), secondFuture);
+        assertEquals(1, scheduler.getPendingSize());
+
+        scheduler.start();
+        assertTrue("Should be rendered", firstFuture.get());
+        scheduler.shutdown();
+        assertEquals(List.of("a"), rendered);
+        assertTrue("Should be released", scheduler.activeMap.isEmpty());
+    }
+
+    /**
+     * Test that the admission limit caps renders in flight but always admits one.
+     */
+    public void test_admissionLimit() {
+        final RenderScheduler scheduler = new RenderScheduler(2, 100, (slot, task) -> {});
+        final AdmissionController controller = new AdmissionController(2, 0.85, 0.7, 0L, 0L, 1000L);
+        scheduler.setAdmissionController(controller);
+        controller.update(0.9, -1L, 2);
+        assertEquals(1, controller.getLimit());
+
+        assertTrue("Should admit when nothing is in flight", scheduler.isAdmitted());
+        scheduler.hostLimiter.acquire("a.example.com", 0L);
+        assertFalse("Should hold back a second render", scheduler.isAdmitted());
+
+        scheduler.submit(task("a1", "https://a.example.com/1"));
+        controller.update(0.9, -1L, 1);
+        assertTrue("Should pause intake while renders are pending", scheduler.isIntakePaused());
+        scheduler.hostLimiter.release("a.example.com");
+        scheduler.poll(0, 0L);
+        scheduler.pendingSize--;
+        assertFalse("Should resume intake once drained", scheduler.isIntakePaused());
+    }
+
+    private static RenderTask task(final String id, final String configId, final String url) {
+        return new RenderTask(id, configId, url, new File(id + ".png"), 100, 100);
+    }
+
+    /**
+     * Test that a slot leaves a large config for a config below its fair share.
+     */
+    public void test_fairShareBetweenConfigs() throws Exception {
+        final RenderScheduler scheduler = new RenderScheduler(2, 100, (slot, task) -> {});
+        for (int i = 0; i < 5; i++) {
+            scheduler.submit(task("big" + i, "big", "https://a.example.com/" + i));
+        }
+        scheduler.submit(task("small0", "small", "https://b.example.com/0"));
+        scheduler.submit(task("small1", "small", "https://b.example.com/1"));
+
+        final RenderTask first = scheduler.take(0);
+        assertEquals("big0", first.getThumbnailId());
+        assertEquals("Should move to the idle config", "small0", scheduler.take(1).getThumbnailId());
+        scheduler.release(first);
+        final RenderTask third = scheduler.take(0);
+        assertEquals("Should keep the config with fewer renders", "big1", third.getThumbnailId());
+        assertEquals("small1", scheduler.take(1).getThumbnailId());
+    }
+
+    /**
+     * Test that weights and quotas of configs are applied.
+     */
+    public void test_configPolicy() throws Exception {
+        final RenderScheduler scheduler = new RenderScheduler(3, 100, (slot, task) -> {});
+        scheduler.setConfigPolicy(new RenderScheduler.ConfigPolicy() {
+            @Override
+            public int getMaxConcurrency(final String configId) {
+                return "limited".equals(configId) ? 1 : 0;
+            }
+
+            @Override
+            public double getWeight(final String configId) {
+                return "heavy".equals(configId) ? 3.0 : 1.0;
+            }
+        });
+        scheduler.submit(task("l0", "limited", "https://a.example.com/0"));
+        scheduler.submit(task("l1", "limited", "https://b.example.com/1"));
+        scheduler.submit(task("h0", "heavy", "https://c.example.com/0"));
+        scheduler.submit(task("h1", "heavy", "https://c.example.com/1"));
+
+        assertEquals("l0", scheduler.take(0).getThumbnailId());
+        assertEquals("h0", scheduler.take(1).getThumbnailId());
+        assertEquals("Should not exceed the quota", "h1", scheduler.take(2).getThumbnailId());
+        assertEquals(2, scheduler.configStateMap.get("heavy").inFlight);
+        assertEquals(1, scheduler.configStateMap.get("limited").pending);
+        assertEquals(1.0, scheduler.getUsage("limited"));
+        assertEquals(2.0 / 3.0, scheduler.getUsage("heavy"));
+    }
+
+    /**
+     * Test that tasks are ordered by priority with aging, and slots leave their host for clearly higher ranked pages.
+     */
+    public void test_priorityOrder() throws Exception {
+        final RenderScheduler scheduler = new RenderScheduler(1, 100, (slot, task) -> {});
+        scheduler.setPriorityOrder(1.0, 1.0);
+        final RenderTask a1 = task("a1", "https://a.example.com/1");
+        final RenderTask a2 = task("a2", "https://a.example.com/2");
+        a2.setPriority(0.5);
+        final RenderTask b1 = task("b1", "https://b.example.com/1");
+        b1.setPriority(5.0);
+        final long enqueuedTime = System.currentTimeMillis() - 600000L;
+        final RenderTask old = new RenderTask("old", "config", "https://c.example.com/1", new File("old.png"), 100, 100) {
+            @Override
+            public long getCreatedTime() {
+                return enqueuedTime;
+            }
+        };
+        scheduler.submit(a1);
+        scheduler.submit(a2);
+        scheduler.submit(b1);
+        scheduler.submit(old);
+
+        assertEquals("old", scheduler.take(0).getThumbnailId());
+        assertEquals("b1", scheduler.take(0).getThumbnailId());
+        assertEquals("a2", scheduler.take(0).getThumbnailId());
+        assertEquals("a1", scheduler.take(0).getThumbnailId());
+    }
+
+    /**
+     * Test that expensive pages are rendered first and cheap pages last.
+     */
+    public void test_costOrder() throws Exception {
+        final RenderScheduler scheduler = new RenderScheduler(1, 100, (slot, task) -> {});
+        scheduler.setPriorityOrder(0.0, 1.0);
+        scheduler.setCostOrder(1.0);
+        final RenderTask a1 = task("a1", "https://a.example.com/1");
+        a1.setCost(200.0);
+        final RenderTask a2 = task("a2", "https://a.example.com/2");
+        a2.setCost(30000.0);
+        final RenderTask b1 = task("b1", "https://b.example.com/1");
+        b1.setCost(10000.0);
+        final RenderTask c1 = task("c1", "https://c.example.com/1");
+        scheduler.submit(a1);
+        scheduler.submit(a2);
+        scheduler.submit(b1);
+        scheduler.submit(c1);
+
+        assertEquals("a2", scheduler.take(0).getThumbnailId());
+        assertEquals("b1", scheduler.take(0).getThumbnailId());
+        assertEquals("a1", scheduler.take(0).getThumbnailId());
+        assertEquals("c1", scheduler.take(0).getThumbnailId());
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.thumbnail.playwright;
+
+import java.io.File;
+import java.util.List;
+
+public class RetryQueueTest extends UnitTestCase {
+
+    @Override
+    protected boolean isSuppressTestCaseTransaction() {
+        return true;
+    }
+
+    private static RenderTask task(final String id) {
+        return new RenderTask(id, "config", "https://example.com/" + id, new File(id + ".png"), 100, 100);
+    }
+
+    /**
+     * Test that retries become due after a doubling delay and stop after the maximum attempts.
+     */
+    public void test_offer_backoff() {
+        final RetryQueue queue = new RetryQueue(10, 3, 1000L, 0.0);
+        assertTrue("Should queue the first retry", queue.offer(task("a"), 0L));
+        assertEquals(1000L, queue.getNextDueTime());
+        assertTrue("Should not be due yet", queue.pollDue(999L).isEmpty());
+
+        final List<RenderTask> due = queue.pollDue(1000L);
+        assertEquals(1, due.size());
+        final RenderTask retry = due.get(0);
+        assertEquals(1, retry.getAttempts());
+        assertEquals("a", retry.getThumbnailId());
+        assertFalse("Should be a new task", retry.getFuture().isDone());
+
+        assertTrue("Should queue the second retry", queue.offer(retry, 1000L));
+        assertEquals(3000L, queue.getNextDueTime());
+        assertFalse("Attempts should be exhausted", queue.offer(queue.pollDue(3000L).get(0), 3000L));
+        assertEquals(-1L, queue.getNextDueTime());
+    }
+
+    /**
+     * Test that a retry put back keeps its attempt count and due time.
+     */
+    public void test_requeue() {
+        final RetryQueue queue = new RetryQueue(1, 3, 1000L, 0.0);
+        assertTrue("Should queue", queue.offer(task("a"), 0L));
+        final RenderTask retry = queue.pollDue(1000L).get(0);
+        queue.requeue(retry, 1000L);
+        assertEquals(1000L, queue.getNextDueTime());
+        final RenderTask requeued = queue.pollDue(1000L).get(0);
+        assertSame(retry, requeued);
+        assertEquals(1, requeued.getAttempts());
+    }
+
+    /**
+     * Test that the queue size and jitter are bounded.
+     */
+    public void test_offer_limits() {
+        final RetryQueue queue = new RetryQueue(2, 5, 1000L, 0.5);
+        assertTrue("Should queue", queue.offer(task("a"), 0L));
+        assertTrue("Should queue", queue.offer(task("b"), 0L));
+        assertFalse("Should reject when full", queue.offer(task("c"), 0L));
+        assertEquals(2, queue.size());
+        final long dueTime = queue.getNextDueTime();
+        assertTrue("Jitter should be bounded: " + dueTime, dueTime >= 500L && dueTime <= 1500L);
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.thumbnail.playwright;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import org.junit.jupiter.api.TestInfo;
+
+public class SubresourceCacheTest extends UnitTestCase {
+
+    private Path tempDir;
+
+    @Override
+    protected boolean isSuppressTestCaseTransaction() {
+        return true;
+    }
+
+    @Override
+    protected void setUp(TestInfo testInfo) throws Exception {
+        super.setUp(testInfo);
+        tempDir = Files.createTempDirectory("subresource-cache-");
+    }
+
+    @Override
+    protected void tearDown(TestInfo testInfo) throws Exception {
+        try (var paths = Files.walk(tempDir)) {
+            paths.sorted((a, b) -> b.compareTo(a)).map(Path::toFile).forEach(File::delete);
+        }
+        super.tearDown(testInfo);
+    }
+
+    private SubresourceCache newCache(final long maxBytes, final long defaultTtl) {
+        final SubresourceCache cache =
+                new SubresourceCache(tempDir.resolve("subresources.log"), tempDir.resolve("subresources"), maxBytes, 100L, defaultTtl);
+        cache.open();
+        return cache;
+    }
+
+    /**
+     * Test the freshness lifetime derived from the response headers.
+     */
+    public void test_getExpiresTime() {
+        try (SubresourceCache cache = newCache(1000L, 0L)) {
+            assertEquals(61000L, cache.getExpiresTime(Map.of("cache-control", "public, max-age=60"), 1000L));
+            assertEquals(51000L, cache.getExpiresTime(Map.of("cache-control", "max-age=60", "age", "10"), 1000L));
+            assertEquals(0L, cache.getExpiresTime(Map.of("cache-control", "max-age=60, no-store"), 1000L));
+            assertEquals(0L, cache.getExpiresTime(Map.of("cache-control", "private, max-age=60"), 1000L));
+            assertEquals(784111777000L, cache.getExpiresTime(Map.of("expires", "Sun, 06 Nov 1994 08:49:37 GMT"), 1000L));
+            assertEquals(0L, cache.getExpiresTime(Map.of(), 1000L));
+        }
+        try (SubresourceCache cache = newCache(1000L, 5000L)) {
+            assertEquals(6000L, cache.getExpiresTime(Map.of(), 1000L));
+        }
+    }
+
+    /**
+     * Test that cached bodies are served until they expire and survive a restart.
+     */
+    public void test_storeAndLoad() {
+        final String url = "https://example.com/style.css";
+        final Map<String, String> headers = Map.of("cache-control", "max-age=60", "content-type", "text/css", "set-cookie", "a=b");
+        try (SubresourceCache cache = newCache(1000L, 0L)) {
+            assertTrue("Should store", cache.store(url, headers, "body{}".getBytes(), 0L));
+            assertFalse("Should skip a large body", cache.store(url + "?large", headers, new byte[101], 0L));
+            assertFalse("Should skip a varying body", cache.store(url + "?vary", Map.of("cache-control", "max-age=60", "vary", "cookie"),
+                    "x".getBytes(), 0L));
+            assertEquals("body{}", new String(cache.load(url, cache.get(url), 1000L)));
+            assertNull("Should expire", cache.load(url, cache.get(url), 60000L));
+            final Map<String, String> stored = SubresourceCache.parseHeaders(cache.get(url).headers());
+            assertEquals("text/css", stored.get("content-type"));
+            assertFalse("Should drop cookies", stored.containsKey("set-cookie"));
+        }
+        try (SubresourceCache cache = newCache(1000L, 0L)) {
+            assertEquals("body{}", new String(cache.load(url, cache.get(url), 1000L)));
+            assertEquals(6L, cache.getMetrics().get("subresource.bytes"));
+        }
+    }
+
+    /**
+     * Test that the least recently used bodies are removed when the cache is full.
+     */
+    public void test_evict() {
+        final Map<String, String> headers = Map.of("cache-control", "max-age=60");
+        try (SubresourceCache cache = newCache(200L, 0L)) {
+            cache.store("https://example.com/1.js", headers, new byte[80], 0L);
+            cache.store("https://example.com/2.js", headers, new byte[80], 1L);
+            assertNotNull("Should be cached", cache.load("https://example.com/1.js", cache.get("https://example.com/1.js"), 2L));
+            cache.store("https://example.com/3.js", headers, new byte[80], 3L);
+            assertNull("Should evict the least recently used body", cache.get("https://example.com/2.js"));
+            assertNotNull("Should keep the recently used body", cache.get("https://example.com/1.js"));
+            assertNotNull("Should keep the new body", cache.get("https://example.com/3.js"));
+            assertEquals(1L, cache.getMetrics().get("subresource.evictions"));
+        }
+    }
+}
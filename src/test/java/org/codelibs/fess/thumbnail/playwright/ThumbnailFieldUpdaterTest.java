@@ -0,0 +1,74 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.thumbnail.playwright;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public class ThumbnailFieldUpdaterTest extends UnitTestCase {
+
+    @Override
+    protected boolean isSuppressTestCaseTransaction() {
+        return true;
+    }
+
+    private static ThumbnailFieldUpdater newUpdater(final int batchSize, final long flushInterval, final List<Map<String, String>> batches) {
+        return new ThumbnailFieldUpdater(batchSize, flushInterval) {
+            @Override
+            protected void write(final Map<String, String> updates) {
+                if (!updates.isEmpty()) {
+                    batches.add(updates);
+                }
+            }
+        };
+    }
+
+    /**
+     * Test that updates are written in batches of the configured size.
+     */
+    public void test_add_batchSize() {
+        final List<Map<String, String>> batches = new ArrayList<>();
+        final ThumbnailFieldUpdater updater = newUpdater(3, Long.MAX_VALUE, batches);
+        updater.add("a", "");
+        updater.add("b", "");
+        updater.add("a", "x");
+        assertTrue("Duplicate IDs should be merged", batches.isEmpty());
+        assertEquals(2, updater.size());
+        updater.add("c", "");
+        assertEquals(1, batches.size());
+        assertEquals(Map.of("a", "x", "b", "", "c", ""), batches.get(0));
+        assertEquals(0, updater.size());
+
+        updater.add("d", "");
+        updater.flush();
+        assertEquals(2, batches.size());
+        assertEquals(Map.of("d", ""), batches.get(1));
+        updater.flush();
+        assertEquals(2, batches.size());
+    }
+
+    /**
+     * Test that updates are written once the flush interval has passed.
+     */
+    public void test_add_flushInterval() {
+        final List<Map<String, String>> batches = new ArrayList<>();
+        final ThumbnailFieldUpdater updater = newUpdater(100, 0L, batches);
+        updater.add("a", "");
+        assertEquals(1, batches.size());
+        assertEquals(0, updater.size());
+    }
+}
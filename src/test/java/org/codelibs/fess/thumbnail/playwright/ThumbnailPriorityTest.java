@@ -0,0 +1,46 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.thumbnail.playwright;
+
+import java.util.Date;
+
+public class ThumbnailPriorityTest extends UnitTestCase {
+
+    private static final long DAY = 24L * 60L * 60L * 1000L;
+
+    @Override
+    protected boolean isSuppressTestCaseTransaction() {
+        return true;
+    }
+
+    /**
+     * Test that each signal raises the priority.
+     */
+    public void test_compute() {
+        final ThumbnailPriority priority = new ThumbnailPriority(1.0, 1.0, 1.0, 30 * DAY, 1.0);
+        final long now = 100 * DAY;
+        final double base = priority.compute(null, null, null, null, true, now);
+        assertEquals(0.0, base);
+
+        assertTrue("Boost should count", priority.compute(10.0f, null, null, null, true, now) > base);
+        assertEquals(Math.log1p(9), priority.compute(null, 5L, "4", null, true, now), 1e-9);
+        assertEquals(1.0, priority.compute(null, null, null, new Date(now), true, now), 1e-9);
+        assertEquals(0.5, priority.compute(null, null, null, "1970-03-12T00:00:00Z", true, now), 1e-9);
+        assertEquals(0.25, priority.compute(null, null, null, "1970-02-10T09:00:00+09:00", true, now), 1e-9);
+        assertEquals(1.0, priority.compute(null, null, null, null, false, now));
+        assertEquals("Invalid values should be ignored", 0.0, priority.compute("x", "y", null, "yesterday", true, now));
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.thumbnail.playwright;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.TestInfo;
+
+import com.sun.net.httpserver.HttpServer;
+
+public class ValidatorCacheTest extends UnitTestCase {
+
+    private Path tempDir;
+
+    private HttpServer server;
+
+    @Override
+    protected boolean isSuppressTestCaseTransaction() {
+        return true;
+    }
+
+    @Override
+    protected void setUp(TestInfo testInfo) throws Exception {
+        super.setUp(testInfo);
+        tempDir = Files.createTempDirectory("validator-cache-");
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/etag", exchange -> {
+            if ("\"v1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.sendResponseHeaders(304, -1);
+            } else {
+                writeBody(exchange, 200, "changed");
+            }
+            exchange.close();
+        });
+        server.createContext("/slow", exchange -> {
+            try {
+                Thread.sleep(3000L);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.close();
+        });
+        server.createContext("/static", exchange -> {
+            writeBody(exchange, 200, "static body");
+            exchange.close();
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+    }
+
+    @Override
+    protected void tearDown(TestInfo testInfo) throws Exception {
+        server.stop(0);
+        try (var paths = Files.walk(tempDir)) {
+            paths.sorted((a, b) -> b.compareTo(a)).map(Path::toFile).forEach(File::delete);
+        }
+        super.tearDown(testInfo);
+    }
+
+    private static void writeBody(com.sun.net.httpserver.HttpExchange exchange, int status, String body) throws IOException {
+        final byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private String url(String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+
+    private ValidatorCache newCache() {
+        final ValidatorCache cache = new ValidatorCache(tempDir.resolve("validators.log"), Duration.ofSeconds(5));
+        cache.open();
+        return cache;
+    }
+
+    /**
+     * Test that entries survive reopening the cache.
+     */
+    public void test_persistence() {
+        final File thumbnailFile = tempDir.resolve("a.png").toFile();
+        ValidatorCache cache = newCache();
+        cache.record("http://example.com/a\tb", "\"v1\"", "Mon, 01 Jan 2024 00:00:00 GMT", null, thumbnailFile);
+        cache.record("http://example.com/c", null, null, "body".getBytes(StandardCharsets.UTF_8), thumbnailFile);
+        cache.record("http://example.com/d", null, null, null, thumbnailFile);
+        cache.close();
+
+        cache = newCache();
+        try {
+            assertEquals(2, cache.size());
+            final ValidatorCache.Entry entry = cache.get("http://example.com/a\tb");
+            assertEquals("\"v1\"", entry.etag());
+            assertEquals("Mon, 01 Jan 2024 00:00:00 GMT", entry.lastModified());
+            assertNull("no digest", entry.digest());
+            assertEquals(thumbnailFile.getAbsolutePath(), entry.path());
+            assertNotNull("digest of body", cache.get("http://example.com/c").digest());
+            assertNull("no validators", cache.get("http://example.com/d"));
+        } finally {
+            cache.close();
+        }
+    }
+
+    /**
+     * Test that removed entries stay removed after compaction and reopening.
+     */
+    public void test_removeAndCompact() {
+        final File thumbnailFile = tempDir.resolve("a.png").toFile();
+        ValidatorCache cache = newCache();
+        cache.record("http://example.com/1", "\"1\"", null, null, thumbnailFile);
+        cache.record("http://example.com/2", "\"2\"", null, null, thumbnailFile);
+        cache.remove("http://example.com/1");
+        cache.compact();
+        cache.close();
+
+        cache = newCache();
+        try {
+            assertNull("removed", cache.get("http://example.com/1"));
+            assertEquals("\"2\"", cache.get("http://example.com/2").etag());
+        } finally {
+            cache.close();
+        }
+    }
+
+    /**
+     * Test conditional requests with an ETag and with a content digest.
+     */
+    public void test_isNotModified() {
+        final ValidatorCache cache = newCache();
+        try {
+            final String path = tempDir.resolve("a.png").toString();
+            assertTrue("should be unchanged", cache.isNotModified(url("/etag"), new ValidatorCache.Entry("\"v1\"", null, null, path, 0L)));
+            assertFalse("should be modified", cache.isNotModified(url("/etag"), new ValidatorCache.Entry("\"v0\"", null, null, path, 0L)));
+
+            final String digest = ValidatorCache.digest("static body".getBytes(StandardCharsets.UTF_8));
+            assertTrue("should be unchanged", cache.isNotModified(url("/static"), new ValidatorCache.Entry(null, null, digest, path, 0L)));
+            assertFalse("should be modified", cache.isNotModified(url("/static"), new ValidatorCache.Entry(null, null, "0000", path, 0L)));
+            assertFalse("should be modified", cache.isNotModified(url("/static"), new ValidatorCache.Entry(null, null, null, path, 0L)));
+        } finally {
+            cache.close();
+        }
+    }
+
+    /**
+     * Test that a conditional request is abandoned at the timeout even if the server
+     * has accepted the connection.
+     */
+    public void test_isNotModified_timeout() {
+        final ValidatorCache cache = new ValidatorCache(tempDir.resolve("validators.log"), Duration.ofMillis(300));
+        cache.open();
+        try {
+            final long start = System.currentTimeMillis();
+            assertFalse("should time out",
+                    cache.isNotModified(url("/slow"), new ValidatorCache.Entry("\"v1\"", null, null, tempDir.resolve("a.png").toString(), 0L)));
+            assertTrue("should not wait for the response", System.currentTimeMillis() - start < 2000L);
+        } finally {
+            cache.close();
+        }
+    }
+
+    /**
+     * Test that expired and excess entries are evicted together with their thumbnail files.
+     */
+    public void test_evict() throws IOException {
+        final List<File> removedList = new ArrayList<>();
+        final ValidatorCache cache = new ValidatorCache(tempDir.resolve("validators.log"), Duration.ofSeconds(5));
+        cache.setMaxSize(10);
+        cache.setMaxAge(60000L);
+        cache.setFileRemover(removedList::add);
+        cache.open();
+        try {
+            final long now = System.currentTimeMillis();
+            cache.put("http://example.com/old", new ValidatorCache.Entry("\"old\"", null, null, tempDir.resolve("old.png").toString(), now - 120000L));
+            for (int i = 0; i < 10; i++) {
+                cache.record("http://example.com/" + i, "\"" + i + "\"", null, null, tempDir.resolve(i + ".png").toFile());
+            }
+            assertNull("should evict the oldest entry first", cache.get("http://example.com/old"));
+            assertEquals(tempDir.resolve("old.png").toFile(), removedList.get(0));
+            assertEquals(9, cache.size());
+            assertEquals(2, removedList.size());
+
+            cache.record("http://example.com/10", "\"10\"", null, null, tempDir.resolve("10.png").toFile());
+            assertEquals(10, cache.size());
+            assertEquals(2, removedList.size());
+
+            cache.put("http://example.com/stale", new ValidatorCache.Entry("\"s\"", null, null, tempDir.resolve("s.png").toString(), now - 120000L));
+            assertEquals(2, cache.evict(now));
+            assertNull("should evict the expired entry", cache.get("http://example.com/stale"));
+            assertEquals(9, cache.size());
+        } finally {
+            cache.close();
+        }
+    }
+}